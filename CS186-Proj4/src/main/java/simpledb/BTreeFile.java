@@ -0,0 +1,651 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * BTreeFile is a secondary B+tree index over one INT_TYPE or STRING_TYPE
+ * field of a table. It is a DbFile of its own: its pages, BTreePages, are
+ * read through the BufferPool and locked by the LockManager like the pages
+ * of a HeapFile. The tuples of the file are index entries
+ * (key, heap page number, heap slot), one per tuple of the table, in key
+ * order; {@link #getRecordId} turns an entry into the RecordId of the
+ * tuple it points at.
+ * <p>
+ * An index may also copy other fields of the table into its entries,
+ * which then become (key, heap page number, heap slot, included fields).
+ * A query that references only the key and the included fields of a table
+ * is answered from the leaves alone, without reading the table; see
+ * {@link IndexScan#IndexScan(TransactionId, IndexFile, Predicate.Op, Field, String, boolean)}.
+ * <p>
+ * Indexes are registered with {@link Catalog#addIndex}; BufferPool then
+ * keeps them current when tuples are inserted into or deleted from the
+ * table. {@link #insertTuple} and {@link #deleteTuple} take a tuple of the
+ * table, with its RecordId set. Inserts split full pages up to the root;
+ * deletes only remove the entry from its leaf, so pages are never merged
+ * and an emptied leaf stays in the tree until the index is rebuilt.
+ * <p>
+ * Writers lock every page from the meta page down to the leaf exclusively,
+ * readers take shared locks, so the tree is always consistent for a reader.
+ *
+ * @see BTreePage
+ */
+public class BTreeFile implements IndexFile {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File f;
+    private final int tableId;
+    private final int keyField;
+    private final int[] includedFields;
+    private final TupleDesc td;
+    private final int pageSize;
+    private transient volatile FileChannel channel;
+
+    /**
+     * Opens the index stored in f over field keyField of table, with pages
+     * of the database-wide page size. A missing or empty file is an empty
+     * index; use {@link #build} to index a table that already has tuples.
+     */
+    public BTreeFile(File f, DbFile table, int keyField) {
+        this(f, table, keyField, BufferPool.getPageSize());
+    }
+
+    /**
+     * @param pageSize bytes per page of the index
+     * @see #BTreeFile(File, DbFile, int)
+     */
+    public BTreeFile(File f, DbFile table, int keyField, int pageSize) {
+        this(f, table, keyField, new int[0], pageSize);
+    }
+
+    /**
+     * Opens the index stored in f over field keyField of table, whose
+     * entries also hold the given fields of the table, in that order.
+     *
+     * @see #BTreeFile(File, DbFile, int)
+     */
+    public BTreeFile(File f, DbFile table, int keyField, int[] includedFields) {
+        this(f, table, keyField, includedFields, BufferPool.getPageSize());
+    }
+
+    /**
+     * @param pageSize bytes per page of the index
+     * @see #BTreeFile(File, DbFile, int, int[])
+     */
+    public BTreeFile(File f, DbFile table, int keyField, int[] includedFields, int pageSize) {
+        TupleDesc tableTd = table.getTupleDesc();
+        Type keyType = tableTd.getFieldType(keyField);
+        Type[] types = new Type[3 + includedFields.length];
+        String[] names = new String[types.length];
+        types[0] = keyType;
+        names[0] = tableTd.getFieldName(keyField);
+        types[1] = types[2] = Type.INT_TYPE;
+        names[1] = "pageno";
+        names[2] = "slot";
+        for (int i = 0; i < includedFields.length; i++) {
+            int field = includedFields[i];
+            if (field < 0 || field >= tableTd.numFields() || field == keyField) {
+                throw new IllegalArgumentException("cannot include field " + field + " in the index");
+            }
+            types[3 + i] = tableTd.getFieldType(field);
+            names[3 + i] = tableTd.getFieldName(field);
+        }
+        TupleDesc td = new TupleDesc(types, names);
+        if (BTreePage.maxEntries(BTreePage.INTERNAL, keyType, pageSize) < 3
+                || BTreePage.maxEntries(BTreePage.LEAF, keyType, BTreePage.includedTypes(td), pageSize) < 2) {
+            throw new IllegalArgumentException("page size " + pageSize + " is too small for the index");
+        }
+        this.f = f;
+        this.tableId = table.getId();
+        this.keyField = keyField;
+        this.includedFields = includedFields.clone();
+        this.pageSize = pageSize;
+        this.td = td;
+    }
+
+    /**
+     * @return the file backing this index on disk
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * @return the id of the indexed table
+     */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /**
+     * @return the indexed field of the table
+     */
+    public int getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * @return the fields of the table the entries hold after the RecordId
+     */
+    public int[] getIncludedFields() {
+        return includedFields.clone();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return true unless op is NOT_EQUALS, or a substring match on a
+     *         string key
+     */
+    public boolean supports(Predicate.Op op) {
+        if (op == Predicate.Op.LIKE) {
+            return td.getFieldType(0) == Type.INT_TYPE;
+        }
+        return op != Predicate.Op.NOT_EQUALS;
+    }
+
+    /**
+     * @return false; the tree allows duplicate keys
+     */
+    public boolean isUnique() {
+        return false;
+    }
+
+    public int probePages() {
+        return TableStats.INDEXPROBEPAGES;
+    }
+
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * @return the TupleDesc of the entries, (key, pageno, slot, included
+     *         fields)
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the RecordId of the tuple of the table an entry points at
+     */
+    public RecordId getRecordId(Tuple entry) {
+        return new RecordId(new HeapPageId(tableId, ((IntField) entry.getField(1)).getValue()),
+                ((IntField) entry.getField(2)).getValue());
+    }
+
+    /**
+     * Returns the number of pages in the file, counting the meta page.
+     */
+    public int numPages() {
+        return (int) (f.length() / pageSize);
+    }
+
+    private FileChannel getChannel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen()) {
+            return ch;
+        }
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                channel = new RandomAccessFile(f, "rw").getChannel();
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Closes the channel backing this file. The next page access reopens it.
+     */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        byte[] buf = new byte[pageSize];
+        try {
+            //pages past the end of the file read as zeros: an empty tree
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            long offset = (long) pid.pageNumber() * pageSize;
+            FileChannel ch = getChannel();
+            while (bb.hasRemaining()) {
+                int n = ch.read(bb, offset + bb.position());
+                if (n < 0) break;
+            }
+            return new BTreePage((BTreePageId) pid, buf, td.getFieldType(0), BTreePage.includedTypes(td));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(page.getPageData());
+        long offset = (long) page.getId().pageNumber() * pageSize;
+        FileChannel ch = getChannel();
+        while (bb.hasRemaining()) {
+            ch.write(bb, offset + bb.position());
+        }
+    }
+
+    /**
+     * Appends an empty page to the file and returns its number. Pages 0
+     * and 1 always exist, even in an empty file.
+     */
+    private synchronized int allocatePage() throws IOException {
+        int pgNo = Math.max(numPages(), 2);
+        ByteBuffer bb = ByteBuffer.wrap(BTreePage.createEmptyPageData(pageSize));
+        FileChannel ch = getChannel();
+        while (bb.hasRemaining()) {
+            ch.write(bb, (long) pgNo * pageSize + bb.position());
+        }
+        return pgNo;
+    }
+
+    private BTreePage getPage(TransactionId tid, int pgNo, Permissions perm)
+        throws TransactionAbortedException, DbException, InterruptedException {
+        return (BTreePage) Database.getBufferPool().getPage(tid, new BTreePageId(getId(), pgNo), perm);
+    }
+
+    //index of the child of an internal page that holds the given entry
+    private static int childFor(BTreePage node, Field key, int ridPage, int ridSlot) {
+        int pos = node.position(key, ridPage, ridSlot);
+        if (pos < node.getNumEntries() && node.compareEntry(pos, key, ridPage, ridSlot) == 0) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Adds the entry of t, a tuple of the indexed table whose RecordId is
+     * set, splitting pages as needed.
+     *
+     * @return the pages that were modified
+     * @throws DbException if t has no RecordId or is already indexed
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        if (t.getRecordId() == null) {
+            throw new DbException("tuple has no RecordId");
+        }
+        Field key = t.getField(keyField);
+        int ridPage = t.getRecordId().getPageId().pageNumber();
+        int ridSlot = t.getRecordId().tupleno();
+        ArrayList<Page> dirtied = new ArrayList<Page>();
+
+        BTreePage meta = getPage(tid, 0, Permissions.READ_WRITE);
+        ArrayList<BTreePage> path = new ArrayList<BTreePage>();
+        ArrayList<Integer> childIndexes = new ArrayList<Integer>();
+        BTreePage node = getPage(tid, meta.getRoot(), Permissions.READ_WRITE);
+        while (!node.isLeaf()) {
+            int c = childFor(node, key, ridPage, ridSlot);
+            path.add(node);
+            childIndexes.add(c);
+            node = getPage(tid, node.getChild(c), Permissions.READ_WRITE);
+        }
+
+        int pos = node.position(key, ridPage, ridSlot);
+        if (pos < node.getNumEntries() && node.compareEntry(pos, key, ridPage, ridSlot) == 0) {
+            throw new DbException("tuple is already in the index");
+        }
+        node.insertEntry(pos, key, ridPage, ridSlot, 0, included(t));
+        dirtied.add(node);
+
+        //split overflowing pages bottom up
+        while (node.overflows()) {
+            BTreePage right = getPage(tid, allocatePage(), Permissions.READ_WRITE);
+            dirtied.add(right);
+            int mid = node.getNumEntries() / 2;
+            Field sepKey;
+            int sepPage, sepSlot;
+            if (node.isLeaf()) {
+                node.moveEntries(mid, right);
+                right.setNext(node.getNext());
+                node.setNext(right.getId().pageNumber());
+                //the first entry of the right leaf separates the two
+                sepKey = right.getKey(0);
+                sepPage = right.getRidPage(0);
+                sepSlot = right.getRidSlot(0);
+            } else {
+                //the middle entry moves up, its child becomes the leftmost of right
+                right.makeInternal(node.getChild(mid + 1));
+                node.moveEntries(mid + 1, right);
+                sepKey = node.getKey(mid);
+                sepPage = node.getRidPage(mid);
+                sepSlot = node.getRidSlot(mid);
+                node.removeEntry(mid);
+            }
+
+            if (path.isEmpty()) {
+                BTreePage root = getPage(tid, allocatePage(), Permissions.READ_WRITE);
+                root.makeInternal(node.getId().pageNumber());
+                root.insertEntry(0, sepKey, sepPage, sepSlot, right.getId().pageNumber());
+                meta.setRoot(root.getId().pageNumber());
+                dirtied.add(root);
+                dirtied.add(meta);
+                break;
+            }
+            BTreePage parent = path.remove(path.size() - 1);
+            int c = childIndexes.remove(childIndexes.size() - 1);
+            parent.insertEntry(c, sepKey, sepPage, sepSlot, right.getId().pageNumber());
+            dirtied.add(parent);
+            node = parent;
+        }
+
+        for (Page p : dirtied) {
+            p.markDirty(true, tid);
+        }
+        return dirtied;
+    }
+
+    //the included fields of t, a tuple of the table
+    private Field[] included(Tuple t) {
+        Field[] inc = new Field[includedFields.length];
+        for (int i = 0; i < inc.length; i++) {
+            inc[i] = t.getField(includedFields[i]);
+        }
+        return inc;
+    }
+
+    /**
+     * Removes the entry of t, a tuple of the indexed table whose RecordId is
+     * set, from its leaf.
+     *
+     * @return the leaf the entry was removed from
+     * @throws DbException if t is not in the index
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException, InterruptedException {
+        if (t.getRecordId() == null) {
+            throw new DbException("tuple has no RecordId");
+        }
+        Field key = t.getField(keyField);
+        int ridPage = t.getRecordId().getPageId().pageNumber();
+        int ridSlot = t.getRecordId().tupleno();
+
+        BTreePage meta = getPage(tid, 0, Permissions.READ_WRITE);
+        BTreePage node = getPage(tid, meta.getRoot(), Permissions.READ_WRITE);
+        while (!node.isLeaf()) {
+            node = getPage(tid, node.getChild(childFor(node, key, ridPage, ridSlot)), Permissions.READ_WRITE);
+        }
+        int pos = node.position(key, ridPage, ridSlot);
+        if (pos >= node.getNumEntries() || node.compareEntry(pos, key, ridPage, ridSlot) != 0) {
+            throw new DbException("tuple is not in the index");
+        }
+        node.removeEntry(pos);
+        node.markDirty(true, tid);
+        return node;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new IndexIterator(tid, null, null);
+    }
+
+    /**
+     * Entries are not skipped by predicates on the fields; the caller
+     * applies them.
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> filters) {
+        return iterator(tid);
+    }
+
+    /**
+     * Returns an iterator over the entries whose key satisfies
+     * <tt>key op value</tt>, in key order. Only the leaves that can hold
+     * such entries are read: an equality or a lower bound starts at the
+     * first matching leaf, and an equality or an upper bound stops at the
+     * first key past it.
+     *
+     * @see #getRecordId
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field value) {
+        return new IndexIterator(tid, op, value);
+    }
+
+    private class IndexIterator implements DbFileIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        private final Predicate.Op op;
+        private final Field value;
+
+        private BTreePage leaf;
+        private int pos;
+        private Tuple next;
+
+        IndexIterator(TransactionId tid, Predicate.Op op, Field value) {
+            this.tid = tid;
+            this.op = op;
+            this.value = value;
+        }
+
+        //true if the scan can start at the first key not less than value
+        private boolean seeks() {
+            if (op == null) return false;
+            switch (op) {
+            case EQUALS:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQ:
+                return true;
+            case LIKE:
+                return value instanceof IntField;
+            default:
+                return false;
+            }
+        }
+
+        //true if no entry with this key or a larger one can match
+        private boolean pastEnd(Field key) {
+            if (op == null) return false;
+            int c = BTreePage.compareKeys(key, value);
+            switch (op) {
+            case EQUALS:
+            case LESS_THAN_OR_EQ:
+                return c > 0;
+            case LESS_THAN:
+                return c >= 0;
+            case LIKE:
+                return value instanceof IntField && c > 0;
+            default:
+                return false;
+            }
+        }
+
+        public void open() throws DbException, TransactionAbortedException, InterruptedException {
+            BTreePage meta = getPage(tid, 0, Permissions.READ_ONLY);
+            BTreePage node = getPage(tid, meta.getRoot(), Permissions.READ_ONLY);
+            while (!node.isLeaf()) {
+                node = getPage(tid, node.getChild(seeks() ? node.lowerBound(value) : 0), Permissions.READ_ONLY);
+            }
+            leaf = node;
+            pos = seeks() ? node.lowerBound(value) : 0;
+            next = fetchNext();
+        }
+
+        private Tuple fetchNext() throws DbException, TransactionAbortedException, InterruptedException {
+            while (leaf != null) {
+                if (pos >= leaf.getNumEntries()) {
+                    leaf = leaf.getNext() == 0 ? null : getPage(tid, leaf.getNext(), Permissions.READ_ONLY);
+                    pos = 0;
+                    continue;
+                }
+                Field key = leaf.getKey(pos);
+                if (pastEnd(key)) {
+                    leaf = null;
+                    break;
+                }
+                int i = pos++;
+                if (op == null || key.compare(op, value)) {
+                    Tuple t = new Tuple(td);
+                    t.setField(0, key);
+                    t.setField(1, new IntField(leaf.getRidPage(i)));
+                    t.setField(2, new IntField(leaf.getRidSlot(i)));
+                    Field[] inc = leaf.getIncluded(i);
+                    for (int j = 0; j < inc.length; j++) {
+                        t.setField(3 + j, inc[j]);
+                    }
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException, InterruptedException {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = fetchNext();
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException, InterruptedException {
+            open();
+        }
+
+        public void close() {
+            leaf = null;
+            next = null;
+        }
+    }
+
+    /**
+     * Writes a new index over field keyField of every tuple of table to out,
+     * bottom up with full pages, which is much faster than inserting the
+     * entries one by one. The entries are sorted with an ExternalSort, so
+     * tables larger than memory are indexed as well. The pages of the table
+     * are read directly, not through the BufferPool, so the table must not
+     * be modified concurrently; it must be in the Catalog.
+     *
+     * @param out the file to write; it is overwritten
+     * @return the new index, which still has to be registered with
+     *         {@link Catalog#addIndex}
+     */
+    public static BTreeFile build(File out, HeapFile table, int keyField) throws IOException {
+        return build(out, table, keyField, new int[0]);
+    }
+
+    /**
+     * Like {@link #build(File, HeapFile, int)}, for an index whose entries
+     * also hold the given fields of the table.
+     */
+    public static BTreeFile build(File out, HeapFile table, int keyField, int[] includedFields) throws IOException {
+        BTreeFile index = new BTreeFile(out, table, keyField, includedFields);
+        final Type keyType = index.td.getFieldType(0);
+        Type[] includedTypes = BTreePage.includedTypes(index.td);
+        int pageSize = index.pageSize;
+
+        //entries of the key, the included fields and the RecordId, in key order
+        int[] fields = new int[1 + includedFields.length];
+        fields[0] = keyField;
+        System.arraycopy(includedFields, 0, fields, 1, includedFields.length);
+        ExternalSort.Merge entries = new ExternalSort(table, fields, new Comparator<Tuple>() {
+            public int compare(Tuple a, Tuple b) {
+                int c = BTreePage.compareKeys(a.getField(0), b.getField(0));
+                if (c != 0) return c;
+                c = ridPage(a) - ridPage(b);
+                return c != 0 ? c : ridSlot(a) - ridSlot(b);
+            }
+        }, BufferPool.DEFAULT_PAGES, BufferPool.DEFAULT_PAGES - 1).entries(out.getAbsoluteFile().getParentFile());
+
+        int indexId = index.getId();
+        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(out));
+        int root = 1;
+        try {
+            bos.write(BTreePage.createEmptyPageData(pageSize));
+            int pgNo = 1;
+
+            //leaves, and the first entry of each
+            ArrayList<Integer> level = new ArrayList<Integer>();
+            ArrayList<Tuple> firsts = new ArrayList<Tuple>();
+            int perLeaf = BTreePage.maxEntries(BTreePage.LEAF, keyType, includedTypes, pageSize);
+            BTreePage leaf = new BTreePage(new BTreePageId(indexId, pgNo),
+                    BTreePage.createEmptyPageData(pageSize), keyType, includedTypes);
+            Tuple e = entries.next();
+            firsts.add(e);
+            while (e != null) {
+                if (leaf.getNumEntries() == perLeaf) {
+                    leaf.setNext(pgNo + 1);
+                    bos.write(leaf.getPageData());
+                    level.add(pgNo++);
+                    leaf = new BTreePage(new BTreePageId(indexId, pgNo),
+                            BTreePage.createEmptyPageData(pageSize), keyType, includedTypes);
+                    firsts.add(e);
+                }
+                Field[] included = new Field[includedFields.length];
+                for (int i = 0; i < included.length; i++) {
+                    included[i] = e.getField(1 + i);
+                }
+                leaf.insertEntry(leaf.getNumEntries(), e.getField(0), ridPage(e), ridSlot(e), 0, included);
+                e = entries.next();
+            }
+            leaf.setNext(0);
+            bos.write(leaf.getPageData());
+            level.add(pgNo++);
+
+            //internal levels up to a single root
+            int fanout = BTreePage.maxEntries(BTreePage.INTERNAL, keyType, pageSize) + 1;
+            while (level.size() > 1) {
+                ArrayList<Integer> up = new ArrayList<Integer>();
+                ArrayList<Tuple> upFirsts = new ArrayList<Tuple>();
+                for (int start = 0; start < level.size(); start += fanout) {
+                    BTreePage node = new BTreePage(new BTreePageId(indexId, pgNo),
+                            BTreePage.createEmptyPageData(pageSize), keyType);
+                    node.makeInternal(level.get(start));
+                    int end = Math.min(level.size(), start + fanout);
+                    for (int c = start + 1; c < end; c++) {
+                        Tuple t = firsts.get(c);
+                        node.insertEntry(node.getNumEntries(), t.getField(0), ridPage(t), ridSlot(t),
+                                level.get(c));
+                    }
+                    bos.write(node.getPageData());
+                    up.add(pgNo++);
+                    upFirsts.add(firsts.get(start));
+                }
+                level = up;
+                firsts = upFirsts;
+            }
+            root = level.get(0);
+        } finally {
+            try {
+                bos.close();
+            } finally {
+                entries.close();
+            }
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(out, "rw");
+        try {
+            raf.writeInt(root);
+        } finally {
+            raf.close();
+        }
+        return index;
+    }
+
+    //the RecordId of an entry of build, the last two of its fields
+    private static int ridPage(Tuple entry) {
+        return ((IntField) entry.getField(entry.getTupleDesc().numFields() - 2)).getValue();
+    }
+
+    private static int ridSlot(Tuple entry) {
+        return ((IntField) entry.getField(entry.getTupleDesc().numFields() - 1)).getValue();
+    }
+}
@@ -0,0 +1,415 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Each instance of BTreePage stores one page of a BTreeFile and implements
+ * the Page interface that is used by BufferPool.
+ * <p>
+ * Page 0 of the file is the meta page; its first 4 bytes hold the page
+ * number of the root, where 0 stands for page 1. Every other page is a node:
+ * <pre>
+ *   kind (1 byte: 0 = leaf, 1 = internal) | count (int) | link (int) | count entries
+ * </pre>
+ * A leaf entry is (key, heap page number, heap slot, included fields) and
+ * points at a tuple of the indexed table, whose included fields it copies;
+ * link is the page number of the next leaf to the right, or 0 for the last
+ * leaf. Entries are kept sorted by key, then by
+ * heap page and slot, so duplicate keys are allowed and every entry is
+ * unique.
+ * <p>
+ * An internal entry is a separator (key, heap page, heap slot) followed by
+ * the page number of the child to its right; link is the leftmost child.
+ * Child i holds the entries that are at least separator i and less than
+ * separator i+1.
+ * <p>
+ * An all-zero page is an empty leaf, and an all-zero page 0 points at root
+ * page 1, so an empty file is an empty tree.
+ *
+ * @see BTreeFile
+ */
+public class BTreePage implements Page {
+
+    static final int LEAF = 0;
+    static final int INTERNAL = 1;
+    static final int META = 2;
+
+    private static final int HEADER_SIZE = 9;
+
+    private final BTreePageId pid;
+    private final Type keyType;
+    private final Type[] includedTypes;
+    private final int pageSize;
+    private int kind;
+
+    //meta page: page number of the root
+    private int root;
+
+    //node pages
+    private int link;
+    private final ArrayList<Field> keys = new ArrayList<Field>();
+    private final ArrayList<Integer> ridPages = new ArrayList<Integer>();
+    private final ArrayList<Integer> ridSlots = new ArrayList<Integer>();
+    //leaf pages: the included fields of every entry
+    private final ArrayList<Field[]> included = new ArrayList<Field[]>();
+    //internal pages: the child right of every entry
+    private final ArrayList<Integer> children = new ArrayList<Integer>();
+
+    private byte[] oldData;
+    private TransactionId dirtyId;
+
+    /**
+     * Create a BTreePage from a set of bytes of data read from disk, in the
+     * format described above. The type of the key is field 0 of the
+     * TupleDesc of the index in the Catalog, the types of the included
+     * fields are its fields 3 and up.
+     */
+    public BTreePage(BTreePageId id, byte[] data) throws IOException {
+        this(id, data, Database.getCatalog().getTupleDesc(id.getTableId()).getFieldType(0),
+                includedTypes(Database.getCatalog().getTupleDesc(id.getTableId())));
+    }
+
+    BTreePage(BTreePageId id, byte[] data, Type keyType) throws IOException {
+        this(id, data, keyType, new Type[0]);
+    }
+
+    BTreePage(BTreePageId id, byte[] data, Type keyType, Type[] includedTypes) throws IOException {
+        this.pid = id;
+        this.keyType = keyType;
+        this.includedTypes = includedTypes;
+        this.pageSize = data.length;
+        ByteBuffer bb = ByteBuffer.wrap(data);
+
+        if (id.pageNumber() == 0) {
+            kind = META;
+            root = bb.getInt();
+            if (root == 0) {
+                root = 1;
+            }
+        } else {
+            kind = bb.get();
+            if (kind != LEAF && kind != INTERNAL) {
+                throw new IOException("bad b+tree page kind " + kind);
+            }
+            int count = bb.getInt();
+            link = bb.getInt();
+            if (count < 0 || count > maxEntries(kind, keyType, includedTypes, pageSize)) {
+                throw new IOException("bad b+tree entry count " + count);
+            }
+            try {
+                for (int i = 0; i < count; i++) {
+                    keys.add(keyType.parse(bb));
+                    ridPages.add(bb.getInt());
+                    ridSlots.add(bb.getInt());
+                    if (kind == INTERNAL) {
+                        children.add(bb.getInt());
+                    } else {
+                        Field[] inc = new Field[includedTypes.length];
+                        for (int j = 0; j < inc.length; j++) {
+                            inc[j] = includedTypes[j].parse(bb);
+                        }
+                        included.add(inc);
+                    }
+                }
+            } catch (java.text.ParseException e) {
+                throw new IOException("bad b+tree entry: " + e.getMessage());
+            }
+        }
+        oldData = data.clone();
+    }
+
+    /**
+     * @return the number of entries a node of the given kind can hold
+     */
+    static int maxEntries(int kind, Type keyType, int pageSize) {
+        return maxEntries(kind, keyType, new Type[0], pageSize);
+    }
+
+    /**
+     * @return the number of entries a node of the given kind can hold, when
+     *         leaf entries carry fields of the given types
+     */
+    static int maxEntries(int kind, Type keyType, Type[] includedTypes, int pageSize) {
+        int entrySize = keyType.getLen() + (kind == INTERNAL ? 12 : 8);
+        if (kind == LEAF) {
+            for (Type t : includedTypes) {
+                entrySize += t.getLen();
+            }
+        }
+        return (pageSize - HEADER_SIZE) / entrySize;
+    }
+
+    /**
+     * @return the types of the included fields of an index whose entries
+     *         are described by td, (key, pageno, slot, included fields)
+     */
+    static Type[] includedTypes(TupleDesc td) {
+        Type[] types = new Type[td.numFields() - 3];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i + 3);
+        }
+        return types;
+    }
+
+    /**
+     * Compares two keys of the same type.
+     */
+    static int compareKeys(Field a, Field b) {
+        if (a instanceof IntField) {
+            int x = ((IntField) a).getValue();
+            int y = ((IntField) b).getValue();
+            return x < y ? -1 : (x == y ? 0 : 1);
+        }
+        return ((StringField) a).getValue().compareTo(((StringField) b).getValue());
+    }
+
+    /**
+     * Compares entry i to the entry (key, ridPage, ridSlot).
+     */
+    int compareEntry(int i, Field key, int ridPage, int ridSlot) {
+        int c = compareKeys(keys.get(i), key);
+        if (c != 0) return c;
+        c = ridPages.get(i) - ridPage;
+        if (c != 0) return c < 0 ? -1 : 1;
+        c = ridSlots.get(i) - ridSlot;
+        return c < 0 ? -1 : (c == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return the index of the first entry whose key is not less than key
+     */
+    int lowerBound(Field key) {
+        int lo = 0, hi = keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeys(keys.get(mid), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the first entry that is not less than the entry
+     *         (key, ridPage, ridSlot)
+     */
+    int position(Field key, int ridPage, int ridSlot) {
+        int lo = 0, hi = keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareEntry(mid, key, ridPage, ridSlot) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    int getKind() {
+        return kind;
+    }
+
+    boolean isLeaf() {
+        return kind == LEAF;
+    }
+
+    int getRoot() {
+        return root;
+    }
+
+    void setRoot(int root) {
+        this.root = root;
+    }
+
+    int getNumEntries() {
+        return keys.size();
+    }
+
+    /**
+     * @return true if the page holds more entries than fit on disk, which
+     *         is allowed only until the page is split
+     */
+    boolean overflows() {
+        return keys.size() > maxEntries(kind, keyType, includedTypes, pageSize);
+    }
+
+    Field getKey(int i) {
+        return keys.get(i);
+    }
+
+    int getRidPage(int i) {
+        return ridPages.get(i);
+    }
+
+    int getRidSlot(int i) {
+        return ridSlots.get(i);
+    }
+
+    /**
+     * @return the included fields of leaf entry i
+     */
+    Field[] getIncluded(int i) {
+        return included.get(i);
+    }
+
+    /**
+     * @return child i of an internal page, 0 being the leftmost
+     */
+    int getChild(int i) {
+        return i == 0 ? link : children.get(i - 1);
+    }
+
+    /**
+     * @return the next leaf to the right, or 0 if this is the last one
+     */
+    int getNext() {
+        return link;
+    }
+
+    void setNext(int next) {
+        link = next;
+    }
+
+    /**
+     * Inserts an entry at index i; on an internal page child is the child
+     * to the right of it, on a leaf it is ignored.
+     */
+    void insertEntry(int i, Field key, int ridPage, int ridSlot, int child) {
+        insertEntry(i, key, ridPage, ridSlot, child, null);
+    }
+
+    /**
+     * Inserts an entry at index i; on a leaf inc holds its included fields,
+     * on an internal page it is ignored.
+     */
+    void insertEntry(int i, Field key, int ridPage, int ridSlot, int child, Field[] inc) {
+        if (kind == LEAF && (inc == null ? 0 : inc.length) != includedTypes.length) {
+            throw new IllegalArgumentException("expected " + includedTypes.length + " included fields");
+        }
+        keys.add(i, key);
+        ridPages.add(i, ridPage);
+        ridSlots.add(i, ridSlot);
+        if (kind == INTERNAL) {
+            children.add(i, child);
+        } else {
+            included.add(i, inc == null ? new Field[0] : inc);
+        }
+    }
+
+    void removeEntry(int i) {
+        keys.remove(i);
+        ridPages.remove(i);
+        ridSlots.remove(i);
+        if (kind == INTERNAL) {
+            children.remove(i);
+        } else {
+            included.remove(i);
+        }
+    }
+
+    /**
+     * Moves entries from..count-1 to the end of the empty page right, which
+     * must be of the same kind.
+     */
+    void moveEntries(int from, BTreePage right) {
+        for (int i = from; i < keys.size(); i++) {
+            right.insertEntry(right.getNumEntries(), keys.get(i), ridPages.get(i), ridSlots.get(i),
+                    kind == INTERNAL ? children.get(i) : 0, kind == LEAF ? included.get(i) : null);
+        }
+        keys.subList(from, keys.size()).clear();
+        ridPages.subList(from, ridPages.size()).clear();
+        ridSlots.subList(from, ridSlots.size()).clear();
+        if (kind == INTERNAL) {
+            children.subList(from, children.size()).clear();
+        } else {
+            included.subList(from, included.size()).clear();
+        }
+    }
+
+    /**
+     * Turns an empty leaf into an internal node whose leftmost child is
+     * leftChild.
+     */
+    void makeInternal(int leftChild) {
+        if (kind != LEAF || !keys.isEmpty()) {
+            throw new IllegalStateException("only an empty leaf can become an internal page");
+        }
+        kind = INTERNAL;
+        link = leftChild;
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer bb = ByteBuffer.allocate(pageSize);
+        if (kind == META) {
+            bb.putInt(root);
+            return bb.array();
+        }
+        bb.put((byte) kind);
+        bb.putInt(keys.size());
+        bb.putInt(link);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(keyType.getLen());
+        DataOutputStream dos = new DataOutputStream(baos);
+        for (int i = 0; i < keys.size(); i++) {
+            putField(bb, baos, dos, keys.get(i), keyType);
+            bb.putInt(ridPages.get(i));
+            bb.putInt(ridSlots.get(i));
+            if (kind == INTERNAL) {
+                bb.putInt(children.get(i));
+            } else {
+                Field[] inc = included.get(i);
+                for (int j = 0; j < inc.length; j++) {
+                    putField(bb, baos, dos, inc[j], includedTypes[j]);
+                }
+            }
+        }
+        return bb.array();
+    }
+
+    private static void putField(ByteBuffer bb, ByteArrayOutputStream baos, DataOutputStream dos,
+            Field f, Type type) {
+        baos.reset();
+        try {
+            f.serialize(dos);
+            dos.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        bb.put(baos.toByteArray(), 0, type.getLen());
+    }
+
+    /**
+     * @return an empty page of pageSize bytes, a leaf unless it is page 0
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize];
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtyId = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyId;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public BTreePage getBeforeImage() {
+        try {
+            return new BTreePage(pid, oldData, keyType, includedTypes);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
@@ -0,0 +1,291 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * BloomFilter summarizes the values of one field of a HeapFile, so that a
+ * lookup of a value no tuple holds can be answered without reading any
+ * page. {@link #mayContain} is never wrong when it returns false; it
+ * returns true for about one in a hundred absent values.
+ * <p>
+ * Like the ZoneMap, the filter only ever grows: inserts add their value,
+ * while deletes leave it alone, since the deleting transaction may still
+ * abort. Once it holds more values than it was sized for, the filter is
+ * rebuilt twice as large from the pages, which also drops deleted values.
+ * It is persisted in a sidecar file next to the heap file, named
+ * <tt>&lt;heap file&gt;.&lt;field&gt;.bf</tt>, holding the number of pages
+ * covered, the number of values added, the number of hash functions and
+ * the number of 64-bit words, followed by the words. Every word that
+ * changes is written through immediately. If the sidecar is missing, or
+ * covers more pages than the heap file, the filter is rebuilt from the
+ * pages; pages appended without going through HeapFile.insertTuple are
+ * read in when they are first seen.
+ *
+ * @see HeapFile#addBloomFilter
+ */
+class BloomFilter {
+
+    private static final int HEADER_SIZE = 16;
+    private static final int BITS_PER_VALUE = 10;
+    //optimal for BITS_PER_VALUE, about 1% false positives
+    private static final int NUM_HASHES = 7;
+    private static final int MIN_WORDS = 16;
+
+    //results of set
+    private static final int NONE = -1;
+    private static final int SEVERAL = -2;
+
+    private final HeapFile file;
+    private final int field;
+    private final File sidecar;
+    private FileChannel channel;
+
+    private long[] words;
+    //number of pages of the heap file the filter covers
+    private int numPages;
+    //number of values added since the filter was built
+    private int count;
+
+    BloomFilter(HeapFile file, int field) {
+        this.file = file;
+        this.field = field;
+        this.sidecar = new File(file.getFile().getPath() + "." + field + ".bf");
+    }
+
+    /**
+     * Returns false if no tuple of the file can hold value in the field;
+     * true if one may.
+     */
+    synchronized boolean mayContain(Field value) {
+        load();
+        extend(file.numPages());
+        long bits = (long) words.length * 64;
+        int h1 = HashFile.hash(value);
+        int h2 = secondHash(h1);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            long bit = ((h1 + i * h2) & 0xffffffffL) % bits;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the value of t, a tuple on the given page that has been written
+     * to the file. Until the first lookup builds the filter there is
+     * nothing to maintain.
+     */
+    synchronized void add(int pgNo, Tuple t) {
+        if (words == null && !sidecar.exists()) return;
+        load();
+        //a page that was just appended is read in whole, t included
+        int covered = numPages;
+        extend(Math.max(file.numPages(), pgNo + 1));
+        if (pgNo >= covered) return;
+        if (count >= capacity()) {
+            rebuild(count * 2);
+            return;
+        }
+        int word = set(t.getField(field));
+        count++;
+        saveHeader();
+        if (word == SEVERAL) {
+            save();
+        } else if (word >= 0) {
+            saveWord(word);
+        }
+    }
+
+    //sets the bits of value; returns the only word that changed, NONE or
+    //SEVERAL
+    private int set(Field value) {
+        long bits = (long) words.length * 64;
+        int h1 = HashFile.hash(value);
+        int h2 = secondHash(h1);
+        int changed = NONE;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            long bit = ((h1 + i * h2) & 0xffffffffL) % bits;
+            int w = (int) (bit >>> 6);
+            if ((words[w] & (1L << bit)) == 0) {
+                words[w] |= 1L << bit;
+                changed = changed == NONE || changed == w ? w : SEVERAL;
+            }
+        }
+        return changed;
+    }
+
+    //an independent second hash for double hashing, odd so that it steps
+    //through all the bits
+    private static int secondHash(int h1) {
+        int h = h1 * 0x9e3779b9;
+        h ^= h >>> 15;
+        return h | 1;
+    }
+
+    private int capacity() {
+        return words.length * 64 / BITS_PER_VALUE;
+    }
+
+    /**
+     * Closes the sidecar file. The next access reopens it.
+     */
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        words = null;
+    }
+
+    private void load() {
+        if (words != null) return;
+
+        int filePages = file.numPages();
+        try {
+            long length = sidecar.length();
+            if (length > HEADER_SIZE && (length - HEADER_SIZE) % 8 == 0) {
+                ByteBuffer bb = ByteBuffer.allocate((int) length);
+                FileChannel ch = getChannel();
+                while (bb.hasRemaining()) {
+                    if (ch.read(bb, bb.position()) < 0) break;
+                }
+                bb.flip();
+                int pages = bb.getInt();
+                int added = bb.getInt();
+                int hashes = bb.getInt();
+                int numWords = bb.getInt();
+                if (pages <= filePages && hashes == NUM_HASHES && numWords == (length - HEADER_SIZE) / 8) {
+                    words = new long[numWords];
+                    bb.asLongBuffer().get(words);
+                    numPages = pages;
+                    count = added;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        //no usable sidecar, rebuild it from the pages
+        rebuild(0);
+    }
+
+    /**
+     * Rebuilds the filter from every page of the file, sized for at least
+     * the given number of values.
+     */
+    private void rebuild(int values) {
+        int filePages = file.numPages();
+        ArrayList<Field> all = new ArrayList<Field>();
+        for (int i = 0; i < filePages; i++) {
+            Page page = file.readCurrentPage(new HeapPageId(file.getId(), i));
+            if (page == null) continue;
+            Iterator<Tuple> it = file.pageIterator(page);
+            while (it.hasNext()) {
+                all.add(it.next().getField(field));
+            }
+        }
+        long bits = (long) Math.max(values, all.size() * 2) * BITS_PER_VALUE;
+        words = new long[(int) Math.max(MIN_WORDS, Math.min((bits + 63) / 64, Integer.MAX_VALUE / 8))];
+        for (Field value : all) {
+            set(value);
+        }
+        count = all.size();
+        numPages = filePages;
+        save();
+    }
+
+    /**
+     * Covers pages up to, but not including, n by reading them.
+     */
+    private void extend(int n) {
+        if (n <= numPages) return;
+        boolean changed = false;
+        for (int i = numPages; i < n; i++) {
+            Page page = file.readCurrentPage(new HeapPageId(file.getId(), i));
+            if (page == null) continue;
+            Iterator<Tuple> it = file.pageIterator(page);
+            while (it.hasNext()) {
+                set(it.next().getField(field));
+                count++;
+                changed = true;
+            }
+        }
+        numPages = n;
+        if (count > capacity()) {
+            rebuild(count * 2);
+        } else if (changed) {
+            save();
+        } else {
+            saveHeader();
+        }
+    }
+
+    private void save() {
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + words.length * 8);
+        bb.putInt(numPages);
+        bb.putInt(count);
+        bb.putInt(NUM_HASHES);
+        bb.putInt(words.length);
+        bb.asLongBuffer().put(words);
+        bb.clear();
+        try {
+            FileChannel ch = getChannel();
+            ch.truncate(bb.capacity());
+            while (bb.hasRemaining()) {
+                ch.write(bb, bb.position());
+            }
+        } catch (IOException e) {
+            discard(e);
+        }
+    }
+
+    private void saveHeader() {
+        ByteBuffer bb = ByteBuffer.allocate(8);
+        bb.putInt(numPages);
+        bb.putInt(count);
+        bb.clear();
+        write(bb, 0);
+    }
+
+    private void saveWord(int w) {
+        ByteBuffer bb = ByteBuffer.allocate(8);
+        bb.putLong(words[w]);
+        bb.clear();
+        write(bb, HEADER_SIZE + (long) w * 8);
+    }
+
+    private void write(ByteBuffer bb, long offset) {
+        try {
+            FileChannel ch = getChannel();
+            while (bb.hasRemaining()) {
+                ch.write(bb, offset + bb.position());
+            }
+        } catch (IOException e) {
+            discard(e);
+        }
+    }
+
+    //a sidecar that could not be written is deleted so that it gets rebuilt,
+    //the in-memory filter stays valid
+    private void discard(IOException e) {
+        e.printStackTrace();
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+        sidecar.delete();
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(sidecar, "rw").getChannel();
+        }
+        return channel;
+    }
+}
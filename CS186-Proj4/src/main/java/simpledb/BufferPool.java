@@ -2,7 +2,13 @@ package simpledb;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -14,16 +20,49 @@ import java.util.concurrent.locks.ReentrantLock;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * The page cache never evicts a page that is pinned, see pinPage, or
+ * dirty, so that an operator working on a page and a change not yet
+ * committed never lose it to eviction (NO STEAL). The pages a transaction
+ * changed through insertTuple and deleteTuple stay dirty in the cache
+ * until it completes: a commit writes them to disk, and an abort drops
+ * them, so that the next reader reads the page as it was on disk. A page
+ * that needs a frame when every cached page is pinned or dirty is refused
+ * with a DbException.
  */
 public class BufferPool {
-    /** Bytes per page, including header. */
+    /** Default bytes per page, including header. */
     public static final int PAGE_SIZE = 4096;
 
+    //page size of files that do not set their own, see setPageSize
+    private static int pageSize = PAGE_SIZE;
+
     /** Default number of pages passed to the constructor. This is used by
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Default maximum number of pages a sequential scan reads ahead of
+    its current page. */
+    public static final int DEFAULT_READ_AHEAD_PAGES = 8;
+
+    /** Default number of frames of the ring of a large sequential scan,
+    see newScanRing. */
+    public static final int DEFAULT_RING_PAGES = 16;
+
+    /** Fewest pages a partition of the page cache holds, unless the pool
+    is given its number of partitions, see defaultPartitions. */
+    public static final int MIN_PARTITION_PAGES = 64;
+
+    /** Default replacement policy, unless the system property
+    simpledb.ReplacementPolicy names another, e.g.
+    -Dsimpledb.ReplacementPolicy=TWO_Q. */
+    public static final ReplacementPolicy DEFAULT_REPLACEMENT_POLICY = ReplacementPolicy.LRU;
+
+    //replacement policy of buffer pools created without one, see
+    //setReplacementPolicy
+    private static ReplacementPolicy replacementPolicy = startupReplacementPolicy();
+
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
@@ -31,19 +70,237 @@ public class BufferPool {
      */
 
     private int numPages;
-    private LRUCache pageCache;
+    private PageCache pageCache;
+    private final int partitions;
     private int MAX_CAPACITY;
     private LockManager lockManager;
     private static final int WAIT_TIME = 100;
 
+    //pages currently being read from disk, either by a caller or by read-ahead
+    private final ConcurrentHashMap<PageId, FutureTask<Page>> loading;
+    private volatile int readAheadPages;
+    //the pages held by the rings of large scans, and the size of new rings
+    private final ConcurrentHashMap<PageId, Page> ringed;
+    private volatile int ringPages;
+    //the pin count of every pinned page; a page that is not pinned has none
+    private final ConcurrentHashMap<PageId, Integer> pins;
+    //the number of transactions waiting for a lock on every page some wait for
+    private final ConcurrentHashMap<PageId, Integer> lockWaiters;
+
+    //one background thread serves the read-ahead of every buffer pool
+    private static ExecutorService readAheadExecutor;
+
     public BufferPool(int numPages) {
+        this(numPages, replacementPolicy);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, and evicts
+     * them according to policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the page replacement policy
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy) {
+        this(numPages, policy, defaultPartitions(numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, split into
+     * partitions by the hash of the PageId, each with its own share of the
+     * pages, its own replacement state and its own latch, see
+     * {@link PartitionedCache}.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the page replacement policy of every partition
+     * @param partitions the number of partitions, a power of two no larger
+     *        than numPages; 1 makes the cache a single one
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy, int partitions) {
         // some code goes here
         this.numPages = numPages;
         this.MAX_CAPACITY = numPages;
 
-        //use LinkedHashMap implement the lRU Algorithm
-        this.pageCache = new LRUCache(MAX_CAPACITY);
+        this.pins = new ConcurrentHashMap<PageId, Integer>();
+        this.lockWaiters = new ConcurrentHashMap<PageId, Integer>();
+        PageCache.EvictionFilter filter = new PageCache.EvictionFilter() {
+            public boolean mayEvict(PageId pid, Page page) {
+                return !pins.containsKey(pid) && page.isDirty() == null;
+            }
+        };
+        this.pageCache = partitions == 1 ? policy.newCache(MAX_CAPACITY, filter)
+                : new PartitionedCache(policy, MAX_CAPACITY, partitions, filter);
+        this.partitions = partitions;
         this.lockManager = new LockManager();
+        this.loading = new ConcurrentHashMap<PageId, FutureTask<Page>>();
+        this.ringed = new ConcurrentHashMap<PageId, Page>();
+        setReadAheadPages(DEFAULT_READ_AHEAD_PAGES);
+        setRingPages(DEFAULT_RING_PAGES);
+    }
+
+    /**
+     * @return the page size used by HeapFiles that are not given one
+     */
+    public static int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Sets the database-wide page size, used by HeapFiles that are created
+     * afterwards without a page size of their own. A table can still set its
+     * own page size in the catalog. Pages of different sizes may share the
+     * pool, which counts pages, not bytes.
+     *
+     * @param pageSize bytes per page, including header
+     */
+    public static void setPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("bad page size " + pageSize);
+        }
+        BufferPool.pageSize = pageSize;
+    }
+
+    /**
+     * Restores the default page size, PAGE_SIZE.
+     */
+    public static void resetPageSize() {
+        BufferPool.pageSize = PAGE_SIZE;
+    }
+
+    private static ReplacementPolicy startupReplacementPolicy() {
+        String policy = System.getProperty("simpledb.ReplacementPolicy");
+        if (policy == null) {
+            return DEFAULT_REPLACEMENT_POLICY;
+        }
+        try {
+            return ReplacementPolicy.valueOf(policy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("unknown replacement policy " + policy + ", using "
+                    + DEFAULT_REPLACEMENT_POLICY);
+            return DEFAULT_REPLACEMENT_POLICY;
+        }
+    }
+
+    /**
+     * Returns the number of partitions of the page cache of a pool of
+     * numPages pages created without one: the number of processors rounded
+     * up to a power of two, so that threads running at the same time seldom
+     * need the same partition, but no more than leaves every partition
+     * MIN_PARTITION_PAGES pages, since a partition evicts among its own
+     * pages only. The default pool of DEFAULT_PAGES pages is a single
+     * partition.
+     */
+    public static int defaultPartitions(int numPages) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int partitions = Integer.highestOneBit(Math.max(1, numPages / MIN_PARTITION_PAGES));
+        while (partitions > 1 && partitions / 2 >= cores) {
+            partitions /= 2;
+        }
+        return partitions;
+    }
+
+    /**
+     * @return the number of partitions of the page cache
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return the replacement policy of buffer pools created without one
+     */
+    public static ReplacementPolicy getReplacementPolicy() {
+        return replacementPolicy;
+    }
+
+    /**
+     * Sets the replacement policy of the buffer pools created afterwards
+     * without one, like those of {@link Database#resetBufferPool}. The
+     * buffer pool in use keeps its own.
+     *
+     * @param policy the page replacement policy
+     */
+    public static void setReplacementPolicy(ReplacementPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("no replacement policy");
+        }
+        BufferPool.replacementPolicy = policy;
+    }
+
+    /**
+     * Restores the replacement policy chosen at startup.
+     */
+    public static void resetReplacementPolicy() {
+        BufferPool.replacementPolicy = startupReplacementPolicy();
+    }
+
+    /**
+     * @return the maximum number of pages a sequential scan may read ahead
+     */
+    public int getReadAheadPages() {
+        return readAheadPages;
+    }
+
+    /**
+     * Sets the maximum read-ahead window of sequential scans. The effective
+     * window is further capped at half the pool so that read-ahead cannot
+     * evict the pages it just loaded.
+     *
+     * @param pages window size in pages; 0 disables read-ahead
+     */
+    public void setReadAheadPages(int pages) {
+        this.readAheadPages = Math.max(0, Math.min(pages, MAX_CAPACITY / 2));
+    }
+
+    /**
+     * @return the number of pages the shared cache holds
+     */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * @return the number of frames of the rings of large scans
+     */
+    public int getRingPages() {
+        return ringPages;
+    }
+
+    /**
+     * Sets the number of frames of the rings given to large scans from now
+     * on. A ring holds at least twice the read-ahead window, so that pages
+     * read ahead are not recycled before the scan gets to them.
+     *
+     * @param pages frames per ring; 0 makes every scan use the shared cache
+     */
+    public void setRingPages(int pages) {
+        this.ringPages = Math.max(0, pages);
+    }
+
+    /**
+     * Returns a ring for a sequential scan of filePages pages, if they are
+     * more than the shared cache holds, so that the scan would flush all of
+     * it and then miss on every page anyway; the scan then reads through
+     * {@link #getPage(TransactionId, PageId, Permissions, BufferRing)} with
+     * it. Smaller scans use the shared cache, so that scanning them again
+     * reads nothing.
+     *
+     * @return a new ring, or null if the scan should use the shared cache
+     */
+    public BufferRing newScanRing(int filePages) {
+        int pages = ringPages;
+        if (pages == 0 || filePages <= numPages) {
+            return null;
+        }
+        return new BufferRing(Math.max(pages, 2 * readAheadPages), ringed);
+    }
+
+    /**
+     * @return true if the page is in the shared cache, not counting it as a
+     *         reference to the page
+     */
+    public boolean isCached(PageId pid) {
+        return pageCache.contains(pid);
     }
 
     /**
@@ -65,23 +322,264 @@ public class BufferPool {
         throws TransactionAbortedException, DbException, InterruptedException {
         // some code goes here
         //先抢锁，抢不到就等待，等待时间为固定
-        while (!lockManager.grantLock(pid, tid, perm)) {
-            Thread.sleep(WAIT_TIME);
-        }
+        lock(tid, pid, perm);
 
-        return getPage(pid);
+        return getPage(pid, null);
     }
 
     public Page getPage(PageId pid) {
+        try {
+            return getPage(pid, null);
+        } catch (DbException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Retrieves a page like {@link #getPage(TransactionId, PageId, Permissions)}
+     * for a large sequential scan, see {@link #newScanRing}: a page that is
+     * neither in the shared cache nor in a ring is read into the ring of
+     * the scan, and does not enter the shared cache.
+     *
+     * @param ring the ring of the scan, or null for the shared cache
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException, InterruptedException {
+        lock(tid, pid, perm);
+
+        return getPage(pid, ring);
+    }
+
+    /**
+     * Retrieves a page like
+     * {@link #getPage(TransactionId, PageId, Permissions, BufferRing)}, and
+     * pins it: the page cache does not evict it until every pin is undone
+     * by {@link #unpinPage}, so that the caller can keep working on the
+     * page and be sure it is the copy every other caller of getPage sees.
+     * A page is pinned before it is looked up, so that it cannot be
+     * evicted in between.
+     *
+     * @param ring the ring of the scan, or null for the shared cache
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException, InterruptedException {
+        lock(tid, pid, perm);
+
+        pin(pid);
+        boolean pinned = false;
+        try {
+            Page page = getPage(pid, ring);
+            pinned = true;
+            return page;
+        } finally {
+            if (!pinned) {
+                unpinPage(pid);
+            }
+        }
+    }
+
+    /**
+     * Undoes one pin of a page, see {@link #pinPage}.
+     *
+     * @throws IllegalArgumentException if the page is not pinned
+     */
+    public void unpinPage(PageId pid) {
+        while (true) {
+            Integer count = pins.get(pid);
+            if (count == null) {
+                throw new IllegalArgumentException("page is not pinned " + pid);
+            }
+            if (count == 1 ? pins.remove(pid, count) : pins.replace(pid, count, count - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of pins on the page
+     */
+    public int getPinCount(PageId pid) {
+        Integer count = pins.get(pid);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return the number of transactions waiting for a lock on the page
+     */
+    public int getLockWaiters(PageId pid) {
+        Integer count = lockWaiters.get(pid);
+        return count == null ? 0 : count;
+    }
+
+    //acquires the lock, waiting as long as another transaction holds it
+    private void lock(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException, InterruptedException {
+        if (lockManager.grantLock(pid, tid, perm)) {
+            return;
+        }
+        count(lockWaiters, pid, 1);
+        try {
+            do {
+                Thread.sleep(WAIT_TIME);
+            } while (!lockManager.grantLock(pid, tid, perm));
+        } finally {
+            count(lockWaiters, pid, -1);
+        }
+    }
+
+    //adds delta to the count of the page, dropping counts that reach 0
+    private static void count(ConcurrentHashMap<PageId, Integer> counts, PageId pid, int delta) {
+        while (true) {
+            Integer count = counts.get(pid);
+            if (count == null ? counts.putIfAbsent(pid, delta) == null
+                : count + delta == 0 ? counts.remove(pid, count) : counts.replace(pid, count, count + delta)) {
+                return;
+            }
+        }
+    }
+
+    private void pin(PageId pid) {
+        while (true) {
+            Integer count = pins.get(pid);
+            if (count == null ? pins.putIfAbsent(pid, 1) == null : pins.replace(pid, count, count + 1)) {
+                return;
+            }
+        }
+    }
+
+    private Page getPage(PageId pid, BufferRing ring) throws DbException {
         Page tempPage = pageCache.get(pid);
         if(tempPage != null){
             return tempPage;
-        }else{
-            HeapFile file = (HeapFile)Database.getCatalog().getDbFile(pid.getTableId());
-            Page pageRead = (HeapPage)file.readPage(pid);
-            pageCache.put(pid,pageRead);
-            return pageRead;
         }
+        //a page a scan holds in its ring is the current copy of the page
+        tempPage = ringed.get(pid);
+        if (tempPage != null) {
+            //a ring recycles its frames, so a page taken out of one for
+            //the shared cache, perhaps to be changed, must get a frame there
+            if (ring == null && !pageCache.put(pid, tempPage)) {
+                throw noFrame(pid);
+            }
+            return tempPage;
+        }
+
+        //claim the load, or wait for the caller / read-ahead that already claimed it
+        FutureTask<Page> task = newLoadTask(pid, ring);
+        FutureTask<Page> claimed = loading.putIfAbsent(pid, task);
+        if (claimed == null) {
+            runLoadTask(pid, task);
+            claimed = task;
+        }
+
+        try {
+            return claimed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DbException) {
+                throw (DbException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Asynchronously loads a page into the buffer pool, unless it is cached
+     * or already being loaded. No lock is acquired: the scan that asked for
+     * the read-ahead still locks the page through getPage before it looks
+     * at it.
+     *
+     * @param pid the ID of the page to load
+     */
+    public void readAhead(final PageId pid) {
+        readAhead(pid, null);
+    }
+
+    /**
+     * Asynchronously loads a page into the ring of a large scan, see
+     * {@link #readAhead(PageId)}.
+     *
+     * @param ring the ring of the scan, or null for the shared cache
+     */
+    public void readAhead(final PageId pid, BufferRing ring) {
+        if (pageCache.contains(pid) || ringed.containsKey(pid)) return;
+
+        final FutureTask<Page> task = newLoadTask(pid, ring);
+        if (loading.putIfAbsent(pid, task) == null) {
+            getReadAheadExecutor().execute(new Runnable() {
+                public void run() {
+                    runLoadTask(pid, task);
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits until every page handed to read-ahead so far, by any buffer
+     * pool, has been loaded or has failed to load. The read-ahead thread
+     * runs the loads in order, so this only waits for one no-op behind
+     * them.
+     */
+    public void awaitReadAhead() throws InterruptedException {
+        try {
+            getReadAheadExecutor().submit(new Runnable() {
+                public void run() {
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private FutureTask<Page> newLoadTask(final PageId pid, final BufferRing ring) {
+        return new FutureTask<Page>(new Callable<Page>() {
+            public Page call() throws DbException {
+                //the page may have been cached between the miss and the claim
+                Page cached = pageCache.get(pid);
+                if (cached != null) return cached;
+                cached = ringed.get(pid);
+                if (cached != null) return cached;
+
+                DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+                Page pageRead = file.readPage(pid);
+                if (ring != null) {
+                    ring.add(pid, pageRead);
+                } else if (!pageCache.put(pid, pageRead)) {
+                    throw noFrame(pid);
+                }
+                return pageRead;
+            }
+        });
+    }
+
+    private static DbException noFrame(PageId pid) {
+        return new DbException("no page of the buffer pool can be evicted for "
+                + pid + ", every one is pinned or dirty");
+    }
+
+    private void runLoadTask(PageId pid, FutureTask<Page> task) {
+        try {
+            task.run();
+        } finally {
+            loading.remove(pid, task);
+        }
+    }
+
+    private static synchronized ExecutorService getReadAheadExecutor() {
+        if (readAheadExecutor == null) {
+            readAheadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "simpledb-read-ahead");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return readAheadExecutor;
     }
 
     /**
@@ -104,7 +602,7 @@ public class BufferPool {
      */
     public void transactionComplete(TransactionId tid) throws IOException {
         // some code goes here
-        // not necessary for proj1
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
@@ -114,7 +612,11 @@ public class BufferPool {
 
     /**
      * Commit or abort a given transaction; release all locks associated to
-     * the transaction.
+     * the transaction. A commit writes the pages the transaction dirtied to
+     * disk; an abort drops them from the cache, and since no dirty page is
+     * ever evicted, the disk still holds them as they were before the
+     * transaction changed them. The pages are found among those it holds a
+     * write lock on, which it keeps until now.
      *
      * @param tid the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
@@ -122,7 +624,20 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
         // some code goes here
-        // not necessary for proj1
+        try {
+            if (commit) {
+                flushPages(tid);
+            } else {
+                for (PageId pid : lockManager.exclusivePages(tid)) {
+                    Page page = pageCache.get(pid);
+                    if (page != null && tid.equals(page.isDirty())) {
+                        discardPage(pid);
+                    }
+                }
+            }
+        } finally {
+            lockManager.releaseAllLocks(tid);
+        }
     }
 
     /**
@@ -138,18 +653,36 @@ public class BufferPool {
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
      * @param t the tuple to add
+     * @throws DbException if a unique index of the table already holds
+     *     the key of t
      */
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException, InterruptedException {
         // some code goes here
         DbFile file = Database.getCatalog().getDbFile(tableId);
+        //a duplicate key is refused before t reaches the table
+        for (IndexFile index : Database.getCatalog().getIndexes(tableId)) {
+            if (index.isUnique()) {
+                DbFileIterator it = index.indexIterator(tid, Predicate.Op.EQUALS, t.getField(index.getKeyField()));
+                it.open();
+                boolean duplicate = it.hasNext();
+                it.close();
+                if (duplicate) {
+                    throw new DbException("duplicate key " + t.getField(index.getKeyField()));
+                }
+            }
+        }
         ArrayList<Page> affectPages = file.insertTuple(tid, t);
 
         for (int i = 0; i < affectPages.size(); i++){
-            Page page = affectPages.get(i);
-            page.markDirty(true,tid);
-            //!!!!!!!!!!!!!!!!!!
-            file.writePage(page);
+            markDirty(file, affectPages.get(i), tid);
+        }
+
+        //t now has its RecordId, which the indexes of the table point at
+        for (IndexFile index : Database.getCatalog().getIndexes(tableId)) {
+            for (Page page : index.insertTuple(tid, t)) {
+                markDirty(index, page, tid);
+            }
         }
     }
 
@@ -167,22 +700,61 @@ public class BufferPool {
      * @throws IOException
      */
     public void deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException, IOException, InterruptedException {
-        DbFile file = Database.getCatalog().getDbFile(t.getRecordId().getPageId().getTableId());
+        int tableId = t.getRecordId().getPageId().getTableId();
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        //index entries go first, while t is certainly still in the table
+        //a file that modifies no page, like an LsmFile, returns null
+        for (IndexFile index : Database.getCatalog().getIndexes(tableId)) {
+            Page page = index.deleteTuple(tid, t);
+            if (page != null) {
+                markDirty(index, page, tid);
+            }
+        }
         Page affectPage = file.deleteTuple(tid, t);
+        if (affectPage == null) {
+            return;
+        }
 
-        affectPage.markDirty(true, tid);
-        //!!!!!!!!!!!!!!!!!
-        file.writePage(affectPage);
+        markDirty(file, affectPage, tid);
+    }
+
+    //a changed page the cache holds stays there, dirty, until tid completes;
+    //one it does not hold, like the pages of a MemoryFile, which are never
+    //cached, or one evicted before it was marked dirty, is written at once,
+    //and any copy read back into the cache meanwhile is dropped
+    private void markDirty(DbFile file, Page page, TransactionId tid) throws IOException {
+        page.markDirty(true, tid);
+        PageId pid = page.getId();
+        Page cached = pageCache.get(pid);
+        if (cached == page) {
+            return;
+        }
+        file.writePage(page);
+        page.markDirty(false, tid);
+        if (cached != null) {
+            discardPage(pid);
+        }
+    }
+
+    /**
+     * @return the page as the cache holds it if a transaction dirtied it
+     *         there, or null if the disk holds the page as it is
+     */
+    public Page getDirtyPage(PageId pid) {
+        Page page = pageCache.get(pid);
+        return page != null && page.isDirty() != null ? page : null;
     }
 
     /**
      * Flush all dirty pages to disk.
      * NB: Be careful using this routine -- it writes dirty data to disk so will
-     *     break simpledb if running in NO STEAL mode.
+     *     break simpledb if running in NO STEAL mode: an abort no longer
+     *     undoes the changes it wrote.
      */
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
-        List<PageId> pageIds = new ArrayList<PageId>(pageCache.getMap().keySet());
+        //read-ahead may be filling the cache concurrently
+        List<PageId> pageIds = pageCache.pageIds();
 
         for (PageId pageId : pageIds) {
             flushPage(pageId);
@@ -196,7 +768,23 @@ public class BufferPool {
     */
     public synchronized void discardPage(PageId pid) {
         // some code goes here
-	// not necessary for proj1
+        pageCache.remove(pid);
+        ringed.remove(pid);
+    }
+
+    /**
+     * Removes every cached page of a file from the buffer pool without
+     * writing it, for when the file was rewritten on disk underneath it.
+     * @param tableId the id of the file, as given by DbFile.getId()
+     */
+    public synchronized void discardPages(int tableId) {
+        List<PageId> pageIds = pageCache.pageIds();
+        pageIds.addAll(ringed.keySet());
+        for (PageId pageId : pageIds) {
+            if (pageId.getTableId() == tableId) {
+                discardPage(pageId);
+            }
+        }
     }
 
     /**
@@ -205,11 +793,14 @@ public class BufferPool {
      */
     private synchronized  void flushPage(PageId pid) throws IOException {
         Page page = pageCache.get(pid);
+        //evicted since its id was listed
+        if (page == null) return;
         TransactionId tid = page.isDirty();
         if (tid != null){
             DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
-            page.markDirty(false, tid);
+            //clean, so evictable, only once it is on disk
             file.writePage(page);
+            page.markDirty(false, tid);
         }
     }
 
@@ -217,16 +808,9 @@ public class BufferPool {
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
-        // not necessary for proj1
-    }
-
-    /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
-     */
-    private synchronized  void evictPage() throws DbException {
-        // some code goes here
-        // not necessary for proj1
+        for (PageId pid : lockManager.exclusivePages(tid)) {
+            flushPage(pid);
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,68 @@
+package simpledb;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A small ring of frames private to one large sequential scan, see
+ * {@link BufferPool#newScanRing}. The pages the scan reads that are not
+ * already cached go into the ring rather than into the shared page cache
+ * of the BufferPool, each taking the frame of the oldest page of the ring,
+ * so that a scan of a table larger than the pool recycles its own frames
+ * instead of evicting the pages other queries keep coming back to.
+ * <p>
+ * The pages of a ring are still visible to the rest of the BufferPool, so
+ * that every caller of getPage sees the same copy of a page: a getPage
+ * without a ring that finds a page in one adds it to the shared cache
+ * too. A ring should be released once its scan is done with it; its frames
+ * are then forgotten.
+ */
+public class BufferRing {
+
+    private final PageId[] pageIds;
+    private final Page[] pages;
+    //the pages of every ring of the BufferPool
+    private final ConcurrentHashMap<PageId, Page> ringed;
+    //the frame the next page goes into
+    private int next;
+
+    BufferRing(int size, ConcurrentHashMap<PageId, Page> ringed) {
+        this.pageIds = new PageId[size];
+        this.pages = new Page[size];
+        this.ringed = ringed;
+    }
+
+    /**
+     * @return the number of frames of the ring
+     */
+    public int size() {
+        return pages.length;
+    }
+
+    /**
+     * Puts the page into the frame of the oldest page of the ring, which is
+     * forgotten unless some getPage added it to the shared cache meanwhile.
+     */
+    synchronized void add(PageId pid, Page page) {
+        if (pageIds[next] != null) {
+            ringed.remove(pageIds[next], pages[next]);
+        }
+        pageIds[next] = pid;
+        pages[next] = page;
+        ringed.put(pid, page);
+        next = (next + 1) % pages.length;
+    }
+
+    /**
+     * Forgets every page of the ring; the ring can still be used afterwards.
+     */
+    public synchronized void release() {
+        for (int i = 0; i < pages.length; i++) {
+            if (pageIds[i] != null) {
+                ringed.remove(pageIds[i], pages[i]);
+                pageIds[i] = null;
+                pages[i] = null;
+            }
+        }
+        next = 0;
+    }
+}
@@ -58,6 +58,10 @@ public class Catalog {
 
     //use table name to get the specific table
     private HashMap<String,Table> stringHash;
+
+    //indexes by their own id, and the indexes of every table
+    private HashMap<Integer,IndexFile> indexHash;
+    private HashMap<Integer,ArrayList<IndexFile>> tableIndexes;
     /**
      * Constructor.
      * Creates a new, empty catalog.
@@ -66,6 +70,8 @@ public class Catalog {
         // some code goes here
         intHash = new HashMap<Integer,Table>();
         stringHash = new HashMap<String,Table>();
+        indexHash = new HashMap<Integer,IndexFile>();
+        tableIndexes = new HashMap<Integer,ArrayList<IndexFile>>();
     }
 
     /**
@@ -76,12 +82,23 @@ public class Catalog {
      * @param name the name of the table -- may be an empty string.  May not be null.  If a name
      * @param pkeyField the name of the primary key field
      * conflict exists, use the last table to be added as the table for a given name.
+     * The key index of an LsmFile is added along with it, see
+     * {@link LsmFile#getKeyIndex}.
+     * @throws IllegalArgumentException if a MemoryFile and another file
+     *     have the same id, which would make one replace the other
      */
     public void addTable(DbFile file, String name, String pkeyField) {
         // some code goes here
+        Table old = intHash.get(file.getId());
+        if (old != null && old.getDbFile() != file
+                && (old.getDbFile() instanceof MemoryFile || file instanceof MemoryFile)) {
+            throw new IllegalArgumentException("table " + name + " has the id of table " + old.getName());
+        }
         Table tempTable=new Table(file,name,pkeyField);
         intHash.put(file.getId(),tempTable);
         stringHash.put(name,tempTable);
+        if (file instanceof LsmFile)
+            addIndex(((LsmFile) file).getKeyIndex(), name);
     }
 
     public void addTable(DbFile file, String name) {
@@ -99,6 +116,161 @@ public class Catalog {
         addTable(file, (UUID.randomUUID()).toString());
     }
 
+    /**
+     * Add an index over a table that is already in the catalog. The index
+     * is kept current by BufferPool.insertTuple and deleteTuple; its pages
+     * are found through getDbFile and getTupleDesc like those of a table,
+     * but it is not listed by tableIdIterator.
+     * @param index the index to add
+     * @param tableName the name of the indexed table
+     * @throws NoSuchElementException if the table doesn't exist
+     */
+    public void addIndex(IndexFile index, String tableName) throws NoSuchElementException {
+        if (getTableId(tableName) != index.getTableId()) {
+            throw new IllegalArgumentException("index is not over table " + tableName);
+        }
+        removeIndex(index.getId());
+        indexHash.put(index.getId(), index);
+        ArrayList<IndexFile> indexes = tableIndexes.get(index.getTableId());
+        if (indexes == null) {
+            indexes = new ArrayList<IndexFile>();
+            tableIndexes.put(index.getTableId(), indexes);
+        }
+        indexes.add(index);
+    }
+
+    private void removeIndex(int indexId) {
+        IndexFile old = indexHash.remove(indexId);
+        if (old != null) {
+            tableIndexes.get(old.getTableId()).remove(old);
+        }
+    }
+
+    /**
+     * @return true if a table or an index has the id
+     */
+    public boolean containsId(int id) {
+        return intHash.containsKey(id) || indexHash.containsKey(id);
+    }
+
+    /**
+     * Returns the indexes of the specified table, or an empty list if it has
+     * none.
+     * @param tableid The id of the table, as specified by the DbFile.getId()
+     *     function passed to addTable
+     */
+    public List<IndexFile> getIndexes(int tableid) {
+        ArrayList<IndexFile> indexes = tableIndexes.get(tableid);
+        if (indexes == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * Sorts a table on one of its fields, see {@link HeapFile#cluster}, and
+     * rebuilds its indexes, since the tuples they point at have moved. The
+     * order is kept with the table and survives a restart.
+     * @param tableName the name of the table
+     * @param fieldName the name of the field to sort on
+     * @throws NoSuchElementException if the table doesn't exist
+     * @throws DbException if the table is not a HeapFile or has no such field
+     */
+    public void clusterTable(String tableName, String fieldName) throws DbException, IOException {
+        int tableid = getTableId(tableName);
+        if (!(getDbFile(tableid) instanceof HeapFile)) {
+            throw new DbException("table " + tableName + " cannot be clustered");
+        }
+        HeapFile table = (HeapFile) getDbFile(tableid);
+        int field;
+        try {
+            field = table.getTupleDesc().fieldNameToIndex(fieldName);
+        } catch (NoSuchElementException e) {
+            throw new DbException("unknown field " + fieldName + " in table " + tableName);
+        }
+        table.cluster(field);
+
+        for (IndexFile index : new ArrayList<IndexFile>(getIndexes(tableid))) {
+            Database.getBufferPool().discardPages(index.getId());
+            index.close();
+            IndexFile rebuilt;
+            if (index instanceof BTreeFile)
+                rebuilt = BTreeFile.build(((BTreeFile) index).getFile(), table, index.getKeyField(), index.getIncludedFields());
+            else if (index instanceof HashFile)
+                rebuilt = HashFile.build(((HashFile) index).getFile(), table, index.getKeyField(), index.isUnique());
+            else
+                throw new DbException("cannot rebuild index " + index.getId());
+            addIndex(rebuilt, tableName);
+        }
+    }
+
+    /**
+     * Compacts a table after deletes: empties its pages from the last one
+     * down into the free slots of earlier pages, see
+     * {@link HeapFile#vacuumPage}, then truncates the empty pages off its
+     * end, see {@link HeapFile#truncateEmptyPages}. Each page, and the
+     * truncation, is its own short transaction, committed before the next
+     * starts, so that the table stays open to other transactions and a
+     * failure loses only the step it happened in. Its indexes are kept
+     * current as tuples move; its TableStats need no update, since the
+     * tuples are the same and the estimated scan cost follows the number of
+     * pages the table has left.
+     * @param tableName the name of the table
+     * @return the number of pages reclaimed
+     * @throws NoSuchElementException if the table doesn't exist
+     * @throws DbException if the table is not a HeapFile
+     */
+    public int vacuumTable(String tableName)
+            throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        DbFile file = getDbFile(getTableId(tableName));
+        if (!(file instanceof HeapFile)) {
+            throw new DbException("table " + tableName + " cannot be vacuumed");
+        }
+        HeapFile table = (HeapFile) file;
+        for (int last = table.numPages() - 1; last > 0; last--) {
+            Transaction t = new Transaction();
+            t.start();
+            boolean emptied = false;
+            boolean committed = false;
+            try {
+                emptied = table.vacuumPage(t.getId(), last);
+                t.commit();
+                committed = true;
+            } finally {
+                if (!committed)
+                    t.abort();
+            }
+            if (!emptied)
+                break;
+        }
+
+        Transaction t = new Transaction();
+        t.start();
+        int pages = 0;
+        boolean committed = false;
+        try {
+            pages = table.truncateEmptyPages(t.getId());
+            t.commit();
+            committed = true;
+        } finally {
+            if (!committed)
+                t.abort();
+        }
+        return pages;
+    }
+
+    /**
+     * Returns the field the specified table is sorted on, or -1 if it was
+     * never clustered.
+     * @param tableid The id of the table, as specified by the DbFile.getId()
+     *     function passed to addTable
+     * @see #clusterTable
+     */
+    public int getClusteredField(int tableid) throws NoSuchElementException {
+        DbFile file = getDbFile(tableid);
+        return file instanceof HeapFile ? ((HeapFile) file).getClusteredField() : -1;
+    }
+
     /**
      * Return the id of the table with a specified name,
      * @throws NoSuchElementException if the table doesn't exist
@@ -121,6 +293,9 @@ public class Catalog {
     public TupleDesc getTupleDesc(int tableid) throws NoSuchElementException {
         // some code goes here
         Table tempTable = intHash.get(tableid);
+        if (tempTable == null && indexHash.containsKey(tableid)) {
+            return indexHash.get(tableid).getTupleDesc();
+        }
         return tempTable.getTupleDesc();
     }
 
@@ -138,6 +313,9 @@ public class Catalog {
     public DbFile getDbFile(int tableid) throws NoSuchElementException {
         // some code goes here
         Table tempTable = intHash.get(tableid);
+        if (tempTable == null && indexHash.containsKey(tableid)) {
+            return indexHash.get(tableid);
+        }
         return tempTable.getDbFile();
     }
 
@@ -165,6 +343,39 @@ public class Catalog {
 
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line has the format <code>name (field type [pk] [dict] [index[=field+...]] [hash] [bloom], ...) [options]</code>.
+     * A string field annotated <code>dict</code> is stored dictionary-encoded
+     * (see {@link DictHeapFile}). An int or string field annotated
+     * <code>index</code> gets a B+tree index, stored in
+     * <code>name.field.idx</code> next to the table and built from the table
+     * if that file does not exist (see {@link BTreeFile}). Annotated
+     * <code>index=f1+f2</code> instead, the entries of the index also hold
+     * fields f1 and f2, stored in <code>name.field+f1+f2.idx</code>, and
+     * queries that reference no other field of the table are answered from
+     * the index alone (see {@link IndexScan#isIndexOnly}). A field annotated
+     * <code>hash</code> gets a hash index, stored in
+     * <code>name.field.hash</code> in the same way (see {@link HashFile});
+     * on the primary key the index is unique, and inserts of a key already
+     * in the table fail. A field annotated <code>bloom</code> gets a Bloom
+     * filter, so that equality lookups of values no tuple holds read no
+     * page (see {@link HeapFile#addBloomFilter}). options is a space separated list of table
+     * options:
+     * <ul>
+     * <li><code>mmap</code>: serve page reads of the table from a memory
+     * mapping of its file (see {@link HeapFile#isMemoryMapped}).</li>
+     * <li><code>slotted</code>: the file stores variable-length
+     * SlottedHeapPages (see {@link SlottedHeapFile}).</li>
+     * <li><code>pax</code>: the file stores its pages column by column
+     * (see {@link PaxHeapFile}).</li>
+     * <li><code>pagesize=N</code>: the file uses pages of N bytes instead
+     * of the database-wide {@link BufferPool#getPageSize}.</li>
+     * <li><code>lsm</code>: the table is a log-structured merge tree sorted
+     * on its primary key, or on its first field if it has none, for tables
+     * that take many inserts (see {@link LsmFile}). It cannot be combined
+     * with the other options but pagesize, nor with field annotations
+     * other than pk; lookups on the key go through the index of the file
+     * itself.</li>
+     * </ul>
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -182,6 +393,12 @@ public class Catalog {
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
+                ArrayList<Boolean> dictFields = new ArrayList<Boolean>();
+                ArrayList<Integer> indexFields = new ArrayList<Integer>();
+                ArrayList<String[]> indexIncludes = new ArrayList<String[]>();
+                ArrayList<Integer> hashFields = new ArrayList<Integer>();
+                ArrayList<Integer> bloomFields = new ArrayList<Integer>();
+                boolean dict = false;
                 String primaryKey = "";
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
@@ -194,11 +411,49 @@ public class Catalog {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    dictFields.add(false);
+                    for (int a = 2; a < els2.length; a++) {
+                        if (els2[a].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[a].trim().equals("dict")) {
+                            dictFields.set(dictFields.size() - 1, true);
+                            dict = true;
+                        } else if (els2[a].trim().equals("index")) {
+                            indexFields.add(names.size() - 1);
+                            indexIncludes.add(new String[0]);
+                        } else if (els2[a].trim().startsWith("index=")) {
+                            indexFields.add(names.size() - 1);
+                            indexIncludes.add(els2[a].trim().substring("index=".length()).split("\\+"));
+                        } else if (els2[a].trim().equals("hash"))
+                            hashFields.add(names.size() - 1);
+                        else if (els2[a].trim().equals("bloom"))
+                            bloomFields.add(names.size() - 1);
+                        else {
+                            System.out.println("Unknown annotation " + els2[a]);
+                            System.exit(0);
+                        }
+                    }
+                }
+                boolean memoryMapped = false;
+                boolean slotted = false;
+                boolean pax = false;
+                boolean lsm = false;
+                int pageSize = BufferPool.getPageSize();
+                String options = line.substring(line.indexOf(")") + 1).trim();
+                if (options.length() > 0) {
+                    for (String opt : options.split("\\s+")) {
+                        if (opt.toLowerCase().equals("mmap"))
+                            memoryMapped = true;
+                        else if (opt.toLowerCase().equals("slotted"))
+                            slotted = true;
+                        else if (opt.toLowerCase().equals("pax"))
+                            pax = true;
+                        else if (opt.toLowerCase().equals("lsm"))
+                            lsm = true;
+                        else if (opt.toLowerCase().startsWith("pagesize="))
+                            pageSize = Integer.parseInt(opt.substring("pagesize=".length()));
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown table option " + opt);
                             System.exit(0);
                         }
                     }
@@ -206,8 +461,60 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                File dataFile = new File(baseFolder+"/"+name + ".dat");
+                if (lsm) {
+                    if (dict || slotted || pax || memoryMapped || !indexFields.isEmpty()
+                            || !hashFields.isEmpty() || !bloomFields.isEmpty())
+                        throw new IllegalArgumentException("lsm tables take no option but pagesize");
+                    int key = primaryKey.length() > 0 ? t.fieldNameToIndex(primaryKey) : 0;
+                    addTable(new LsmFile(dataFile, t, key, LsmFile.DEFAULT_MEMTABLE_PAGES, pageSize),
+                            name, primaryKey);
+                    System.out.println(baseFolder+"/"+name + ".dat");
+                    System.out.println("Added table : " + name + " with schema " + t);
+                    continue;
+                }
+                HeapFile tabHf;
+                if (dict) {
+                    if (slotted || pax)
+                        throw new IllegalArgumentException("dict fields need the default page format");
+                    boolean[] encoded = new boolean[dictFields.size()];
+                    for (int i = 0; i < encoded.length; i++)
+                        encoded[i] = dictFields.get(i);
+                    tabHf = new DictHeapFile(dataFile, t, encoded, memoryMapped, pageSize);
+                } else if (slotted)
+                    tabHf = new SlottedHeapFile(dataFile, t, memoryMapped, pageSize);
+                else if (pax)
+                    tabHf = new PaxHeapFile(dataFile, t, memoryMapped, pageSize);
+                else
+                    tabHf = new HeapFile(dataFile, t, memoryMapped, pageSize);
+                for (int field : bloomFields)
+                    tabHf.addBloomFilter(field);
                 addTable(tabHf,name,primaryKey);
+                for (int i = 0; i < indexFields.size(); i++) {
+                    int field = indexFields.get(i);
+                    String[] include = indexIncludes.get(i);
+                    int[] included = new int[include.length];
+                    String indexName = name + "." + namesAr[field];
+                    for (int j = 0; j < include.length; j++) {
+                        try {
+                            included[j] = t.fieldNameToIndex(include[j]);
+                        } catch (NoSuchElementException e) {
+                            throw new IllegalArgumentException("unknown field " + include[j]);
+                        }
+                        indexName += "+" + include[j];
+                    }
+                    File indexFile = new File(baseFolder+"/"+indexName + ".idx");
+                    BTreeFile index = indexFile.exists() ? new BTreeFile(indexFile, tabHf, field, included)
+                            : BTreeFile.build(indexFile, tabHf, field, included);
+                    addIndex(index, name);
+                }
+                for (int field : hashFields) {
+                    File indexFile = new File(baseFolder+"/"+name + "." + namesAr[field] + ".hash");
+                    boolean unique = namesAr[field].equals(primaryKey);
+                    HashFile index = indexFile.exists() ? new HashFile(indexFile, tabHf, field, unique)
+                            : HashFile.build(indexFile, tabHf, field, unique);
+                    addIndex(index, name);
+                }
                 //outPutFile(tabHf);
                 System.out.println(baseFolder+"/"+name + ".dat");
                 System.out.println("Added table : " + name + " with schema " + t);
@@ -218,6 +525,10 @@ public class Catalog {
         } catch (IndexOutOfBoundsException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
+        } catch (IllegalArgumentException e) {
+            //bad page size, or bad combination of options
+            System.out.println ("Invalid catalog entry : " + line);
+            System.exit(0);
         }
     }
 
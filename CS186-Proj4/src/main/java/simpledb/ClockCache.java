@@ -0,0 +1,125 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * A PageCache that approximates LRU with the CLOCK algorithm, see
+ * {@link ReplacementPolicy#CLOCK}. The pages sit in a fixed ring of
+ * frames, each with a reference bit that a hit sets. To evict, a hand
+ * sweeps the ring, clearing the bits it passes, and stops at the first
+ * frame whose bit is already clear, so that a page survives one sweep for
+ * every time it was referenced since the last. A hit only sets a bit; it
+ * moves nothing and allocates nothing.
+ */
+public class ClockCache implements PageCache {
+
+    private final HashMap<PageId, Integer> frames;
+    private final PageId[] pageIds;
+    private final Page[] pages;
+    private final boolean[] referenced;
+    //the frames never used, or freed by remove, to be filled before any
+    //page is evicted
+    private final int[] free;
+    private int numFree;
+    private int hand;
+    private final EvictionFilter filter;
+
+    public ClockCache(int capacity) {
+        this(capacity, EVICT_ANY);
+    }
+
+    public ClockCache(int capacity, EvictionFilter filter) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("bad capacity " + capacity);
+        }
+        this.frames = new HashMap<PageId, Integer>(capacity * 4 / 3 + 1);
+        this.pageIds = new PageId[capacity];
+        this.pages = new Page[capacity];
+        this.referenced = new boolean[capacity];
+        this.free = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            free[i] = capacity - 1 - i;
+        }
+        this.numFree = capacity;
+        this.filter = filter;
+    }
+
+    public synchronized ArrayList<PageId> pageIds() {
+        return new ArrayList<PageId>(frames.keySet());
+    }
+
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    public synchronized boolean contains(PageId pid) {
+        return frames.containsKey(pid);
+    }
+
+    public synchronized Page get(PageId pid) {
+        Integer frame = frames.get(pid);
+        if (frame == null) {
+            return null;
+        }
+        referenced[frame] = true;
+        return pages[frame];
+    }
+
+    public synchronized Page remove(PageId pid) {
+        Integer frame = frames.remove(pid);
+        if (frame == null) {
+            return null;
+        }
+        Page page = pages[frame];
+        pageIds[frame] = null;
+        pages[frame] = null;
+        referenced[frame] = false;
+        free[numFree++] = frame;
+        return page;
+    }
+
+    /**
+     * Caches the page in a free frame, or in the frame of the page the
+     * hand evicts if there is none.
+     */
+    public synchronized boolean put(PageId pid, Page page) {
+        Integer frame = frames.get(pid);
+        if (frame == null) {
+            frame = numFree > 0 ? free[--numFree] : evict();
+            if (frame < 0) {
+                return false;
+            }
+            frames.put(pid, frame);
+            pageIds[frame] = pid;
+        }
+        pages[frame] = page;
+        referenced[frame] = true;
+        return true;
+    }
+
+    //empties the frame the hand stops at, and returns it; the hand passes
+    //over the frames the filter keeps, so after two sweeps, the first of
+    //which clears every bit, there is no frame it may empty and -1 is
+    //returned
+    private int evict() {
+        for (int i = 0; i < 2 * pages.length; i++) {
+            int frame = hand;
+            hand = (hand + 1) % pages.length;
+            if (pageIds[frame] == null) {
+                continue;
+            }
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            if (!filter.mayEvict(pageIds[frame], pages[frame])) {
+                continue;
+            }
+            frames.remove(pageIds[frame]);
+            pageIds[frame] = null;
+            pages[frame] = null;
+            return frame;
+        }
+        return -1;
+    }
+}
@@ -49,6 +49,7 @@ public interface DbFile extends Serializable {
      * This method will acquire a lock on the affected pages of the file, and
      * may block until the lock can be acquired.
      *
+     * @return The page that was modified, or null if none was
      * @throws DbException if the tuple cannot be deleted or is not a member
      *   of the file
      */
@@ -64,6 +65,22 @@ public interface DbFile extends Serializable {
      */
     public DbFileIterator iterator(TransactionId tid);
 
+    /**
+     * Returns an iterator over the tuples stored in this DbFile that may
+     * skip tuples that cannot satisfy every one of the given predicates,
+     * see {@link SeqScan#addPageFilter}. It may still return tuples that
+     * do not satisfy them, so the caller applies them as usual; a file
+     * that cannot make use of them returns {@link #iterator(TransactionId)}.
+     *
+     * @param filters predicates on the fields of this file
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> filters);
+
+    /**
+     * Returns the number of pages of this DbFile, which a scan of it reads.
+     */
+    public int numPages();
+
     /**
      * Returns a unique ID used to identify this DbFile in the Catalog. This id
      * can be used to look up the table via {@link Catalog#getDbFile} and
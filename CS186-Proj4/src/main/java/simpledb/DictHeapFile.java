@@ -0,0 +1,142 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * DictHeapFile is a HeapFile that stores chosen string columns
+ * dictionary-encoded: every distinct value of such a column gets an integer
+ * code in a per-table StringDictionary, and the pages, DictHeapPages, store
+ * only the 4 byte codes. Low-cardinality columns such as a genre or a
+ * gender shrink from 132 to 4 bytes per tuple, and equality predicates,
+ * hash joins and GROUP BY on them compare codes instead of strings (see
+ * {@link DictStringField}).
+ * <p>
+ * The dictionary lives in the sidecar file <tt>&lt;file&gt;.dict</tt>.
+ * Page I/O, free-space tracking, inserts, deletes and scans are inherited
+ * from HeapFile. Existing HeapFiles are converted with {@link #convert}.
+ *
+ * @see DictHeapPage
+ * @see StringDictionary
+ */
+public class DictHeapFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean[] encoded;
+    private transient StringDictionary dict;
+
+    /**
+     * @param encoded which fields are dictionary-encoded; every one of them
+     *          must be a string field
+     */
+    public DictHeapFile(File f, TupleDesc td, boolean[] encoded) {
+        this(f, td, encoded, false, BufferPool.getPageSize());
+    }
+
+    /**
+     * @param encoded see {@link #DictHeapFile(File, TupleDesc, boolean[])}
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean, int)
+     */
+    public DictHeapFile(File f, TupleDesc td, boolean[] encoded, boolean memoryMapped, int pageSize) {
+        super(f, td, memoryMapped, pageSize);
+        if (encoded.length != td.numFields()) {
+            throw new IllegalArgumentException("expected " + td.numFields() + " encoded flags");
+        }
+        for (int i = 0; i < encoded.length; i++) {
+            if (encoded[i] && td.getFieldType(i) != Type.STRING_TYPE) {
+                throw new IllegalArgumentException("field " + td.getFieldName(i) + " is not a string");
+            }
+        }
+        this.encoded = encoded.clone();
+    }
+
+    /**
+     * @return true if field i is dictionary-encoded
+     */
+    public boolean isEncoded(int i) {
+        return encoded[i];
+    }
+
+    /**
+     * @return the number of distinct values of the encoded field i
+     */
+    public int dictionarySize(int i) throws IOException {
+        return getDictionary().size(i);
+    }
+
+    /**
+     * Returns the dictionary of this file, loading it on first use.
+     */
+    synchronized StringDictionary getDictionary() throws IOException {
+        if (dict == null) {
+            dict = new StringDictionary(dictionaryFile(getFile()), encoded);
+        }
+        return dict;
+    }
+
+    private static File dictionaryFile(File f) {
+        return new File(f.getPath() + ".dict");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        super.close();
+        if (dict != null) {
+            dict.close();
+        }
+    }
+
+    @Override
+    protected Page createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new DictHeapPage(pid, data, getDictionary());
+    }
+
+    /**
+     * Writes every tuple of a HeapFile into a new file with the given fields
+     * dictionary-encoded, and writes its dictionary. The source pages are
+     * read directly, not through the BufferPool, so the source must not be
+     * modified concurrently. The source must be in the Catalog.
+     *
+     * @param source the table to convert
+     * @param out the file to write; it and its dictionary are overwritten
+     * @param encoded which fields to encode
+     * @return the number of pages written
+     */
+    public static int convert(HeapFile source, File out, boolean[] encoded) throws IOException, DbException {
+        //checks the encoded flags against the schema
+        new DictHeapFile(out, source.getTupleDesc(), encoded, false, source.getPageSize());
+        dictionaryFile(out).delete();
+        StringDictionary dict = new StringDictionary(dictionaryFile(out), encoded);
+        int pages = 0;
+
+        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(out));
+        try {
+            DictHeapPage target = null;
+            int used = 0;
+            for (int i = 0; i < source.numPages(); i++) {
+                Page page = source.readPage(new HeapPageId(source.getId(), i));
+                Iterator<Tuple> it = source.pageIterator(page);
+                while (it.hasNext()) {
+                    if (target == null) {
+                        target = new DictHeapPage(new HeapPageId(source.getId(), pages++),
+                                HeapPage.createEmptyPageData(source.getPageSize()), dict);
+                        used = 0;
+                    }
+                    target.insertTuple(it.next());
+                    if (++used == target.numSlots) {
+                        bos.write(target.getPageData());
+                        target = null;
+                    }
+                }
+            }
+            if (target != null) {
+                bos.write(target.getPageData());
+            }
+        } finally {
+            bos.close();
+            dict.close();
+        }
+        return pages;
+    }
+}
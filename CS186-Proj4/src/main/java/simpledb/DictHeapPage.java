@@ -0,0 +1,79 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * DictHeapPage is a page of a DictHeapFile. It has the HeapPage format,
+ * except that every dictionary-encoded string field is stored as its 4 byte
+ * code in the table's StringDictionary instead of as a 132 byte string, so
+ * the page fits correspondingly more slots.
+ * <p>
+ * Encoded fields decode to the DictStringField of their code, shared with
+ * every other tuple holding the same value, without parsing a string.
+ *
+ * @see DictHeapFile
+ * @see StringDictionary
+ */
+public class DictHeapPage extends HeapPage {
+
+    private final StringDictionary dict;
+
+    /**
+     * Create a DictHeapPage from a set of bytes of data read from disk.
+     *
+     * @param dict the dictionary of the file the page belongs to
+     * @see HeapPage#HeapPage(HeapPageId, byte[])
+     */
+    DictHeapPage(HeapPageId id, byte[] data, StringDictionary dict) throws IOException {
+        super(id, data, layout(Database.getCatalog().getTupleDesc(id.getTableId()), dict));
+        this.dict = dict;
+    }
+
+    /**
+     * @return td with every field that dict encodes turned into an int field
+     */
+    static TupleDesc layout(TupleDesc td, StringDictionary dict) {
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = dict.isEncoded(i) ? Type.INT_TYPE : td.getFieldType(i);
+            names[i] = td.getFieldName(i);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    @Override
+    Field readField(int slotId, int fieldNo) throws NoSuchElementException {
+        if (!dict.isEncoded(fieldNo)) {
+            return super.readField(slotId, fieldNo);
+        }
+        return dict.decode(fieldNo, ByteBuffer.wrap(data).getInt(fieldPosition(slotId, fieldNo)));
+    }
+
+    @Override
+    void writeField(DataOutputStream dos, int fieldNo, Field f) throws IOException {
+        if (!dict.isEncoded(fieldNo)) {
+            super.writeField(dos, fieldNo, f);
+            return;
+        }
+        if (f instanceof DictStringField && ((DictStringField) f).isEntryOf(dict, fieldNo)) {
+            dos.writeInt(((DictStringField) f).getCode());
+        } else {
+            dos.writeInt(dict.encode(fieldNo, ((StringField) f).getValue()));
+        }
+    }
+
+    @Override
+    public DictHeapPage getBeforeImage(){
+        try {
+            return new DictHeapPage(pid, oldData, dict);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,100 @@
+package simpledb;
+
+/**
+ * A StringField read from a dictionary-encoded column of a DictHeapFile. It
+ * carries the dictionary code of its value next to the value itself, and
+ * equality against another DictStringField of the same column compares the
+ * two codes instead of the strings. Equality predicates, hash joins and
+ * GROUP BY on such a column therefore work on integers.
+ * <p>
+ * Every code has a single DictStringField instance, shared by all the
+ * tuples holding it. It equals, and hashes like, a plain StringField with
+ * the same value.
+ *
+ * @see StringDictionary
+ */
+public class DictStringField extends StringField {
+
+    private static final long serialVersionUID = 1L;
+
+    //not serialized: a deserialized field compares by value
+    private transient StringDictionary dict;
+    private final int fieldNo;
+    private final int code;
+
+    DictStringField(String s, StringDictionary dict, int fieldNo, int code) {
+        super(s, Type.STRING_LEN);
+        this.dict = dict;
+        this.fieldNo = fieldNo;
+        this.code = code;
+    }
+
+    /**
+     * @return the dictionary code of this value, or a negative number if
+     *         the value is not in the dictionary
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return true if this field is the entry of its code in column fieldNo
+     *         of dict
+     */
+    boolean isEntryOf(StringDictionary dict, int fieldNo) {
+        return code >= 0 && this.dict == dict && this.fieldNo == fieldNo;
+    }
+
+    boolean sameColumn(DictStringField other) {
+        return dict != null && dict == other.dict && fieldNo == other.fieldNo;
+    }
+
+    //a value missing from a dictionary of n entries has code -1 - n and
+    //differs from codes 0..n-1; values added after it are compared as strings
+    private boolean comparesByCode(DictStringField other) {
+        if (!sameColumn(other)) {
+            return false;
+        }
+        if (code >= 0) {
+            return other.code >= 0 || code < -1 - other.code;
+        }
+        return other.code >= 0 && other.code < -1 - code;
+    }
+
+    /**
+     * @return val as a field of the column of this field, so that comparing
+     *         against the result compares codes
+     */
+    DictStringField encode(StringField val) {
+        if (dict == null || (val instanceof DictStringField && sameColumn((DictStringField) val))) {
+            return val instanceof DictStringField ? (DictStringField) val
+                    : new DictStringField(val.getValue(), null, fieldNo, -1);
+        }
+        return dict.lookup(fieldNo, val.getValue());
+    }
+
+    public boolean equals(Object field) {
+        if (field instanceof DictStringField && comparesByCode((DictStringField) field)) {
+            return code == ((DictStringField) field).code;
+        }
+        return super.equals(field);
+    }
+
+    /**
+     * Compares codes for EQUALS and NOT_EQUALS against a field of the same
+     * column, and values otherwise.
+     *
+     * @see StringField#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        if (val instanceof DictStringField && comparesByCode((DictStringField) val)) {
+            if (op == Predicate.Op.EQUALS) {
+                return code == ((DictStringField) val).code;
+            }
+            if (op == Predicate.Op.NOT_EQUALS) {
+                return code != ((DictStringField) val).code;
+            }
+        }
+        return super.compare(op, val);
+    }
+}
@@ -0,0 +1,422 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ExternalSort sorts the tuples of a HeapFile, or entries made of some of
+ * their fields, without holding more than runPages pages worth of them in
+ * memory, so it sorts files of any size: the tuples of every runPages pages
+ * of the file are sorted in memory and written out as a run, then the runs
+ * are merged, at most mergeWidth at a time, until few enough are left to be
+ * merged into the result in one go.
+ * <p>
+ * {@link #sort} writes the tuples themselves, sorted ascending on one field,
+ * to another file in the page format of the HeapFile; its runs are pages of
+ * that format too. Pages are built with the page hooks of the file, so
+ * subclasses of HeapFile are sorted in their own format; every page written
+ * is filled before the next one is started.
+ * <p>
+ * {@link #entries} returns entries instead, each a copy of some fields of a
+ * tuple followed by the page number and slot of its RecordId, in the order
+ * of a given comparator, without writing them out. Its runs are records of
+ * the entry fields, so only the entries are held in memory, not the pages
+ * they were read from, which is what index builds want.
+ * <p>
+ * The pages of the file are read directly, not through the BufferPool, so
+ * the file must not be modified concurrently.
+ *
+ * @see HeapFile#cluster
+ * @see BTreeFile#build
+ * @see HashFile#build
+ */
+class ExternalSort {
+
+    private final HeapFile file;
+    private final Comparator<Tuple> comparator;
+    //the fields of the tuples the entries are made of, or null to sort the
+    //tuples themselves
+    private final int[] fields;
+    private final TupleDesc entryTd;
+    private final int runPages;
+    private final int mergeWidth;
+
+    /**
+     * @param runPages the number of pages sorted in memory at once
+     * @param mergeWidth the number of runs merged at once, at least 2
+     */
+    ExternalSort(HeapFile file, int field, int runPages, int mergeWidth) {
+        this(file, null, new TupleComparator(field, true), runPages, mergeWidth);
+    }
+
+    /**
+     * Sorts entries of the tuples of file, see {@link #entryDesc}.
+     *
+     * @param fields the fields of the tuples every entry holds, in order
+     * @param comparator the order of the entries
+     * @param runPages the number of pages of the file whose entries are
+     *        sorted in memory at once
+     * @param mergeWidth the number of runs merged at once, at least 2
+     */
+    ExternalSort(HeapFile file, int[] fields, Comparator<Tuple> comparator, int runPages, int mergeWidth) {
+        if (runPages < 1 || mergeWidth < 2) {
+            throw new IllegalArgumentException("bad run size " + runPages + " or merge width " + mergeWidth);
+        }
+        this.file = file;
+        this.comparator = comparator;
+        this.fields = fields;
+        this.entryTd = fields == null ? null : entryDesc(file.getTupleDesc(), fields);
+        this.runPages = runPages;
+        this.mergeWidth = mergeWidth;
+    }
+
+    /**
+     * @return the schema of the entries of the given fields of tuples of
+     *         schema td: those fields, then the page number and the slot of
+     *         the RecordId of the tuple
+     */
+    static TupleDesc entryDesc(TupleDesc td, int[] fields) {
+        Type[] types = new Type[fields.length + 2];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = td.getFieldType(fields[i]);
+        }
+        types[fields.length] = Type.INT_TYPE;
+        types[fields.length + 1] = Type.INT_TYPE;
+        return new TupleDesc(types);
+    }
+
+    /**
+     * Sorts the file into out, which is overwritten. Temporary runs are
+     * written next to out and deleted before returning.
+     *
+     * @return the number of pages written
+     */
+    int sort(File out) throws IOException, DbException {
+        if (fields != null) {
+            throw new IllegalStateException("entries are not written to a file");
+        }
+        Merge merge = merge(out.getAbsoluteFile().getParentFile());
+        try {
+            RunWriter w = new PageRunWriter(out);
+            try {
+                for (Tuple t = merge.next(); t != null; t = merge.next()) {
+                    w.add(t);
+                }
+            } finally {
+                w.close();
+            }
+        } finally {
+            merge.close();
+        }
+        return (int) (out.length() / file.getPageSize());
+    }
+
+    /**
+     * Returns the entries of the tuples of the file in order. Temporary
+     * runs are written to dir and deleted when the result is closed.
+     */
+    Merge entries(File dir) throws IOException {
+        if (fields == null) {
+            throw new IllegalStateException("tuples are sorted into a file");
+        }
+        try {
+            return merge(dir);
+        } catch (DbException e) {
+            //only pages, not records, refuse tuples
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    //sorted runs of the file, merged down to at most mergeWidth, which the
+    //result merges as it is read
+    private Merge merge(File dir) throws IOException, DbException {
+        LinkedList<File> runs = new LinkedList<File>();
+        try {
+            ArrayList<Tuple> buffer = new ArrayList<Tuple>();
+            int numPages = file.numPages();
+            for (int i = 0; i < numPages; i++) {
+                Page page = file.readPage(new HeapPageId(file.getId(), i));
+                Iterator<Tuple> it = file.pageIterator(page);
+                while (it.hasNext()) {
+                    buffer.add(fields == null ? it.next() : entry(it.next()));
+                }
+                if ((i + 1) % runPages == 0 || i == numPages - 1) {
+                    Collections.sort(buffer, comparator);
+                    File run = File.createTempFile("sort", ".run", dir);
+                    runs.add(run);
+                    RunWriter w = newRunWriter(run);
+                    try {
+                        for (Tuple t : buffer) {
+                            w.add(t);
+                        }
+                    } finally {
+                        w.close();
+                    }
+                    buffer.clear();
+                }
+            }
+
+            //merge passes, each shortens the list of runs by mergeWidth - 1
+            while (runs.size() > mergeWidth) {
+                ArrayList<File> merged = new ArrayList<File>();
+                while (merged.size() < mergeWidth && !runs.isEmpty()) {
+                    merged.add(runs.removeFirst());
+                }
+                File run = File.createTempFile("sort", ".run", dir);
+                runs.addLast(run);
+                Merge merge = new Merge(merged);
+                RunWriter w = newRunWriter(run);
+                try {
+                    for (Tuple t = merge.next(); t != null; t = merge.next()) {
+                        w.add(t);
+                    }
+                } finally {
+                    w.close();
+                    merge.close();
+                }
+            }
+            Merge merge = new Merge(runs);
+            runs = null;
+            return merge;
+        } finally {
+            if (runs != null) {
+                for (File f : runs) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    //copies the fields of t the entries hold, so that the entry does not
+    //keep the page of t reachable
+    private Tuple entry(Tuple t) {
+        Tuple e = new Tuple(entryTd);
+        for (int i = 0; i < fields.length; i++) {
+            e.setField(i, t.getField(fields[i]));
+        }
+        e.setField(fields.length, new IntField(t.getRecordId().getPageId().pageNumber()));
+        e.setField(fields.length + 1, new IntField(t.getRecordId().tupleno()));
+        return e;
+    }
+
+    private RunWriter newRunWriter(File f) throws IOException {
+        return fields == null ? new PageRunWriter(f) : new RecordRunWriter(f);
+    }
+
+    private RunReader newRunReader(File f) throws IOException {
+        return fields == null ? new PageRunReader(f) : new RecordRunReader(f);
+    }
+
+    /**
+     * The sorted result, merged from its runs as it is read. close deletes
+     * the runs.
+     */
+    class Merge {
+        private final List<File> inputs;
+        private final ArrayList<RunReader> readers = new ArrayList<RunReader>();
+        //ties go to the earlier run, so equal keys keep their order
+        private final PriorityQueue<Integer> heap;
+
+        private Merge(List<File> inputs) throws IOException {
+            this.inputs = new ArrayList<File>(inputs);
+            this.heap = new PriorityQueue<Integer>(Math.max(1, inputs.size()), new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    int c = comparator.compare(readers.get(a).peek(), readers.get(b).peek());
+                    return c != 0 ? c : a - b;
+                }
+            });
+            try {
+                for (File f : inputs) {
+                    RunReader r = newRunReader(f);
+                    readers.add(r);
+                    if (r.peek() != null) {
+                        heap.add(readers.size() - 1);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the next tuple or entry, or null after the last one
+         */
+        Tuple next() throws IOException {
+            if (heap.isEmpty()) {
+                return null;
+            }
+            int i = heap.poll();
+            Tuple t = readers.get(i).next();
+            if (readers.get(i).peek() != null) {
+                heap.add(i);
+            }
+            return t;
+        }
+
+        void close() throws IOException {
+            try {
+                for (RunReader r : readers) {
+                    r.close();
+                }
+            } finally {
+                for (File f : inputs) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private interface RunWriter {
+        void add(Tuple t) throws IOException, DbException;
+        void close() throws IOException;
+    }
+
+    private interface RunReader {
+        Tuple peek();
+        Tuple next() throws IOException;
+        void close() throws IOException;
+    }
+
+    //appends tuples to full pages of the file's format
+    private class PageRunWriter implements RunWriter {
+        private final OutputStream os;
+        private Page page;
+        private int pages;
+
+        PageRunWriter(File f) throws IOException {
+            os = new BufferedOutputStream(new FileOutputStream(f));
+        }
+
+        public void add(Tuple t) throws IOException, DbException {
+            if (page != null && !file.hasRoomFor(page, t)) {
+                os.write(page.getPageData());
+                page = null;
+            }
+            if (page == null) {
+                page = file.createPage(new HeapPageId(file.getId(), pages++), new byte[file.getPageSize()]);
+            }
+            //throws if the tuple does not fit even on an empty page
+            file.insertIntoPage(page, t);
+        }
+
+        public void close() throws IOException {
+            try {
+                if (page != null) {
+                    os.write(page.getPageData());
+                    page = null;
+                }
+            } finally {
+                os.close();
+            }
+        }
+    }
+
+    //reads the tuples of a run back, page after page
+    private class PageRunReader implements RunReader {
+        private final InputStream is;
+        private final byte[] buf;
+        private int pages;
+        private Iterator<Tuple> it;
+        private Tuple next;
+
+        PageRunReader(File f) throws IOException {
+            is = new BufferedInputStream(new FileInputStream(f));
+            buf = new byte[file.getPageSize()];
+            advance();
+        }
+
+        public Tuple peek() {
+            return next;
+        }
+
+        public Tuple next() throws IOException {
+            Tuple t = next;
+            advance();
+            return t;
+        }
+
+        private void advance() throws IOException {
+            while (it == null || !it.hasNext()) {
+                int n = 0;
+                while (n < buf.length) {
+                    int r = is.read(buf, n, buf.length - n);
+                    if (r < 0) break;
+                    n += r;
+                }
+                if (n < buf.length) {
+                    next = null;
+                    return;
+                }
+                it = file.pageIterator(file.createPage(new HeapPageId(file.getId(), pages++), buf.clone()));
+            }
+            next = it.next();
+        }
+
+        public void close() throws IOException {
+            is.close();
+        }
+    }
+
+    //writes entries as records of their serialized fields
+    private class RecordRunWriter implements RunWriter {
+        private final DataOutputStream dos;
+
+        RecordRunWriter(File f) throws IOException {
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+        }
+
+        public void add(Tuple t) throws IOException {
+            for (int i = 0; i < entryTd.numFields(); i++) {
+                t.getField(i).serialize(dos);
+            }
+        }
+
+        public void close() throws IOException {
+            dos.close();
+        }
+    }
+
+    //reads the entries of a run back, record after record
+    private class RecordRunReader implements RunReader {
+        private final DataInputStream dis;
+        private long left;
+        private Tuple next;
+
+        RecordRunReader(File f) throws IOException {
+            left = f.length() / entryTd.getSize();
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            advance();
+        }
+
+        public Tuple peek() {
+            return next;
+        }
+
+        public Tuple next() throws IOException {
+            Tuple t = next;
+            advance();
+            return t;
+        }
+
+        private void advance() throws IOException {
+            if (left == 0) {
+                next = null;
+                return;
+            }
+            left--;
+            next = new Tuple(entryTd);
+            try {
+                for (int i = 0; i < entryTd.numFields(); i++) {
+                    next.setField(i, entryTd.getFieldType(i).parse(dis));
+                }
+            } catch (java.text.ParseException e) {
+                throw new IOException("bad entry in run: " + e.getMessage());
+            }
+        }
+
+        public void close() throws IOException {
+            dis.close();
+        }
+    }
+}
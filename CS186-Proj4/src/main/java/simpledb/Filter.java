@@ -41,6 +41,7 @@ public class Filter extends Operator {
         TransactionAbortedException, InterruptedException {
         // some code goes here
         super.open();
+        pushDownToScan();
         child.open();
     }
 
@@ -50,6 +51,20 @@ public class Filter extends Operator {
         child.close();
     }
 
+    /**
+     * Hands the predicate to the SeqScan this filter reads from, directly or
+     * through other Filters, so that it can skip pages that cannot match.
+     */
+    private void pushDownToScan() {
+        DbIterator below = child;
+        while (below instanceof Filter) {
+            below = ((Filter) below).child;
+        }
+        if (below instanceof SeqScan) {
+            ((SeqScan) below).addPageFilter(p);
+        }
+    }
+
     public void rewind() throws DbException, TransactionAbortedException, InterruptedException {
         // some code goes here
         child.rewind();
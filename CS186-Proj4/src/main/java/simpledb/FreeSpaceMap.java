@@ -0,0 +1,188 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records, for every page of a HeapFile, whether the page may
+ * still have an empty slot, so that inserts can go straight to such a page
+ * instead of probing the file from page 0.
+ * <p>
+ * The map is a hint. A page marked free is checked by the caller once it
+ * holds the page, and is marked full if it turns out to be full. The map is
+ * persisted in a sidecar file next to the heap file, named
+ * <tt>&lt;heap file&gt;.fsm</tt>, holding the number of pages covered
+ * followed by one bit per page. Every bit that changes is written through
+ * immediately. If the sidecar is missing, or covers a different number of
+ * pages than the heap file, the map is rebuilt from the page headers.
+ *
+ * @see HeapFile#insertTuple
+ */
+class FreeSpaceMap {
+
+    private static final int HEADER_SIZE = 4;
+
+    private final HeapFile file;
+    private final File sidecar;
+    private FileChannel channel;
+
+    //bit i is set if page i may have an empty slot
+    private BitSet free;
+    //number of pages of the heap file the map covers
+    private int numPages;
+
+    FreeSpaceMap(HeapFile file) {
+        this.file = file;
+        this.sidecar = new File(file.getFile().getPath() + ".fsm");
+    }
+
+    /**
+     * Returns the first page at or after from that may have an empty slot,
+     * or -1 if every page of the file is known to be full.
+     */
+    synchronized int nextFreePage(int from) {
+        load();
+        extend(file.numPages());
+        int pgNo = free.nextSetBit(from);
+        return pgNo < numPages ? pgNo : -1;
+    }
+
+    /**
+     * Records whether the given page has an empty slot.
+     */
+    synchronized void setFree(int pgNo, boolean hasSpace) {
+        load();
+        if (pgNo >= numPages) {
+            extend(pgNo);
+            numPages = pgNo + 1;
+            free.set(pgNo, hasSpace);
+            save();
+            return;
+        }
+        if (free.get(pgNo) != hasSpace) {
+            free.set(pgNo, hasSpace);
+            saveByte(pgNo / 8);
+        }
+    }
+
+    /**
+     * Closes the sidecar file. The next access reopens it.
+     */
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        free = null;
+    }
+
+    private void load() {
+        if (free != null) return;
+
+        free = new BitSet();
+        numPages = 0;
+        int filePages = file.numPages();
+        try {
+            if (sidecar.length() == HEADER_SIZE + bitmapSize(filePages)) {
+                ByteBuffer bb = ByteBuffer.allocate((int) sidecar.length());
+                FileChannel ch = getChannel();
+                while (bb.hasRemaining()) {
+                    if (ch.read(bb, bb.position()) < 0) break;
+                }
+                bb.flip();
+                if (bb.getInt() == filePages) {
+                    for (int i = 0; i < filePages; i++) {
+                        if ((bb.get(HEADER_SIZE + i / 8) >> (i % 8) & 1) != 0) {
+                            free.set(i);
+                        }
+                    }
+                    numPages = filePages;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        //no usable sidecar, rebuild it from the pages
+        extend(filePages);
+        save();
+    }
+
+    /**
+     * Covers pages up to, but not including, n by reading their headers.
+     * Pages written to the file without going through this map, e.g. by
+     * HeapFileEncoder or a direct writePage, are picked up here.
+     */
+    private void extend(int n) {
+        if (n <= numPages) return;
+        for (int i = numPages; i < n; i++) {
+            Page page = file.readCurrentPage(new HeapPageId(file.getId(), i));
+            free.set(i, page == null || file.hasRoomFor(page, null));
+        }
+        numPages = n;
+        save();
+    }
+
+    private void save() {
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + bitmapSize(numPages));
+        bb.putInt(numPages);
+        for (int i = 0; i < bitmapSize(numPages); i++) {
+            bb.put(bitmapByte(i));
+        }
+        bb.flip();
+        try {
+            FileChannel ch = getChannel();
+            ch.truncate(bb.remaining());
+            while (bb.hasRemaining()) {
+                ch.write(bb, bb.position());
+            }
+        } catch (IOException e) {
+            discard(e);
+        }
+    }
+
+    private void saveByte(int index) {
+        ByteBuffer bb = ByteBuffer.wrap(new byte[] { bitmapByte(index) });
+        try {
+            getChannel().write(bb, HEADER_SIZE + index);
+        } catch (IOException e) {
+            discard(e);
+        }
+    }
+
+    //a sidecar that could not be written is deleted so that it gets rebuilt,
+    //the in-memory map stays valid
+    private void discard(IOException e) {
+        e.printStackTrace();
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+        sidecar.delete();
+    }
+
+    private byte bitmapByte(int index) {
+        int b = 0;
+        for (int bit = 0; bit < 8; bit++) {
+            if (free.get(index * 8 + bit)) {
+                b |= 1 << bit;
+            }
+        }
+        return (byte) b;
+    }
+
+    private static int bitmapSize(int pages) {
+        return (pages + 7) / 8;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(sidecar, "rw").getChannel();
+        }
+        return channel;
+    }
+}
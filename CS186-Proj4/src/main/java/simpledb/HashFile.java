@@ -0,0 +1,675 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * HashFile is a persistent hash index over one INT_TYPE or STRING_TYPE
+ * field of a table, typically its primary key. Like a {@link BTreeFile} it
+ * is a DbFile of its own whose pages, HashPages, are read through the
+ * BufferPool and locked by the LockManager, and whose tuples are index
+ * entries (key, heap page number, heap slot). It only serves equality
+ * lookups, but a lookup reads the first page of a single bucket, plus its
+ * overflow pages if it has any, so its cost does not grow with the table.
+ * <p>
+ * The file uses linear hashing: with a level L and a split pointer next,
+ * there are 2^L + next buckets, and a key goes to bucket
+ * <tt>hash mod 2^L</tt>, or <tt>hash mod 2^(L+1)</tt> if that is below
+ * next. Whenever an insert has to add an overflow page to a bucket, bucket
+ * next is split in two and next moves on, so the buckets grow one at a
+ * time with the table and overflow chains stay short. The first page of
+ * every bucket is listed in directory pages, themselves listed in the meta
+ * page; both are small and stay in the BufferPool. Deletes only remove the
+ * entry from its bucket; buckets are never merged.
+ * <p>
+ * A unique index refuses to insert a key it already holds, so that
+ * {@link BufferPool#insertTuple} enforces a primary key with one lookup
+ * instead of a scan of the table. Writers lock the meta page exclusively,
+ * readers take shared locks.
+ *
+ * @see HashPage
+ * @see Catalog#addIndex
+ */
+public class HashFile implements IndexFile {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File f;
+    private final int tableId;
+    private final int keyField;
+    private final boolean unique;
+    private final TupleDesc td;
+    private final int pageSize;
+    private transient volatile FileChannel channel;
+
+    /**
+     * Opens the index stored in f over field keyField of table, with pages
+     * of the database-wide page size. A missing or empty file is an empty
+     * index; use {@link #build} to index a table that already has tuples.
+     *
+     * @param unique true if keys must be unique, as for a primary key
+     */
+    public HashFile(File f, DbFile table, int keyField, boolean unique) {
+        this(f, table, keyField, unique, BufferPool.getPageSize());
+    }
+
+    /**
+     * @param pageSize bytes per page of the index
+     * @see #HashFile(File, DbFile, int, boolean)
+     */
+    public HashFile(File f, DbFile table, int keyField, boolean unique, int pageSize) {
+        TupleDesc tableTd = table.getTupleDesc();
+        Type keyType = tableTd.getFieldType(keyField);
+        if (HashPage.maxEntries(HashPage.BUCKET, keyType, pageSize) < 1
+                || HashPage.maxEntries(HashPage.DIRECTORY, keyType, pageSize) < 1) {
+            throw new IllegalArgumentException("page size " + pageSize + " is too small for the index");
+        }
+        this.f = f;
+        this.tableId = table.getId();
+        this.keyField = keyField;
+        this.unique = unique;
+        this.pageSize = pageSize;
+        this.td = new TupleDesc(new Type[] { keyType, Type.INT_TYPE, Type.INT_TYPE },
+                new String[] { tableTd.getFieldName(keyField), "pageno", "slot" });
+    }
+
+    /**
+     * @return the file backing this index on disk
+     */
+    public File getFile() {
+        return f;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * @return no fields; entries hold only the key and the RecordId
+     */
+    public int[] getIncludedFields() {
+        return new int[0];
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return true for EQUALS only
+     */
+    public boolean supports(Predicate.Op op) {
+        return op == Predicate.Op.EQUALS;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    /**
+     * @return 1, the first page of the bucket; the meta and directory pages
+     *         are few and stay in the BufferPool
+     */
+    public int probePages() {
+        return 1;
+    }
+
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * @return the TupleDesc of the entries, (key, pageno, slot)
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public RecordId getRecordId(Tuple entry) {
+        return new RecordId(new HeapPageId(tableId, ((IntField) entry.getField(1)).getValue()),
+                ((IntField) entry.getField(2)).getValue());
+    }
+
+    /**
+     * Returns the number of pages in the file, counting the meta page.
+     */
+    public int numPages() {
+        return (int) (f.length() / pageSize);
+    }
+
+    private FileChannel getChannel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen()) {
+            return ch;
+        }
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                channel = new RandomAccessFile(f, "rw").getChannel();
+            }
+            return channel;
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        byte[] buf = new byte[pageSize];
+        try {
+            //pages past the end of the file read as zeros: an empty index
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            long offset = (long) pid.pageNumber() * pageSize;
+            FileChannel ch = getChannel();
+            while (bb.hasRemaining()) {
+                int n = ch.read(bb, offset + bb.position());
+                if (n < 0) break;
+            }
+            return new HashPage((HashPageId) pid, buf, td.getFieldType(0));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(page.getPageData());
+        long offset = (long) page.getId().pageNumber() * pageSize;
+        FileChannel ch = getChannel();
+        while (bb.hasRemaining()) {
+            ch.write(bb, offset + bb.position());
+        }
+    }
+
+    /**
+     * Appends a page with the given contents to the file and returns its
+     * number. Page 0 always exists, even in an empty file.
+     */
+    private synchronized int allocatePage(byte[] data) throws IOException {
+        int pgNo = Math.max(numPages(), 1);
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        FileChannel ch = getChannel();
+        while (bb.hasRemaining()) {
+            ch.write(bb, (long) pgNo * pageSize + bb.position());
+        }
+        return pgNo;
+    }
+
+    private HashPage getPage(TransactionId tid, int pgNo, Permissions perm)
+        throws TransactionAbortedException, DbException, InterruptedException {
+        return (HashPage) Database.getBufferPool().getPage(tid, new HashPageId(getId(), pgNo), perm);
+    }
+
+    /**
+     * The hash of a key: the hashCode of the field, with its bits mixed so
+     * that the low bits, which pick the bucket, depend on all of them.
+     */
+    static int hash(Field key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * @return the bucket of a key with hash h, with level and next the
+     *         split state of the file
+     */
+    static int bucketOf(int h, int level, int next) {
+        int b = h & ((1 << level) - 1);
+        if (b < next) {
+            b = h & ((1 << (level + 1)) - 1);
+        }
+        return b;
+    }
+
+    private int dirEntries() {
+        return HashPage.maxEntries(HashPage.DIRECTORY, td.getFieldType(0), pageSize);
+    }
+
+    //page number of the first page of bucket b
+    private int bucketPage(TransactionId tid, HashPage meta, int b, Permissions perm)
+        throws TransactionAbortedException, DbException, InterruptedException {
+        HashPage dir = getPage(tid, meta.getPage(b / dirEntries()), perm);
+        return dir.getPage(b % dirEntries());
+    }
+
+    //registers a new bucket whose first page is pgNo with the directory
+    private void addBucket(TransactionId tid, HashPage meta, int pgNo, ArrayList<Page> dirtied)
+        throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        int numDirs = meta.getNumPages();
+        HashPage dir = numDirs == 0 ? null : getPage(tid, meta.getPage(numDirs - 1), Permissions.READ_WRITE);
+        if (dir == null || dir.isFull()) {
+            dir = getPage(tid, allocatePage(HashPage.createEmptyDirectoryData(pageSize)), Permissions.READ_WRITE);
+            meta.addPage(dir.getId().pageNumber());
+            dirtied.add(meta);
+        }
+        dir.addPage(pgNo);
+        dirtied.add(dir);
+    }
+
+    /**
+     * Adds the entry of t, a tuple of the indexed table whose RecordId is
+     * set, adding an overflow page to its bucket and splitting a bucket if
+     * the bucket is full.
+     *
+     * @return the pages that were modified
+     * @throws DbException if t has no RecordId or is already indexed, or if
+     *         the index is unique and already holds the key of t
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        if (t.getRecordId() == null) {
+            throw new DbException("tuple has no RecordId");
+        }
+        Field key = t.getField(keyField);
+        int ridPage = t.getRecordId().getPageId().pageNumber();
+        int ridSlot = t.getRecordId().tupleno();
+        ArrayList<Page> dirtied = new ArrayList<Page>();
+
+        HashPage meta = getPage(tid, 0, Permissions.READ_WRITE);
+        if (meta.getNumPages() == 0) {
+            //the first insert creates bucket 0
+            meta.setSplitState(0, 0);
+            addBucket(tid, meta, allocatePage(HashPage.createEmptyPageData(pageSize)), dirtied);
+        }
+
+        int b = bucketOf(hash(key), meta.getLevel(), meta.getNext());
+        HashPage page = getPage(tid, bucketPage(tid, meta, b, Permissions.READ_WRITE), Permissions.READ_WRITE);
+        HashPage free = null;
+        while (true) {
+            for (int i = 0; i < page.getNumEntries(); i++) {
+                if (!page.getKey(i).equals(key)) {
+                    continue;
+                }
+                if (unique) {
+                    throw new DbException("duplicate key " + key);
+                }
+                if (page.getRidPage(i) == ridPage && page.getRidSlot(i) == ridSlot) {
+                    throw new DbException("tuple is already in the index");
+                }
+            }
+            if (free == null && !page.isFull()) {
+                free = page;
+            }
+            if (page.getLink() == 0) {
+                break;
+            }
+            page = getPage(tid, page.getLink(), Permissions.READ_WRITE);
+        }
+
+        boolean split = false;
+        if (free == null) {
+            free = getPage(tid, allocatePage(HashPage.createEmptyPageData(pageSize)), Permissions.READ_WRITE);
+            page.setLink(free.getId().pageNumber());
+            dirtied.add(page);
+            split = true;
+        }
+        free.addEntry(key, ridPage, ridSlot);
+        dirtied.add(free);
+        if (split) {
+            split(tid, meta, dirtied);
+        }
+
+        for (Page p : dirtied) {
+            p.markDirty(true, tid);
+        }
+        return dirtied;
+    }
+
+    /**
+     * Splits bucket next into itself and bucket 2^level + next, by
+     * rehashing its entries with one more bit, and advances the split
+     * pointer. The pages of the chain of the split bucket are reused; its
+     * emptied overflow pages stay on its chain.
+     */
+    private void split(TransactionId tid, HashPage meta, ArrayList<Page> dirtied)
+        throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        int level = meta.getLevel();
+        int next = meta.getNext();
+        if (level >= 30 || (meta.isFull() && ((1 << level) + next) % dirEntries() == 0)) {
+            return;  //no room for another bucket; chains just grow
+        }
+
+        ArrayList<HashPage> chain = new ArrayList<HashPage>();
+        ArrayList<Field> keys = new ArrayList<Field>();
+        ArrayList<Integer> ridPages = new ArrayList<Integer>();
+        ArrayList<Integer> ridSlots = new ArrayList<Integer>();
+        int pgNo = bucketPage(tid, meta, next, Permissions.READ_WRITE);
+        while (pgNo != 0) {
+            HashPage page = getPage(tid, pgNo, Permissions.READ_WRITE);
+            for (int i = 0; i < page.getNumEntries(); i++) {
+                keys.add(page.getKey(i));
+                ridPages.add(page.getRidPage(i));
+                ridSlots.add(page.getRidSlot(i));
+            }
+            page.clearEntries();
+            chain.add(page);
+            dirtied.add(page);
+            pgNo = page.getLink();
+        }
+
+        HashPage image = getPage(tid, allocatePage(HashPage.createEmptyPageData(pageSize)), Permissions.READ_WRITE);
+        addBucket(tid, meta, image.getId().pageNumber(), dirtied);
+        dirtied.add(image);
+
+        int stay = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (bucketOf(hash(keys.get(i)), level + 1, 0) == next) {
+                //fill the old chain from its first page
+                while (chain.get(stay).isFull()) {
+                    stay++;
+                }
+                chain.get(stay).addEntry(keys.get(i), ridPages.get(i), ridSlots.get(i));
+            } else {
+                if (image.isFull()) {
+                    HashPage overflow = getPage(tid, allocatePage(HashPage.createEmptyPageData(pageSize)),
+                            Permissions.READ_WRITE);
+                    image.setLink(overflow.getId().pageNumber());
+                    dirtied.add(overflow);
+                    image = overflow;
+                }
+                image.addEntry(keys.get(i), ridPages.get(i), ridSlots.get(i));
+            }
+        }
+
+        next++;
+        if (next == 1 << level) {
+            level++;
+            next = 0;
+        }
+        meta.setSplitState(level, next);
+        if (!dirtied.contains(meta)) {
+            dirtied.add(meta);
+        }
+    }
+
+    /**
+     * Removes the entry of t, a tuple of the indexed table whose RecordId is
+     * set, from its bucket.
+     *
+     * @return the page the entry was removed from
+     * @throws DbException if t is not in the index
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException, InterruptedException {
+        if (t.getRecordId() == null) {
+            throw new DbException("tuple has no RecordId");
+        }
+        Field key = t.getField(keyField);
+        int ridPage = t.getRecordId().getPageId().pageNumber();
+        int ridSlot = t.getRecordId().tupleno();
+
+        HashPage meta = getPage(tid, 0, Permissions.READ_WRITE);
+        if (meta.getNumPages() > 0) {
+            int b = bucketOf(hash(key), meta.getLevel(), meta.getNext());
+            int pgNo = bucketPage(tid, meta, b, Permissions.READ_WRITE);
+            while (pgNo != 0) {
+                HashPage page = getPage(tid, pgNo, Permissions.READ_WRITE);
+                int i = page.find(key, ridPage, ridSlot);
+                if (i >= 0) {
+                    page.removeEntry(i);
+                    page.markDirty(true, tid);
+                    return page;
+                }
+                pgNo = page.getLink();
+            }
+        }
+        throw new DbException("tuple is not in the index");
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new IndexIterator(tid, null, null);
+    }
+
+    /**
+     * Entries are not skipped by predicates on the fields; the caller
+     * applies them.
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> filters) {
+        return iterator(tid);
+    }
+
+    /**
+     * Returns an iterator over the entries whose key satisfies
+     * <tt>key op value</tt>, in no particular order. An equality reads a
+     * single bucket; any other op reads them all.
+     *
+     * @see #getRecordId
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field value) {
+        return new IndexIterator(tid, op, value);
+    }
+
+    private class IndexIterator implements DbFileIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        private final Predicate.Op op;
+        private final Field value;
+
+        private HashPage meta;
+        private int bucket;
+        private int lastBucket;
+        private HashPage page;
+        private int pos;
+        private Tuple next;
+
+        IndexIterator(TransactionId tid, Predicate.Op op, Field value) {
+            this.tid = tid;
+            this.op = op;
+            this.value = value;
+        }
+
+        public void open() throws DbException, TransactionAbortedException, InterruptedException {
+            meta = getPage(tid, 0, Permissions.READ_ONLY);
+            int numBuckets = meta.getNumPages() == 0 ? 0 : (1 << meta.getLevel()) + meta.getNext();
+            if (numBuckets > 0 && op == Predicate.Op.EQUALS) {
+                bucket = bucketOf(hash(value), meta.getLevel(), meta.getNext());
+                lastBucket = bucket;
+            } else {
+                bucket = 0;
+                lastBucket = numBuckets - 1;
+            }
+            page = bucket <= lastBucket
+                    ? getPage(tid, bucketPage(tid, meta, bucket, Permissions.READ_ONLY), Permissions.READ_ONLY)
+                    : null;
+            pos = 0;
+            next = fetchNext();
+        }
+
+        private Tuple fetchNext() throws DbException, TransactionAbortedException, InterruptedException {
+            while (page != null) {
+                if (pos >= page.getNumEntries()) {
+                    if (page.getLink() != 0) {
+                        page = getPage(tid, page.getLink(), Permissions.READ_ONLY);
+                    } else if (++bucket <= lastBucket) {
+                        page = getPage(tid, bucketPage(tid, meta, bucket, Permissions.READ_ONLY),
+                                Permissions.READ_ONLY);
+                    } else {
+                        page = null;
+                    }
+                    pos = 0;
+                    continue;
+                }
+                int i = pos++;
+                Field key = page.getKey(i);
+                if (op == null || key.compare(op, value)) {
+                    Tuple t = new Tuple(td);
+                    t.setField(0, key);
+                    t.setField(1, new IntField(page.getRidPage(i)));
+                    t.setField(2, new IntField(page.getRidSlot(i)));
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException, InterruptedException {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = fetchNext();
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException, InterruptedException {
+            open();
+        }
+
+        public void close() {
+            meta = null;
+            page = null;
+            next = null;
+        }
+    }
+
+    /**
+     * Writes a new index over field keyField of every tuple of table to out,
+     * with as many buckets as the entries fill to three quarters, which is
+     * much faster than inserting the entries one by one. The table is read
+     * twice, to count its tuples, which gives the number of buckets, then to
+     * sort their entries by bucket with an ExternalSort, so tables larger
+     * than memory are indexed as well. The pages of the table are read
+     * directly, not through the BufferPool, so the table must not be
+     * modified concurrently; it must be in the Catalog.
+     *
+     * @param out the file to write; it is overwritten, and deleted if the
+     *        build fails
+     * @param unique true if keys must be unique
+     * @return the new index, which still has to be registered with
+     *         {@link Catalog#addIndex}
+     * @throws IllegalArgumentException if unique is set and two tuples of
+     *         the table have the same key
+     */
+    public static HashFile build(File out, HeapFile table, int keyField, boolean unique) throws IOException {
+        HashFile index = new HashFile(out, table, keyField, unique);
+        Type keyType = index.td.getFieldType(0);
+        int pageSize = index.pageSize;
+        int perPage = HashPage.maxEntries(HashPage.BUCKET, keyType, pageSize);
+        int perDir = index.dirEntries();
+
+        int count = 0;
+        for (int i = 0; i < table.numPages(); i++) {
+            Iterator<Tuple> it = table.pageIterator(table.readPage(new HeapPageId(table.getId(), i)));
+            for (; it.hasNext(); it.next()) {
+                count++;
+            }
+        }
+
+        //2^level + next buckets, filled to three quarters
+        int numBuckets = Math.max(1, (int) Math.ceil(count / (perPage * 0.75)));
+        numBuckets = Math.min(numBuckets, perDir * HashPage.maxEntries(HashPage.META, keyType, pageSize));
+        final int level = 31 - Integer.numberOfLeadingZeros(numBuckets);
+        final int next = numBuckets - (1 << level);
+
+        //entries of the key and the RecordId, by bucket, then key, so that
+        //duplicate keys are adjacent
+        ExternalSort.Merge entries = new ExternalSort(table, new int[] { keyField }, new Comparator<Tuple>() {
+            private final TupleComparator keys = new TupleComparator(0, true);
+
+            public int compare(Tuple a, Tuple b) {
+                int c = bucketOf(hash(a.getField(0)), level, next) - bucketOf(hash(b.getField(0)), level, next);
+                if (c != 0) return c;
+                c = keys.compare(a, b);
+                if (c != 0) return c;
+                c = ridPage(a) - ridPage(b);
+                return c != 0 ? c : ridSlot(a) - ridSlot(b);
+            }
+        }, BufferPool.DEFAULT_PAGES, BufferPool.DEFAULT_PAGES - 1).entries(out.getAbsoluteFile().getParentFile());
+
+        //meta page, directory pages, first page of every bucket, overflow pages
+        int indexId = index.getId();
+        int numDirs = (numBuckets + perDir - 1) / perDir;
+        int firstBucket = 1 + numDirs;
+        int overflow = firstBucket + numBuckets;
+        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(out));
+        boolean built = false;
+        try {
+            HashPage meta = new HashPage(new HashPageId(indexId, 0), HashPage.createEmptyPageData(pageSize), keyType);
+            meta.setSplitState(level, next);
+            for (int d = 0; d < numDirs; d++) {
+                meta.addPage(1 + d);
+            }
+            bos.write(meta.getPageData());
+            for (int d = 0; d < numDirs; d++) {
+                HashPage dir = new HashPage(new HashPageId(indexId, 1 + d),
+                        HashPage.createEmptyDirectoryData(pageSize), keyType);
+                for (int b = d * perDir; b < Math.min(numBuckets, (d + 1) * perDir); b++) {
+                    dir.addPage(firstBucket + b);
+                }
+                bos.write(dir.getPageData());
+            }
+
+            ArrayList<HashPage> overflows = new ArrayList<HashPage>();
+            Tuple e = entries.next();
+            Tuple prev = null;
+            for (int b = 0; b < numBuckets; b++) {
+                HashPage page = new HashPage(new HashPageId(indexId, firstBucket + b),
+                        HashPage.createEmptyPageData(pageSize), keyType);
+                HashPage first = page;
+                for (; e != null && bucketOf(hash(e.getField(0)), level, next) == b; prev = e, e = entries.next()) {
+                    if (unique && prev != null && prev.getField(0).equals(e.getField(0))) {
+                        throw new IllegalArgumentException("duplicate key " + e.getField(0));
+                    }
+                    if (page.isFull()) {
+                        HashPage more = new HashPage(new HashPageId(indexId, overflow++),
+                                HashPage.createEmptyPageData(pageSize), keyType);
+                        page.setLink(more.getId().pageNumber());
+                        overflows.add(more);
+                        page = more;
+                    }
+                    page.addEntry(e.getField(0), ridPage(e), ridSlot(e));
+                }
+                bos.write(first.getPageData());
+            }
+            for (HashPage page : overflows) {
+                bos.write(page.getPageData());
+            }
+            built = true;
+        } finally {
+            try {
+                try {
+                    bos.close();
+                } finally {
+                    entries.close();
+                }
+            } finally {
+                if (!built) {
+                    out.delete();
+                }
+            }
+        }
+        return index;
+    }
+
+    //the RecordId of an entry of build, its last two fields
+    private static int ridPage(Tuple entry) {
+        return ((IntField) entry.getField(1)).getValue();
+    }
+
+    private static int ridSlot(Tuple entry) {
+        return ((IntField) entry.getField(2)).getValue();
+    }
+}
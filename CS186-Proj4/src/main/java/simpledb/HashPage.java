@@ -0,0 +1,311 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Each instance of HashPage stores one page of a HashFile and implements
+ * the Page interface that is used by BufferPool.
+ * <p>
+ * Page 0 of the file is the meta page:
+ * <pre>
+ *   level (int) | next (int) | count (int) | count directory page numbers
+ * </pre>
+ * level and next are the state of the linear hashing scheme of the file
+ * (see {@link HashFile}); the directory pages list the first page of every
+ * bucket, in bucket order. Every other page is
+ * <pre>
+ *   kind (1 byte: 0 = bucket, 1 = directory) | count (int) | link (int) | count entries
+ * </pre>
+ * A directory entry is the page number of the first page of a bucket; its
+ * link is unused. A bucket entry is (key, heap page number, heap slot) and
+ * points at a tuple of the indexed table; link is the page number of the
+ * next page of the bucket's overflow chain, or 0 for the last one.
+ * <p>
+ * An all-zero page is an empty bucket page, and an all-zero page 0 is the
+ * meta page of a file without buckets, so an empty file is an empty index.
+ *
+ * @see HashFile
+ */
+public class HashPage implements Page {
+
+    static final int BUCKET = 0;
+    static final int DIRECTORY = 1;
+    static final int META = 2;
+
+    private static final int HEADER_SIZE = 9;
+    private static final int META_HEADER_SIZE = 12;
+
+    private final HashPageId pid;
+    private final Type keyType;
+    private final int pageSize;
+    private final int kind;
+
+    //meta page
+    private int level;
+    private int next;
+
+    //directory pages of the meta page, or bucket pages of a directory page
+    private final ArrayList<Integer> pages = new ArrayList<Integer>();
+
+    //bucket pages
+    private int link;
+    private final ArrayList<Field> keys = new ArrayList<Field>();
+    private final ArrayList<Integer> ridPages = new ArrayList<Integer>();
+    private final ArrayList<Integer> ridSlots = new ArrayList<Integer>();
+
+    private byte[] oldData;
+    private TransactionId dirtyId;
+
+    /**
+     * Create a HashPage from a set of bytes of data read from disk, in the
+     * format described above. The type of the key is field 0 of the
+     * TupleDesc of the index in the Catalog.
+     */
+    public HashPage(HashPageId id, byte[] data) throws IOException {
+        this(id, data, Database.getCatalog().getTupleDesc(id.getTableId()).getFieldType(0));
+    }
+
+    HashPage(HashPageId id, byte[] data, Type keyType) throws IOException {
+        this.pid = id;
+        this.keyType = keyType;
+        this.pageSize = data.length;
+        ByteBuffer bb = ByteBuffer.wrap(data);
+
+        if (id.pageNumber() == 0) {
+            kind = META;
+            level = bb.getInt();
+            next = bb.getInt();
+            int count = bb.getInt();
+            if (count < 0 || count > maxEntries(META, keyType, pageSize)) {
+                throw new IOException("bad hash directory count " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                pages.add(bb.getInt());
+            }
+        } else {
+            kind = bb.get();
+            if (kind != BUCKET && kind != DIRECTORY) {
+                throw new IOException("bad hash page kind " + kind);
+            }
+            int count = bb.getInt();
+            link = bb.getInt();
+            if (count < 0 || count > maxEntries(kind, keyType, pageSize)) {
+                throw new IOException("bad hash entry count " + count);
+            }
+            try {
+                for (int i = 0; i < count; i++) {
+                    if (kind == DIRECTORY) {
+                        pages.add(bb.getInt());
+                    } else {
+                        keys.add(keyType.parse(bb));
+                        ridPages.add(bb.getInt());
+                        ridSlots.add(bb.getInt());
+                    }
+                }
+            } catch (java.text.ParseException e) {
+                throw new IOException("bad hash entry: " + e.getMessage());
+            }
+        }
+        oldData = data.clone();
+    }
+
+    /**
+     * @return the number of entries a page of the given kind can hold
+     */
+    static int maxEntries(int kind, Type keyType, int pageSize) {
+        switch (kind) {
+        case META:
+            return (pageSize - META_HEADER_SIZE) / 4;
+        case DIRECTORY:
+            return (pageSize - HEADER_SIZE) / 4;
+        default:
+            return (pageSize - HEADER_SIZE) / (keyType.getLen() + 8);
+        }
+    }
+
+    int getKind() {
+        return kind;
+    }
+
+    /**
+     * @return true if the page cannot take another entry
+     */
+    boolean isFull() {
+        int count = kind == BUCKET ? keys.size() : pages.size();
+        return count >= maxEntries(kind, keyType, pageSize);
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    int getNext() {
+        return next;
+    }
+
+    void setSplitState(int level, int next) {
+        this.level = level;
+        this.next = next;
+    }
+
+    /**
+     * @return the number of directory pages of a meta page, or of buckets
+     *         of a directory page
+     */
+    int getNumPages() {
+        return pages.size();
+    }
+
+    int getPage(int i) {
+        return pages.get(i);
+    }
+
+    void addPage(int pgNo) {
+        pages.add(pgNo);
+    }
+
+    int getNumEntries() {
+        return keys.size();
+    }
+
+    Field getKey(int i) {
+        return keys.get(i);
+    }
+
+    int getRidPage(int i) {
+        return ridPages.get(i);
+    }
+
+    int getRidSlot(int i) {
+        return ridSlots.get(i);
+    }
+
+    /**
+     * @return the index of the entry (key, ridPage, ridSlot), or -1
+     */
+    int find(Field key, int ridPage, int ridSlot) {
+        for (int i = 0; i < keys.size(); i++) {
+            if (ridPages.get(i) == ridPage && ridSlots.get(i) == ridSlot && keys.get(i).equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void addEntry(Field key, int ridPage, int ridSlot) {
+        keys.add(key);
+        ridPages.add(ridPage);
+        ridSlots.add(ridSlot);
+    }
+
+    void removeEntry(int i) {
+        keys.remove(i);
+        ridPages.remove(i);
+        ridSlots.remove(i);
+    }
+
+    void clearEntries() {
+        keys.clear();
+        ridPages.clear();
+        ridSlots.clear();
+    }
+
+    /**
+     * @return the next page of the overflow chain, or 0 if this is the last
+     */
+    int getLink() {
+        return link;
+    }
+
+    void setLink(int link) {
+        this.link = link;
+    }
+
+    public HashPageId getId() {
+        return pid;
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer bb = ByteBuffer.allocate(pageSize);
+        if (kind == META) {
+            bb.putInt(level);
+            bb.putInt(next);
+            bb.putInt(pages.size());
+            for (int pgNo : pages) {
+                bb.putInt(pgNo);
+            }
+            return bb.array();
+        }
+        bb.put((byte) kind);
+        if (kind == DIRECTORY) {
+            bb.putInt(pages.size());
+            bb.putInt(link);
+            for (int pgNo : pages) {
+                bb.putInt(pgNo);
+            }
+            return bb.array();
+        }
+        bb.putInt(keys.size());
+        bb.putInt(link);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(keyType.getLen());
+        DataOutputStream dos = new DataOutputStream(baos);
+        for (int i = 0; i < keys.size(); i++) {
+            baos.reset();
+            try {
+                keys.get(i).serialize(dos);
+                dos.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            bb.put(baos.toByteArray(), 0, keyType.getLen());
+            bb.putInt(ridPages.get(i));
+            bb.putInt(ridSlots.get(i));
+        }
+        return bb.array();
+    }
+
+    /**
+     * @return an empty page of pageSize bytes, a bucket page unless it is
+     *         page 0
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize];
+    }
+
+    /**
+     * @return an empty directory page of pageSize bytes
+     */
+    static byte[] createEmptyDirectoryData(int pageSize) {
+        byte[] data = new byte[pageSize];
+        data[0] = DIRECTORY;
+        return data;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtyId = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyId;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public HashPage getBeforeImage() {
+        try {
+            return new HashPage(pid, oldData, keyType);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
@@ -1,6 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -24,11 +27,95 @@ public class HeapFile implements DbFile {
      */
     private File f;
     private TupleDesc td;
+    private transient volatile FileChannel channel;
+
+    /** Number of pages covered by one mapped segment in memory-mapped mode. */
+    private static final int SEGMENT_PAGES = 1024;
+
+    private boolean memoryMapped;
+    private final int pageSize;
+    private transient MappedByteBuffer[] segments;
+
+    private transient FreeSpaceMap freeSpace;
+    private transient ZoneMap zoneMap;
+    //fields with a Bloom filter, and the filters once loaded
+    private final Set<Integer> bloomFields = new TreeSet<Integer>();
+    private transient Map<Integer,BloomFilter> bloomFilters;
+    private transient SortOrder sortOrder;
 
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, optionally serving
+     * page reads from a memory mapping of the file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     * @param td the schema of the tuples stored in the file.
+     * @param memoryMapped if true, readPage decodes pages directly out of
+     *          read-only MappedByteBuffer segments of SEGMENT_PAGES pages
+     *          each. Writes still go through writePage.
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped) {
+        this(f, td, memoryMapped, BufferPool.getPageSize());
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * pageSize bytes long.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     * @param td the schema of the tuples stored in the file.
+     * @param memoryMapped see {@link #HeapFile(File, TupleDesc, boolean)}
+     * @param pageSize bytes per page of this file, including header.
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped, int pageSize) {
         // some code goes here
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("bad page size " + pageSize);
+        }
         this.f = f;
         this.td = td;
+        this.memoryMapped = memoryMapped;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the number of bytes per page of this file.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return true if page reads of this file are served from a memory mapping.
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Returns the files a HeapFile over f, or one of its subclasses, may keep
+     * next to f: the free-space map, zone map, sort order and Bloom filters,
+     * the copy being clustered, and the dictionary of a DictHeapFile. None of
+     * them need exist.
+     *
+     * @param numFields the number of fields of the table, each of which may
+     *        have a Bloom filter
+     */
+    public static File[] sidecars(File f, int numFields) {
+        String[] suffixes = { ".fsm", ".zm", ".sort", ".sorting", ".dict" };
+        File[] sidecars = new File[suffixes.length + numFields];
+        for (int i = 0; i < suffixes.length; i++) {
+            sidecars[i] = new File(f.getPath() + suffixes[i]);
+        }
+        for (int i = 0; i < numFields; i++) {
+            sidecars[suffixes.length + i] = new File(f.getPath() + "." + i + ".bf");
+        }
+        return sidecars;
     }
 
     /**
@@ -69,27 +156,384 @@ public class HeapFile implements DbFile {
         return td;
     }
 
+    /**
+     * Returns the channel used for all page reads and writes of this file,
+     * opening it on first use. The channel stays open for the lifetime of the
+     * HeapFile so that scans do not pay an open/close per page. Only
+     * positional reads and writes are issued on it, which never touch the
+     * shared channel position and are therefore safe under concurrent callers.
+     */
+    private FileChannel getChannel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen()) {
+            return ch;
+        }
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                channel = new RandomAccessFile(f, "rw").getChannel();
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Returns the map of pages with free slots, creating it on first use.
+     */
+    private synchronized FreeSpaceMap getFreeSpaceMap() {
+        if (freeSpace == null) {
+            freeSpace = new FreeSpaceMap(this);
+        }
+        return freeSpace;
+    }
+
+    /**
+     * Returns the per-page ranges of the int fields, creating them on first
+     * use.
+     */
+    private synchronized ZoneMap getZoneMap() {
+        if (zoneMap == null) {
+            zoneMap = new ZoneMap(this);
+        }
+        return zoneMap;
+    }
+
+    /**
+     * Returns the field the file is sorted on and its sorted pages, loading
+     * them on first use.
+     */
+    private synchronized SortOrder getSortOrder() {
+        if (sortOrder == null) {
+            sortOrder = new SortOrder(this);
+        }
+        return sortOrder;
+    }
+
+    /**
+     * Rewrites the file with its tuples sorted ascending on the given field
+     * and records the order, see {@link #getClusteredField}. Scans filtered
+     * by a range or equality predicate on the field then read only the
+     * contiguous pages that can hold matching tuples, found by binary
+     * search, and queries ordered by the field need no sort. The sort is
+     * external, holding BufferPool.DEFAULT_PAGES pages in memory at a time,
+     * so files larger than the BufferPool are sorted as well.
+     * <p>
+     * Every tuple moves, so RecordIds held elsewhere, e.g. by the entries of
+     * an index, are no longer valid; {@link Catalog#clusterTable} rebuilds
+     * the indexes of the table. The pages of the file are dropped from the
+     * BufferPool, and the file must not be accessed concurrently.
+     *
+     * @see ExternalSort
+     */
+    public synchronized void cluster(int field) throws IOException, DbException {
+        if (field < 0 || field >= td.numFields()) {
+            throw new IllegalArgumentException("no field " + field);
+        }
+        File sorted = new File(f.getPath() + ".sorting");
+        int pages = new ExternalSort(this, field, BufferPool.DEFAULT_PAGES, BufferPool.DEFAULT_PAGES - 1)
+                .sort(sorted);
+
+        Database.getBufferPool().discardPages(getId());
+        close();
+        if (!f.delete() || !sorted.renameTo(f)) {
+            sorted.delete();
+            throw new IOException("could not replace " + f + " by its sorted copy");
+        }
+        dropSidecars();
+        getSortOrder().set(field, pages);
+    }
+
+    /**
+     * Drops the free-space map, zone map and Bloom filters, which are
+     * rebuilt from the pages on next use, after the pages were rewritten.
+     */
+    private synchronized void dropSidecars() throws IOException {
+        close();
+        new File(f.getPath() + ".fsm").delete();
+        new File(f.getPath() + ".zm").delete();
+        for (int bf : bloomFields) {
+            new File(f.getPath() + "." + bf + ".bf").delete();
+        }
+        freeSpace = null;
+        zoneMap = null;
+        bloomFilters = null;
+    }
+
+    /**
+     * One step of compacting the file after deletes, see
+     * {@link Catalog#vacuumTable}: moves the tuples of page pgNo into the
+     * free slots of earlier pages, through BufferPool.deleteTuple and
+     * insertTuple so that the indexes of the table follow them. Moving
+     * stops when no page before pgNo has a free slot left.
+     * <p>
+     * The step runs as tid and locks only page pgNo and the pages its
+     * tuples move into, so that a vacuum run as one short transaction per
+     * page never holds more than a few page locks at a time. Moved tuples
+     * get new RecordIds.
+     *
+     * @return true if page pgNo was left empty, false if the earlier pages
+     *         ran out of free slots first
+     */
+    public boolean vacuumPage(TransactionId tid, int pgNo)
+        throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        BufferPool bp = Database.getBufferPool();
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        Page page = bp.getPage(tid, new HeapPageId(getId(), pgNo), Permissions.READ_WRITE);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (Iterator<Tuple> it = pageIterator(page); it.hasNext(); ) {
+            tuples.add(it.next());
+        }
+        for (Tuple t : tuples) {
+            int free = fsm.nextFreePage(0);
+            if (free < 0 || free >= pgNo) {
+                return false;
+            }
+            bp.deleteTuple(tid, t);
+            bp.insertTuple(tid, getId(), t);
+            if (t.getRecordId().getPageId().pageNumber() >= pgNo) {
+                //every earlier page turned out to be full
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The last step of compacting the file, see {@link Catalog#vacuumTable}:
+     * truncates the empty pages off the end of the file, as tid. An empty
+     * page is taken out of the free-space map before it is locked and
+     * checked, so that no insert is sent to it, and pages appended
+     * meanwhile keep the file from being truncated at all; see insertTuple.
+     * The truncated pages are dropped from the BufferPool, and the
+     * free-space map, zone map and Bloom filters are rebuilt from the
+     * remaining pages, which also tightens the zone map ranges and drops
+     * deleted values from the filters.
+     *
+     * @return the number of pages the file shrank by
+     */
+    public int truncateEmptyPages(TransactionId tid)
+        throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        BufferPool bp = Database.getBufferPool();
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        int before = numPages();
+
+        //no insert can reach an empty page once it is out of the free-space
+        //map and locked
+        int keep = before;
+        while (keep > 0) {
+            fsm.setFree(keep - 1, false);
+            Page page = bp.getPage(tid, new HeapPageId(getId(), keep - 1), Permissions.READ_WRITE);
+            if (pageIterator(page).hasNext()) {
+                fsm.setFree(keep - 1, hasRoomFor(page, null));
+                break;
+            }
+            keep--;
+        }
+        if (keep == before) {
+            return 0;
+        }
+        synchronized (this) {
+            if (numPages() != before) {
+                //pages were appended after the empty ones
+                for (int i = keep; i < before; i++) {
+                    fsm.setFree(i, true);
+                }
+                return 0;
+            }
+            getChannel().truncate((long) keep * pageSize);
+            dropSidecars();
+        }
+        for (int i = keep; i < before; i++) {
+            bp.discardPage(new HeapPageId(getId(), i));
+        }
+        return before - keep;
+    }
+
+    /**
+     * @return the field the file was last clustered on, or -1 if it never
+     *         was
+     * @see #cluster
+     */
+    public int getClusteredField() {
+        return getSortOrder().field();
+    }
+
+    /**
+     * @return the number of leading pages of the file that are sorted on
+     *         {@link #getClusteredField}. Pages appended since the file was
+     *         clustered follow them; an insert into one of the sorted pages
+     *         ends the sorted run before that page.
+     */
+    public int sortedPages() {
+        return getSortOrder().field() < 0 ? 0 : Math.min(getSortOrder().sortedPages(), numPages());
+    }
+
+    /**
+     * @return true if every page of the file is sorted on the given field
+     */
+    public boolean isSortedOn(int field) {
+        return getSortOrder().field() == field && sortedPages() == numPages();
+    }
+
+    /**
+     * Keeps a Bloom filter over the given field, so that equality lookups
+     * of values no tuple holds, through {@link #iterator(TransactionId, List)}
+     * or an {@link IndexScan}, read no page. Meant for primary-key and
+     * indexed fields; the filter is built from the pages on first use.
+     *
+     * @see BloomFilter
+     */
+    public synchronized void addBloomFilter(int field) {
+        if (field < 0 || field >= td.numFields()) {
+            throw new IllegalArgumentException("no field " + field);
+        }
+        bloomFields.add(field);
+    }
+
+    /**
+     * @return true if the file keeps a Bloom filter over the given field
+     */
+    public synchronized boolean hasBloomFilter(int field) {
+        return bloomFields.contains(field);
+    }
+
+    /**
+     * Returns false if no tuple of the file holds value in the given field,
+     * without reading any page; true if one may, or if the field has no
+     * Bloom filter.
+     */
+    public boolean mayContain(int field, Field value) {
+        BloomFilter bf = getBloomFilter(field);
+        return bf == null || bf.mayContain(value);
+    }
+
+    private synchronized BloomFilter getBloomFilter(int field) {
+        if (!bloomFields.contains(field)) {
+            return null;
+        }
+        if (bloomFilters == null) {
+            bloomFilters = new HashMap<Integer,BloomFilter>();
+        }
+        BloomFilter bf = bloomFilters.get(field);
+        if (bf == null) {
+            bf = new BloomFilter(this, field);
+            bloomFilters.put(field, bf);
+        }
+        return bf;
+    }
+
+    //adds t, just written to page pgNo, to the Bloom filters
+    private void addToBloomFilters(int pgNo, Tuple t) {
+        if (bloomFields.isEmpty()) return;
+        for (int field : new ArrayList<Integer>(bloomFields)) {
+            getBloomFilter(field).add(pgNo, t);
+        }
+    }
+
+    /**
+     * Closes the channel backing this file. The next page access reopens it.
+     */
+    public synchronized void close() throws IOException {
+        segments = null;
+        if (freeSpace != null) {
+            freeSpace.close();
+        }
+        if (zoneMap != null) {
+            zoneMap.close();
+        }
+        if (bloomFilters != null) {
+            for (BloomFilter bf : bloomFilters.values()) {
+                bf.close();
+            }
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Returns a buffer positioned over the given page inside the memory
+     * mapping of this file, or null if the page lies beyond the end of the
+     * file. A segment is (re)mapped when it is first touched or when the file
+     * has grown past the end of its current mapping.
+     * <p>
+     * The mapping is read-only and shares the OS page cache with the channel,
+     * so pages written through writePage are visible in it without any
+     * explicit invalidation.
+     */
+    private ByteBuffer mappedPage(int pgNo) throws IOException {
+        int seg = pgNo / SEGMENT_PAGES;
+        int offset = (pgNo % SEGMENT_PAGES) * pageSize;
+        ByteBuffer bb;
+
+        synchronized (this) {
+            if (segments == null || segments.length <= seg) {
+                MappedByteBuffer[] grown = new MappedByteBuffer[seg + 1];
+                if (segments != null) {
+                    System.arraycopy(segments, 0, grown, 0, segments.length);
+                }
+                segments = grown;
+            }
+
+            MappedByteBuffer m = segments[seg];
+            if (m == null || m.capacity() < offset + pageSize) {
+                FileChannel ch = getChannel();
+                long segStart = (long) seg * SEGMENT_PAGES * pageSize;
+                long len = Math.min((long) SEGMENT_PAGES * pageSize, ch.size() - segStart);
+                if (len < offset + pageSize) {
+                    return null;
+                }
+                m = ch.map(FileChannel.MapMode.READ_ONLY, segStart, len);
+                segments[seg] = m;
+            }
+            bb = m.duplicate();
+        }
+
+        bb.position(offset);
+        bb.limit(offset + pageSize);
+        return bb.slice();
+    }
+
+    //the page as it is in the BufferPool if a transaction changed it there,
+    //else as it is on disk, for the maps of the file, which must cover
+    //tuples that are not committed yet
+    Page readCurrentPage(PageId pid) {
+        Page page = Database.getBufferPool().getDirtyPage(pid);
+        return page != null ? page : readPage(pid);
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid){
-        byte[] buf = new byte[BufferPool.PAGE_SIZE];
+        if (memoryMapped) {
+            try {
+                ByteBuffer mapped = mappedPage(pid.pageNumber());
+                if (mapped != null) {
+                    //one bulk copy out of the mapping, tuples are decoded lazily
+                    byte[] buf = new byte[pageSize];
+                    mapped.get(buf);
+                    return createPage((HeapPageId)pid, buf);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        byte[] buf = new byte[pageSize];
         Page wantedPage = null;
 
         // some code goes here
         try{
-            InputStream is = new FileInputStream(f);
-
-            //skip to get the wanted data according to pageid
-            /*
-                is.skip() method can skip the specific bytes from file head,
-                so, we use skip method to make offset from head.
-            */
-            int offset = pid.pageNumber() * BufferPool.PAGE_SIZE;
-            if(offset > 0)  is.skip(offset);
+            //pread the whole page at its offset, bytes past the end of file stay zero
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            long offset = (long) pid.pageNumber() * pageSize;
+            FileChannel ch = getChannel();
+            while (bb.hasRemaining()) {
+                int n = ch.read(bb, offset + bb.position());
+                if (n < 0) break;
+            }
 
-            //read data
-            is.read(buf);
-            wantedPage = new HeapPage((HeapPageId)pid,buf);
-            is.close();
+            wantedPage = createPage((HeapPageId)pid,buf);
 
         }catch (IOException e){
             //throw new IOException("fail read page!");
@@ -99,25 +543,76 @@ public class HeapFile implements DbFile {
         return wantedPage;
     }
 
-    // see DbFile.java for javadocs
-    public void writePage(Page page) throws IOException {
-        // some code goes here
-        try{
-            RandomAccessFile rf = new RandomAccessFile(f,"rw");
+    /**
+     * Builds a page of this file from its on-disk bytes. This and the other
+     * page hooks below are the only places that know the page format, so a
+     * subclass can store a different page layout while reusing the I/O,
+     * free-space tracking and scan code of HeapFile.
+     *
+     * @see SlottedHeapFile
+     */
+    protected Page createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
 
-            int offset = page.getId().pageNumber() * BufferPool.PAGE_SIZE;
-            rf.seek(offset);
+    /**
+     * @return an iterator over the tuples stored on a page of this file
+     */
+    protected Iterator<Tuple> pageIterator(Page page) {
+        return ((HeapPage) page).iterator();
+    }
 
-            //read data
-            rf.write(page.getPageData());
+    /**
+     * @return true if t fits on the page; if t is null, whether the page can
+     *         still take any tuple at all
+     */
+    protected boolean hasRoomFor(Page page, Tuple t) {
+        return ((HeapPage) page).getNumEmptySlots() > 0;
+    }
 
-            rf.close();
+    /**
+     * Stores t on the page and sets its RecordId.
+     */
+    protected void insertIntoPage(Page page, Tuple t) throws DbException {
+        ((HeapPage) page).insertTuple(t);
+    }
 
-        }catch (IOException e){
-            //throw new IOException("fail read page!");
-            e.printStackTrace();
-        }
+    /**
+     * Removes t, identified by its RecordId, from the page.
+     */
+    protected void deleteFromPage(Page page, Tuple t) throws DbException {
+        ((HeapPage) page).deleteTuple(t);
+    }
 
+    /**
+     * @return the tuple in the given slot of the page, or null if the slot
+     *         is empty
+     */
+    protected Tuple tupleAt(Page page, int slot) {
+        return ((HeapPage) page).getTuple(slot);
+    }
+
+    /**
+     * Returns the tuple with the given RecordId, reading its page through the
+     * BufferPool with a shared lock; null if the slot is empty. Used to
+     * follow the entries of an index.
+     */
+    public Tuple fetchTuple(TransactionId tid, RecordId rid)
+        throws DbException, TransactionAbortedException, InterruptedException {
+        Page page = Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_ONLY);
+        return tupleAt(page, rid.tupleno());
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        // some code goes here
+        //pwrite the page at its offset, the channel position is never moved
+        ByteBuffer bb = ByteBuffer.wrap(page.getPageData());
+        long offset = (long) page.getId().pageNumber() * pageSize;
+        FileChannel ch = getChannel();
+        while (bb.hasRemaining()) {
+            ch.write(bb, offset + bb.position());
+        }
     }
 
     /**
@@ -125,7 +620,7 @@ public class HeapFile implements DbFile {
      */
     public int numPages() {
         // some code goes here
-        return (int) Math.ceil(f.length() / BufferPool.PAGE_SIZE);
+        return (int) Math.ceil(f.length() / pageSize);
     }
 
 
@@ -137,34 +632,69 @@ public class HeapFile implements DbFile {
         ArrayList<Page> affectPages = new ArrayList<Page>();
         if (t == null) return affectPages;
 
-        int numPages = numPages();
-        boolean pageFull = true;
-        int i = 0;
-        //文件里的页不为0，返回受到影响的page
-        for (; i < numPages; i++) {
-            PageId pageId = new HeapPageId(getId(), i);
-            HeapPage page = (HeapPage)Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
-            if (page.getNumEmptySlots() != 0) {
-                page.insertTuple(t);
-                page.markDirty(true, tid);
+        while (true) {
+            Page page = insertIntoFreePage(tid, t);
+            if (page != null) {
                 affectPages.add(page);
-                writePage(page);
-                pageFull = false;
-                break;
+                return affectPages;
+            }
+            //every page is full, append an empty one, which the tuple then
+            //goes to through the BufferPool like any other, so that it stays
+            //there until tid commits; under the monitor, so that vacuum sees
+            //it before truncating
+            synchronized (this) {
+                HeapPageId pageId = new HeapPageId(getId(), numPages());
+                Page newPage = createPage(pageId, new byte[pageSize]);
+                if (!hasRoomFor(newPage, t)) {
+                    throw new DbException("Tuple does not fit on an empty page!");
+                }
+                writePage(newPage);
+                getFreeSpaceMap().setFree(pageId.pageNumber(), true);
             }
         }
+    }
 
-        if (numPages == 0 || pageFull) {
-            //文件里含的页为0，所以需要创建一个page
+    //inserts t into the first page the free-space map points at that has
+    //room for it, and returns that page, or null if none has; only those
+    //pages are locked and probed
+    private Page insertIntoFreePage(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        BufferPool bp = Database.getBufferPool();
+        for (int i = fsm.nextFreePage(0); i >= 0; i = fsm.nextFreePage(i + 1)) {
             PageId pageId = new HeapPageId(getId(), i);
-            HeapPage newPage = new HeapPage((HeapPageId)pageId, new byte[BufferPool.PAGE_SIZE]);
-            newPage.insertTuple(t);
-            newPage.markDirty(true, tid);
-            writePage(newPage);
-            affectPages.add(newPage);
+            boolean held = bp.holdsLock(tid, pageId);
+            Page page = bp.getPage(tid, pageId, Permissions.READ_WRITE);
+            if (!hasRoomFor(page, t)) {
+                //stale entry, the page filled up since it was recorded
+                fsm.setFree(i, false);
+                if (!held) {
+                    bp.releasePage(tid, pageId);
+                }
+                continue;
+            }
+            //vacuum truncates under this monitor, and may have cut the page
+            //off while the lock was awaited
+            boolean truncated;
+            synchronized (this) {
+                truncated = i >= numPages();
+                if (!truncated) {
+                    insertIntoPage(page, t);
+                    page.markDirty(true, tid);
+                    getZoneMap().widen(i, t);
+                    addToBloomFilters(i, t);
+                    getSortOrder().invalidate(i);
+                    getFreeSpaceMap().setFree(i, hasRoomFor(page, null));
+                }
+            }
+            if (truncated) {
+                //the empty page read past the end of the file
+                bp.discardPage(pageId);
+                continue;
+            }
+            return page;
         }
-
-        return affectPages;
+        return null;
     }
 
     // see DbFile.java for javadocs
@@ -174,11 +704,12 @@ public class HeapFile implements DbFile {
 
         int numPages = numPages();
 
-        HeapPage page = null;
+        Page page = null;
 
-        page = (HeapPage)Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
-        page.deleteTuple(t);
+        page = Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
+        deleteFromPage(page, t);
         page.markDirty(true, tid);
+        getFreeSpaceMap().setFree(page.getId().pageNumber(), true);
 
         return page;
 
@@ -191,11 +722,55 @@ public class HeapFile implements DbFile {
 
     }
 
+    /**
+     * Returns an iterator over the tuples of this file that skips the pages
+     * on which, according to the per-page ranges of the int fields, no tuple
+     * can satisfy all of the given predicates. Skipped pages are not
+     * fetched through the BufferPool. If a Bloom filter rules out the value
+     * of an equality predicate, no page is read at all. Tuples of the pages
+     * that are read are returned whether or not they satisfy the
+     * predicates, so the caller still has to filter them. If the file is
+     * clustered, range and equality predicates on the clustered field limit
+     * the scan to a contiguous run of its sorted pages, found by binary
+     * search, and the pages appended since it was clustered.
+     *
+     * @param filters predicates on the fields of this file
+     * @see ZoneMap
+     * @see #addBloomFilter
+     * @see #cluster
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> filters) {
+        FileIterator it = new FileIterator(tid, numPages());
+        if (!filters.isEmpty()) {
+            it.filters = new ArrayList<Predicate>(filters);
+        }
+        return it;
+    }
+
     public class FileIterator implements DbFileIterator {
         private int numpages;
         private int pageIndex;
         private TransactionId tid = null;
         private Iterator<Tuple> tempiter;
+        //pages the zone map rules out for these are skipped, see iterator(tid, filters)
+        private List<Predicate> filters;
+        //on a clustered file, the scan jumps from rangeEnd to tailStart,
+        //past the sorted pages that cannot match
+        private int rangeEnd;
+        private int tailStart;
+        //the frames a scan of much of the pool reads into, or null
+        private BufferRing ring;
+        //the page tempiter iterates, pinned while it does, or null, and the
+        //pool it is pinned in, which a test may have replaced since
+        private PageId pinned;
+        private BufferPool pinnedIn;
+
+        //read-ahead state: last page fetched, length of the current run of
+        //sequential fetches, current window and last page handed to read-ahead
+        private int lastPage;
+        private int seqRun;
+        private int window;
+        private int readAheadTo;
 
         public FileIterator(TransactionId tid, int numPages){
             this.numpages = numPages;
@@ -205,11 +780,28 @@ public class HeapFile implements DbFile {
         }
 
         public void open() throws DbException, TransactionAbortedException, InterruptedException {
+            unpin();
             if (numpages == 0){
                 tempiter = null;
                 return;
             }
             pageIndex = 0;
+            lastPage = -1;
+            seqRun = 0;
+            window = 0;
+            readAheadTo = -1;
+            rangeEnd = numpages;
+            tailStart = numpages;
+            if (filters != null && !mayContain(filters)) {
+                tempiter = null;
+                return;
+            }
+            if (filters != null) {
+                seekRange();
+            }
+            if (ring == null) {
+                ring = Database.getBufferPool().newScanRing(rangeEnd - pageIndex + numpages - tailStart);
+            }
             tempiter = getTuplesInPage();
         }
 
@@ -238,16 +830,184 @@ public class HeapFile implements DbFile {
         public void close() {
             this.pageIndex = 0;
             this.tempiter = null;
+            unpin();
+            releaseRing();
+        }
+
+        private void unpin() {
+            if (pinned != null) {
+                pinnedIn.unpinPage(pinned);
+                pinned = null;
+                pinnedIn = null;
+            }
+        }
+
+        private void releaseRing() {
+            if (ring != null) {
+                ring.release();
+                ring = null;
+            }
         }
 
         public Iterator<Tuple> getTuplesInPage() throws TransactionAbortedException, DbException, InterruptedException {
+            if (pageIndex == rangeEnd) {
+                pageIndex = tailStart;
+            }
+            while (filters != null && pageIndex < numpages && !mayMatch(pageIndex)) {
+                //a skipped page does not break a sequential run
+                if (lastPage == pageIndex - 1) {
+                    lastPage = pageIndex;
+                }
+                pageIndex++;
+                if (pageIndex == rangeEnd) {
+                    pageIndex = tailStart;
+                }
+            }
+            unpin();
             if (pageIndex > numpages - 1) {
+                releaseRing();
                 return null;
             }
 
             HeapPageId pid = new HeapPageId(getId(),pageIndex);
-            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
-            return page.iterator();
+            BufferPool bp = Database.getBufferPool();
+            Page page = bp.pinPage(tid, pid, Permissions.READ_ONLY, ring);
+            pinned = pid;
+            pinnedIn = bp;
+            readAhead(pageIndex);
+            return pageIterator(page);
+        }
+
+        //false if a Bloom filter rules out an equality predicate
+        private boolean mayContain(List<Predicate> predicates) {
+            for (Predicate p : predicates) {
+                if (p.getOp() == Predicate.Op.EQUALS && !HeapFile.this.mayContain(p.getField(), p.getOperand())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean mayMatch(int pageNo) {
+            return getZoneMap().mayMatch(pageNo, filters);
+        }
+
+        /**
+         * On a clustered file, starts the scan at the last sorted page whose
+         * smallest key is below the lower bound the filters put on the
+         * clustered field, since equal keys may begin on it, and ends the
+         * sorted part of the scan before the first page whose smallest key
+         * is above the upper bound. Both are found by binary search, reading
+         * log2(sorted pages) pages.
+         */
+        private void seekRange() throws TransactionAbortedException, DbException, InterruptedException {
+            int field = getClusteredField();
+            int sorted = Math.min(sortedPages(), numpages);
+            if (field < 0 || sorted == 0) return;
+
+            Field lo = null;
+            Field hi = null;
+            for (Predicate p : filters) {
+                if (p.getField() != field) continue;
+                Field v = p.getOperand();
+                switch (p.getOp()) {
+                case EQUALS:
+                    lo = lo == null || v.compare(Predicate.Op.GREATER_THAN, lo) ? v : lo;
+                    hi = hi == null || v.compare(Predicate.Op.LESS_THAN, hi) ? v : hi;
+                    break;
+                case GREATER_THAN:
+                case GREATER_THAN_OR_EQ:
+                    lo = lo == null || v.compare(Predicate.Op.GREATER_THAN, lo) ? v : lo;
+                    break;
+                case LESS_THAN:
+                case LESS_THAN_OR_EQ:
+                    hi = hi == null || v.compare(Predicate.Op.LESS_THAN, hi) ? v : hi;
+                    break;
+                default:
+                    break;
+                }
+            }
+            if (lo == null && hi == null) return;
+
+            int start = lo == null ? 0 : Math.max(firstPageFrom(lo, false, field, sorted) - 1, 0);
+            int end = hi == null ? sorted : firstPageFrom(hi, true, field, sorted);
+            pageIndex = start;
+            rangeEnd = Math.max(start, end);
+            tailStart = sorted;
+        }
+
+        //the first sorted page whose smallest key is at least v, or above v
+        //if strict; sorted if there is none
+        private int firstPageFrom(Field v, boolean strict, int field, int sorted)
+                throws TransactionAbortedException, DbException, InterruptedException {
+            Predicate.Op op = strict ? Predicate.Op.GREATER_THAN : Predicate.Op.GREATER_THAN_OR_EQ;
+            int lo = 0;
+            int hi = sorted;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                Field key = smallestKey(mid, field, sorted);
+                if (key == null || key.compare(op, v)) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+
+        //the smallest key on the page, or on the next sorted page that is
+        //not empty; null if they all are
+        private Field smallestKey(int pageNo, int field, int sorted)
+                throws TransactionAbortedException, DbException, InterruptedException {
+            for (int i = pageNo; i < sorted; i++) {
+                Page page = Database.getBufferPool().getPage(tid, new HeapPageId(getId(), i), Permissions.READ_ONLY);
+                Field min = null;
+                Iterator<Tuple> it = pageIterator(page);
+                while (it.hasNext()) {
+                    Field f = it.next().getField(field);
+                    if (min == null || f.compare(Predicate.Op.LESS_THAN, min)) {
+                        min = f;
+                    }
+                }
+                if (min != null) {
+                    return min;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adaptive read-ahead. Once two pages have been fetched in order the
+         * scan is treated as sequential and the following pages are handed to
+         * BufferPool.readAhead, so they are already cached when the scan gets
+         * there. The window starts at 2 pages and doubles on every further
+         * sequential fetch up to BufferPool.getReadAheadPages(); any
+         * non-sequential fetch resets it.
+         */
+        private void readAhead(int pageNo) {
+            BufferPool bp = Database.getBufferPool();
+            if (lastPage >= 0 && pageNo == lastPage + 1) {
+                seqRun++;
+            } else {
+                seqRun = 0;
+                window = 0;
+                readAheadTo = pageNo;
+            }
+            lastPage = pageNo;
+
+            int maxWindow = bp.getReadAheadPages();
+            if (seqRun == 0 || maxWindow == 0) return;
+
+            window = Math.min(window == 0 ? 2 : window * 2, maxWindow);
+            //the sorted pages past rangeEnd are not scanned
+            int end = pageNo < rangeEnd ? rangeEnd : numpages;
+            int last = Math.min(pageNo + window, end - 1);
+            for (int i = Math.max(readAheadTo, pageNo) + 1; i <= last; i++) {
+                if (filters == null || mayMatch(i)) {
+                    bp.readAhead(new HeapPageId(getId(), i), ring);
+                }
+            }
+            readAheadTo = Math.max(readAheadTo, last);
         }
     }
 }
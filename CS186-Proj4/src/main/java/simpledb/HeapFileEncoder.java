@@ -90,6 +90,20 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator, false);
+  }
+
+   /** Like {@link #convert(File, File, int, int, Type[], char)}, optionally
+    * laying out every page column by column, as read by PaxHeapPage, instead
+    * of row by row.
+    *
+    * @see PaxHeapPage
+    * @see PaxHeapFile
+    * @param columnar if true, write pages in the PaxHeapPage format
+    */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator, boolean columnar)
+      throws IOException {
 
       int nrecbytes = 0;
       for (int i = 0; i < numFields ; i++) {
@@ -208,7 +222,10 @@ public class HeapFileEncoder {
             headerStream.flush();
             headerBAOS.writeTo(os);
             pageStream.flush();
-            pageBAOS.writeTo(os);
+            if (columnar)
+                os.write(toColumns(pageBAOS.toByteArray(), typeAr, nrecords, recordcount));
+            else
+                pageBAOS.writeTo(os);
             
             // reset header and body for next page
             headerBAOS = new ByteArrayOutputStream(nheaderbytes);
@@ -223,4 +240,26 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /** Rearranges the body of a page, recordcount records written one after
+   * the other, so that the values of each field are contiguous, with room
+   * for nrecords values per field.
+   */
+  private static byte[] toColumns(byte[] rows, Type[] typeAr, int nrecords, int recordcount) {
+      byte[] columns = new byte[rows.length];
+      int nrecbytes = 0;
+      for (Type t : typeAr)
+          nrecbytes += t.getLen();
+
+      int fieldOffset = 0;
+      int columnStart = 0;
+      for (Type t : typeAr) {
+          int len = t.getLen();
+          for (int r = 0; r < recordcount; r++)
+              System.arraycopy(rows, r * nrecbytes + fieldOffset, columns, columnStart + r * len, len);
+          fieldOffset += len;
+          columnStart += nrecords * len;
+      }
+      return columns;
+  }
 }
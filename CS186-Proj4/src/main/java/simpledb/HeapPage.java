@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -15,10 +16,21 @@ public class HeapPage implements Page {
 
     HeapPageId pid;
     TupleDesc td;
+    //on-disk format of a slot: td, unless a subclass stores some fields as
+    //another type
+    TupleDesc layout;
     byte header[];
     Tuple tuples[];
     int numSlots;
 
+    //raw bytes of the page as read from disk, never modified; used slots are
+    //decoded from here on demand and cached in tuples[]
+    byte[] data;
+    //bytes per page, the length of data
+    int pageSize;
+    //offset of every field inside a tuple
+    int fieldOffsets[];
+
     byte[] oldData;
     TransactionId dirtyId;
 
@@ -27,39 +39,76 @@ public class HeapPage implements Page {
      * The format of a HeapPage is a set of header bytes indicating
      * the slots of the page that are in use, some number of tuple slots.
      *  Specifically, the number of tuples is equal to: <p>
-     *          floor((BufferPool.PAGE_SIZE*8) / (tuple size * 8 + 1))
+     *          floor((page size*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
      * database table, which can be determined via {@link Catalog#getTupleDesc}.
      * The number of 8-bit header words is equal to:
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The page size is the length of data, normally the page size of the
+     * HeapFile the page belongs to.
+     * <p>
+     * Only the header is decoded here. The page keeps a reference to data
+     * and decodes a tuple, or a single field, the first time it is asked
+     * for, so callers must not modify the array afterwards.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#PAGE_SIZE
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, data, null);
+    }
+
+    /**
+     * Create a HeapPage whose slots are laid out according to layout rather
+     * than to the schema of the table. layout must have as many fields as
+     * the schema; a null layout means the schema itself. The number of slots
+     * and the field offsets are computed from the layout.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    HeapPage(HeapPageId id, byte[] data, TupleDesc layout) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.layout = layout != null ? layout : td;
+        this.pageSize = data.length;
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.data = data;
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-
-        try{
-            // allocate and read the actual records of this page
-            tuples = new Tuple[numSlots];
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
+        System.arraycopy(data, 0, header, 0, header.length);
+
+        // tuples are decoded lazily, see getTuple
+        tuples = new Tuple[numSlots];
+        fieldOffsets = new int[this.layout.numFields()];
+        for (int j=1; j<fieldOffsets.length; j++)
+            fieldOffsets[j] = fieldOffsets[j-1] + this.layout.getFieldType(j-1).getLen();
 
-        setBeforeImage();
+        // data is never modified, so it is already an image of the page as read
+        oldData = data;
+    }
+
+    /**
+     * Create a HeapPage from a buffer holding exactly one page, in the format
+     * described above. The buffer may be a slice of a memory-mapped file; its
+     * bytes are copied once into a private array, without decoding any
+     * tuple, so later writes to the file cannot change this page. The
+     * buffer is not retained.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, copyPage(data));
+    }
+
+    private static byte[] copyPage(ByteBuffer data) {
+        ByteBuffer bb = data.duplicate();
+        byte[] copy = new byte[bb.remaining()];
+        bb.get(copy);
+        return copy;
     }
 
     /** Retrieve the number of tuples on this page.
@@ -72,9 +121,9 @@ public class HeapPage implements Page {
         }
         
         //calculate the tuple size
-        int tupleSize = td.getSize();
+        int tupleSize = layout.getSize();
         //calculate max number of tuples
-        int numTuples = (int) Math.floor((BufferPool.PAGE_SIZE * 8) / (tupleSize * 8 + 1));
+        int numTuples = (int) Math.floor((pageSize * 8) / (tupleSize * 8 + 1));
 
         return numTuples;
 
@@ -106,7 +155,7 @@ public class HeapPage implements Page {
     }
     
     public void setBeforeImage() {
-        oldData = getPageData().clone();
+        oldData = getPageData();
     }
 
     /**
@@ -120,37 +169,43 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Returns the tuple in the given slot, decoding it from the raw page
+     * bytes the first time it is asked for. The fields of the returned
+     * tuple are themselves decoded only when read.
+     *
+     * @return the tuple, or null if the slot is empty
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
+    Tuple getTuple(int slotId) {
         if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
             return null;
         }
+        if (tuples[slotId] == null) {
+            tuples[slotId] = new Tuple(td, this, slotId);
+        }
+        return tuples[slotId];
+    }
+
+    /**
+     * @return the offset inside the page of a field of the tuple in the given
+     *         slot; tuples are stored one after the other, row by row
+     */
+    int fieldPosition(int slotId, int fieldNo) {
+        return header.length + slotId * layout.getSize() + fieldOffsets[fieldNo];
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
+    /**
+     * Decodes a single field of the tuple stored in the given slot straight
+     * from the raw page bytes.
+     */
+    Field readField(int slotId, int fieldNo) throws NoSuchElementException {
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        bb.position(fieldPosition(slotId, fieldNo));
         try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
+            return layout.getFieldType(fieldNo).parse(bb);
         } catch (java.text.ParseException e) {
             e.printStackTrace();
             throw new NoSuchElementException("parsing error!");
         }
-
-        return t;
     }
 
     /**
@@ -165,7 +220,7 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.PAGE_SIZE;
+        int len = pageSize;
         ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
         DataOutputStream dos = new DataOutputStream(baos);
 
@@ -180,11 +235,12 @@ public class HeapPage implements Page {
         }
 
         // create the tuples
+        int tupleSize = layout.getSize();
         for (int i=0; i<tuples.length; i++) {
 
             // empty slot
             if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
+                for (int j=0; j<tupleSize; j++) {
                     try {
                         dos.writeByte(0);
                     } catch (IOException e) {
@@ -195,11 +251,21 @@ public class HeapPage implements Page {
                 continue;
             }
 
+            // non-empty slot that was never decoded, copy its raw bytes
+            if (tuples[i] == null) {
+                try {
+                    dos.write(data, header.length + i * tupleSize, tupleSize);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+
             // non-empty slot
             for (int j=0; j<td.numFields(); j++) {
                 Field f = tuples[i].getField(j);
                 try {
-                    f.serialize(dos);
+                    writeField(dos, j, f);
                 
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -208,7 +274,7 @@ public class HeapPage implements Page {
         }
 
         // padding
-        int zerolen = BufferPool.PAGE_SIZE - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
+        int zerolen = pageSize - (header.length + tupleSize * tuples.length); //- numSlots * td.getSize();
         byte[] zeroes = new byte[zerolen];
         try {
             dos.write(zeroes, 0, zerolen);
@@ -225,6 +291,14 @@ public class HeapPage implements Page {
         return baos.toByteArray();
     }
 
+    /**
+     * Writes field fieldNo of a tuple in its on-disk format, getLen() bytes
+     * of the layout type of the field.
+     */
+    void writeField(DataOutputStream dos, int fieldNo, Field f) throws IOException {
+        f.serialize(dos);
+    }
+
     /**
      * Static method to generate a byte array corresponding to an empty
      * HeapPage.
@@ -232,11 +306,19 @@ public class HeapPage implements Page {
      * this method to the HeapPage constructor will create a HeapPage with
      * no valid tuples in it.
      *
-     * @return The returned ByteArray.
+     * @return The returned ByteArray, of the database-wide page size.
+     * @see BufferPool#getPageSize
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return an empty HeapPage of pageSize bytes.
+     * @see #createEmptyPageData()
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -367,34 +449,29 @@ public class HeapPage implements Page {
     public Iterator<Tuple> iterator() {
         // some code goes here
         return new Iterator<Tuple>() {
-            //to index the used slots
-            private int nextSlot = 0;   
-
-            /*
-            if the index of used slots great than totalUsedSlot, it means 
-            all the used slots are visited, the iteration should be stoped.
-            */
-            private int totalUsedSlot = numSlots - getNumEmptySlots();
+            //the next used slot, or numSlots once all of them are visited
+            private int slotIndex = nextUsedSlot(0);
 
-            //to index the total slots
-            private int slotIndex = 0;
+            private int nextUsedSlot(int from) {
+                while (from < numSlots && !isSlotUsed(from)) {
+                    from++;
+                }
+                return from;
+            }
 
             public boolean hasNext() {
-                if (nextSlot < totalUsedSlot) return true;
-                return false;
+                return slotIndex < numSlots;
             }
 
             public Tuple next() {
                 if (!hasNext()) {
                     throw new NoSuchElementException();
                 }
-                
-                while(tuples[slotIndex] == null){
-                    slotIndex++;
-                }
 
-                nextSlot++;
-                return tuples[slotIndex++];
+                //only the slot header is consulted, the tuple is decoded lazily
+                Tuple t = getTuple(slotIndex);
+                slotIndex = nextUsedSlot(slotIndex + 1);
+                return t;
             }
 
             public void remove() {
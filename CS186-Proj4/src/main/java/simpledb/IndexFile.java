@@ -0,0 +1,84 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * The interface for secondary indexes over one field of a table. An index
+ * is a DbFile whose tuples are entries (key, heap page number, heap slot),
+ * one per tuple of the table, followed by copies of the fields of the tuple
+ * given by {@link #getIncludedFields}; {@link #getRecordId} turns an entry
+ * into the RecordId of the tuple it points at.
+ * <p>
+ * Indexes are registered with {@link Catalog#addIndex}. BufferPool then
+ * keeps them current when tuples are inserted into or deleted from the
+ * table, and LogicalPlan and JoinOptimizer read the table through them
+ * with an {@link IndexScan} or an {@link IndexNestedLoopJoin} when that is
+ * cheaper than a scan. {@link #insertTuple} and {@link #deleteTuple} take a
+ * tuple of the table, with its RecordId set.
+ *
+ * @see BTreeFile
+ * @see HashFile
+ */
+public interface IndexFile extends DbFile {
+
+    /**
+     * @return the id of the indexed table
+     */
+    public int getTableId();
+
+    /**
+     * @return the indexed field of the table
+     */
+    public int getKeyField();
+
+    /**
+     * @return the fields of the table, other than the key, that entries
+     *         hold after the RecordId, in that order. A query that
+     *         references no other field can be answered from the entries
+     *         alone.
+     */
+    public int[] getIncludedFields();
+
+    /**
+     * @return the RecordId of the tuple of the table an entry points at
+     */
+    public RecordId getRecordId(Tuple entry);
+
+    /**
+     * @return true if {@link #indexIterator} can serve <tt>key op value</tt>
+     *         without reading every entry
+     */
+    public boolean supports(Predicate.Op op);
+
+    /**
+     * @return true if no two tuples of the table may have the same key;
+     *         BufferPool.insertTuple then refuses a tuple whose key is
+     *         already in the index
+     */
+    public boolean isUnique();
+
+    /**
+     * @return the number of pages read at random to reach the first
+     *         matching entry, used in {@link TableStats#estimateIndexScanCost}
+     */
+    public int probePages();
+
+    /**
+     * @return the number of pages of the index, used in
+     *         {@link TableStats#estimateIndexOnlyScanCost}
+     */
+    public int numPages();
+
+    /**
+     * Returns an iterator over the entries whose key satisfies
+     * <tt>key op value</tt>. op must be supported.
+     *
+     * @see #getRecordId
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field value);
+
+    /**
+     * Closes the channel backing this file. The next page access reopens it.
+     */
+    public void close() throws IOException;
+}
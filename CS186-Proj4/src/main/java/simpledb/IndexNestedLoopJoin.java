@@ -0,0 +1,220 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexNestedLoopJoin is a join operator whose inner relation is a table
+ * with an index on its join field. Instead of reading the inner
+ * relation, it probes the index once for every outer tuple, through an
+ * {@link IndexScan}, so its cost grows with the size of the outer relation
+ * rather than with that of the inner one. Output tuples are the
+ * concatenation of the outer and inner tuple, as for {@link Join}.
+ * <p>
+ * The inner child is the plan the join replaces: a SeqScan of the indexed
+ * table, possibly below Filters. It is never opened; the predicates of the
+ * Filters are applied to the tuples the probes return.
+ *
+ * @see JoinOptimizer#instantiateJoin
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final JoinPredicate p;
+    private final IndexFile index;
+    private DbIterator outer;
+    private DbIterator inner;
+    private TupleDesc td;
+
+    //predicates of the Filters above the inner SeqScan
+    private final List<Predicate> innerFilters = new ArrayList<Predicate>();
+    private String innerAlias;
+
+    private Tuple outerTuple;
+    private IndexScan probe;
+
+    /**
+     * @param tid
+     *            The transaction the probes run as a part of
+     * @param p
+     *            The predicate to use to join the children; field 2 must be
+     *            the indexed field, and the operator an equality or a
+     *            comparison the index supports
+     * @param outer
+     *            Iterator for the left(outer) relation to join
+     * @param inner
+     *            a SeqScan of the table index is over, possibly below
+     *            Filters
+     * @param index
+     *            the index to probe
+     * @throws IllegalArgumentException if inner is not such a plan, or if
+     *         the index cannot serve p
+     */
+    public IndexNestedLoopJoin(TransactionId tid, JoinPredicate p, DbIterator outer, DbIterator inner,
+            IndexFile index) {
+        if (!canProbe(inner, p.getField2(), index) || !canProbe(p.getOperator())
+                || !index.supports(p.getOperator())) {
+            throw new IllegalArgumentException("the inner relation cannot be read through the index");
+        }
+        this.tid = tid;
+        this.p = p;
+        this.index = index;
+        setChildren(new DbIterator[] { outer, inner });
+    }
+
+    /**
+     * @return true if plan is a SeqScan of the table index is over, possibly
+     *         below Filters, and field of its tuples is the indexed field
+     */
+    static boolean canProbe(DbIterator plan, int field, IndexFile index) {
+        while (plan instanceof Filter) {
+            plan = ((Filter) plan).getChildren()[0];
+        }
+        if (!(plan instanceof SeqScan) || field != index.getKeyField()) {
+            return false;
+        }
+        return Database.getCatalog().getTableId(((SeqScan) plan).getTableName()) == index.getTableId();
+    }
+
+    /**
+     * @return true if the index can serve a join predicate with operator op
+     */
+    static boolean canProbe(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    public IndexFile getIndex() {
+        return index;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    /**
+     * @return the field name of join field1, quantified by alias or table
+     *         name
+     */
+    public String getJoinField1Name() {
+        return outer.getTupleDesc().getFieldName(p.getField1());
+    }
+
+    /**
+     * @return the field name of join field2, quantified by alias or table
+     *         name
+     */
+    public String getJoinField2Name() {
+        return inner.getTupleDesc().getFieldName(p.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        if (td == null) {
+            td = TupleDesc.merge(outer.getTupleDesc(), inner.getTupleDesc());
+        }
+        return td;
+    }
+
+    //key op value with the operands swapped, so that value op' key
+    private static Predicate.Op swap(Predicate.Op op) {
+        switch (op) {
+        case LESS_THAN:
+            return Predicate.Op.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        case GREATER_THAN:
+            return Predicate.Op.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        default:
+            return op;
+        }
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+        TransactionAbortedException, InterruptedException {
+        super.open();
+        outer.open();
+        outerTuple = null;
+        probe = null;
+    }
+
+    public void close() {
+        outer.close();
+        if (probe != null) {
+            probe.close();
+            probe = null;
+        }
+        outerTuple = null;
+        super.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException, InterruptedException {
+        close();
+        open();
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException, InterruptedException {
+        while (true) {
+            while (probe != null && probe.hasNext()) {
+                Tuple t = probe.next();
+                if (passes(t)) {
+                    return merge(outerTuple, t);
+                }
+            }
+            if (probe != null) {
+                probe.close();
+                probe = null;
+            }
+            if (!outer.hasNext()) {
+                return null;
+            }
+            outerTuple = outer.next();
+            //the inner field, compared to the outer one
+            probe = new IndexScan(tid, index, swap(p.getOperator()), outerTuple.getField(p.getField1()),
+                    innerAlias);
+            probe.open();
+        }
+    }
+
+    private boolean passes(Tuple t) {
+        for (Predicate f : innerFilters) {
+            if (!f.filter(t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        int n1 = t1.getTupleDesc().numFields();
+        int n2 = t2.getTupleDesc().numFields();
+        Tuple t = new Tuple(getTupleDesc());
+        for (int i = 0; i < n1; i++) {
+            t.setField(i, t1.getField(i));
+        }
+        for (int i = 0; i < n2; i++) {
+            t.setField(n1 + i, t2.getField(i));
+        }
+        return t;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { outer, inner };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        outer = children[0];
+        inner = children[1];
+        td = null;
+        innerFilters.clear();
+        DbIterator plan = inner;
+        while (plan instanceof Filter) {
+            innerFilters.add(((Filter) plan).getPredicate());
+            plan = ((Filter) plan).getChildren()[0];
+        }
+        innerAlias = ((SeqScan) plan).getAlias();
+    }
+}
@@ -0,0 +1,222 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan is an access method that returns the tuples of a table whose
+ * indexed field satisfies <tt>field op value</tt>, by walking the matching
+ * entries of an {@link IndexFile} and reading the tuple each entry points
+ * at. Tuples come out in the order of the index, key order for a
+ * {@link BTreeFile}; pages of the table that hold no matching tuple are
+ * never read, and an equality lookup of a key the Bloom filter of the table
+ * rules out (see {@link HeapFile#addBloomFilter}) reads no page at all.
+ * <p>
+ * An index-only scan never reads the table: its tuples hold just the
+ * fields of the table the index covers, its key and included fields (see
+ * {@link IndexFile#getIncludedFields}), in the order of the table, and are
+ * built from the entries. It can also scan every entry of the index,
+ * which for a wide table is much less to read than the table itself.
+ * An index whose entries hold every field of the table, like the key
+ * index of an {@link LsmFile}, is always read index-only.
+ *
+ * @see LogicalPlan#physicalPlan
+ */
+public class IndexScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final IndexFile index;
+    private final Predicate.Op op;
+    private final Field value;
+    private final String tableAlias;
+    private final boolean indexOnly;
+    //index-only: the fields of the table the tuples hold, and for each the
+    //field of the entry it is copied from
+    private int[] fields;
+    private int[] entryFields;
+    private TupleDesc td;
+
+    private DbFileIterator entries;
+    private Tuple next;
+
+    /**
+     * Creates a scan over the tuples of the table indexed by index whose
+     * key satisfies <tt>key op value</tt>.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param index
+     *            an index over a HeapFile in the Catalog that supports op
+     * @param tableAlias
+     *            the alias of the table, used as the prefix of the field
+     *            names like in {@link SeqScan}
+     */
+    public IndexScan(TransactionId tid, IndexFile index, Predicate.Op op, Field value, String tableAlias) {
+        this(tid, index, op, value, tableAlias, false);
+    }
+
+    /**
+     * Creates a scan that, if indexOnly is set, answers from the entries
+     * of the index alone; its tuples then hold only the fields the index
+     * covers. op may then be null, to return a tuple for every entry.
+     *
+     * @see #IndexScan(TransactionId, IndexFile, Predicate.Op, Field, String)
+     */
+    public IndexScan(TransactionId tid, IndexFile index, Predicate.Op op, Field value, String tableAlias,
+            boolean indexOnly) {
+        if (op == null && !indexOnly) {
+            throw new IllegalArgumentException("only an index-only scan can scan the whole index");
+        }
+        this.tid = tid;
+        this.index = index;
+        this.op = op;
+        this.value = value;
+        this.tableAlias = tableAlias;
+        int[] included = index.getIncludedFields();
+        //entries that hold every field of the table are as good as the table
+        this.indexOnly = indexOnly
+                || 1 + included.length == Database.getCatalog().getTupleDesc(index.getTableId()).numFields();
+        if (this.indexOnly) {
+            TreeMap<Integer,Integer> covered = new TreeMap<Integer,Integer>();
+            covered.put(index.getKeyField(), 0);
+            for (int i = 0; i < included.length; i++) {
+                covered.put(included[i], 3 + i);
+            }
+            fields = new int[covered.size()];
+            entryFields = new int[covered.size()];
+            int i = 0;
+            for (Map.Entry<Integer,Integer> e : covered.entrySet()) {
+                fields[i] = e.getKey();
+                entryFields[i++] = e.getValue();
+            }
+        }
+    }
+
+    public IndexScan(TransactionId tid, IndexFile index, Predicate.Op op, Field value) {
+        this(tid, index, op, value, Database.getCatalog().getTableName(index.getTableId()));
+    }
+
+    /**
+     * @return the name of the table the operator scans, as in the Catalog
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(index.getTableId());
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public IndexFile getIndex() {
+        return index;
+    }
+
+    /**
+     * @return true if the scan answers from the entries of the index alone
+     */
+    public boolean isIndexOnly() {
+        return indexOnly;
+    }
+
+    /**
+     * @return the predicate the scan applies, over the fields of the table,
+     *         or null if it returns every entry
+     */
+    public Predicate getPredicate() {
+        return op == null ? null : new Predicate(index.getKeyField(), op, value);
+    }
+
+    public void open() throws DbException, TransactionAbortedException, InterruptedException {
+        DbFile table = Database.getCatalog().getDbFile(index.getTableId());
+        if (op == Predicate.Op.EQUALS && table instanceof HeapFile
+                && !((HeapFile) table).mayContain(index.getKeyField(), value)) {
+            //the Bloom filter of the table rules the key out, skip the index
+            entries = null;
+            next = null;
+            return;
+        }
+        entries = op == null ? index.iterator(tid) : index.indexIterator(tid, op, value);
+        entries.open();
+        next = fetchNext();
+    }
+
+    //the next live tuple an entry points at, or null
+    private Tuple fetchNext() throws DbException, TransactionAbortedException, InterruptedException {
+        if (indexOnly) {
+            if (!entries.hasNext()) {
+                return null;
+            }
+            Tuple entry = entries.next();
+            Tuple t = new Tuple(getTupleDesc());
+            for (int i = 0; i < entryFields.length; i++) {
+                t.setField(i, entry.getField(entryFields[i]));
+            }
+            t.setRecordId(index.getRecordId(entry));
+            return t;
+        }
+        HeapFile table = (HeapFile) Database.getCatalog().getDbFile(index.getTableId());
+        while (entries.hasNext()) {
+            Tuple t = table.fetchTuple(tid, index.getRecordId(entries.next()));
+            if (t != null) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the TupleDesc of the table, or for an index-only scan of the
+     *         fields it covers, with field names prefixed with the
+     *         tableAlias string from the constructor
+     * @see SeqScan#getTupleDesc
+     */
+    public TupleDesc getTupleDesc() {
+        if (td != null) {
+            return td;
+        }
+        TupleDesc tableDesc = Database.getCatalog().getTupleDesc(index.getTableId());
+        int numFields = indexOnly ? fields.length : tableDesc.numFields();
+        Type[] types = new Type[numFields];
+        String[] names = new String[numFields];
+        for (int i = 0; i < numFields; i++) {
+            int f = indexOnly ? fields[i] : i;
+            String prefix = tableAlias == null ? "null." : tableAlias + ".";
+            String suffix = tableDesc.getFieldName(f) == null ? "null" : tableDesc.getFieldName(f);
+            names[i] = prefix + suffix;
+            types[i] = tableDesc.getFieldType(f);
+        }
+        td = new TupleDesc(types, names);
+        return td;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return next != null;
+    }
+
+    public Tuple next() throws NoSuchElementException,
+        TransactionAbortedException, DbException, InterruptedException {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        Tuple t = next;
+        next = fetchNext();
+        return t;
+    }
+
+    public void close() {
+        if (entries != null) {
+            entries.close();
+        }
+        next = null;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+        TransactionAbortedException, InterruptedException {
+        close();
+        open();
+    }
+}
@@ -148,11 +148,22 @@ public class IntHistogram {
      *     This is not an indispensable method to implement the basic
      *     join optimization. It may be needed if you want to
      *     implement a more efficient optimization
+     *
+     *     It is the expected selectivity of an equality predicate whose
+     *     operand is one of the histogrammed values, picked at random:
+     *     the sum over the buckets of the chance of picking a value of the
+     *     bucket times the selectivity of that value.
      * */
     public double avgSelectivity()
     {
-        // some code goes here
-        return 1.0;
+        if (ntups == 0) return 1.0;
+        //a bucket holds at least one distinct value
+        double width = Math.max(1.0, gap_w);
+        double selectivity = 0.0;
+        for (int h : histogram) {
+            selectivity += (h / ntups) * (h / width / ntups);
+        }
+        return selectivity;
     }
 
     /**
@@ -13,7 +13,8 @@ public class Join extends Operator {
     private DbIterator child2;
     private Tuple[] leftBuffer;
     private Tuple[] rightBuffer;
-    private ArrayList<Tuple> tempTps;
+    //the joined tuples, staged encoded rather than as objects
+    private MemoryFile tempTps;
     private HashMap<Integer, Integer> map;
 
     //131072 is the default buffer of mysql join operation
@@ -139,7 +140,7 @@ public class Join extends Operator {
     */
     @Deprecated
     private Iterator<Tuple> SingleBlockNestLoop() throws DbException, TransactionAbortedException, InterruptedException {
-        tempTps = new ArrayList<Tuple>();
+        tempTps = new MemoryFile(getTupleDesc());
 
         //只使用右缓存
         int rightBufferSize = BLOCKMEMORY / child2.getTupleDesc().getSize();
@@ -165,7 +166,7 @@ public class Join extends Operator {
             rbSize = 0;
         }
 
-        return tempTps.iterator();
+        return tempTps.tuples();
     }
 
     /*
@@ -197,7 +198,7 @@ public class Join extends Operator {
     private Iterator<Tuple> sortMergeAndBlockNestLoop() throws TransactionAbortedException, DbException, InterruptedException {
         int tpSize1 = child1.getTupleDesc().numFields();
         int tpSize2 = child2.getTupleDesc().numFields();
-        tempTps = new ArrayList<Tuple>();
+        tempTps = new MemoryFile(getTupleDesc());
 
         //use sorted-merge algorithm
         int leftBufferSize = BLOCKMEMORY / child1.getTupleDesc().getSize();
@@ -284,7 +285,7 @@ public class Join extends Operator {
 
         }
 
-        return tempTps.iterator();
+        return tempTps.tuples();
     }
 
     private void sortMerge(int leftSize, int rightSize) {
@@ -45,6 +45,21 @@ public class JoinOptimizer {
      */
     public static DbIterator instantiateJoin(LogicalJoinNode lj,
             DbIterator plan1, DbIterator plan2) throws ParsingException {
+        return instantiateJoin(lj, plan1, plan2, null);
+    }
+
+    /**
+     * Like {@link #instantiateJoin(LogicalJoinNode, DbIterator, DbIterator)},
+     * but builds an {@link IndexNestedLoopJoin} for a join the optimizer
+     * marked with {@link LogicalJoinNode#useIndex}, if plan2 is still a scan
+     * of the indexed table.
+     *
+     * @param tid
+     *            The transaction the index probes run as a part of; null
+     *            never builds an index join
+     */
+    public static DbIterator instantiateJoin(LogicalJoinNode lj,
+            DbIterator plan1, DbIterator plan2, TransactionId tid) throws ParsingException {
 
         int t1id = 0, t2id = 0;
         DbIterator j;
@@ -69,12 +84,36 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
+        if (lj.useIndex && tid != null && !(lj instanceof LogicalSubplanJoinNode)) {
+            Integer tableId = lj.t2Alias == null ? null : scannedTable(plan2);
+            if (tableId != null) {
+                //the cheapest index to probe, as in estimateIndexJoinCost
+                IndexFile best = null;
+                for (IndexFile index : Database.getCatalog().getIndexes(tableId)) {
+                    if (IndexNestedLoopJoin.canProbe(plan2, t2id, index) && index.supports(lj.p)
+                            && (best == null || index.probePages() < best.probePages()))
+                        best = index;
+                }
+                if (best != null)
+                    return new IndexNestedLoopJoin(tid, p, plan1, plan2, best);
+            }
+        }
+
         j = new Join(p,plan1,plan2);
 
         return j;
 
     }
 
+    //the table plan scans, through any Filters, or null if it is not a scan
+    private static Integer scannedTable(DbIterator plan) {
+        while (plan instanceof Filter)
+            plan = ((Filter) plan).getChildren()[0];
+        if (!(plan instanceof SeqScan))
+            return null;
+        return Database.getCatalog().getTableId(((SeqScan) plan).getTableName());
+    }
+
     /**
      * Estimate the cost of a join.
      *
@@ -101,9 +140,63 @@ public class JoinOptimizer {
      * @return An estimate of the cost of this query, in terms of cost1 and
      *         cost2
      */
-    // fuck this function!!!!!
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
             double cost1, double cost2) {
+        return estimateJoinCost(j, card1, card2, cost1, cost2, true);
+    }
+
+    /**
+     * Estimate the cost of a join, which is the cheaper of a nested-loop join
+     * and, if the right-hand side is a base table with an index on its join
+     * field, an index nested-loop join (see {@link #estimateIndexJoinCost}).
+     *
+     * @param innerIsTable
+     *            false if the right-hand side is the result of other joins,
+     *            which cannot be probed through an index
+     * @see #estimateJoinCost(LogicalJoinNode, int, int, double, double)
+     */
+    public double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2, boolean innerIsTable) {
+        double nestedLoop = estimateNestedLoopJoinCost(j, card1, card2, cost1, cost2);
+        if (!innerIsTable)
+            return nestedLoop;
+        return Math.min(nestedLoop, estimateIndexJoinCost(j, card1, cost1));
+    }
+
+    /**
+     * Estimate the cost of an index nested-loop join: one scan of the
+     * left-hand side, and for every tuple of it a probe of the index on
+     * j.t2Alias.f2PureName that reads the matching tuples at random, priced
+     * by {@link TableStats#estimateIndexScanCost} with the average
+     * selectivity of the join field.
+     *
+     * @return the cost, or Double.MAX_VALUE if there is no such index
+     */
+    public double estimateIndexJoinCost(LogicalJoinNode j, int card1, double cost1) {
+        if (j instanceof LogicalSubplanJoinNode || j.t2Alias == null
+                || !IndexNestedLoopJoin.canProbe(j.p))
+            return Double.MAX_VALUE;
+        Integer tableId = p.getTableId(j.t2Alias);
+        if (tableId == null)
+            return Double.MAX_VALUE;
+        TableStats stats = TableStats.getTableStats(Database.getCatalog().getTableName(tableId));
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableId);
+        double best = Double.MAX_VALUE;
+        for (IndexFile index : Database.getCatalog().getIndexes(tableId)) {
+            if (stats != null && j.f2PureName.equals(td.getFieldName(index.getKeyField()))
+                    && index.supports(j.p)) {
+                double sel = stats.avgSelectivity(index.getKeyField(), j.p);
+                double matches = (double) card1 * stats.totalTuples() * sel;
+                best = Math.min(best,
+                        cost1 + card1 * stats.estimateIndexScanCost(sel, index.probePages()) + matches);
+            }
+        }
+        return best;
+    }
+
+    // fuck this function!!!!!
+    private double estimateNestedLoopJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2) {
         if (j instanceof LogicalSubplanJoinNode) {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Project 3.
@@ -334,7 +427,10 @@ public class JoinOptimizer {
         Set<LogicalJoinNode> allNode = new HashSet<LogicalJoinNode>();
         allNode.addAll(joins);
         Vector<LogicalJoinNode> orders = cache.getOrder(allNode);
-
+        if (orders == null) {
+            //no joins at all, or none of the orders is valid
+            orders = new Vector<LogicalJoinNode>();
+        }
 
         if (explain) printJoins(orders, cache, stats,filterSelectivities);
         // some code goes here
@@ -407,6 +503,8 @@ public class JoinOptimizer {
         double t1cost, t2cost;
         int t1card, t2card;
         boolean leftPkey, rightPkey;
+        //whether each side is a base table rather than the result of prevBest
+        boolean leftTable = true, rightTable = true;
 
         if (news.isEmpty()) { // base case -- both are base relations
             prevBest = new Vector<LogicalJoinNode>();
@@ -442,6 +540,7 @@ public class JoinOptimizer {
                 // subtree is
                 t1card = bestCard;
                 leftPkey = hasPkey(prevBest);
+                leftTable = false;
 
                 t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
                         .estimateScanCost();
@@ -458,6 +557,7 @@ public class JoinOptimizer {
                 // subtree is
                 t2card = bestCard;
                 rightPkey = hasPkey(prevBest);
+                rightTable = false;
 
                 t1cost = stats.get(table1Name).estimateScanCost();
                 t1card = stats.get(table1Name).estimateTableCardinality(
@@ -474,11 +574,14 @@ public class JoinOptimizer {
         // case where prevbest is left
         //time cost
 
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost, rightTable);
 
         LogicalJoinNode j2 = j.swapInnerOuter();
         //time cost
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
+        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost, leftTable);
+        int outerCard = t1card;
+        double outerCost = t1cost;
+        boolean innerTable = rightTable;
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
@@ -486,6 +589,14 @@ public class JoinOptimizer {
             tmp = rightPkey;
             rightPkey = leftPkey;
             leftPkey = tmp;
+            outerCard = t2card;
+            outerCost = t2cost;
+            innerTable = leftTable;
+        }
+        if (innerTable && estimateIndexJoinCost(j, outerCard, outerCost) <= cost1) {
+            //a node of its own: j may be part of other plans without the index
+            j = new LogicalJoinNode(j.t1Alias, j.t2Alias, j.f1PureName, j.f2PureName, j.p);
+            j.useIndex = true;
         }
         if (cost1 >= bestCostSoFar)
             return null;
@@ -1,146 +1,130 @@
 package simpledb;
 
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
 
-public class LRUCache {
-    private HashMap<PageId, Page> map;
-    private LRUList lruList;
+/**
+ * A PageCache that evicts the least recently used page once it holds more
+ * pages than its capacity, see {@link ReplacementPolicy#LRU}. Every cached
+ * page is held by a node of a HashMap that is also linked into a list in
+ * order of use, least recent first, so that a lookup, which moves its node
+ * to the end of the list, an insert and an eviction each take O(1), and a
+ * hit allocates nothing.
+ */
+public class LRUCache implements PageCache {
+
+    //a cached page, linked into the list in order of use
+    private static final class Node {
+        final PageId pageId;
+        Page page;
+        Node pre;
+        Node next;
+
+        Node(PageId pageId, Page page) {
+            this.pageId = pageId;
+            this.page = page;
+        }
+    }
+
+    private final HashMap<PageId, Node> map;
+    //sentinel of the circular list: head.next is the least recently used
+    //node, head.pre the most recently used
+    private final Node head;
     private final int MAX_CAPACITY;
-    private HashMap<PageId, ReentrantLock> writeLocks;
+    private final EvictionFilter filter;
 
     public LRUCache(int capacity) {
-        this.map = new HashMap<PageId, Page>();
-        this.lruList = new LRUList(capacity);
-        this.MAX_CAPACITY = capacity;
-        this.writeLocks = new HashMap<PageId, ReentrantLock>();
+        this(capacity, EVICT_ANY);
     }
 
-    public HashMap<PageId, Page> getMap(){
-        return map;
+    public LRUCache(int capacity, EvictionFilter filter) {
+        this.map = new HashMap<PageId, Node>(capacity * 4 / 3 + 1);
+        this.head = new Node(null, null);
+        head.pre = head;
+        head.next = head;
+        this.MAX_CAPACITY = capacity;
+        this.filter = filter;
     }
 
-    public Page get(PageId key) {
-        Page temp = map.get(key);
-        if (temp != null){
-            try{
-                lruList.add(lruList.remove(key));
-            } catch (Exception e){
-                e.printStackTrace();
-            }
-        }
-        return temp;
+    /**
+     * @return the ids of the cached pages, copied
+     */
+    public synchronized ArrayList<PageId> pageIds() {
+        return new ArrayList<PageId>(map.keySet());
     }
 
-    public void put(PageId key, Page value) {
-        lruList.add(key);
-        map.put(key, value);
-
-        //LRU policy
-        if (lruList.size() > MAX_CAPACITY) {
-            PageId head = lruList.getHead();
-            try{
-                lruList.remove(head);
-            } catch (Exception e){
-                e.printStackTrace();
-            }
-            map.remove(head);
-        }
+    public synchronized int size() {
+        return map.size();
     }
 
-}
-
-class LRUList{
-
-    class Node{
-        PageId pageId;
-        Node pre;
-        Node next;
-
-        public Node(PageId pageId){
-            this.pageId = pageId;
-            pre = null;
-            next = null;
-        }
-
-        @Override
-        public boolean equals(Object o){
-            return pageId.equals(o);
-        }
+    public synchronized boolean contains(PageId key) {
+        return map.containsKey(key);
     }
 
-    private Node head;
-    private Node tail;
-    private int size;
-
-    public int size(){
-        return size;
+    /**
+     * @return the cached page, now the most recently used, or null
+     */
+    public synchronized Page get(PageId key) {
+        Node node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        append(node);
+        return node.page;
     }
 
-    public LRUList(int capacity){
-        this.size = 0;
-        this.head = null;
-        this.tail = null;
+    public synchronized Page remove(PageId key) {
+        Node node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.page;
     }
 
-    //添加节点必定是往最后添加
-    public void add(PageId pageId){
-        Node newNode = new Node(pageId);
-        if (head == null){
-            head = newNode;
-            tail = head;
+    /**
+     * Caches the page as the most recently used, replacing any page cached
+     * under the same id, and evicts the least recently used page the filter
+     * allows if the cache is then over capacity.
+     */
+    public synchronized boolean put(PageId key, Page value) {
+        Node node = map.get(key);
+        if (node != null) {
+            node.page = value;
+            unlink(node);
         } else {
-            tail.next = newNode;
-            newNode.pre = tail;
-            tail = newNode;
+            node = new Node(key, value);
+            map.put(key, node);
         }
+        append(node);
 
-        this.size++;
-    }
-
-    //移除节点有移除头部，移除中间
-    public PageId remove(PageId pageId) throws Exception {
-        if (head == null) return null;
-
-        this.size--;
-        if (head.equals(pageId)){
-            head = head.next;
-            if (head != null){
-                head.pre = null;
-            }
-            return pageId;
-        } else {
-            Node headCopy = head;
-            while (!headCopy.equals(pageId) && headCopy.next != null) {
-                headCopy = headCopy.next;
+        //LRU policy; node, just appended, is the last one the walk reaches
+        if (map.size() > MAX_CAPACITY) {
+            Node eldest = head.next;
+            while (eldest != node && !filter.mayEvict(eldest.pageId, eldest.page)) {
+                eldest = eldest.next;
             }
-
-            if (headCopy.next == null) {
-                if (!headCopy.equals(pageId)){
-                    throw new Exception("can't reach here!");
-                }
-
-                tail = headCopy.pre;
-
-                tail.next = null;
-                headCopy.pre = null;
-
-            } else{
-
-                headCopy.pre.next = headCopy.next;
-                headCopy.next.pre = headCopy.pre;
-
-                headCopy.next = null;
-                headCopy.pre = null;
-
+            if (eldest == node) {
+                unlink(node);
+                map.remove(key);
+                return false;
             }
-            return headCopy.pageId;
+            unlink(eldest);
+            map.remove(eldest.pageId);
         }
+        return true;
     }
 
-    public PageId getHead() {
-        return head.pageId;
+    private void unlink(Node node) {
+        node.pre.next = node.next;
+        node.next.pre = node.pre;
     }
 
+    //links node in as the most recently used
+    private void append(Node node) {
+        node.pre = head.pre;
+        node.next = head;
+        head.pre.next = node;
+        head.pre = node;
+    }
 }
-
@@ -1,17 +1,34 @@
 package simpledb;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class LockManager {
+    //the locks of a page are granted and released under the latch its
+    //hash picks, so that transactions locking different pages seldom wait
+    //for one another; a power of two
+    private static final int LATCHES = 64;
+
     private final ConcurrentHashMap<PageId, TransactionId> exclusiveLocks;
     private final ConcurrentHashMap<PageId, HashSet<TransactionId>> shareLocks;
+    private final Object[] latches;
 
     public LockManager() {
         exclusiveLocks = new ConcurrentHashMap<PageId, TransactionId>();
         shareLocks = new ConcurrentHashMap<PageId, HashSet<TransactionId>>();
+        latches = new Object[LATCHES];
+        for (int i = 0; i < LATCHES; i++) {
+            latches[i] = new Object();
+        }
+    }
+
+    private Object latch(PageId pid) {
+        int h = pid.hashCode() * 0x9E3779B9;
+        return latches[(h ^ (h >>> 16)) & (LATCHES - 1)];
     }
 
     /*
@@ -26,9 +43,11 @@ public class LockManager {
     //检测是否可以授予锁
     //等于1为写请求
     //等于0为读请求
-    public synchronized boolean grantLock(PageId pid, TransactionId tid, Permissions perm) throws TransactionAbortedException {
-        if (perm.permLevel == 0) return grantSLock(pid, tid);
-        if (perm.permLevel == 1) return grantXLock(pid, tid);
+    public boolean grantLock(PageId pid, TransactionId tid, Permissions perm) throws TransactionAbortedException {
+        synchronized (latch(pid)) {
+            if (perm.permLevel == 0) return grantSLock(pid, tid);
+            if (perm.permLevel == 1) return grantXLock(pid, tid);
+        }
         throw new TransactionAbortedException();
     }
 
@@ -44,9 +63,8 @@ public class LockManager {
             return true;
         } else {
             if (tidLock.equals(tid)) {
-                //如果是自己加的，降级为读锁
-                releaseLock(pid, tid);
-                lockPage(pid, tid, Permissions.READ_ONLY);
+                //its own write lock covers the read, and is kept, so that no
+                //other transaction reads the page before tid completes
                 return true;
             } else {
                 return false;
@@ -89,7 +107,7 @@ public class LockManager {
     }
 
     //锁页
-    private synchronized void lockPage(PageId pid, TransactionId tid, Permissions perm) {
+    private void lockPage(PageId pid, TransactionId tid, Permissions perm) {
         //加写锁
         if (perm.permLevel == 1) exclusiveLocks.put(pid, tid);
         //加读锁
@@ -104,8 +122,14 @@ public class LockManager {
     }
 
     //释放锁
-    public synchronized boolean releaseLock(PageId pid, TransactionId tid) throws TransactionAbortedException {
-        Permissions perm = holdLockType(pid, tid);
+    public boolean releaseLock(PageId pid, TransactionId tid) throws TransactionAbortedException {
+        synchronized (latch(pid)) {
+            return release(pid, tid);
+        }
+    }
+
+    private boolean release(PageId pid, TransactionId tid) throws TransactionAbortedException {
+        Permissions perm = lockType(pid);
         if (perm.permLevel == 0){
             HashSet<TransactionId> shareLock = shareLocks.get(pid);
             if (shareLock == null) return false;
@@ -129,8 +153,38 @@ public class LockManager {
         throw new TransactionAbortedException();
     }
 
+    //releases every lock tid holds, when it commits or aborts
+    public void releaseAllLocks(TransactionId tid) {
+        for (PageId pid : exclusiveLocks.keySet()) {
+            synchronized (latch(pid)) {
+                exclusiveLocks.remove(pid, tid);
+            }
+        }
+        for (PageId pid : shareLocks.keySet()) {
+            synchronized (latch(pid)) {
+                HashSet<TransactionId> shareLock = shareLocks.get(pid);
+                if (shareLock != null) shareLock.remove(tid);
+            }
+        }
+    }
+
+    //the pages tid holds a write lock on, which are those it may have dirtied
+    public ArrayList<PageId> exclusivePages(TransactionId tid) {
+        ArrayList<PageId> pids = new ArrayList<PageId>();
+        for (Map.Entry<PageId, TransactionId> e : exclusiveLocks.entrySet()) {
+            if (e.getValue().equals(tid)) pids.add(e.getKey());
+        }
+        return pids;
+    }
+
     //判断页面上锁的类型,0为读锁，1为写锁
     public Permissions holdLockType(PageId pageId, TransactionId tid) {
+        synchronized (latch(pageId)) {
+            return lockType(pageId);
+        }
+    }
+
+    private Permissions lockType(PageId pageId) {
         TransactionId writeTid = exclusiveLocks.get(pageId);
         HashSet<TransactionId> readTids = shareLocks.get(pageId);
 
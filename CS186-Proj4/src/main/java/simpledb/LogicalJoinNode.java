@@ -23,6 +23,10 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** True if the optimizer chose to probe an index on t2.f2 once for every
+     * tuple of t1 (see {@link IndexNestedLoopJoin}) */
+    public boolean useIndex;
+
     public LogicalJoinNode() {
     }
 
@@ -1,6 +1,8 @@
 package simpledb;
 import java.util.Map;
 import java.util.Vector;
+import java.util.Set;
+import java.util.HashSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.io.File;
@@ -283,6 +285,216 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /** For every table of the plan that has an index on a field it is
+     *  filtered on, compares the cost of a SeqScan with that of an
+     *  {@link IndexScan} serving the most selective such filter, as
+     *  estimated by {@link TableStats#estimateScanCost} and
+     *  {@link TableStats#estimateIndexScanCost}, and replaces the SeqScan
+     *  in subplanMap if the IndexScan is cheaper. An index that covers
+     *  every field the query references of the table is read index-only,
+     *  as estimated by {@link TableStats#estimateIndexOnlyScanCost}; a
+     *  table that is not joined is also scanned through a covering index
+     *  that serves none of its filters, if the index is smaller.
+     *  @return the filters the chosen IndexScans apply themselves
+     */
+    private Set<LogicalFilterNode> chooseIndexScans(TransactionId t, Map<String,TableStats> statsMap, boolean explain) {
+        HashMap<String,LogicalFilterNode> bestFilter = new HashMap<String,LogicalFilterNode>();
+        HashMap<String,IndexScan> bestScan = new HashMap<String,IndexScan>();
+        HashMap<String,Double> bestCost = new HashMap<String,Double>();
+
+        for (LogicalFilterNode lf : filters) {
+            Integer tableId = getTableId(lf.tableAlias);
+            if (tableId == null || !(subplanMap.get(lf.tableAlias) instanceof SeqScan))
+                continue;
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(tableId));
+            if (s == null)
+                continue;
+            TupleDesc td = Database.getCatalog().getTupleDesc(tableId);
+            for (IndexFile index : Database.getCatalog().getIndexes(tableId)) {
+                if (!lf.fieldPureName.equals(td.getFieldName(index.getKeyField())) || !index.supports(lf.p))
+                    continue;
+                Field f = constant(td.getFieldType(index.getKeyField()), lf.c);
+                if (f == null)
+                    continue;  //reported by physicalPlan
+                double sel = s.estimateSelectivity(index.getKeyField(), lf.p, f);
+                boolean covering = covers(index, lf.tableAlias);
+                double cost = covering ? s.estimateIndexOnlyScanCost(sel, index.probePages(), index.numPages())
+                        : s.estimateIndexScanCost(sel, index.probePages());
+                Double best = bestCost.get(lf.tableAlias);
+                if (cost < scanCost(lf.tableAlias, tableId, s) && (best == null || cost < best)) {
+                    bestCost.put(lf.tableAlias, cost);
+                    bestFilter.put(lf.tableAlias, lf);
+                    bestScan.put(lf.tableAlias, new IndexScan(t, index, lf.p, f, lf.tableAlias, covering));
+                }
+            }
+        }
+
+        //a joined table is left to the JoinOptimizer, which may probe an
+        //index of it instead
+        for (LogicalScanNode table : tables) {
+            if (bestScan.containsKey(table.alias) || isJoined(table.alias)
+                    || !(subplanMap.get(table.alias) instanceof SeqScan))
+                continue;
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+            if (s == null)
+                continue;
+            for (IndexFile index : Database.getCatalog().getIndexes(table.t)) {
+                if (!covers(index, table.alias))
+                    continue;
+                double cost = s.estimateIndexOnlyScanCost(1.0, index.probePages(), index.numPages());
+                Double best = bestCost.get(table.alias);
+                if (cost < scanCost(table.alias, table.t, s) && (best == null || cost < best)) {
+                    bestCost.put(table.alias, cost);
+                    bestScan.put(table.alias, new IndexScan(t, index, null, null, table.alias, true));
+                }
+            }
+        }
+
+        for (Map.Entry<String,IndexScan> e : bestScan.entrySet()) {
+            subplanMap.put(e.getKey(), e.getValue());
+            if (explain) {
+                LogicalFilterNode lf = bestFilter.get(e.getKey());
+                String on = lf != null ? lf.fieldQuantifiedName : e.getKey();
+                System.out.println("Using " + (e.getValue().isIndexOnly() ? "index-only" : "index")
+                        + " scan on " + on);
+            }
+        }
+        return new HashSet<LogicalFilterNode>(bestFilter.values());
+    }
+
+    /** @return the filter constant c as a field of the given type, or
+     *  null if it is not a valid int
+     */
+    private static Field constant(Type type, String c) {
+        try {
+            if (type == Type.INT_TYPE)
+                return new IntField(Integer.parseInt(c));
+            return new StringField(c, Type.STRING_LEN);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** @return the estimated cost of a SeqScan of the table with the given
+     *  alias under its filters. On a table clustered on a field, see
+     *  {@link HeapFile#cluster}, a range or equality filter on that field
+     *  limits the scan to the pages that can match, as estimated by
+     *  {@link TableStats#estimateClusteredScanCost}.
+     */
+    private double scanCost(String alias, int tableId, TableStats s) {
+        double cost = s.estimateScanCost();
+        int clustered = Database.getCatalog().getClusteredField(tableId);
+        if (clustered < 0)
+            return cost;
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableId);
+        for (LogicalFilterNode lf : filters) {
+            if (!lf.tableAlias.equals(alias) || !lf.fieldPureName.equals(td.getFieldName(clustered))
+                    || lf.p == Predicate.Op.NOT_EQUALS || lf.p == Predicate.Op.LIKE)
+                continue;
+            Field f = constant(td.getFieldType(clustered), lf.c);
+            if (f != null)
+                cost = Math.min(cost, s.estimateClusteredScanCost(s.estimateSelectivity(clustered, lf.p, f)));
+        }
+        return cost;
+    }
+
+    /** @return true if node returns its tuples in ascending order of the
+     *  field with the given quantified name, because it reads, possibly
+     *  through filters, a table whose every page is sorted on that field,
+     *  an LsmFile keyed on it, or a B+tree or LsmFile index keyed on it
+     */
+    private static boolean isSortedOn(DbIterator node, String field) {
+        while (node instanceof Filter)
+            node = ((Filter) node).getChildren()[0];
+        String[] parts = field.split("[.]");
+        if (parts.length != 2)
+            return false;
+        if (node instanceof SeqScan) {
+            SeqScan ss = (SeqScan) node;
+            DbFile file = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(ss.getTableName()));
+            if (!parts[0].equals(ss.getAlias()))
+                return false;
+            if (file instanceof LsmFile)
+                return parts[1].equals(file.getTupleDesc().getFieldName(((LsmFile) file).getKeyField()));
+            if (!(file instanceof HeapFile))
+                return false;
+            int clustered = ((HeapFile) file).getClusteredField();
+            return clustered >= 0 && parts[1].equals(file.getTupleDesc().getFieldName(clustered))
+                    && ((HeapFile) file).isSortedOn(clustered);
+        }
+        if (node instanceof IndexScan) {
+            IndexScan is = (IndexScan) node;
+            IndexFile index = is.getIndex();
+            TupleDesc td = Database.getCatalog().getTupleDesc(index.getTableId());
+            return (index instanceof BTreeFile || index instanceof LsmIndex) && parts[0].equals(is.getAlias())
+                    && parts[1].equals(td.getFieldName(index.getKeyField()));
+        }
+        return false;
+    }
+
+    /** @return true if every field of the table with the given alias that
+     *  the query references is the key or an included field of index, as
+     *  every field is for an index that holds them all
+     */
+    private boolean covers(IndexFile index, String alias) {
+        TupleDesc td = Database.getCatalog().getTupleDesc(index.getTableId());
+        if (1 + index.getIncludedFields().length == td.numFields())
+            return true;
+        Set<String> refs = referencedFields(alias);
+        if (refs == null)
+            return false;
+        Set<String> covered = new HashSet<String>();
+        covered.add(td.getFieldName(index.getKeyField()));
+        for (int f : index.getIncludedFields())
+            covered.add(td.getFieldName(f));
+        return covered.containsAll(refs);
+    }
+
+    /** @return the names of the fields of the table with the given alias
+     *  that the select list, filters, joins, aggregate, group by or order by
+     *  reference, or null if a <tt>*</tt> references all of them
+     */
+    private Set<String> referencedFields(String alias) {
+        Set<String> names = new HashSet<String>();
+        ArrayList<String> refs = new ArrayList<String>();
+        for (LogicalSelectListNode si : selectList)
+            refs.add(si.fname);
+        if (aggField != null)
+            refs.add(aggField);
+        if (groupByField != null)
+            refs.add(groupByField);
+        if (hasOrderBy)
+            refs.add(oByField);
+        for (String ref : refs) {
+            String[] parts = ref.split("[.]");
+            if (parts.length != 2)
+                return null;
+            if (parts[1].equals("*") && (parts[0].equals("null") || parts[0].equals(alias)))
+                return null;
+            if (parts[0].equals(alias))
+                names.add(parts[1]);
+        }
+        for (LogicalFilterNode lf : filters) {
+            if (lf.tableAlias.equals(alias))
+                names.add(lf.fieldPureName);
+        }
+        for (LogicalJoinNode lj : joins) {
+            if (alias.equals(lj.t1Alias))
+                names.add(lj.f1PureName);
+            if (!(lj instanceof LogicalSubplanJoinNode) && alias.equals(lj.t2Alias))
+                names.add(lj.f2PureName);
+        }
+        return names;
+    }
+
+    private boolean isJoined(String alias) {
+        for (LogicalJoinNode lj : joins) {
+            if (alias.equals(lj.t1Alias) || (!(lj instanceof LogicalSubplanJoinNode) && alias.equals(lj.t2Alias)))
+                return true;
+        }
+        return false;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -321,6 +533,9 @@ public class LogicalPlan {
 
         }
 
+        //filters served by an IndexScan instead of a SeqScan + Filter
+        Set<LogicalFilterNode> indexed = chooseIndexScans(t, statsMap, explain);
+
         Iterator<LogicalFilterNode> filterIt = filters.iterator();
         while (filterIt.hasNext()) {
             LogicalFilterNode lf = filterIt.next();
@@ -356,14 +571,17 @@ public class LogicalPlan {
              * 其中涉及到Predicate类，Filter类的构造
              * 然后作为subplanMap添加入hashmap中
              */
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            if (!indexed.contains(lf))
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
 
             //获取这个table的统计信息
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
 
             //调用方法进行预估
             //********
-            double sel= s.estimateSelectivity(subplan.getTupleDesc().fieldNameToIndex(lf.fieldQuantifiedName), lf.p, f);
+            //the field of the table, an index-only scan may hold fewer
+            int tableField = getTupleDesc(lf.tableAlias).fieldNameToIndex(lf.fieldPureName);
+            double sel= s.estimateSelectivity(tableField, lf.p, f);
 
             //sel是估计完成的时间
             filterSelectivities.put(lf.tableAlias, filterSelectivities.get(lf.tableAlias) * sel);
@@ -410,7 +628,7 @@ public class LogicalPlan {
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t2Alias);
 
             DbIterator j;
-            j = jo.instantiateJoin(lj,plan1,plan2);
+            j = JoinOptimizer.instantiateJoin(lj,plan1,plan2,t);
             subplanMap.put(t1name, j);
 
             if (!isSubqueryJoin) {
@@ -502,8 +720,12 @@ public class LogicalPlan {
             node = aggNode;
         }
 
-        if (hasOrderBy) {
+        //a scan of a clustered table, or of a B+tree, already returns the
+        //tuples in order
+        if (hasOrderBy && (hasAgg || !oByAsc || !isSortedOn(node, oByField))) {
             node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+        } else if (hasOrderBy && explain) {
+            System.out.println("Order by " + oByField + " needs no sort");
         }
 
         return new Project(outFields, outTypes, node);
@@ -0,0 +1,146 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * A PageCache that evicts by the LRU-K algorithm of O'Neil, O'Neil and
+ * Weikum, with K = 2, see {@link ReplacementPolicy#LRU_K}. Every put and
+ * hit is a reference, stamped with a counter. The page evicted is the one
+ * whose second most recent reference is the oldest; pages referenced only
+ * once have no second reference and go first, least recently used first.
+ * A page referenced once, like a page of a scan, is thus evicted before
+ * any page referenced twice; only the page just put is exempt, since it is
+ * about to be used.
+ * <p>
+ * The references of evicted pages are remembered for as many pages as the
+ * cache holds, so that a page that comes back soon after its eviction is
+ * known to have been referenced before. The cached pages are kept ordered
+ * for eviction, which makes a reference take O(log n) rather than O(1).
+ */
+public class LruKCache implements PageCache {
+
+    //the references to a page: the most recent, and the one before it, or 0
+    private static final class History {
+        final PageId pageId;
+        long last;
+        long previous;
+
+        History(PageId pageId) {
+            this.pageId = pageId;
+        }
+    }
+
+    //the order of eviction: oldest second most recent reference first, a
+    //missing one oldest of all, then oldest most recent reference; the
+    //counter stamps every reference once, so the order is total
+    private static final Comparator<History> EVICTION_ORDER = new Comparator<History>() {
+        public int compare(History a, History b) {
+            if (a.previous != b.previous)
+                return a.previous < b.previous ? -1 : 1;
+            if (a.last != b.last)
+                return a.last < b.last ? -1 : 1;
+            return 0;
+        }
+    };
+
+    private final int capacity;
+    private final HashMap<PageId, Page> pages;
+    private final HashMap<PageId, History> histories;
+    private final TreeSet<History> order = new TreeSet<History>(EVICTION_ORDER);
+    //the histories of evicted pages, oldest eviction first
+    private final LinkedHashMap<PageId, History> evicted;
+    private long clock;
+    private final EvictionFilter filter;
+
+    public LruKCache(int capacity) {
+        this(capacity, EVICT_ANY);
+    }
+
+    public LruKCache(final int capacity, EvictionFilter filter) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("bad capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.pages = new HashMap<PageId, Page>(capacity * 4 / 3 + 1);
+        this.histories = new HashMap<PageId, History>(capacity * 4 / 3 + 1);
+        this.evicted = new LinkedHashMap<PageId, History>() {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<PageId, History> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.filter = filter;
+    }
+
+    public synchronized ArrayList<PageId> pageIds() {
+        return new ArrayList<PageId>(pages.keySet());
+    }
+
+    public synchronized int size() {
+        return pages.size();
+    }
+
+    public synchronized boolean contains(PageId pid) {
+        return pages.containsKey(pid);
+    }
+
+    public synchronized Page get(PageId pid) {
+        Page page = pages.get(pid);
+        if (page != null) {
+            reference(histories.get(pid));
+        }
+        return page;
+    }
+
+    public synchronized Page remove(PageId pid) {
+        Page page = pages.remove(pid);
+        if (page != null) {
+            order.remove(histories.remove(pid));
+        }
+        return page;
+    }
+
+    public synchronized boolean put(PageId pid, Page page) {
+        History history = histories.get(pid);
+        if (history == null) {
+            history = evicted.remove(pid);
+            if (history == null) {
+                history = new History(pid);
+            }
+            histories.put(pid, history);
+        }
+        pages.put(pid, page);
+        reference(history);
+
+        //the page put is about to be used, so it is never the one evicted
+        if (pages.size() > capacity) {
+            History victim = null;
+            for (History h : order) {
+                if (h != history && filter.mayEvict(h.pageId, pages.get(h.pageId))) {
+                    victim = h;
+                    break;
+                }
+            }
+            if (victim == null) {
+                //nothing may go, so the page put does not come in
+                victim = history;
+            }
+            order.remove(victim);
+            pages.remove(victim.pageId);
+            histories.remove(victim.pageId);
+            evicted.put(victim.pageId, victim);
+            return victim != history;
+        }
+        return true;
+    }
+
+    //records a reference to a cached page; stamps are unique, so a history
+    //not in the order yet never compares equal to one that is
+    private void reference(History history) {
+        order.remove(history);
+        history.previous = history.last;
+        history.last = ++clock;
+        order.add(history);
+    }
+}
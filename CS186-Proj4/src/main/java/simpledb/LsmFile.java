@@ -0,0 +1,989 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * LsmFile is a DbFile organized as a log-structured merge tree, for tables
+ * that take many inserts. An insert into a HeapFile ends in a random write
+ * of the page it lands on; an insert into an LsmFile is appended to a
+ * write-ahead log and added to an in-memory sorted memtable, and pages are
+ * only ever written sequentially, never rewritten.
+ * <p>
+ * Tuples are kept sorted on a key field. Once the memtable holds
+ * memtablePages pages worth of tuples it is flushed, in order, to a new
+ * immutable sorted run, a file of LsmPages next to the table. A background
+ * thread compacts the runs: whenever FANOUT consecutive runs have been
+ * merged the same number of times, it merges them into one, so that a
+ * table of n pages has O(log n) runs and every tuple is rewritten
+ * O(log n) times. A delete adds a tombstone for the tuple, which hides it
+ * until a merge meets both; a merge that includes the oldest run drops
+ * the tombstones it is left with.
+ * <p>
+ * Every insert is given a sequence number, unique within the file, which
+ * is the tuple number of its RecordId; the page number of the RecordId is
+ * always 0, since tuples move from run to run. The pages of all runs are
+ * numbered in a single space of page numbers that are never reused, so
+ * they are read and cached through the BufferPool like those of any other
+ * file; the pages of a run merged away are discarded once no scan reads
+ * the run any more.
+ * <p>
+ * Scans return the tuples in key order, merged from the memtable and every
+ * run. {@link #getKeyIndex} is an index on the key, registered by the
+ * Catalog with the table, that serves range and equality lookups by
+ * seeking every run with a binary search over the smallest key of each of
+ * its pages, so that IndexScan reads only the pages that can match.
+ * <p>
+ * The file f itself is the manifest listing the runs, replaced on every
+ * flush or merge; the log is <tt>f.wal</tt> and run n is
+ * <tt>f.n.run</tt>. Run files the manifest does not list are left over
+ * from a flush or merge that did not finish and are deleted on startup;
+ * the log is replayed into the memtable.
+ *
+ * @see LsmPage
+ * @see Catalog#loadSchema
+ */
+public class LsmFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of runs merged into one at a time. */
+    static final int FANOUT = 4;
+
+    /** The default size of the memtable, in pages. */
+    public static final int DEFAULT_MEMTABLE_PAGES = 64;
+
+    private static ExecutorService compactionExecutor;
+
+    private final File f;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int pageSize;
+    private final int memtableRecords;
+    private final RecordOrder order;
+    private final LsmIndex keyIndex;
+
+    //loaded from the manifest and the log on first use
+    private transient boolean loaded;
+    private transient ConcurrentSkipListSet<Record> memtable;
+    private transient int memtableSize;
+    private transient FileChannel log;
+    private transient long logSize;
+    //the runs, oldest first
+    private transient ArrayList<Run> runs;
+    //every run whose pages may still be read, by first page
+    private transient TreeMap<Integer,Run> byPage;
+    private transient int nextSeq;
+    private transient int nextPage;
+    private transient int nextRun;
+    private transient boolean compacting;
+
+    /**
+     * A tuple inserted into the file, or a tombstone hiding the tuple with
+     * the same key and sequence number.
+     */
+    static final class Record {
+        final Tuple tuple;
+        final int seq;
+        final boolean deleted;
+
+        Record(Tuple tuple, int seq, boolean deleted) {
+            this.tuple = tuple;
+            this.seq = seq;
+            this.deleted = deleted;
+        }
+    }
+
+    //records by key, then sequence number, inserts before tombstones
+    private static class RecordOrder implements Comparator<Record>, Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int keyField;
+
+        RecordOrder(int keyField) {
+            this.keyField = keyField;
+        }
+
+        public int compare(Record a, Record b) {
+            int c = compareKeys(a.tuple.getField(keyField), b.tuple.getField(keyField));
+            if (c != 0)
+                return c;
+            if (a.seq != b.seq)
+                return a.seq < b.seq ? -1 : 1;
+            return a.deleted == b.deleted ? 0 : (a.deleted ? 1 : -1);
+        }
+    }
+
+    private static int compareKeys(Field a, Field b) {
+        if (a.compare(Predicate.Op.LESS_THAN, b))
+            return -1;
+        return a.compare(Predicate.Op.GREATER_THAN, b) ? 1 : 0;
+    }
+
+    /**
+     * Opens the table stored in f, sorted on field keyField, with a memtable
+     * of DEFAULT_MEMTABLE_PAGES pages and pages of the database-wide page
+     * size. A missing or empty file is an empty table.
+     */
+    public LsmFile(File f, TupleDesc td, int keyField) {
+        this(f, td, keyField, DEFAULT_MEMTABLE_PAGES, BufferPool.getPageSize());
+    }
+
+    /**
+     * @param memtablePages the number of pages worth of tuples the memtable
+     *            holds before it is flushed to a run
+     * @param pageSize bytes per page of the runs
+     * @see #LsmFile(File, TupleDesc, int)
+     */
+    public LsmFile(File f, TupleDesc td, int keyField, int memtablePages, int pageSize) {
+        if (keyField < 0 || keyField >= td.numFields()) {
+            throw new IllegalArgumentException("no field " + keyField + " in " + td);
+        }
+        if (LsmPage.maxRecords(td, pageSize) < 1) {
+            throw new IllegalArgumentException("page size " + pageSize + " is too small for the table");
+        }
+        if (memtablePages < 1) {
+            throw new IllegalArgumentException("bad memtable size " + memtablePages);
+        }
+        this.f = f;
+        this.td = td;
+        this.keyField = keyField;
+        this.pageSize = pageSize;
+        this.memtableRecords = memtablePages * LsmPage.maxRecords(td, pageSize);
+        this.order = new RecordOrder(keyField);
+        this.keyIndex = new LsmIndex(this);
+    }
+
+    /**
+     * @return the manifest of this table on disk
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * @return the field the tuples are sorted on
+     */
+    public int getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * @return the index on the key field that reads this file, see
+     *         {@link Catalog#addTable}
+     */
+    public IndexFile getKeyIndex() {
+        return keyIndex;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Returns the number of pages of the runs of the file. Tuples still in
+     * the memtable are not on any page.
+     */
+    public synchronized int numPages() {
+        loadUnchecked();
+        int pages = 0;
+        for (Run run : runs) {
+            pages += run.numPages;
+        }
+        return pages;
+    }
+
+    /**
+     * @return the number of runs of the file
+     */
+    public synchronized int numRuns() {
+        loadUnchecked();
+        return runs.size();
+    }
+
+    private synchronized void load() throws IOException {
+        if (loaded) return;
+        runs = new ArrayList<Run>();
+        byPage = new TreeMap<Integer,Run>();
+        memtable = new ConcurrentSkipListSet<Record>(order);
+        memtableSize = 0;
+        nextSeq = 0;
+        nextPage = 0;
+        nextRun = 0;
+        Set<String> listed = new HashSet<String>();
+        if (f.length() > 0) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            try {
+                nextSeq = in.readInt();
+                nextPage = in.readInt();
+                nextRun = in.readInt();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Run run = new Run(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                    runs.add(run);
+                    byPage.put(run.firstPage, run);
+                    listed.add(run.file.getName());
+                }
+            } finally {
+                in.close();
+            }
+        }
+        File dir = f.getAbsoluteFile().getParentFile();
+        String[] names = dir.list();
+        for (int i = 0; names != null && i < names.length; i++) {
+            if (names[i].startsWith(f.getName() + ".") && names[i].endsWith(".run") && !listed.contains(names[i])) {
+                new File(dir, names[i]).delete();
+            }
+        }
+
+        //a record torn by a crash at the end of the log is dropped
+        log = new RandomAccessFile(f.getPath() + ".wal", "rw").getChannel();
+        int size = LsmPage.recordSize(td);
+        long count = log.size() / size;
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        for (long i = 0; i < count; i++) {
+            bb.clear();
+            while (bb.hasRemaining()) {
+                if (log.read(bb, i * size + bb.position()) < 0) break;
+            }
+            bb.flip();
+            Record r = LsmPage.readRecord(bb, td);
+            apply(r);
+            nextSeq = Math.max(nextSeq, r.seq + 1);
+        }
+        logSize = count * size;
+        log.truncate(logSize);
+        loaded = true;
+    }
+
+    private void loadUnchecked() {
+        try {
+            load();
+        } catch (IOException e) {
+            throw new RuntimeException("cannot open " + f, e);
+        }
+    }
+
+    //writes the manifest to a new file and moves it over the old one
+    private void saveManifest() throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(nextSeq);
+            out.writeInt(nextPage);
+            out.writeInt(nextRun);
+            out.writeInt(runs.size());
+            for (Run run : runs) {
+                out.writeInt(run.id);
+                out.writeInt(run.firstPage);
+                out.writeInt(run.numPages);
+                out.writeInt(run.level);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(f)) {
+            throw new IOException("cannot replace " + f);
+        }
+    }
+
+    //adds r to the memtable; a tombstone of a tuple still in the memtable
+    //removes the tuple instead
+    private void apply(Record r) {
+        if (r.deleted && memtable.remove(new Record(r.tuple, r.seq, false))) {
+            memtableSize--;
+        } else if (memtable.add(r)) {
+            memtableSize++;
+        }
+    }
+
+    private void append(Record r) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(LsmPage.recordSize(td));
+        LsmPage.writeRecord(bb, r, td);
+        bb.flip();
+        while (bb.hasRemaining()) {
+            log.write(bb, logSize + bb.position());
+        }
+        logSize += bb.limit();
+    }
+
+    private Tuple copy(Tuple t) {
+        Tuple c = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            c.setField(i, t.getField(i));
+        }
+        return c;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        Run run;
+        synchronized (this) {
+            loadUnchecked();
+            Map.Entry<Integer,Run> e = byPage.floorEntry(pid.pageNumber());
+            run = e == null ? null : e.getValue();
+        }
+        if (run == null || pid.pageNumber() >= run.firstPage + run.numPages) {
+            throw new IllegalArgumentException("no page " + pid.pageNumber() + " in " + f);
+        }
+        try {
+            return run.read(pid.pageNumber());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Pages of an LsmFile are written once, when their run is, and never
+     * dirtied, so this is never called.
+     *
+     * @throws IOException always
+     */
+    public void writePage(Page page) throws IOException {
+        throw new IOException("the pages of " + f + " cannot be modified");
+    }
+
+    /**
+     * Appends t to the log and adds it to the memtable, flushing the
+     * memtable to a run if it is full. No page is read or written through
+     * the BufferPool, so the list returned is empty.
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException, InterruptedException {
+        synchronized (this) {
+            load();
+            Record r = new Record(copy(t), nextSeq++, false);
+            append(r);
+            apply(r);
+            RecordId rid = new RecordId(new HeapPageId(getId(), 0), r.seq);
+            r.tuple.setRecordId(rid);
+            t.setRecordId(rid);
+            if (memtableSize >= memtableRecords) {
+                flush();
+            }
+        }
+        return new ArrayList<Page>();
+    }
+
+    /**
+     * Appends a tombstone of t to the log and adds it to the memtable, or
+     * removes t from the memtable if it is still there. No page is
+     * modified, so null is returned.
+     *
+     * @throws DbException if t is not a tuple of this file
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException, InterruptedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("tuple is not a member of " + f);
+        }
+        synchronized (this) {
+            try {
+                load();
+                Record r = new Record(copy(t), rid.tupleno(), true);
+                append(r);
+                apply(r);
+                if (memtableSize >= memtableRecords) {
+                    flush();
+                }
+            } catch (IOException e) {
+                throw new DbException("cannot delete from " + f + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the memtable out as a new run, if it holds anything, and
+     * empties the log; inserts do so whenever the memtable is full. Then
+     * starts a merge in the background if one is due.
+     */
+    public synchronized void flush()
+        throws IOException, DbException, TransactionAbortedException, InterruptedException {
+        load();
+        if (memtable.isEmpty()) return;
+        //without an older run, no tombstone has a tuple left to hide
+        Merge merge = new Merge(Collections.<Source>singletonList(
+                new MemSource(memtable.iterator(), Integer.MAX_VALUE)), !runs.isEmpty());
+        Run run = writeRun(merge, nextRun++, nextPage, 0);
+        if (run != null) {
+            nextPage += run.numPages;
+            runs.add(run);
+            byPage.put(run.firstPage, run);
+        }
+        memtable = new ConcurrentSkipListSet<Record>(order);
+        memtableSize = 0;
+        saveManifest();
+        log.truncate(0);
+        logSize = 0;
+        scheduleCompaction();
+    }
+
+    /**
+     * Writes the records merge returns to run id, numbered from firstPage.
+     *
+     * @return the run, or null if there was no record to write
+     */
+    private Run writeRun(Merge merge, int id, int firstPage, int level)
+        throws IOException, DbException, TransactionAbortedException, InterruptedException {
+        Run run = new Run(id, firstPage, 0, level);
+        int perPage = LsmPage.maxRecords(td, pageSize);
+        ArrayList<Record> page = new ArrayList<Record>(perPage);
+        ArrayList<Field> fences = new ArrayList<Field>();
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(run.file), 16 * pageSize);
+        try {
+            for (Record r = merge.next(); r != null; r = merge.next()) {
+                page.add(r);
+                if (page.size() == perPage) {
+                    fences.add(page.get(0).tuple.getField(keyField));
+                    os.write(LsmPage.createPageData(page, td, pageSize));
+                    page.clear();
+                }
+            }
+            if (!page.isEmpty()) {
+                fences.add(page.get(0).tuple.getField(keyField));
+                os.write(LsmPage.createPageData(page, td, pageSize));
+            }
+        } finally {
+            os.close();
+        }
+        if (fences.isEmpty()) {
+            run.file.delete();
+            return null;
+        }
+        Run written = new Run(id, firstPage, fences.size(), level);
+        written.fences = fences.toArray(new Field[0]);
+        return written;
+    }
+
+    /**
+     * Blocks until no merge of runs is running.
+     */
+    public synchronized void awaitCompaction() throws InterruptedException {
+        while (compacting) {
+            wait();
+        }
+    }
+
+    private static synchronized ExecutorService getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "simpledb-compaction");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return compactionExecutor;
+    }
+
+    private void scheduleCompaction() {
+        if (!compacting && pickCompaction() >= 0) {
+            compacting = true;
+            getCompactionExecutor().execute(new Runnable() {
+                public void run() {
+                    compact();
+                }
+            });
+        }
+    }
+
+    //the first of the newest FANOUT consecutive runs merged the same
+    //number of times, or -1
+    private int pickCompaction() {
+        for (int i = runs.size() - FANOUT; i >= 0; i--) {
+            boolean same = true;
+            for (int j = i + 1; j < i + FANOUT; j++) {
+                same &= runs.get(j).level == runs.get(i).level;
+            }
+            if (same) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //merges runs until no merge is due; flushes meanwhile only append runs,
+    //so the runs being merged stay next to each other in the list
+    private void compact() {
+        try {
+            while (true) {
+                List<Run> inputs;
+                boolean oldest;
+                int id;
+                int firstPage;
+                synchronized (this) {
+                    int start = pickCompaction();
+                    if (start < 0) {
+                        compacting = false;
+                        notifyAll();
+                        return;
+                    }
+                    inputs = new ArrayList<Run>(runs.subList(start, start + FANOUT));
+                    oldest = start == 0;
+                    id = nextRun++;
+                    firstPage = nextPage;
+                    for (Run run : inputs) {
+                        nextPage += run.numPages;
+                    }
+                }
+                List<Source> sources = new ArrayList<Source>();
+                for (Run run : inputs) {
+                    sources.add(new RunSource(run, run.firstPage, null));
+                }
+                Run merged = writeRun(new Merge(sources, !oldest), id, firstPage, inputs.get(0).level + 1);
+
+                List<Run> dead = new ArrayList<Run>();
+                synchronized (this) {
+                    int at = runs.indexOf(inputs.get(0));
+                    runs.subList(at, at + inputs.size()).clear();
+                    if (merged != null) {
+                        runs.add(at, merged);
+                        byPage.put(merged.firstPage, merged);
+                    }
+                    saveManifest();
+                    for (Run run : inputs) {
+                        run.retired = true;
+                        if (run.refs == 0) {
+                            dead.add(run);
+                        }
+                    }
+                }
+                drop(dead);
+            }
+        } catch (Exception e) {
+            //the runs are left as they were; the next flush tries again
+            e.printStackTrace();
+            synchronized (this) {
+                compacting = false;
+                notifyAll();
+            }
+        }
+    }
+
+    //deletes runs merged away that no scan reads any more
+    private void drop(List<Run> dead) {
+        BufferPool bp = Database.getBufferPool();
+        for (Run run : dead) {
+            for (int i = 0; i < run.numPages; i++) {
+                bp.discardPage(new HeapPageId(getId(), run.firstPage + i));
+            }
+            synchronized (this) {
+                byPage.remove(run.firstPage);
+            }
+            run.close();
+            run.file.delete();
+        }
+    }
+
+    /**
+     * Closes the files backing this table. The next access reopens them.
+     * Waits for a running merge to finish first.
+     */
+    public void close() throws IOException {
+        try {
+            awaitCompaction();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (!loaded) return;
+            for (Run run : byPage.values()) {
+                run.close();
+            }
+            log.close();
+            //reloaded from the manifest and the log
+            loaded = false;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new LsmIterator(tid, null, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file whose key satisfies
+     * <tt>key op value</tt>, in key order. Every run is searched for the
+     * first page that can hold a match, and read no further than the last
+     * one, except for NOT_EQUALS and LIKE, which read every tuple.
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate.Op op, Field value) {
+        return new LsmIterator(tid, op, value);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that, if one of the
+     * given predicates is a range or equality predicate on the key, reads
+     * only the tuples that satisfy it, as {@link #iterator(TransactionId,
+     * Predicate.Op, Field)} does. The caller still has to apply the other
+     * predicates.
+     *
+     * @param filters predicates on the fields of this file
+     * @see SeqScan#addPageFilter
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> filters) {
+        for (Predicate p : filters) {
+            if (p.getField() == keyField && p.getOp() != Predicate.Op.NOT_EQUALS
+                    && p.getOp() != Predicate.Op.LIKE) {
+                return new LsmIterator(tid, p.getOp(), p.getOperand());
+            }
+        }
+        return new LsmIterator(tid, null, null);
+    }
+
+    /**
+     * An immutable sorted run of records.
+     */
+    private class Run {
+        final int id;
+        final int firstPage;
+        final int numPages;
+        final int level;
+        final File file;
+        //the key of the first record of every page, once known
+        Field[] fences;
+        //the scans reading the run, and whether it was merged away
+        int refs;
+        boolean retired;
+        private FileChannel channel;
+
+        Run(int id, int firstPage, int numPages, int level) {
+            this.id = id;
+            this.firstPage = firstPage;
+            this.numPages = numPages;
+            this.level = level;
+            this.file = new File(f.getPath() + "." + id + ".run");
+        }
+
+        synchronized LsmPage read(int pgNo) throws IOException {
+            if (channel == null || !channel.isOpen()) {
+                channel = new RandomAccessFile(file, "r").getChannel();
+            }
+            ByteBuffer bb = ByteBuffer.allocate(pageSize);
+            long offset = (long) (pgNo - firstPage) * pageSize;
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, offset + bb.position()) < 0) {
+                    throw new IOException("run " + file + " is cut short");
+                }
+            }
+            return new LsmPage(new HeapPageId(getId(), pgNo), bb.array(), td);
+        }
+
+        synchronized Field[] fences() throws IOException {
+            if (fences == null) {
+                Field[] keys = new Field[numPages];
+                for (int i = 0; i < numPages; i++) {
+                    keys[i] = read(firstPage + i).getRecord(0).tuple.getField(keyField);
+                }
+                fences = keys;
+            }
+            return fences;
+        }
+
+        /**
+         * @return the first page that can hold a record whose key is at
+         *         least key: the last page whose first key is smaller, since
+         *         equal keys may start on the page before
+         */
+        int seek(Field key) throws IOException {
+            Field[] keys = fences();
+            int lo = 0;
+            int hi = keys.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (compareKeys(keys[mid], key) < 0) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return firstPage + lo;
+        }
+
+        synchronized void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * A stream of records in RecordOrder.
+     */
+    private interface Source {
+        /** @return the current record, or null at the end */
+        Record peek();
+
+        void advance() throws DbException, TransactionAbortedException, InterruptedException;
+    }
+
+    //the records of the memtable, without tuples inserted since seq
+    //maxSeq, so that a scan feeding inserts into the same table ends
+    private static class MemSource implements Source {
+        private final Iterator<Record> it;
+        private final int maxSeq;
+        private Record next;
+
+        MemSource(Iterator<Record> it, int maxSeq) {
+            this.it = it;
+            this.maxSeq = maxSeq;
+            advance();
+        }
+
+        public Record peek() {
+            return next;
+        }
+
+        public void advance() {
+            next = null;
+            while (it.hasNext() && next == null) {
+                Record r = it.next();
+                if (r.deleted || r.seq < maxSeq) {
+                    next = r;
+                }
+            }
+        }
+    }
+
+    //the records of a run from page pgNo on; pages are read through the
+    //BufferPool on behalf of tid, or directly if tid is null
+    private class RunSource implements Source {
+        private final Run run;
+        private final TransactionId tid;
+        private int pgNo;
+        private LsmPage page;
+        private int slot;
+
+        RunSource(Run run, int pgNo, TransactionId tid)
+            throws DbException, TransactionAbortedException, InterruptedException {
+            this.run = run;
+            this.tid = tid;
+            this.pgNo = pgNo - 1;
+            this.slot = 0;
+            nextPage();
+        }
+
+        private void nextPage() throws DbException, TransactionAbortedException, InterruptedException {
+            page = null;
+            slot = 0;
+            if (++pgNo >= run.firstPage + run.numPages) {
+                return;
+            }
+            if (tid != null) {
+                page = (LsmPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pgNo),
+                        Permissions.READ_ONLY);
+            } else {
+                try {
+                    page = run.read(pgNo);
+                } catch (IOException e) {
+                    throw new DbException("cannot read run " + run.file + ": " + e.getMessage());
+                }
+            }
+        }
+
+        public Record peek() {
+            return page == null ? null : page.getRecord(slot);
+        }
+
+        public void advance() throws DbException, TransactionAbortedException, InterruptedException {
+            if (++slot >= page.getNumRecords()) {
+                nextPage();
+            }
+        }
+    }
+
+    /**
+     * Merges sources into one stream in RecordOrder. A tuple and its
+     * tombstone cancel out; a tombstone left alone is returned only if
+     * tombstones are kept, for a merge that does not include the oldest run.
+     */
+    private class Merge {
+        private final PriorityQueue<Source> heap;
+        private final boolean keepTombstones;
+
+        Merge(List<Source> sources, boolean keepTombstones) {
+            this.keepTombstones = keepTombstones;
+            this.heap = new PriorityQueue<Source>(Math.max(sources.size(), 1), new Comparator<Source>() {
+                public int compare(Source a, Source b) {
+                    return order.compare(a.peek(), b.peek());
+                }
+            });
+            for (Source s : sources) {
+                if (s.peek() != null) {
+                    heap.add(s);
+                }
+            }
+        }
+
+        /**
+         * @return the next record, or null
+         */
+        Record next() throws DbException, TransactionAbortedException, InterruptedException {
+            while (!heap.isEmpty()) {
+                Record first = heap.peek().peek();
+                Record inserted = null;
+                boolean deleted = false;
+                //every record of the tuple, from any source
+                while (!heap.isEmpty() && heap.peek().peek().seq == first.seq
+                        && compareKeys(heap.peek().peek().tuple.getField(keyField),
+                                first.tuple.getField(keyField)) == 0) {
+                    Source s = heap.poll();
+                    Record r = s.peek();
+                    if (r.deleted) {
+                        deleted = true;
+                    } else {
+                        inserted = r;
+                    }
+                    s.advance();
+                    if (s.peek() != null) {
+                        heap.add(s);
+                    }
+                }
+                if (inserted != null && !deleted) {
+                    return inserted;
+                }
+                if (inserted == null && keepTombstones) {
+                    return first;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Iterates over the tuples of a consistent snapshot of the memtable and
+     * the runs, taken when it is opened; the runs of the snapshot are not
+     * deleted until it is closed.
+     */
+    private class LsmIterator implements DbFileIterator {
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        private final Predicate.Op op;
+        private final Field value;
+        private List<Run> snapshot;
+        private Merge merge;
+        private Tuple next;
+
+        LsmIterator(TransactionId tid, Predicate.Op op, Field value) {
+            this.tid = tid;
+            this.op = op;
+            this.value = value;
+        }
+
+        public void open() throws DbException, TransactionAbortedException, InterruptedException {
+            close();
+            ConcurrentSkipListSet<Record> mem;
+            int maxSeq;
+            synchronized (LsmFile.this) {
+                try {
+                    load();
+                } catch (IOException e) {
+                    throw new DbException("cannot open " + f + ": " + e.getMessage());
+                }
+                mem = memtable;
+                maxSeq = nextSeq;
+                snapshot = new ArrayList<Run>(runs);
+                for (Run run : snapshot) {
+                    run.refs++;
+                }
+            }
+            //the smallest key that can match
+            Field from = op == Predicate.Op.EQUALS || op == Predicate.Op.GREATER_THAN
+                    || op == Predicate.Op.GREATER_THAN_OR_EQ ? value : null;
+            List<Source> sources = new ArrayList<Source>();
+            if (from == null) {
+                sources.add(new MemSource(mem.iterator(), maxSeq));
+            } else {
+                Tuple probe = new Tuple(td);
+                probe.setField(keyField, from);
+                sources.add(new MemSource(mem.tailSet(new Record(probe, Integer.MIN_VALUE, false)).iterator(),
+                        maxSeq));
+            }
+            for (Run run : snapshot) {
+                try {
+                    sources.add(new RunSource(run, from == null ? run.firstPage : run.seek(from), tid));
+                } catch (IOException e) {
+                    throw new DbException("cannot read run " + run.file + ": " + e.getMessage());
+                }
+            }
+            merge = new Merge(sources, false);
+            next = fetchNext();
+        }
+
+        //the next tuple that matches, or null
+        private Tuple fetchNext() throws DbException, TransactionAbortedException, InterruptedException {
+            for (Record r = merge.next(); r != null; r = merge.next()) {
+                Field key = r.tuple.getField(keyField);
+                if (op == null || key.compare(op, value)) {
+                    r.tuple.setRecordId(new RecordId(new HeapPageId(getId(), 0), r.seq));
+                    return r.tuple;
+                }
+                //runs are read from the page before the first match
+                if (compareKeys(key, value) < 0) {
+                    continue;
+                }
+                //past the last key that can match
+                if (op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN
+                        || op == Predicate.Op.LESS_THAN_OR_EQ) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, InterruptedException {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = fetchNext();
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException, InterruptedException {
+            open();
+        }
+
+        public void close() {
+            next = null;
+            merge = null;
+            if (snapshot == null) {
+                return;
+            }
+            List<Run> dead = new ArrayList<Run>();
+            synchronized (LsmFile.this) {
+                for (Run run : snapshot) {
+                    if (--run.refs == 0 && run.retired) {
+                        dead.add(run);
+                    }
+                }
+            }
+            snapshot = null;
+            drop(dead);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * LsmIndex is the index on the key field of an LsmFile, see
+ * {@link LsmFile#getKeyIndex}. It stores nothing of its own: the file is
+ * already sorted on the key, and lookups are served by
+ * {@link LsmFile#iterator(TransactionId, Predicate.Op, Field)}. Its
+ * entries are (key, 0, sequence number), the RecordId of the tuple,
+ * followed by every other field of the tuple, so that an IndexScan through
+ * it always answers from the entries alone.
+ * <p>
+ * The file maintains itself, so {@link #insertTuple} and
+ * {@link #deleteTuple} modify nothing, and the index has no pages.
+ */
+class LsmIndex implements IndexFile {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LsmFile file;
+    private final int[] included;
+    private final TupleDesc td;
+
+    LsmIndex(LsmFile file) {
+        this.file = file;
+        TupleDesc tableTd = file.getTupleDesc();
+        int keyField = file.getKeyField();
+        included = new int[tableTd.numFields() - 1];
+        Type[] types = new Type[tableTd.numFields() + 2];
+        String[] names = new String[tableTd.numFields() + 2];
+        types[0] = tableTd.getFieldType(keyField);
+        names[0] = tableTd.getFieldName(keyField);
+        types[1] = Type.INT_TYPE;
+        names[1] = "pageno";
+        types[2] = Type.INT_TYPE;
+        names[2] = "slot";
+        for (int i = 0, j = 0; i < tableTd.numFields(); i++) {
+            if (i != keyField) {
+                included[j] = i;
+                types[3 + j] = tableTd.getFieldType(i);
+                names[3 + j] = tableTd.getFieldName(i);
+                j++;
+            }
+        }
+        td = new TupleDesc(types, names);
+    }
+
+    public int getTableId() {
+        return file.getId();
+    }
+
+    public int getKeyField() {
+        return file.getKeyField();
+    }
+
+    /**
+     * @return every field of the table but the key
+     */
+    public int[] getIncludedFields() {
+        return included.clone();
+    }
+
+    public RecordId getRecordId(Tuple entry) {
+        return new RecordId(new HeapPageId(file.getId(), ((IntField) entry.getField(1)).getValue()),
+                ((IntField) entry.getField(2)).getValue());
+    }
+
+    /**
+     * @return true for every op but NOT_EQUALS and LIKE
+     */
+    public boolean supports(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    public boolean isUnique() {
+        return false;
+    }
+
+    /**
+     * @return the number of runs of the file, each of which is searched for
+     *         its first matching page
+     */
+    public int probePages() {
+        return file.numRuns();
+    }
+
+    /**
+     * @return the number of pages of the file
+     */
+    public int numPages() {
+        return file.numPages();
+    }
+
+    public int getId() {
+        return (file.getFile().getAbsolutePath() + ".key").hashCode();
+    }
+
+    /**
+     * @return the TupleDesc of the entries, (key, pageno, slot, every other
+     *         field)
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field value) {
+        return new EntryIterator(file.iterator(tid, op, value));
+    }
+
+    public DbFileIterator iterator(TransactionId tid) {
+        return new EntryIterator(file.iterator(tid));
+    }
+
+    /**
+     * Entries are not skipped by predicates on the fields; the caller
+     * applies them.
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> filters) {
+        return iterator(tid);
+    }
+
+    /**
+     * The index has no pages.
+     *
+     * @throws IllegalArgumentException always
+     */
+    public Page readPage(PageId pid) {
+        throw new IllegalArgumentException("the key index of " + file.getFile() + " has no pages");
+    }
+
+    /**
+     * The index has no pages.
+     *
+     * @throws IOException always
+     */
+    public void writePage(Page page) throws IOException {
+        throw new IOException("the key index of " + file.getFile() + " has no pages");
+    }
+
+    /**
+     * @return no page; the file keeps its tuples sorted on the key itself
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t) {
+        return new ArrayList<Page>();
+    }
+
+    /**
+     * @return null; the file keeps its tuples sorted on the key itself
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t) {
+        return null;
+    }
+
+    /**
+     * Does nothing; the file is closed with the table.
+     */
+    public void close() {
+    }
+
+    //the entries of the tuples of a scan of the file
+    private class EntryIterator implements DbFileIterator {
+        private static final long serialVersionUID = 1L;
+
+        private final DbFileIterator tuples;
+
+        EntryIterator(DbFileIterator tuples) {
+            this.tuples = tuples;
+        }
+
+        public void open() throws DbException, TransactionAbortedException, InterruptedException {
+            tuples.open();
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            return tuples.hasNext();
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, InterruptedException {
+            Tuple t = tuples.next();
+            Tuple entry = new Tuple(td);
+            entry.setField(0, t.getField(getKeyField()));
+            entry.setField(1, new IntField(t.getRecordId().getPageId().pageNumber()));
+            entry.setField(2, new IntField(t.getRecordId().tupleno()));
+            for (int i = 0; i < included.length; i++) {
+                entry.setField(3 + i, t.getField(included[i]));
+            }
+            return entry;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException, InterruptedException {
+            tuples.rewind();
+        }
+
+        public void close() {
+            tuples.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Each instance of LsmPage stores one page of a sorted run of an LsmFile
+ * and implements the Page interface that is used by BufferPool. Runs are
+ * written once, sequentially, and never modified, so neither are their
+ * pages. The format of a page is
+ * <pre>
+ *   count (int) | count records
+ * </pre>
+ * and the format of a record is
+ * <pre>
+ *   seq (int) | kind (1 byte: 0 = insert, 1 = delete) | fields of the tuple
+ * </pre>
+ * with the fields as in a slot of a HeapPage, so that every record of a
+ * table has the same size. The records of a run are sorted on the key of
+ * the file, then on seq, across its pages. The write-ahead log of the
+ * memtable is a sequence of records in the same format.
+ *
+ * @see LsmFile
+ */
+public class LsmPage implements Page {
+
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 5;
+
+    private final HeapPageId pid;
+    private final byte[] data;
+    private final ArrayList<LsmFile.Record> records = new ArrayList<LsmFile.Record>();
+    private TransactionId dirtyId;
+
+    /**
+     * Create an LsmPage from a set of bytes of data read from disk, in the
+     * format described above, holding tuples of the given schema.
+     */
+    LsmPage(HeapPageId id, byte[] data, TupleDesc td) throws IOException {
+        this.pid = id;
+        this.data = data;
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        int count = bb.getInt();
+        if (count < 0 || count > maxRecords(td, data.length)) {
+            throw new IOException("bad run page count " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            records.add(readRecord(bb, td));
+        }
+    }
+
+    /**
+     * @return the size in bytes of a record of a tuple of the given schema
+     */
+    static int recordSize(TupleDesc td) {
+        return RECORD_HEADER_SIZE + td.getSize();
+    }
+
+    /**
+     * @return the number of records a page of pageSize bytes can hold
+     */
+    static int maxRecords(TupleDesc td, int pageSize) {
+        return (pageSize - HEADER_SIZE) / recordSize(td);
+    }
+
+    /**
+     * Reads one record, in the format described above, at the position of
+     * bb, and moves past it.
+     */
+    static LsmFile.Record readRecord(ByteBuffer bb, TupleDesc td) throws IOException {
+        int seq = bb.getInt();
+        byte kind = bb.get();
+        if (kind != 0 && kind != 1) {
+            throw new IOException("bad record kind " + kind);
+        }
+        Tuple t = new Tuple(td);
+        try {
+            for (int i = 0; i < td.numFields(); i++) {
+                t.setField(i, td.getFieldType(i).parse(bb));
+            }
+        } catch (java.text.ParseException e) {
+            throw new IOException("bad record: " + e.getMessage());
+        }
+        return new LsmFile.Record(t, seq, kind == 1);
+    }
+
+    /**
+     * Writes one record, in the format described above, at the position of
+     * bb, and moves past it.
+     */
+    static void writeRecord(ByteBuffer bb, LsmFile.Record r, TupleDesc td) {
+        bb.putInt(r.seq);
+        bb.put((byte) (r.deleted ? 1 : 0));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int i = 0; i < td.numFields(); i++) {
+                r.tuple.getField(i).serialize(dos);
+            }
+            dos.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        bb.put(baos.toByteArray(), 0, td.getSize());
+    }
+
+    /**
+     * @return a page of pageSize bytes holding records, in that order;
+     *         there must be at most maxRecords of them
+     */
+    static byte[] createPageData(List<LsmFile.Record> records, TupleDesc td, int pageSize) {
+        ByteBuffer bb = ByteBuffer.allocate(pageSize);
+        bb.putInt(records.size());
+        for (LsmFile.Record r : records) {
+            writeRecord(bb, r, td);
+        }
+        return bb.array();
+    }
+
+    /**
+     * @return the number of records on the page
+     */
+    int getNumRecords() {
+        return records.size();
+    }
+
+    LsmFile.Record getRecord(int i) {
+        return records.get(i);
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the bytes the page was read from; the page cannot change
+     */
+    public byte[] getPageData() {
+        return data;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtyId = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyId;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery; the page itself, as it is never modified */
+    public LsmPage getBeforeImage() {
+        return this;
+    }
+
+    public void setBeforeImage() {
+    }
+}
@@ -0,0 +1,262 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MemoryFile is a DbFile whose pages live only in memory, for temporary
+ * tables, intermediate results and small hot lookup tables that never need
+ * disk I/O. Its contents are lost with it: {@link #writePage} writes
+ * nothing, and there is no file to read the table back from.
+ * <p>
+ * Tuples are stored encoded in MemoryPages, laid out like the slots of a
+ * HeapPage, so that a table takes about as much memory as it would take
+ * disk as a HeapFile, rather than an object per field; they are decoded
+ * again whenever they are read. Inserts fill the lowest page with an empty
+ * slot, so that slots freed by deletes are reused.
+ * <p>
+ * The pages are read directly rather than through the BufferPool, where
+ * they would only take the place of pages that are on disk, and they are
+ * not locked: the file is synchronized, and a scan decodes one page at a
+ * time under its monitor, so that it never sees a page half modified.
+ * Operators can also stage tuples in a MemoryFile that is not in the
+ * Catalog through {@link #add} and {@link #tuples}.
+ *
+ * @see MemoryPage
+ */
+public class MemoryFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    //the next id to try; the ids of the files on disk are hashes of their
+    //paths, anywhere in the int range, so these count up from the bottom
+    //of it, where a clash is unlikely, and skip the ids the Catalog knows
+    private static final AtomicInteger nextId = new AtomicInteger(Integer.MIN_VALUE);
+
+    private final TupleDesc td;
+    private final int pageSize;
+    private final int id;
+    private final ArrayList<MemoryPage> pages = new ArrayList<MemoryPage>();
+    //page numbers of the pages with an empty slot
+    private final TreeSet<Integer> freePages = new TreeSet<Integer>();
+    private int numTuples;
+
+    /**
+     * Creates an empty table of tuples of td, with pages of the
+     * database-wide page size, or just large enough for one tuple if that
+     * is too small.
+     */
+    public MemoryFile(TupleDesc td) {
+        this(td, Math.max(BufferPool.getPageSize(), td.getSize() + 1));
+    }
+
+    /**
+     * @param pageSize bytes per page
+     * @see #MemoryFile(TupleDesc)
+     */
+    public MemoryFile(TupleDesc td, int pageSize) {
+        if (MemoryPage.getNumSlots(td, pageSize) == 0) {
+            throw new IllegalArgumentException("a page of " + pageSize + " bytes cannot hold a tuple of " + td);
+        }
+        this.td = td;
+        this.pageSize = pageSize;
+        this.id = newId();
+    }
+
+    private static int newId() {
+        Catalog catalog = Database.getCatalog();
+        int id;
+        do {
+            id = nextId.getAndIncrement();
+        } while (catalog.containsId(id));
+        return id;
+    }
+
+    /**
+     * Returns an ID that no other MemoryFile has, and that no table or
+     * index in the Catalog had when this file was created, since it has no
+     * path to derive one from. Catalog.addTable refuses a file whose id is
+     * that of a MemoryFile it already has, or the other way round.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of pages of the table
+     */
+    public synchronized int numPages() {
+        return pages.size();
+    }
+
+    /**
+     * @return the number of tuples in the table
+     */
+    public synchronized int numTuples() {
+        return numTuples;
+    }
+
+    /**
+     * Returns the page itself; pages are not copied, since they are only
+     * ever in memory.
+     *
+     * @throws IllegalArgumentException if the page does not exist in this
+     *         file.
+     */
+    public synchronized Page readPage(PageId pid) {
+        if (pid.getTableId() != id || pid.pageNumber() < 0 || pid.pageNumber() >= pages.size()) {
+            throw new IllegalArgumentException("page " + pid.pageNumber() + " is not in this file");
+        }
+        return pages.get(pid.pageNumber());
+    }
+
+    /**
+     * Writes nothing: the page is already the table. It is only marked
+     * clean.
+     */
+    public void writePage(Page page) throws IOException {
+        page.markDirty(false, null);
+    }
+
+    /**
+     * Adds t to the table, and sets its RecordId. Unlike
+     * {@link #insertTuple}, it takes no transaction, for operators that
+     * stage tuples in a file of their own.
+     *
+     * @return the page t was added to
+     * @throws IllegalArgumentException if the schema of t does not match
+     *         the table
+     */
+    public synchronized MemoryPage add(Tuple t) {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new IllegalArgumentException("TupleDesc is mismatch!");
+        }
+        MemoryPage page;
+        if (freePages.isEmpty()) {
+            page = new MemoryPage(new HeapPageId(id, pages.size()), td, pageSize);
+            pages.add(page);
+            freePages.add(page.getId().pageNumber());
+        } else {
+            page = pages.get(freePages.first());
+        }
+        try {
+            page.insertTuple(t);
+        } catch (DbException e) {
+            //the page has an empty slot and the schemas match
+            throw new RuntimeException(e);
+        }
+        if (page.getNumEmptySlots() == 0) {
+            freePages.remove(page.getId().pageNumber());
+        }
+        numTuples++;
+        return page;
+    }
+
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t) throws DbException {
+        ArrayList<Page> modified = new ArrayList<Page>();
+        try {
+            modified.add(add(t));
+        } catch (IllegalArgumentException e) {
+            throw new DbException(e.getMessage());
+        }
+        return modified;
+    }
+
+    public synchronized Page deleteTuple(TransactionId tid, Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != id) {
+            throw new DbException("tuple is not in this file");
+        }
+        int pgNo = rid.getPageId().pageNumber();
+        if (pgNo < 0 || pgNo >= pages.size()) {
+            throw new DbException("tuple is not in this file");
+        }
+        MemoryPage page = pages.get(pgNo);
+        page.deleteTuple(t);
+        freePages.add(pgNo);
+        numTuples--;
+        return page;
+    }
+
+    /**
+     * Returns {@link #iterator(TransactionId)}: the pages are in memory,
+     * so skipping some of them would save little.
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> filters) {
+        return iterator(tid);
+    }
+
+    /**
+     * Returns an iterator over the tuples of the table, in page order,
+     * which reads the pages directly; see the class comment.
+     */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new DbFileIterator() {
+            private static final long serialVersionUID = 1L;
+            private Iterator<Tuple> it;
+
+            public void open() {
+                it = tuples();
+            }
+
+            public boolean hasNext() {
+                return it != null && it.hasNext();
+            }
+
+            public Tuple next() {
+                if (it == null) {
+                    throw new NoSuchElementException();
+                }
+                return it.next();
+            }
+
+            public void rewind() {
+                open();
+            }
+
+            public void close() {
+                it = null;
+            }
+        };
+    }
+
+    /**
+     * @return an iterator over the tuples of the table, in page order,
+     *         without a transaction; tuples added to a page the iterator
+     *         has not reached yet are returned as well
+     */
+    public Iterator<Tuple> tuples() {
+        return new Iterator<Tuple>() {
+            private int pgNo = 0;
+            private Iterator<Tuple> page = Collections.<Tuple>emptyList().iterator();
+
+            public boolean hasNext() {
+                while (!page.hasNext()) {
+                    synchronized (MemoryFile.this) {
+                        if (pgNo >= pages.size()) {
+                            return false;
+                        }
+                        page = pages.get(pgNo++).getTuples().iterator();
+                    }
+                }
+                return true;
+            }
+
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("[INFO] removal is not allowed");
+            }
+        };
+    }
+}
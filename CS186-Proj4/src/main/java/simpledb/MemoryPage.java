@@ -0,0 +1,200 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Each instance of MemoryPage stores one page of a MemoryFile and
+ * implements the Page interface that is used by BufferPool. The page is
+ * laid out like a HeapPage, a header bitmap of the used slots followed by
+ * the slots, but it is never read from or written to disk: tuples are
+ * encoded into the page when they are inserted and decoded again, with the
+ * schema of the file, whenever they are read, so that a page costs its
+ * bytes and nothing else.
+ * <p>
+ * The page is not synchronized; its MemoryFile serializes access to it.
+ *
+ * @see MemoryFile
+ */
+public class MemoryPage implements Page {
+
+    private final HeapPageId pid;
+    private final TupleDesc td;
+    private final int numSlots;
+    private final int headerSize;
+    private final byte[] data;
+    private int numEmptySlots;
+    private TransactionId dirtyId;
+
+    /**
+     * Creates an empty page of pageSize bytes holding tuples of td.
+     */
+    MemoryPage(HeapPageId id, TupleDesc td, int pageSize) {
+        this.pid = id;
+        this.td = td;
+        this.numSlots = getNumSlots(td, pageSize);
+        this.headerSize = (numSlots + 7) / 8;
+        this.data = new byte[pageSize];
+        this.numEmptySlots = numSlots;
+    }
+
+    /**
+     * @return the number of slots of a page of pageSize bytes holding tuples
+     *         of td, as for a HeapPage
+     */
+    static int getNumSlots(TupleDesc td, int pageSize) {
+        return (pageSize * 8) / (td.getSize() * 8 + 1);
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the number of slots on this page
+     */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        return numEmptySlots;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return ((data[i / 8] >> (i % 8)) & 1) > 0;
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        if (value) {
+            data[i / 8] |= (byte) (1 << (i % 8));
+        } else {
+            data[i / 8] &= (byte) ~(1 << (i % 8));
+        }
+    }
+
+    /**
+     * Encodes t into the first empty slot of the page, and sets its
+     * RecordId to that slot. t itself is not kept.
+     *
+     * @throws DbException if the page is full or the schema of t does not
+     *         match the page
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (numEmptySlots == 0) {
+            throw new DbException("Page is full!");
+        }
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc is mismatch!");
+        }
+        int slot = 0;
+        while (isSlotUsed(slot)) {
+            slot++;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(data, headerSize + slot * td.getSize(), td.getSize());
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (f instanceof IntField) {
+                bb.putInt(((IntField) f).getValue());
+                continue;
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getFieldType(i).getLen());
+            try {
+                f.serialize(new DataOutputStream(baos));
+            } catch (IOException e) {
+                //a ByteArrayOutputStream does not fail
+                throw new RuntimeException(e);
+            }
+            bb.put(baos.toByteArray(), 0, td.getFieldType(i).getLen());
+        }
+        markSlotUsed(slot, true);
+        numEmptySlots--;
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Empties the slot of t.
+     *
+     * @throws DbException if t is not on this page, or its slot is already
+     *         empty
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("The tuple is not belong to this page!");
+        }
+        int slot = rid.tupleno();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+            throw new DbException("tuple slot " + slot + " is already empty");
+        }
+        markSlotUsed(slot, false);
+        numEmptySlots++;
+    }
+
+    /**
+     * @return the tuple in slot i, decoded afresh, or null if the slot is
+     *         empty
+     */
+    public Tuple getTuple(int i) {
+        if (!isSlotUsed(i)) {
+            return null;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(data, headerSize + i * td.getSize(), td.getSize());
+        Tuple t = new Tuple(td);
+        try {
+            for (int j = 0; j < td.numFields(); j++) {
+                t.setField(j, td.getFieldType(j).parse(bb));
+            }
+        } catch (java.text.ParseException e) {
+            //only encodings of fields of td are ever written
+            throw new RuntimeException(e);
+        }
+        t.setRecordId(new RecordId(pid, i));
+        return t;
+    }
+
+    /**
+     * @return the tuples on this page, decoded, in slot order
+     */
+    public List<Tuple> getTuples() {
+        List<Tuple> tuples = new ArrayList<Tuple>(numSlots - numEmptySlots);
+        for (int i = 0; i < numSlots; i++) {
+            if (isSlotUsed(i)) {
+                tuples.add(getTuple(i));
+            }
+        }
+        return tuples;
+    }
+
+    /**
+     * @return a copy of the bytes of the page, in the format of a HeapPage
+     */
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtyId = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyId;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery; the page itself, as a MemoryFile keeps no
+        images and cannot be recovered */
+    public MemoryPage getBeforeImage() {
+        return this;
+    }
+
+    public void setBeforeImage() {
+    }
+}
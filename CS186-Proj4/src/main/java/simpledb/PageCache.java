@@ -0,0 +1,79 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The page cache of a BufferPool, which decides which page to evict once
+ * more pages are put into it than its capacity. Implementations differ
+ * only in their replacement policy, see {@link ReplacementPolicy}, and must
+ * be safe for concurrent use, since read-ahead fills the cache from a
+ * background thread.
+ * <p>
+ * {@link #get} is a reference to the page, which the policy may take into
+ * account; {@link #contains} and {@link #pageIds} are not.
+ * <p>
+ * A cache only evicts the pages its {@link EvictionFilter} lets it; the
+ * policy picks the first of those in its order of eviction, walking past
+ * the others, so that an eviction takes longer the more pages at the
+ * front of that order the filter keeps.
+ */
+public interface PageCache {
+
+    /**
+     * Decides which cached pages a cache may evict, see
+     * {@link ReplacementPolicy#newCache(int, EvictionFilter)}. It is asked
+     * under the latch of the cache, so it must not call back into it.
+     */
+    public interface EvictionFilter {
+
+        /**
+         * @return true if the page may be evicted
+         */
+        public boolean mayEvict(PageId pid, Page page);
+    }
+
+    /** Lets a cache evict any of its pages. */
+    public static final EvictionFilter EVICT_ANY = new EvictionFilter() {
+        public boolean mayEvict(PageId pid, Page page) {
+            return true;
+        }
+    };
+
+    /**
+     * @return the cached page, or null if it is not cached
+     */
+    public Page get(PageId pid);
+
+    /**
+     * Caches the page, replacing any page cached under the same id, and
+     * evicts a page chosen by the policy if the cache is then over
+     * capacity. Putting a page counts as a reference to it. The page put
+     * is never the one evicted.
+     *
+     * @return false, and the cache is left as it was, if the cache is full
+     *         and the filter lets it evict none of its pages
+     */
+    public boolean put(PageId pid, Page page);
+
+    /**
+     * Removes the page from the cache without it counting as an eviction.
+     *
+     * @return the page removed, or null if it was not cached
+     */
+    public Page remove(PageId pid);
+
+    /**
+     * @return true if the page is cached
+     */
+    public boolean contains(PageId pid);
+
+    /**
+     * @return the ids of the cached pages, copied
+     */
+    public ArrayList<PageId> pageIds();
+
+    /**
+     * @return the number of cached pages
+     */
+    public int size();
+}
@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -465,6 +467,154 @@ public class Parser {
         }
     }
 
+    /**
+     * Handles <tt>CLUSTER table ON field;</tt>, which Zql does not parse:
+     * sorts the table on the field and rebuilds its indexes, see
+     * {@link Catalog#clusterTable}. Clustering is not transactional, so it
+     * may not be issued inside a user transaction.
+     */
+    public void handleClusterStatement(String tableName, String fieldName)
+        throws DbException, IOException, simpledb.ParsingException {
+        if (inUserTrans)
+            throw new simpledb.ParsingException(
+                "CLUSTER cannot run inside a transaction");
+        int id;
+        try {
+            id = Database.getCatalog().getTableId(tableName);
+        } catch (NoSuchElementException e) {
+            throw new simpledb.ParsingException("Unknown table : " + tableName);
+        }
+        try {
+            Database.getCatalog().getTupleDesc(id).fieldNameToIndex(fieldName);
+        } catch (NoSuchElementException e) {
+            throw new simpledb.ParsingException("Unknown field " + fieldName
+                + " in table " + tableName);
+        }
+        Database.getCatalog().clusterTable(tableName, fieldName);
+        System.out.println("Clustered " + tableName + " on " + fieldName + ".");
+    }
+
+    /**
+     * Handles <tt>VACUUM table;</tt>, which Zql does not parse: compacts the
+     * table, see {@link Catalog#vacuumTable}, and reports the pages
+     * reclaimed. The compaction commits one short transaction per page, so
+     * it may not be issued inside a user transaction.
+     */
+    public void handleVacuumStatement(String tableName)
+        throws DbException, IOException, TransactionAbortedException,
+        InterruptedException, simpledb.ParsingException {
+        if (inUserTrans)
+            throw new simpledb.ParsingException(
+                "VACUUM cannot run inside a transaction");
+        try {
+            Database.getCatalog().getTableId(tableName);
+        } catch (NoSuchElementException e) {
+            throw new simpledb.ParsingException("Unknown table : " + tableName);
+        }
+        int pages = Database.getCatalog().vacuumTable(tableName);
+        System.out.println("Vacuumed " + tableName + ", " + pages
+            + " pages reclaimed.");
+    }
+
+    /**
+     * Handles <tt>CREATE TEMP[ORARY] TABLE table AS SELECT ...;</tt>, which
+     * Zql does not parse: runs the query as tid and keeps its result in a
+     * MemoryFile, added to the Catalog as the table with its statistics, so
+     * that later statements can query the scratch result like any other
+     * table without it ever reaching disk. The fields are named after those
+     * of the query, without the alias that qualifies them where that leaves
+     * them distinct. The table is lost on exit; an earlier temporary table
+     * of the same name is replaced, but a table on disk is not.
+     */
+    public void handleCreateTempTableStatement(String tableName, String select, TransactionId tid)
+        throws TransactionAbortedException, DbException, IOException,
+        InterruptedException, simpledb.ParsingException, Zql.ParseException {
+        try {
+            int id = Database.getCatalog().getTableId(tableName);
+            if (!(Database.getCatalog().getDbFile(id) instanceof MemoryFile))
+                throw new simpledb.ParsingException("Table " + tableName
+                    + " already exists");
+        } catch (NoSuchElementException e) {
+        }
+        ZqlParser p = new ZqlParser(new ByteArrayInputStream(
+            (select + ";").getBytes("UTF-8")));
+        ZStatement s = p.readStatement();
+        if (!(s instanceof ZQuery))
+            throw new simpledb.ParsingException("Expected a query after AS");
+        Query query = handleQueryStatement((ZQuery) s, tid);
+
+        TupleDesc td = query.getOutputTupleDesc();
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        Set<String> used = new HashSet<String>();
+        for (int i = 0; i < td.numFields(); i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = tempFieldName(td.getFieldName(i), i, used);
+        }
+        MemoryFile file = new MemoryFile(new TupleDesc(types, names));
+        try {
+            query.start();
+            while (query.hasNext())
+                file.add(query.next());
+        } finally {
+            query.close();
+        }
+
+        Database.getCatalog().addTable(file, tableName);
+        //its pages are read from memory, at no I/O cost
+        TableStats.setTableStats(tableName, new TableStats(file.getId(), 0));
+        System.out.println("Created temporary table " + tableName + ", "
+            + file.numTuples() + " rows.");
+    }
+
+    //the name of field i of a temporary table, from its name in the query:
+    //alias.field becomes field unless that is taken, and anything else is
+    //reduced to the characters of an identifier
+    private static String tempFieldName(String name, int i, Set<String> used) {
+        if (name == null)
+            name = "";
+        String field = name.matches("\\w+\\.\\w+") ? name.substring(name.indexOf('.') + 1) : name;
+        if (used.contains(field) || !field.matches("\\w+"))
+            field = name.replaceAll("\\W+", "_").replaceAll("^_+|_+$", "");
+        if (field.length() == 0 || used.contains(field))
+            field = "f" + i;
+        used.add(field);
+        return field;
+    }
+
+    //longest statement checked for being a CLUSTER, VACUUM or CREATE TEMP
+    //TABLE statement
+    private static final int UTILITY_MAX_LENGTH = 1024;
+    private static final Pattern UTILITY = Pattern.compile(
+        "\\s*(?:cluster\\s+(\\w+)\\s+on\\s+(\\w+)|vacuum\\s+(\\w+)"
+            + "|create\\s+temp(?:orary)?\\s+table\\s+(\\w+)\\s+as\\s+(select\\b.*?))\\s*;?\\s*",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * Reads the statement ahead if it is a CLUSTER, VACUUM or CREATE TEMP
+     * TABLE statement and returns its match, with the table and field of
+     * CLUSTER in groups 1 and 2, the table of VACUUM in group 3, and the
+     * table and query of CREATE TEMP TABLE in groups 4 and 5; otherwise
+     * returns null and leaves the stream where it was.
+     */
+    private Matcher readUtilityStatement(InputStream is) throws IOException {
+        is.mark(UTILITY_MAX_LENGTH + 1);
+        byte[] buf = new byte[UTILITY_MAX_LENGTH + 1];
+        int n = 0;
+        while (n < buf.length) {
+            int r = is.read(buf, n, buf.length - n);
+            if (r < 0) break;
+            n += r;
+        }
+        if (n <= UTILITY_MAX_LENGTH) {
+            Matcher m = UTILITY.matcher(new String(buf, 0, n, "UTF-8"));
+            if (m.matches())
+                return m;
+        }
+        is.reset();
+        return null;
+    }
+
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
         throws simpledb.ParsingException {
         ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
@@ -505,6 +655,43 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
+            if (!is.markSupported())
+                is = new BufferedInputStream(is);
+            Matcher utility = readUtilityStatement(is);
+            if (utility != null && utility.group(1) != null) {
+                handleClusterStatement(utility.group(1), utility.group(2));
+                return;
+            } else if (utility != null && utility.group(3) != null) {
+                handleVacuumStatement(utility.group(3));
+                return;
+            } else if (utility != null) {
+                Transaction t = inUserTrans ? curtrans : new Transaction();
+                if (!inUserTrans)
+                    t.start();
+                try {
+                    handleCreateTempTableStatement(utility.group(4),
+                        utility.group(5), t.getId());
+                    if (!inUserTrans)
+                        t.commit();
+                } catch (Throwable a) {
+                    // as for the statements below, abort the transaction
+                    t.abort();
+                    System.out.println("Transaction " + t.getId().getId()
+                        + " aborted because of unhandled error");
+                    this.inUserTrans = false;
+
+                    if (a instanceof simpledb.ParsingException
+                        || a instanceof Zql.ParseException)
+                        throw new ParsingException((Exception) a);
+                    if (a instanceof Zql.TokenMgrError)
+                        throw (Zql.TokenMgrError) a;
+                    throw new DbException(a.getMessage());
+                } finally {
+                    if (!inUserTrans)
+                        curtrans = null;
+                }
+                return;
+            }
 
             ZqlParser p = new ZqlParser(is);
             ZStatement s = p.readStatement();
@@ -569,6 +756,8 @@ public class Parser {
 
         } catch (TransactionAbortedException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         } catch (DbException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -586,7 +775,8 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
         "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-        "insert", "delete", "values", "into" };
+        "insert", "delete", "values", "into", "cluster", "vacuum",
+        "create temporary table" };
 
     public static void main(String argv[]) throws IOException {
 
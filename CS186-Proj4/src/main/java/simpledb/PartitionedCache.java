@@ -0,0 +1,98 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * A PageCache split into partitions by the hash of the PageId, see
+ * {@link BufferPool#BufferPool(int, ReplacementPolicy, int)}. Each
+ * partition is a PageCache of its own under the replacement policy, with
+ * its own share of the capacity, its own replacement state and its own
+ * latch, so that threads that look up different pages mostly take
+ * different latches instead of queueing for the one latch of the whole
+ * cache.
+ * <p>
+ * A partition evicts when it is over its own share, even if others have
+ * room, and chooses the page to evict among its own pages only; with
+ * partitions of a few dozen pages or more, hashing spreads pages evenly
+ * enough that this costs little against one cache of the whole capacity.
+ */
+public class PartitionedCache implements PageCache {
+
+    private final PageCache[] partitions;
+    private final int mask;
+
+    /**
+     * @param partitions the number of partitions, a power of two no larger
+     *        than capacity
+     */
+    public PartitionedCache(ReplacementPolicy policy, int capacity, int partitions) {
+        this(policy, capacity, partitions, EVICT_ANY);
+    }
+
+    /**
+     * @param partitions the number of partitions, a power of two no larger
+     *        than capacity
+     * @param filter the pages every partition may evict
+     */
+    public PartitionedCache(ReplacementPolicy policy, int capacity, int partitions, EvictionFilter filter) {
+        if (partitions <= 0 || Integer.bitCount(partitions) != 1 || partitions > capacity) {
+            throw new IllegalArgumentException("bad number of partitions " + partitions
+                    + " for capacity " + capacity);
+        }
+        this.partitions = new PageCache[partitions];
+        this.mask = partitions - 1;
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = policy.newCache(capacity / partitions + (i < capacity % partitions ? 1 : 0), filter);
+        }
+    }
+
+    //HeapPageId hashes consecutive pages of a table to consecutive values,
+    //so the bits are mixed before the low ones choose the partition
+    private PageCache partition(PageId pid) {
+        int h = pid.hashCode() * 0x9E3779B9;
+        return partitions[(h ^ (h >>> 16)) & mask];
+    }
+
+    /**
+     * @return the number of partitions
+     */
+    public int getPartitions() {
+        return partitions.length;
+    }
+
+    public Page get(PageId pid) {
+        return partition(pid).get(pid);
+    }
+
+    public boolean put(PageId pid, Page page) {
+        return partition(pid).put(pid, page);
+    }
+
+    public Page remove(PageId pid) {
+        return partition(pid).remove(pid);
+    }
+
+    public boolean contains(PageId pid) {
+        return partition(pid).contains(pid);
+    }
+
+    /**
+     * @return the ids of the cached pages, copied one partition at a time,
+     *         so not a snapshot of the whole cache at any one moment
+     */
+    public ArrayList<PageId> pageIds() {
+        ArrayList<PageId> pids = new ArrayList<PageId>();
+        for (PageCache partition : partitions) {
+            pids.addAll(partition.pageIds());
+        }
+        return pids;
+    }
+
+    public int size() {
+        int size = 0;
+        for (PageCache partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,44 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * PaxHeapFile is a HeapFile whose pages are PaxHeapPages, which store each
+ * page column by column. It suits analytic tables whose queries read a few
+ * of many columns: only the columns a query reads are decoded.
+ * <p>
+ * Page I/O, free-space tracking, inserts, deletes and scans are inherited
+ * from HeapFile, so the table plugs into SeqScan and the Catalog like any
+ * other HeapFile. Files in this format are produced by HeapFileEncoder with
+ * columnar set, or by inserting into an empty file.
+ *
+ * @see PaxHeapPage
+ * @see HeapFileEncoder#convert(File, File, int, int, Type[], char, boolean)
+ */
+public class PaxHeapFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    public PaxHeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+     */
+    public PaxHeapFile(File f, TupleDesc td, boolean memoryMapped) {
+        super(f, td, memoryMapped);
+    }
+
+    /**
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean, int)
+     */
+    public PaxHeapFile(File f, TupleDesc td, boolean memoryMapped, int pageSize) {
+        super(f, td, memoryMapped, pageSize);
+    }
+
+    @Override
+    protected Page createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new PaxHeapPage(pid, data);
+    }
+}
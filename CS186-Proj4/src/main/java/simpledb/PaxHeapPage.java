@@ -0,0 +1,106 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * PaxHeapPage is a page of a PaxHeapFile. It has the same header and the
+ * same number of slots as a HeapPage, but lays the tuples out column by
+ * column: the values of field 0 for every slot, then the values of field 1,
+ * and so on. Each column sits in its own contiguous region, so a scan that
+ * reads two fields of a ten-field table touches only those two regions.
+ * <p>
+ * The offset of field j of slot i is
+ * <p>
+ *      header size + numSlots * (sum of the lengths of fields 0..j-1) + i * length of field j
+ * <p>
+ * Tuples are decoded lazily one field at a time, as for HeapPage, so fields
+ * that are never read are never parsed.
+ *
+ * @see PaxHeapFile
+ * @see HeapPage
+ */
+public class PaxHeapPage extends HeapPage {
+
+    //offset of the region of every column inside the page
+    int columnStarts[];
+
+    /**
+     * Create a PaxHeapPage from a set of bytes of data read from disk, in the
+     * format described above.
+     *
+     * @see HeapPage#HeapPage(HeapPageId, byte[])
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, data);
+        columnStarts = columnStarts(td, numSlots, header.length);
+    }
+
+    /**
+     * @return the offset of every column region of a page of td with the
+     *         given number of slots and header bytes
+     */
+    static int[] columnStarts(TupleDesc td, int numSlots, int headerSize) {
+        int starts[] = new int[td.numFields()];
+        int start = headerSize;
+        for (int j = 0; j < starts.length; j++) {
+            starts[j] = start;
+            start += numSlots * td.getFieldType(j).getLen();
+        }
+        return starts;
+    }
+
+    @Override
+    int fieldPosition(int slotId, int fieldNo) {
+        return columnStarts[fieldNo] + slotId * td.getFieldType(fieldNo).getLen();
+    }
+
+    @Override
+    public PaxHeapPage getBeforeImage(){
+        try {
+            return new PaxHeapPage(pid, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page in the
+     * columnar layout. Fields of tuples that were never decoded are copied
+     * as raw bytes; empty slots are left zero.
+     *
+     * @see #PaxHeapPage
+     * @return A byte array correspond to the bytes of this page.
+     */
+    @Override
+    public byte[] getPageData() {
+        byte[] page = new byte[pageSize];
+        System.arraycopy(header, 0, page, 0, header.length);
+
+        ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream(Type.STRING_TYPE.getLen());
+        DataOutputStream dos = new DataOutputStream(fieldBytes);
+        for (int j = 0; j < td.numFields(); j++) {
+            int len = td.getFieldType(j).getLen();
+            for (int i = 0; i < numSlots; i++) {
+                if (!isSlotUsed(i)) continue;
+
+                int pos = fieldPosition(i, j);
+                if (tuples[i] == null) {
+                    System.arraycopy(data, pos, page, pos, len);
+                    continue;
+                }
+                fieldBytes.reset();
+                try {
+                    tuples[i].getField(j).serialize(dos);
+                    dos.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                System.arraycopy(fieldBytes.toByteArray(), 0, page, pos, len);
+            }
+        }
+        return page;
+    }
+}
@@ -67,6 +67,8 @@ public class Predicate implements Serializable {
     private int field;
     private Op op;
     private Field operand;
+    //operand encoded in the dictionary of the compared column, see filter
+    private transient DictStringField encodedOperand;
 
     public Predicate(int field, Op op, Field operand) {
         // some code goes here
@@ -116,8 +118,20 @@ public class Predicate implements Serializable {
         // some code goes here
         if (t == null) return false;
 
+        Field f = t.getField(field);
+        if (f instanceof DictStringField && operand instanceof StringField) {
+            //look the operand up once, then every tuple compares codes
+            DictStringField d = (DictStringField) f;
+            DictStringField encoded = encodedOperand;
+            if (encoded == null || !d.sameColumn(encoded)) {
+                encoded = d.encode((StringField) operand);
+                encodedOperand = encoded;
+            }
+            return f.compare(op, encoded);
+        }
+
         //like the t > operand 
-        if (t.getField(field).compare(op, operand)) return true;
+        if (f.compare(op, operand)) return true;
         else return false;
     }
 
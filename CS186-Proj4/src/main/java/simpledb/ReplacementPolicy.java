@@ -0,0 +1,61 @@
+package simpledb;
+
+/**
+ * The page replacement policies a BufferPool can be created with, see
+ * {@link BufferPool#setReplacementPolicy}.
+ */
+public enum ReplacementPolicy {
+
+    /** Evicts the least recently used page. */
+    LRU {
+        public PageCache newCache(int capacity, PageCache.EvictionFilter filter) {
+            return new LRUCache(capacity, filter);
+        }
+    },
+
+    /**
+     * Approximates LRU with a reference bit per page and a clock hand,
+     * so that a hit only sets a bit.
+     */
+    CLOCK {
+        public PageCache newCache(int capacity, PageCache.EvictionFilter filter) {
+            return new ClockCache(capacity, filter);
+        }
+    },
+
+    /**
+     * Admits a page referenced once to a small FIFO queue only, and
+     * promotes it to the main LRU queue when it is referenced again soon
+     * after its eviction from there, so that a scan cannot flush the
+     * pages that are referenced repeatedly.
+     */
+    TWO_Q {
+        public PageCache newCache(int capacity, PageCache.EvictionFilter filter) {
+            return new TwoQueueCache(capacity, filter);
+        }
+    },
+
+    /**
+     * Evicts the page whose second most recent reference is the oldest,
+     * pages referenced only once first.
+     */
+    LRU_K {
+        public PageCache newCache(int capacity, PageCache.EvictionFilter filter) {
+            return new LruKCache(capacity, filter);
+        }
+    };
+
+    /**
+     * @return an empty cache of capacity pages under this policy, which
+     *         may evict any of its pages
+     */
+    public PageCache newCache(int capacity) {
+        return newCache(capacity, PageCache.EVICT_ANY);
+    }
+
+    /**
+     * @return an empty cache of capacity pages under this policy, which
+     *         only evicts the pages filter lets it
+     */
+    public abstract PageCache newCache(int capacity, PageCache.EvictionFilter filter);
+}
@@ -32,6 +32,8 @@ public class SeqScan implements DbIterator {
     private int tableId;
     private String tableAlias;
     private DbFileIterator fIterator;
+    //predicates whose non-matching pages the scan may skip
+    private List<Predicate> pageFilters = new ArrayList<Predicate>();
 
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
         // some code goes here
@@ -74,6 +76,20 @@ public class SeqScan implements DbIterator {
         // some code goes here
         this.tableId = tableid;
         this.tableAlias = tableAlias;
+        this.pageFilters.clear();
+    }
+
+    /**
+     * Lets the scan skip pages on which no tuple can satisfy p, if the table
+     * keeps per-page summaries (see {@link HeapFile#iterator(TransactionId, List)}).
+     * The scan may still return tuples that do not satisfy p; Filter
+     * registers its predicate here and then applies it as usual. Takes
+     * effect at the next open.
+     */
+    public void addPageFilter(Predicate p) {
+        if (!pageFilters.contains(p)) {
+            pageFilters.add(p);
+        }
     }
 
     public SeqScan(TransactionId tid, int tableid) {
@@ -83,7 +99,11 @@ public class SeqScan implements DbIterator {
     public void open() throws DbException, TransactionAbortedException, InterruptedException {
         // some code goes here
         DbFile file = Database.getCatalog().getDbFile(tableId);
-        fIterator = file.iterator(tid);
+        if (pageFilters.isEmpty()) {
+            fIterator = file.iterator(tid);
+        } else {
+            fIterator = file.iterator(tid, pageFilters);
+        }
         fIterator.open();
     }
 
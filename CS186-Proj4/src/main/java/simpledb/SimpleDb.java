@@ -43,11 +43,37 @@ public class SimpleDb {
                 }
 
                 HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
-                    BufferPool.PAGE_SIZE, numOfAttributes, ts, fieldSeparator);
+                    BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
 
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
+        } else if (args[0].equals("slotted")) {
+            // rewrite a table of a catalog in the slotted page format
+            if (args.length != 4) {
+                System.err.println("Usage: slotted <catalog file> <table> <output file>");
+                return;
+            }
+            Database.getCatalog().loadSchema(args[1]);
+            HeapFile table = (HeapFile) Database.getCatalog().getDbFile(
+                    Database.getCatalog().getTableId(args[2]));
+            int pages = SlottedHeapFile.convert(table, new File(args[3]));
+            System.out.println("Wrote " + pages + " pages (was " + table.numPages() + ")");
+        } else if (args[0].equals("dict")) {
+            // rewrite a table of a catalog with some string fields dictionary-encoded
+            if (args.length < 5) {
+                System.err.println("Usage: dict <catalog file> <table> <output file> <field>...");
+                return;
+            }
+            Database.getCatalog().loadSchema(args[1]);
+            HeapFile table = (HeapFile) Database.getCatalog().getDbFile(
+                    Database.getCatalog().getTableId(args[2]));
+            boolean[] encoded = new boolean[table.getTupleDesc().numFields()];
+            for (int i = 4; i < args.length; i++) {
+                encoded[table.getTupleDesc().fieldNameToIndex(args[i])] = true;
+            }
+            int pages = DictHeapFile.convert(table, new File(args[3]), encoded);
+            System.out.println("Wrote " + pages + " pages (was " + table.numPages() + ")");
         } else if (args[0].equals("print")) {
             File tableFile = new File(args[1]);
             int columns = Integer.parseInt(args[2]);
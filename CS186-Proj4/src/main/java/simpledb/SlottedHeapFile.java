@@ -0,0 +1,120 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * SlottedHeapFile is a HeapFile whose pages are SlottedHeapPages, which store
+ * tuples at their actual length instead of in fixed-size slots. Tables with
+ * string columns typically need several times fewer pages than in the
+ * HeapPage format, and a scan reads proportionally fewer bytes.
+ * <p>
+ * Page I/O, free-space tracking and scans are inherited from HeapFile; only
+ * the page format differs. Existing HeapFiles are converted with
+ * {@link #convert}.
+ *
+ * @see SlottedHeapPage
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    public SlottedHeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+     */
+    public SlottedHeapFile(File f, TupleDesc td, boolean memoryMapped) {
+        super(f, td, memoryMapped);
+    }
+
+    /**
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean, int)
+     */
+    public SlottedHeapFile(File f, TupleDesc td, boolean memoryMapped, int pageSize) {
+        super(f, td, memoryMapped, pageSize);
+    }
+
+    @Override
+    protected Page createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new SlottedHeapPage(pid, data);
+    }
+
+    @Override
+    protected Iterator<Tuple> pageIterator(Page page) {
+        return ((SlottedHeapPage) page).iterator();
+    }
+
+    @Override
+    protected Tuple tupleAt(Page page, int slot) {
+        return ((SlottedHeapPage) page).getTuple(slot);
+    }
+
+    @Override
+    protected boolean hasRoomFor(Page page, Tuple t) {
+        return ((SlottedHeapPage) page).hasRoomFor(t);
+    }
+
+    @Override
+    protected void insertIntoPage(Page page, Tuple t) throws DbException {
+        ((SlottedHeapPage) page).insertTuple(t);
+    }
+
+    @Override
+    protected void deleteFromPage(Page page, Tuple t) throws DbException {
+        ((SlottedHeapPage) page).deleteTuple(t);
+    }
+
+    /**
+     * Writes every tuple of a HeapFile into a new file in the slotted page
+     * format, packing each page as full as it goes. The source pages are
+     * read directly, not through the BufferPool, so the source must not be
+     * modified concurrently. The source must be in the Catalog, which is
+     * what its pages are decoded against.
+     *
+     * @param source the table to convert
+     * @param out the file to write; it is overwritten
+     * @return the number of pages written
+     */
+    public static int convert(HeapFile source, File out) throws IOException, DbException {
+        return convert(source, out, source.getPageSize());
+    }
+
+    /**
+     * Like {@link #convert(HeapFile, File)}, writing pages of pageSize bytes,
+     * which need not match the page size of the source.
+     */
+    public static int convert(HeapFile source, File out, int pageSize) throws IOException, DbException {
+        int pages = 0;
+
+        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(out));
+        try {
+            SlottedHeapPage target = null;
+            for (int i = 0; i < source.numPages(); i++) {
+                Page page = source.readPage(new HeapPageId(source.getId(), i));
+                Iterator<Tuple> it = source.pageIterator(page);
+                while (it.hasNext()) {
+                    Tuple t = it.next();
+                    if (target != null && !target.hasRoomFor(t)) {
+                        bos.write(target.getPageData());
+                        target = null;
+                    }
+                    if (target == null) {
+                        target = new SlottedHeapPage(new HeapPageId(source.getId(), pages++),
+                                SlottedHeapPage.createEmptyPageData(pageSize));
+                    }
+                    //throws if the tuple does not fit even on an empty page
+                    target.insertTuple(t);
+                }
+            }
+            if (target != null) {
+                bos.write(target.getPageData());
+            }
+        } finally {
+            bos.close();
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,400 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * SlottedHeapPage is a page of a SlottedHeapFile. Unlike HeapPage, which
+ * stores every tuple in a fixed-size slot, it stores each tuple at its actual
+ * encoded length, so strings take only as many bytes as they have
+ * characters.
+ * <p>
+ * The on-disk layout of a page is:
+ * <ul>
+ * <li>2 bytes: the number of slots in the slot directory</li>
+ * <li>4 bytes per slot: offset and length of the tuple, as unsigned shorts;
+ *     a length of 0 marks an empty slot</li>
+ * <li>free space</li>
+ * <li>the tuples, packed against the end of the page</li>
+ * </ul>
+ * An INT_TYPE field takes 4 bytes. A STRING_TYPE field takes a 2 byte length
+ * followed by that many bytes, at most Type.STRING_LEN.
+ * <p>
+ * A tuple keeps its slot, and so its RecordId, for as long as it lives on the
+ * page; free space is compacted whenever the page is serialised. Like
+ * HeapPage, tuples are decoded from the raw page bytes only when first asked
+ * for.
+ *
+ * @see SlottedHeapFile
+ * @see HeapPage
+ */
+public class SlottedHeapPage implements Page {
+
+    static final int HEADER_SIZE = 2;
+    static final int SLOT_SIZE = 4;
+    static final int STRING_HEADER_SIZE = 2;
+    static final int MAX_PAGE_SIZE = 1 << 16;
+
+    HeapPageId pid;
+    TupleDesc td;
+
+    //slot directory as read from disk, or -1 offsets for tuples added since
+    int numSlots;
+    int offsets[];
+    int lengths[];
+    Tuple tuples[];
+    //total length of the tuples stored on the page
+    int usedBytes;
+
+    //raw bytes of the page as read from disk, never modified
+    byte[] data;
+    //bytes per page, the length of data
+    int pageSize;
+
+    byte[] oldData;
+    TransactionId dirtyId;
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk, in
+     * the format described above. The page size is the length of data, at
+     * most 64 KB since offsets are unsigned shorts. Only the slot directory
+     * is decoded here.
+     * The page keeps a reference to data, so callers must not modify the
+     * array afterwards.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.data = data;
+        this.pageSize = data.length;
+        if (pageSize > MAX_PAGE_SIZE) {
+            throw new IOException("page size " + pageSize + " above " + MAX_PAGE_SIZE);
+        }
+
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        numSlots = bb.getShort() & 0xffff;
+        if (HEADER_SIZE + numSlots * SLOT_SIZE > data.length) {
+            throw new IOException("corrupt slot directory on page " + id.pageNumber());
+        }
+        offsets = new int[Math.max(numSlots, 8)];
+        lengths = new int[offsets.length];
+        tuples = new Tuple[offsets.length];
+        for (int i = 0; i < numSlots; i++) {
+            offsets[i] = bb.getShort() & 0xffff;
+            lengths[i] = bb.getShort() & 0xffff;
+            if (offsets[i] + lengths[i] > data.length) {
+                throw new IOException("corrupt slot " + i + " on page " + id.pageNumber());
+            }
+            usedBytes += lengths[i];
+        }
+
+        oldData = data;
+    }
+
+    /**
+     * @return the number of bytes td needs for t in this page format
+     */
+    public static int encodedSize(TupleDesc td, Tuple t) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                String s = ((StringField) t.getField(i)).getValue();
+                size += STRING_HEADER_SIZE + Math.min(s.length(), Type.STRING_LEN);
+            } else {
+                size += td.getFieldType(i).getLen();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the smallest number of bytes any tuple of td can take
+     */
+    public static int minTupleSize(TupleDesc td) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            size += td.getFieldType(i) == Type.STRING_TYPE ? STRING_HEADER_SIZE : td.getFieldType(i).getLen();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes a tuple of the given encoded size needs on
+     *         this page, including a new slot if no empty one can be reused
+     */
+    private int spaceNeeded(int tupleSize) {
+        return tupleSize + (firstEmptySlot() < numSlots ? 0 : SLOT_SIZE);
+    }
+
+    private int firstEmptySlot() {
+        int i = 0;
+        while (i < numSlots && lengths[i] != 0) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the number of free bytes on this page
+     */
+    public int getFreeSpace() {
+        return pageSize - HEADER_SIZE - numSlots * SLOT_SIZE - usedBytes;
+    }
+
+    /**
+     * @return true if t fits on this page; if t is null, whether the smallest
+     *         possible tuple does
+     */
+    public boolean hasRoomFor(Tuple t) {
+        int size = t == null ? minTupleSize(td) : encodedSize(td, t);
+        return spaceNeeded(size) <= getFreeSpace();
+    }
+
+    /**
+     * @return the number of tuples on this page
+     */
+    public int getNumTuples() {
+        int n = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (lengths[i] != 0) n++;
+        }
+        return n;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedHeapPage getBeforeImage(){
+        try {
+            return new SlottedHeapPage(pid, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Returns the tuple in the given slot, decoding it from the raw page
+     * bytes the first time it is asked for.
+     *
+     * @return the tuple, or null if the slot is empty
+     */
+    Tuple getTuple(int slotId) {
+        if (lengths[slotId] == 0) {
+            return null;
+        }
+        if (tuples[slotId] == null) {
+            ByteBuffer bb = ByteBuffer.wrap(data, offsets[slotId], lengths[slotId]);
+            Tuple t = new Tuple(td);
+            t.setRecordId(new RecordId(pid, slotId));
+            for (int j = 0; j < td.numFields(); j++) {
+                if (td.getFieldType(j) == Type.STRING_TYPE) {
+                    byte bs[] = new byte[bb.getShort() & 0xffff];
+                    bb.get(bs);
+                    t.setField(j, new StringField(new String(bs), Type.STRING_LEN));
+                } else {
+                    t.setField(j, new IntField(bb.getInt()));
+                }
+            }
+            tuples[slotId] = t;
+        }
+        return tuples[slotId];
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page, with all
+     * tuples packed against the end of the page. Tuples that were never
+     * decoded are copied as raw bytes.
+     *
+     * @see #SlottedHeapPage
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public byte[] getPageData() {
+        byte[] page = new byte[pageSize];
+        ByteBuffer bb = ByteBuffer.wrap(page);
+        bb.putShort((short) numSlots);
+
+        int end = page.length;
+        for (int i = 0; i < numSlots; i++) {
+            if (lengths[i] == 0) {
+                bb.putShort((short) 0);
+                bb.putShort((short) 0);
+                continue;
+            }
+
+            int len;
+            if (tuples[i] == null) {
+                len = lengths[i];
+                end -= len;
+                System.arraycopy(data, offsets[i], page, end, len);
+            } else {
+                len = encodedSize(td, tuples[i]);
+                end -= len;
+                writeTuple(tuples[i], ByteBuffer.wrap(page, end, len));
+            }
+            bb.putShort((short) end);
+            bb.putShort((short) len);
+        }
+        return page;
+    }
+
+    private void writeTuple(Tuple t, ByteBuffer bb) {
+        for (int j = 0; j < td.numFields(); j++) {
+            Field f = t.getField(j);
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                String s = ((StringField) f).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                bb.putShort((short) len);
+                //one byte per character, as StringField.serialize writes it
+                for (int k = 0; k < len; k++) {
+                    bb.put((byte) s.charAt(k));
+                }
+            } else {
+                bb.putInt(((IntField) f).getValue());
+            }
+        }
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * SlottedHeapPage.
+     *
+     * @return The returned ByteArray, of the database-wide page size.
+     */
+    public static byte[] createEmptyPageData() {
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return an empty SlottedHeapPage of pageSize bytes.
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0, no slots
+    }
+
+    /**
+     * Delete the specified tuple from the page; its slot becomes free for
+     * reuse.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        if (t.getRecordId() == null || !t.getRecordId().getPageId().equals(this.pid)) {
+            throw new DbException("The tuple is not belong to this page!");
+        }
+
+        int slotId = t.getRecordId().tupleno();
+        if (slotId >= numSlots || lengths[slotId] == 0) {
+            throw new DbException("Tuple slot is already empty!");
+        }
+
+        usedBytes -= lengths[slotId];
+        lengths[slotId] = 0;
+        offsets[slotId] = 0;
+        tuples[slotId] = null;
+    }
+
+    /**
+     * Adds the specified tuple to the page; the tuple should be updated to
+     * reflect that it is now stored on this page.
+     * @throws DbException if the page does not have room for the tuple or
+     *         tupledesc is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc is mismatch!");
+        }
+
+        int size = encodedSize(td, t);
+        if (spaceNeeded(size) > getFreeSpace()) {
+            throw new DbException("Page is full!");
+        }
+
+        int slotId = firstEmptySlot();
+        if (slotId == numSlots) {
+            if (numSlots == offsets.length) {
+                offsets = Arrays.copyOf(offsets, numSlots * 2);
+                lengths = Arrays.copyOf(lengths, numSlots * 2);
+                tuples = Arrays.copyOf(tuples, numSlots * 2);
+            }
+            numSlots++;
+        }
+
+        //the tuple is not in data, so it is always serialised from tuples[]
+        offsets[slotId] = -1;
+        lengths[slotId] = size;
+        tuples[slotId] = t;
+        usedBytes += size;
+        t.setRecordId(new RecordId(this.pid, slotId));
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        if (dirty){
+            dirtyId = tid;
+        } else {
+            dirtyId = null;
+        }
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return dirtyId;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            //the next used slot, or numSlots once all of them are visited
+            private int slotIndex = nextUsedSlot(0);
+
+            private int nextUsedSlot(int from) {
+                while (from < numSlots && lengths[from] == 0) {
+                    from++;
+                }
+                return from;
+            }
+
+            public boolean hasNext() {
+                return slotIndex < numSlots;
+            }
+
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                Tuple t = getTuple(slotIndex);
+                slotIndex = nextUsedSlot(slotIndex + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("[INFO] removal is not allowed");
+            }
+        };
+    }
+
+}
@@ -0,0 +1,117 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * SortOrder records the field a HeapFile was last clustered on, see
+ * {@link HeapFile#cluster}, and how many of its leading pages are still
+ * sorted on it. Pages appended after clustering do not affect the sorted
+ * prefix; an insert into a page of the prefix cuts the prefix short before
+ * that page, since the page is no longer known to hold only keys between
+ * those of its neighbours. Deletes leave the prefix alone.
+ * <p>
+ * The order is persisted in a sidecar file next to the heap file, named
+ * <tt>&lt;heap file&gt;.sort</tt>, holding the field and the number of
+ * sorted pages, and written through on every change. Unlike the other
+ * sidecars it cannot be rebuilt from the pages: if it is missing, the file
+ * is not clustered.
+ */
+class SortOrder {
+
+    private static final int SIZE = 8;
+
+    private final File sidecar;
+
+    private boolean loaded;
+    //-1 if the file is not clustered
+    private int field;
+    private int sortedPages;
+
+    SortOrder(HeapFile file) {
+        this.sidecar = new File(file.getFile().getPath() + ".sort");
+    }
+
+    /**
+     * @return the field the file is sorted on, or -1 if it is not clustered
+     */
+    synchronized int field() {
+        load();
+        return field;
+    }
+
+    /**
+     * @return the number of leading pages of the file sorted on field()
+     */
+    synchronized int sortedPages() {
+        load();
+        return sortedPages;
+    }
+
+    /**
+     * Records that the first sortedPages pages of the file are sorted on
+     * the given field.
+     */
+    synchronized void set(int field, int sortedPages) {
+        loaded = true;
+        this.field = field;
+        this.sortedPages = sortedPages;
+        save();
+    }
+
+    /**
+     * Records that page pgNo was modified in a way that may break the
+     * order, so only the pages before it are still sorted.
+     */
+    synchronized void invalidate(int pgNo) {
+        load();
+        if (field >= 0 && pgNo < sortedPages) {
+            sortedPages = pgNo;
+            save();
+        }
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        field = -1;
+        sortedPages = 0;
+        if (sidecar.length() != SIZE) return;
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(sidecar));
+            try {
+                field = in.readInt();
+                sortedPages = in.readInt();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            field = -1;
+            sortedPages = 0;
+        }
+    }
+
+    private void save() {
+        ByteBuffer bb = ByteBuffer.allocate(SIZE);
+        bb.putInt(field);
+        bb.putInt(sortedPages);
+        bb.flip();
+        try {
+            FileChannel ch = new RandomAccessFile(sidecar, "rw").getChannel();
+            try {
+                ch.truncate(SIZE);
+                while (bb.hasRemaining()) {
+                    ch.write(bb, bb.position());
+                }
+            } finally {
+                ch.close();
+            }
+        } catch (IOException e) {
+            //without the sidecar the file is simply not clustered
+            e.printStackTrace();
+            sidecar.delete();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package simpledb;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+/**
+ * StringDictionary maps the distinct values of the dictionary-encoded string
+ * columns of a DictHeapFile to integer codes 0, 1, 2, ... in order of first
+ * appearance, separately for every column. Pages store only the codes.
+ * <p>
+ * Codes are never reassigned or removed, so a code read from any page stays
+ * valid. The dictionary is persisted in a sidecar file next to the heap
+ * file, named <tt>&lt;heap file&gt;.dict</tt>, as a sequence of
+ * (field number, value) records written with DataOutput.writeInt and
+ * writeUTF. A value is appended to the sidecar when it is first encoded,
+ * which is before any page holding its code is written. A torn record at
+ * the end of the sidecar is dropped when it is loaded.
+ *
+ * @see DictHeapFile
+ * @see DictStringField
+ */
+class StringDictionary {
+
+    private static class Column {
+        final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+        //decoded field of every code, shared by all the tuples holding it;
+        //replaced by a larger copy when full so that readers need no lock
+        volatile DictStringField[] values = new DictStringField[16];
+        int count;
+    }
+
+    private final File sidecar;
+    private RandomAccessFile out;
+
+    //null for the columns that are not encoded
+    private final Column[] columns;
+
+    StringDictionary(File sidecar, boolean[] encoded) throws IOException {
+        this.sidecar = sidecar;
+        this.columns = new Column[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            if (encoded[i]) {
+                columns[i] = new Column();
+            }
+        }
+        load();
+    }
+
+    private void load() throws IOException {
+        if (!sidecar.exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)));
+        long valid = 0;
+        try {
+            while (true) {
+                int field = in.readInt();
+                String s = in.readUTF();
+                if (field < 0 || field >= columns.length || columns[field] == null) {
+                    throw new IOException("bad dictionary entry for field " + field + " in " + sidecar);
+                }
+                add(field, s);
+                valid += 4 + 2 + utfLength(s);
+            }
+        } catch (EOFException e) {
+            //end of the sidecar, or a record torn by a crash
+        } finally {
+            in.close();
+        }
+        if (valid < sidecar.length()) {
+            RandomAccessFile raf = new RandomAccessFile(sidecar, "rw");
+            try {
+                raf.setLength(valid);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    //number of bytes writeUTF uses for the characters of s
+    private static int utfLength(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            len += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+        }
+        return len;
+    }
+
+    private int add(int field, String s) {
+        Column col = columns[field];
+        int code = col.count++;
+        DictStringField[] values = col.values;
+        if (code == values.length) {
+            DictStringField[] grown = new DictStringField[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, values.length);
+            values = grown;
+        }
+        values[code] = new DictStringField(s, this, field, code);
+        col.values = values;
+        col.codes.put(s, code);
+        return code;
+    }
+
+    /**
+     * @return true if field fieldNo is dictionary-encoded
+     */
+    boolean isEncoded(int fieldNo) {
+        return columns[fieldNo] != null;
+    }
+
+    /**
+     * @return the code of s in column fieldNo, adding it to the dictionary,
+     *         and to the sidecar, if it is not there yet
+     */
+    synchronized int encode(int fieldNo, String s) throws IOException {
+        Integer code = columns[fieldNo].codes.get(s);
+        if (code != null) {
+            return code;
+        }
+        if (out == null) {
+            out = new RandomAccessFile(sidecar, "rw");
+            out.seek(out.length());
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(fieldNo);
+        dos.writeUTF(s);
+        out.write(baos.toByteArray());
+        return add(fieldNo, s);
+    }
+
+    /**
+     * @return the field of column fieldNo holding s; if s is not in the
+     *         dictionary, a field with value s and code -1 - (number of
+     *         values of the column)
+     * @see DictStringField#getCode
+     */
+    synchronized DictStringField lookup(int fieldNo, String s) {
+        Column col = columns[fieldNo];
+        Integer code = col.codes.get(s);
+        return code != null ? col.values[code] : new DictStringField(s, this, fieldNo, -1 - col.count);
+    }
+
+    /**
+     * @return the field of column fieldNo with the given code
+     * @throws NoSuchElementException if the code is not in the dictionary
+     */
+    DictStringField decode(int fieldNo, int code) throws NoSuchElementException {
+        DictStringField[] values = columns[fieldNo].values;
+        if (code < 0 || code >= values.length || values[code] == null) {
+            throw new NoSuchElementException("no dictionary entry " + code + " for field " + fieldNo);
+        }
+        return values[code];
+    }
+
+    /**
+     * @return the number of distinct values of column fieldNo
+     */
+    synchronized int size(int fieldNo) {
+        return columns[fieldNo].count;
+    }
+
+    /**
+     * Closes the sidecar file. The next new value reopens it.
+     */
+    synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
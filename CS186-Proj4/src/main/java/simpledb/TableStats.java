@@ -17,6 +17,13 @@ public class TableStats {
 
     static final int IOCOSTPERPAGE = 1000;
 
+    /** How many times a page read at random costs more than one read by a
+        sequential scan, which the disk and the read-ahead serve in order. */
+    static final double RANDOMREADFACTOR = 4.0;
+
+    /** Pages read at random to reach the first matching leaf of an index. */
+    static final int INDEXPROBEPAGES = 3;
+
     public static TableStats getTableStats(String tablename) {
         return statsMap.get(tablename);
     }
@@ -209,12 +216,77 @@ public class TableStats {
     // 假设在bufferpool中预先没有page，硬盘一次只读取一个完整的页，不管它是否满tuple
     public double estimateScanCost() {
         // some code goes here
-        HeapFile table = (HeapFile)Database.getCatalog().getDbFile(tableid);
         //页数 x 读取每一页的iocost，难道不是这样子吗？
-        return table.numPages() * iocostperpage;
+        return numPages() * iocostperpage;
         //return 0;
     }
 
+    //the pages of the table; an LsmFile counts those of its runs, since its
+    //memtable costs nothing to read
+    private int numPages() {
+        return Database.getCatalog().getDbFile(tableid).numPages();
+    }
+
+    /**
+     * Estimates the cost of a scan of a table clustered on a field, see
+     * {@link HeapFile#cluster}, under a range or equality predicate of the
+     * given selectivity on that field, in the units of
+     * {@link #estimateScanCost}: a binary search over the sorted pages,
+     * then the matching share of them, read in order, and the pages
+     * appended since the table was clustered.
+     *
+     * @param selectivityFactor
+     *            The selectivity of the predicate on the clustered field
+     * @return The estimated cost of the scan
+     */
+    public double estimateClusteredScanCost(double selectivityFactor) {
+        HeapFile table = (HeapFile)Database.getCatalog().getDbFile(tableid);
+        int sorted = table.sortedPages();
+        double search = Math.ceil(Math.log(sorted + 1) / Math.log(2));
+        return (search * RANDOMREADFACTOR + Math.ceil(selectivityFactor * sorted) + table.numPages() - sorted)
+                * iocostperpage;
+    }
+
+    /**
+     * Estimates the cost of reading the tuples that satisfy a predicate of
+     * the given selectivity through an index on the table, in the units of
+     * {@link #estimateScanCost}. Every matching tuple costs a random read of
+     * its page, but no page is counted twice, on top of the descent through
+     * the index.
+     *
+     * @param selectivityFactor
+     *            The selectivity of the predicate served by the index
+     * @return The estimated cost of the index scan
+     */
+    public double estimateIndexScanCost(double selectivityFactor) {
+        return estimateIndexScanCost(selectivityFactor, INDEXPROBEPAGES);
+    }
+
+    /**
+     * @param probePages
+     *            The pages read to reach the first matching entry of the
+     *            index, as given by {@link IndexFile#probePages}
+     * @see #estimateIndexScanCost(double)
+     */
+    public double estimateIndexScanCost(double selectivityFactor, int probePages) {
+        double pages = Math.min(totalTuples() * selectivityFactor, numPages());
+        return (probePages + pages) * iocostperpage * RANDOMREADFACTOR;
+    }
+
+    /**
+     * Estimates the cost of answering a predicate of the given selectivity
+     * from the entries of an index alone, without reading the table, in the
+     * units of {@link #estimateScanCost}: the descent through the index,
+     * then the matching share of its pages, read in order.
+     *
+     * @param indexPages
+     *            The number of pages of the index
+     * @see IndexScan#isIndexOnly
+     */
+    public double estimateIndexOnlyScanCost(double selectivityFactor, int probePages, int indexPages) {
+        return (probePages * RANDOMREADFACTOR + Math.ceil(selectivityFactor * indexPages)) * iocostperpage;
+    }
+
     /**
      * This method returns the number of tuples in the relation, given that a
      * predicate with selectivity selectivityFactor is applied.
@@ -240,7 +312,12 @@ public class TableStats {
      * expected selectivity. You may estimate this value from the histograms.
      * */
     public double avgSelectivity(int field, Predicate.Op op) {
-        // some code goes here
+        //only equality is estimated from the histograms
+        Object his = hisArray.get(field);
+        if (op == Predicate.Op.EQUALS && his instanceof IntHistogram)
+            return ((IntHistogram) his).avgSelectivity();
+        if (op == Predicate.Op.EQUALS && his instanceof StringHistogram)
+            return ((StringHistogram) his).avgSelectivity();
         return 1.0;
     }
 
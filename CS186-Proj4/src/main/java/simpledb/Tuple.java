@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -26,12 +28,27 @@ public class Tuple implements Serializable {
     //use hash map to store the all field
     private Field[] allFields;
 
+    //page and slot the unset fields are decoded from, null for a plain tuple
+    private transient HeapPage page;
+    private int slot;
+
     public Tuple(TupleDesc td) {
         // some code goes here
         this.td = td;
         allFields = new Field[td.numFields()];
     }
 
+    /**
+     * Create a tuple backed by a slot of a HeapPage. Its fields are decoded
+     * from the page bytes one at a time, the first time each is read.
+     */
+    Tuple(TupleDesc td, HeapPage page, int slot) {
+        this(td);
+        this.page = page;
+        this.slot = slot;
+        this.rid = new RecordId(page.getId(), slot);
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -80,12 +97,15 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
+        if (allFields[i] == null && page != null) {
+            allFields[i] = page.readField(slot, i);
+        }
         return allFields[i];
     }
 
     public Field getFieldByName(String field) {
         int index = this.getTupleDesc().fieldNameToIndex(field);
-        return allFields[index];
+        return getField(index);
     }
 
     /**
@@ -101,11 +121,19 @@ public class Tuple implements Serializable {
         //throw new UnsupportedOperationException("Implement this");
         String tupleString = "";
         for (int i = 0; i < allFields.length; i++){
-            tupleString += allFields[i].toString() + "\t";
+            tupleString += getField(i).toString() + "\t";
         }
         return tupleString;
     }
 
+    //decode every field before the page reference is dropped
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        for (int i = 0; i < allFields.length; i++) {
+            getField(i);
+        }
+        out.defaultWriteObject();
+    }
+
     /**
      * @return
      *        An iterator which iterates over all the fields of this tuple
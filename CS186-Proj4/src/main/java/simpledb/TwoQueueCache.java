@@ -0,0 +1,137 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * A PageCache that resists scans with the 2Q algorithm of Johnson and
+ * Shasha, see {@link ReplacementPolicy#TWO_Q}. A page put into the cache
+ * for the first time enters a FIFO queue, A1in, of about a quarter of the
+ * capacity, where hits leave it alone, since they are usually correlated
+ * references from the same operator. When it is evicted from there only
+ * its id is remembered, in a FIFO queue of ghosts, A1out, of half the
+ * capacity. A page put again while its ghost is remembered has been
+ * referenced twice some time apart, and enters the main LRU queue, Am.
+ * <p>
+ * Eviction takes the oldest page of A1in while A1in is over its share, and
+ * the least recently used page of Am otherwise, so that the pages of a
+ * scan, referenced once each, only ever displace one another in A1in,
+ * while the pages referenced repeatedly stay in Am. Every operation takes
+ * O(1).
+ */
+public class TwoQueueCache implements PageCache {
+
+    private final int capacity;
+    //the most pages A1in holds before it is evicted from first
+    private final int maxIn;
+    //the most ids A1out remembers
+    private final int maxOut;
+    //A1in, oldest first
+    private final LinkedHashMap<PageId, Page> in;
+    //A1out, oldest first
+    private final LinkedHashSet<PageId> out;
+    //Am, least recently used first
+    private final LinkedHashMap<PageId, Page> main;
+    private final EvictionFilter filter;
+
+    public TwoQueueCache(int capacity) {
+        this(capacity, EVICT_ANY);
+    }
+
+    public TwoQueueCache(int capacity, EvictionFilter filter) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("bad capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.maxIn = Math.max(1, capacity / 4);
+        this.maxOut = Math.max(1, capacity / 2);
+        this.in = new LinkedHashMap<PageId, Page>();
+        this.out = new LinkedHashSet<PageId>();
+        this.main = new LinkedHashMap<PageId, Page>(capacity * 4 / 3 + 1, 0.75f, true);
+        this.filter = filter;
+    }
+
+    public synchronized ArrayList<PageId> pageIds() {
+        ArrayList<PageId> pids = new ArrayList<PageId>(in.keySet());
+        pids.addAll(main.keySet());
+        return pids;
+    }
+
+    public synchronized int size() {
+        return in.size() + main.size();
+    }
+
+    public synchronized boolean contains(PageId pid) {
+        return in.containsKey(pid) || main.containsKey(pid);
+    }
+
+    /**
+     * A hit in Am makes the page its most recently used; a hit in A1in
+     * changes nothing.
+     */
+    public synchronized Page get(PageId pid) {
+        Page page = main.get(pid);
+        return page != null ? page : in.get(pid);
+    }
+
+    public synchronized Page remove(PageId pid) {
+        Page page = main.remove(pid);
+        return page != null ? page : in.remove(pid);
+    }
+
+    public synchronized boolean put(PageId pid, Page page) {
+        if (main.containsKey(pid)) {
+            main.put(pid, page);
+            return true;
+        }
+        if (in.containsKey(pid)) {
+            in.put(pid, page);
+            return true;
+        }
+        boolean ghost = out.remove(pid);
+        if (ghost) {
+            main.put(pid, page);
+        } else {
+            in.put(pid, page);
+        }
+        if (size() > capacity && !evict(pid)) {
+            if (ghost) {
+                main.remove(pid);
+                out.add(pid);
+            } else {
+                in.remove(pid);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    //evicts from the queue whose turn it is, or from the other one if the
+    //filter lets it evict nothing there; never pid, the page just put
+    private boolean evict(PageId pid) {
+        boolean fromIn = in.size() > maxIn || main.isEmpty();
+        return evictFrom(fromIn ? in : main, pid) || evictFrom(fromIn ? main : in, pid);
+    }
+
+    //evicts the first page of queue the filter allows; a page evicted from
+    //A1in leaves its ghost in A1out
+    private boolean evictFrom(LinkedHashMap<PageId, Page> queue, PageId pid) {
+        Iterator<Map.Entry<PageId, Page>> it = queue.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<PageId, Page> e = it.next();
+            if (e.getKey().equals(pid) || !filter.mayEvict(e.getKey(), e.getValue())) {
+                continue;
+            }
+            it.remove();
+            if (queue == in) {
+                out.add(e.getKey());
+                if (out.size() > maxOut) {
+                    Iterator<PageId> ghosts = out.iterator();
+                    ghosts.next();
+                    ghosts.remove();
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,260 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ZoneMap records, for every page of a HeapFile, the minimum and maximum of
+ * every INT_TYPE field over the tuples of the page, so that a filtered scan
+ * can skip pages on which no tuple can match without reading them.
+ * <p>
+ * The ranges only ever widen: inserts widen the range of their page, while
+ * deletes leave it alone, since the deleting transaction may still abort.
+ * A range may therefore be wider than the values on its page, never
+ * narrower. The map is persisted in a sidecar file next to the heap file,
+ * named <tt>&lt;heap file&gt;.zm</tt>, holding the number of pages covered
+ * and the number of int fields, followed by a (min, max) pair per int field
+ * per page. Every entry that changes is written through immediately. If the
+ * sidecar is missing, or covers a different number of pages than the heap
+ * file, the map is rebuilt from the pages; deleting it tightens the ranges.
+ *
+ * @see HeapFile#iterator(TransactionId, List)
+ */
+class ZoneMap {
+
+    private static final int HEADER_SIZE = 8;
+
+    private final HeapFile file;
+    private final File sidecar;
+    private FileChannel channel;
+
+    //position of every field among the int fields, or -1
+    private final int[] column;
+    private final int numColumns;
+
+    //min and max of every int field of every page, page after page; an
+    //empty page has min > max
+    private int[] ranges;
+    //number of pages of the heap file the map covers
+    private int numPages;
+
+    ZoneMap(HeapFile file) {
+        this.file = file;
+        this.sidecar = new File(file.getFile().getPath() + ".zm");
+        TupleDesc td = file.getTupleDesc();
+        column = new int[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < column.length; i++) {
+            column[i] = td.getFieldType(i) == Type.INT_TYPE ? n++ : -1;
+        }
+        numColumns = n;
+    }
+
+    /**
+     * Returns false if no tuple of the given page can satisfy every one of
+     * the predicates; true if one may. Predicates on other than int fields
+     * never exclude a page.
+     */
+    synchronized boolean mayMatch(int pgNo, List<Predicate> predicates) {
+        if (numColumns == 0) return true;
+        load();
+        extend(file.numPages());
+        if (pgNo >= numPages) return true;
+
+        int entry = pgNo * numColumns * 2;
+        if (ranges[entry] > ranges[entry + 1]) {
+            //no tuples at all
+            return false;
+        }
+        for (Predicate p : predicates) {
+            if (p.getField() >= column.length || column[p.getField()] < 0
+                    || !(p.getOperand() instanceof IntField)) {
+                continue;
+            }
+            int at = entry + column[p.getField()] * 2;
+            if (!mayMatch(ranges[at], ranges[at + 1], p.getOp(), ((IntField) p.getOperand()).getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean mayMatch(int min, int max, Predicate.Op op, int v) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return min <= v && v <= max;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        }
+        return true;
+    }
+
+    /**
+     * Widens the ranges of the given page to cover t. Until the first
+     * filtered scan builds the map there is nothing to maintain.
+     */
+    synchronized void widen(int pgNo, Tuple t) {
+        if (numColumns == 0 || (ranges == null && !sidecar.exists())) return;
+        load();
+        //also picks up a page that was just appended
+        extend(Math.max(file.numPages(), pgNo + 1));
+
+        int entry = pgNo * numColumns * 2;
+        if (cover(entry, t)) {
+            saveEntry(pgNo);
+        }
+    }
+
+    //widens the entry at the given offset to cover t; true if it changed
+    private boolean cover(int entry, Tuple t) {
+        boolean changed = false;
+        for (int i = 0; i < column.length; i++) {
+            if (column[i] < 0) continue;
+            int v = ((IntField) t.getField(i)).getValue();
+            int at = entry + column[i] * 2;
+            if (v < ranges[at]) {
+                ranges[at] = v;
+                changed = true;
+            }
+            if (v > ranges[at + 1]) {
+                ranges[at + 1] = v;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Closes the sidecar file. The next access reopens it.
+     */
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        ranges = null;
+    }
+
+    private void load() {
+        if (ranges != null) return;
+
+        ranges = new int[0];
+        numPages = 0;
+        int filePages = file.numPages();
+        try {
+            if (sidecar.length() == HEADER_SIZE + entrySize() * (long) filePages) {
+                ByteBuffer bb = ByteBuffer.allocate((int) sidecar.length());
+                FileChannel ch = getChannel();
+                while (bb.hasRemaining()) {
+                    if (ch.read(bb, bb.position()) < 0) break;
+                }
+                bb.flip();
+                if (bb.getInt() == filePages && bb.getInt() == numColumns) {
+                    ranges = new int[filePages * numColumns * 2];
+                    bb.asIntBuffer().get(ranges);
+                    numPages = filePages;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        //no usable sidecar, rebuild it from the pages
+        extend(filePages);
+        save();
+    }
+
+    /**
+     * Covers pages up to, but not including, n by reading them. Pages
+     * written to the file without going through HeapFile.insertTuple, e.g.
+     * by HeapFileEncoder, are picked up here.
+     */
+    private void extend(int n) {
+        if (n <= numPages) return;
+        int[] grown = new int[n * numColumns * 2];
+        System.arraycopy(ranges, 0, grown, 0, ranges.length);
+        ranges = grown;
+        for (int i = numPages; i < n; i++) {
+            int entry = i * numColumns * 2;
+            for (int c = 0; c < numColumns; c++) {
+                ranges[entry + c * 2] = Integer.MAX_VALUE;
+                ranges[entry + c * 2 + 1] = Integer.MIN_VALUE;
+            }
+            Page page = file.readCurrentPage(new HeapPageId(file.getId(), i));
+            if (page == null) continue;
+            Iterator<Tuple> it = file.pageIterator(page);
+            while (it.hasNext()) {
+                cover(entry, it.next());
+            }
+        }
+        numPages = n;
+        save();
+    }
+
+    private void save() {
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + entrySize() * numPages);
+        bb.putInt(numPages);
+        bb.putInt(numColumns);
+        bb.asIntBuffer().put(ranges, 0, numPages * numColumns * 2);
+        bb.clear();
+        try {
+            FileChannel ch = getChannel();
+            ch.truncate(bb.capacity());
+            while (bb.hasRemaining()) {
+                ch.write(bb, bb.position());
+            }
+        } catch (IOException e) {
+            discard(e);
+        }
+    }
+
+    private void saveEntry(int pgNo) {
+        ByteBuffer bb = ByteBuffer.allocate(entrySize());
+        bb.asIntBuffer().put(ranges, pgNo * numColumns * 2, numColumns * 2);
+        try {
+            FileChannel ch = getChannel();
+            long offset = HEADER_SIZE + (long) entrySize() * pgNo;
+            while (bb.hasRemaining()) {
+                ch.write(bb, offset + bb.position());
+            }
+        } catch (IOException e) {
+            discard(e);
+        }
+    }
+
+    //a sidecar that could not be written is deleted so that it gets rebuilt,
+    //the in-memory map stays valid
+    private void discard(IOException e) {
+        e.printStackTrace();
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+        sidecar.delete();
+    }
+
+    private int entrySize() {
+        return numColumns * 2 * 4;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(sidecar, "rw").getChannel();
+        }
+        return channel;
+    }
+}
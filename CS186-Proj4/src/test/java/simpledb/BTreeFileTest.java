@@ -0,0 +1,225 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 1000;
+    private static final int KEYS = 200;
+    // small pages, so that the tree is a few levels deep: 20 entries per
+    // leaf, 15 per internal page
+    private static final int INDEX_PAGE_SIZE = 256;
+    // the pages a test dirties stay in the buffer pool until it commits
+    private static final int POOL_PAGES = 500;
+
+    private File f;
+    private HeapFile hf;
+    private String name;
+    private TransactionId tid;
+
+    /**
+     * An empty (key, id) table; rows are inserted by the tests.
+     */
+    @Before
+    public void setUp() throws Exception {
+        f = SystemTestUtil.createTempTableFile("btree", 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2));
+        name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(hf, name);
+        Database.resetBufferPool(POOL_PAGES);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+    }
+
+    private BTreeFile newIndex() throws IOException {
+        File idx = File.createTempFile("btree", ".idx");
+        idx.deleteOnExit();
+        BTreeFile index = new BTreeFile(idx, hf, 0, INDEX_PAGE_SIZE);
+        Database.getCatalog().addIndex(index, name);
+        return index;
+    }
+
+    // key of row i; every key is used ROWS / KEYS times
+    private static int key(int i) {
+        return (i * 37) % KEYS;
+    }
+
+    private void insertRows() throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { key(i), i }));
+        }
+    }
+
+    private List<Integer> keys(DbFileIterator it) throws Exception {
+        List<Integer> keys = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext()) {
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        return keys;
+    }
+
+    private List<Integer> keys(BTreeFile index, Predicate.Op op, int v) throws Exception {
+        return keys(index.indexIterator(tid, op, new IntField(v)));
+    }
+
+    /**
+     * Unit test for BTreeFile.insertTuple through BufferPool.insertTuple
+     */
+    @Test
+    public void insert() throws Exception {
+        BTreeFile index = newIndex();
+        insertRows();
+        assertTrue(index.numPages() > ROWS / 20);
+
+        List<Integer> keys = keys(index.iterator(tid));
+        assertEquals(ROWS, keys.size());
+        List<Integer> sorted = new ArrayList<Integer>(keys);
+        Collections.sort(sorted);
+        assertEquals(sorted, keys);
+
+        // every entry points at its tuple
+        DbFileIterator it = index.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple entry = it.next();
+            HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid,
+                    index.getRecordId(entry).getPageId(), Permissions.READ_ONLY);
+            Iterator<Tuple> tuples = p.iterator();
+            boolean found = false;
+            while (tuples.hasNext()) {
+                Tuple t = tuples.next();
+                if (t.getRecordId().equals(index.getRecordId(entry))) {
+                    assertEquals(entry.getField(0), t.getField(0));
+                    found = true;
+                }
+            }
+            assertTrue(found);
+        }
+        it.close();
+    }
+
+    /**
+     * Unit test for BTreeFile.indexIterator
+     */
+    @Test
+    public void indexIterator() throws Exception {
+        BTreeFile index = newIndex();
+        insertRows();
+        int perKey = ROWS / KEYS;
+
+        assertEquals(Collections.nCopies(perKey, 42), keys(index, Predicate.Op.EQUALS, 42));
+        assertEquals(0, keys(index, Predicate.Op.EQUALS, KEYS).size());
+        assertEquals(10 * perKey, keys(index, Predicate.Op.LESS_THAN, 10).size());
+        assertEquals(11 * perKey, keys(index, Predicate.Op.LESS_THAN_OR_EQ, 10).size());
+        assertEquals((KEYS - 11) * perKey, keys(index, Predicate.Op.GREATER_THAN, 10).size());
+        assertEquals((KEYS - 10) * perKey, keys(index, Predicate.Op.GREATER_THAN_OR_EQ, 10).size());
+        assertEquals((KEYS - 1) * perKey, keys(index, Predicate.Op.NOT_EQUALS, 10).size());
+        assertEquals(perKey, keys(index, Predicate.Op.EQUALS, 0).size());
+        assertEquals(perKey, keys(index, Predicate.Op.EQUALS, KEYS - 1).size());
+    }
+
+    /**
+     * Unit test for BTreeFile.deleteTuple through BufferPool.deleteTuple
+     */
+    @Test
+    public void delete() throws Exception {
+        BTreeFile index = newIndex();
+        insertRows();
+
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        scan.open();
+        int deleted = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            if (((IntField) t.getField(0)).getValue() < 50) {
+                Database.getBufferPool().deleteTuple(tid, t);
+                deleted++;
+            }
+        }
+        scan.close();
+
+        assertEquals(ROWS - deleted, keys(index.iterator(tid)).size());
+        assertEquals(0, keys(index, Predicate.Op.LESS_THAN, 50).size());
+        assertEquals(ROWS / KEYS, keys(index, Predicate.Op.EQUALS, 50).size());
+    }
+
+    /**
+     * Unit test for BTreeFile.build
+     */
+    @Test
+    public void build() throws Exception {
+        insertRows();
+        // the build reads the table as it is on disk
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        File idx = File.createTempFile("btree", ".idx");
+        idx.deleteOnExit();
+        BTreeFile index = BTreeFile.build(idx, hf, 0);
+        Database.getCatalog().addIndex(index, name);
+
+        List<Integer> keys = keys(index.iterator(tid));
+        assertEquals(ROWS, keys.size());
+        assertEquals(Collections.nCopies(ROWS / KEYS, 7), keys(index, Predicate.Op.EQUALS, 7));
+
+        // the built tree takes inserts
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 7, ROWS }));
+        assertEquals(ROWS / KEYS + 1, keys(index, Predicate.Op.EQUALS, 7).size());
+    }
+
+    /**
+     * Unit test for an index over a string field
+     */
+    @Test
+    public void stringKeys() throws Exception {
+        File sf = SystemTestUtil.createTempTableFile("btree", 2);
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+        HeapFile shf = new HeapFile(sf, td);
+        String sname = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(shf, sname);
+        File idx = File.createTempFile("btree", ".idx");
+        idx.deleteOnExit();
+        BTreeFile index = new BTreeFile(idx, shf, 0);
+        Database.getCatalog().addIndex(index, sname);
+
+        for (int i = 0; i < 100; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField("name" + (i % 10), Type.STRING_LEN));
+            t.setField(1, new IntField(i));
+            Database.getBufferPool().insertTuple(tid, shf.getId(), t);
+        }
+        DbFileIterator it = index.indexIterator(tid, Predicate.Op.EQUALS, new StringField("name3", Type.STRING_LEN));
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            assertEquals("name3", ((StringField) it.next().getField(0)).getValue());
+            n++;
+        }
+        it.close();
+        assertEquals(10, n);
+        shf.close();
+        index.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
@@ -0,0 +1,173 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BloomFilterTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+
+    private File f;
+    private HeapFile hf;
+    private String name;
+    private TransactionId tid;
+
+    /**
+     * Write (2 * i, i) rows in shuffled order, so that every page covers
+     * nearly the whole key range and the zone maps cannot rule out the odd
+     * keys, which no row holds.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < ROWS; i++) {
+            keys.add(2 * i);
+        }
+        Collections.shuffle(keys, new Random(0));
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(keys.get(i), i)));
+        }
+        f = SystemTestUtil.createTempTableFile("bloom", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2));
+        hf.addBloomFilter(0);
+        name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(hf, name);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+    }
+
+    private int count(DbIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    private int count(DbFileIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    private DbIterator lookup(int key) {
+        return new Filter(new Predicate(0, Predicate.Op.EQUALS, new IntField(key)), new SeqScan(tid, hf.getId()));
+    }
+
+    /**
+     * Unit test for HeapFile.mayContain
+     */
+    @Test
+    public void mayContain() throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            assertTrue(hf.mayContain(0, new IntField(2 * i)));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < ROWS; i++) {
+            if (hf.mayContain(0, new IntField(2 * i + 1))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < ROWS * 3 / 100);
+        assertFalse(hf.hasBloomFilter(1));
+        assertTrue(hf.mayContain(1, new IntField(-1)));
+        assertTrue(new File(f.getPath() + ".0.bf").exists());
+    }
+
+    /**
+     * Unit test for HeapFile.iterator skipping every page for a key the
+     * filter rules out; a page that is read returns all of its tuples
+     */
+    @Test
+    public void skipPages() throws Exception {
+        List<Predicate> present = Arrays.asList(new Predicate(0, Predicate.Op.EQUALS, new IntField(42)));
+        int n = count(hf.iterator(tid, present));
+        assertTrue(n > 1);
+        assertTrue(n < ROWS);
+
+        int key = 1;
+        while (hf.mayContain(0, new IntField(key))) {
+            key += 2;
+        }
+        List<Predicate> absent = Arrays.asList(new Predicate(0, Predicate.Op.EQUALS, new IntField(key)));
+        assertEquals(0, count(hf.iterator(tid, absent)));
+    }
+
+    /**
+     * Unit test for Filter over SeqScan consulting the Bloom filter
+     */
+    @Test
+    public void filterScan() throws Exception {
+        assertEquals(1, count(lookup(42)));
+        assertEquals(0, count(lookup(43)));
+    }
+
+    /**
+     * Unit test for an IndexScan consulting the Bloom filter of its table
+     */
+    @Test
+    public void indexScan() throws Exception {
+        File idx = File.createTempFile("bloom", ".hash");
+        idx.deleteOnExit();
+        HashFile index = HashFile.build(idx, hf, 0, true);
+        Database.getCatalog().addIndex(index, name);
+
+        assertEquals(1, count(new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(42))));
+        assertEquals(0, count(new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(43))));
+        // a key the filter lets through is still looked up in the index
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 43, 0 }));
+        assertEquals(1, count(new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(43))));
+        index.close();
+    }
+
+    /**
+     * Unit test for keeping the filter current on insert, past its capacity
+     */
+    @Test
+    public void insert() throws Exception {
+        assertFalse(hf.mayContain(0, new IntField(-2)));
+        for (int i = 1; i <= ROWS * 2; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { -2 * i, 0 }));
+        }
+        for (int i = 1; i <= ROWS * 2; i++) {
+            assertTrue(hf.mayContain(0, new IntField(-2 * i)));
+        }
+
+        // reloaded from the sidecar
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+        tid = new TransactionId();
+        assertTrue(hf.mayContain(0, new IntField(-2 * ROWS)));
+        assertTrue(hf.mayContain(0, new IntField(2 * ROWS - 2)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BloomFilterTest.class);
+    }
+}
@@ -0,0 +1,149 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BufferRingTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 50;
+    //rows of two int fields per page
+    private static final int ROWS_PER_PAGE = BufferPool.PAGE_SIZE * 8 / (2 * 4 * 8 + 1);
+
+    private BufferPool bp;
+    private HeapFile hot;
+    private HeapFile large;
+    private TransactionId tid;
+
+    private HeapFile table(int pages) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < pages * ROWS_PER_PAGE; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("ring", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    /**
+     * A table of a few pages, read into the pool, and one of three times as
+     * many pages as the pool holds.
+     */
+    @Before
+    public void setUp() throws Exception {
+        bp = Database.resetBufferPool(POOL_PAGES);
+        hot = table(POOL_PAGES / 5);
+        large = table(3 * POOL_PAGES);
+        tid = new TransactionId();
+        for (int i = 0; i < hot.numPages(); i++) {
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bp.transactionComplete(tid);
+        hot.close();
+        large.close();
+    }
+
+    private int scan(HeapFile hf) throws Exception {
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        scan.open();
+        int rows = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            rows++;
+        }
+        scan.close();
+        return rows;
+    }
+
+    private int cached(HeapFile hf) {
+        int cached = 0;
+        for (int i = 0; i < hf.numPages(); i++) {
+            if (bp.isCached(new HeapPageId(hf.getId(), i))) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Unit test for scans of tables larger than the pool: they read every
+     * row, leave the pages cached before them alone, and do not cache
+     * their own
+     */
+    @Test
+    public void largeScan() throws Exception {
+        assertEquals(large.numPages() * ROWS_PER_PAGE, scan(large));
+        assertEquals(hot.numPages(), cached(hot));
+        assertEquals(0, cached(large));
+
+        //and again with the rings off, to show the hot pages are at risk
+        bp.setRingPages(0);
+        assertEquals(large.numPages() * ROWS_PER_PAGE, scan(large));
+        assertEquals(0, cached(hot));
+    }
+
+    /**
+     * Unit test for scans of tables that fit in the pool, which keep using
+     * the shared cache
+     */
+    @Test
+    public void smallScan() throws Exception {
+        assertNull(bp.newScanRing(POOL_PAGES));
+        assertNotNull(bp.newScanRing(POOL_PAGES + 1));
+        bp.discardPages(hot.getId());
+        assertEquals(hot.numPages() * ROWS_PER_PAGE, scan(hot));
+        assertEquals(hot.numPages(), cached(hot));
+    }
+
+    /**
+     * Unit test for the pages of a ring: every getPage sees the same copy
+     * of a page, a ring recycles its own frames, and discarded pages are
+     * read again
+     */
+    @Test
+    public void ringPages() throws Exception {
+        BufferRing ring = bp.newScanRing(large.numPages());
+        assertEquals(BufferPool.DEFAULT_RING_PAGES, ring.size());
+
+        HeapPageId first = new HeapPageId(large.getId(), 0);
+        Page page = bp.getPage(tid, first, Permissions.READ_ONLY, ring);
+        assertFalse(bp.isCached(first));
+        assertSame(page, bp.getPage(tid, first, Permissions.READ_ONLY, ring));
+        assertSame(page, bp.getPage(tid, first, Permissions.READ_ONLY));
+        assertTrue(bp.isCached(first));
+
+        HeapPageId second = new HeapPageId(large.getId(), 1);
+        Page other = bp.getPage(tid, second, Permissions.READ_ONLY, ring);
+        for (int i = 2; i < 2 + ring.size(); i++) {
+            bp.getPage(tid, new HeapPageId(large.getId(), i), Permissions.READ_ONLY, ring);
+        }
+        assertNotSame(other, bp.getPage(tid, second, Permissions.READ_ONLY, ring));
+
+        HeapPageId last = new HeapPageId(large.getId(), 1 + ring.size());
+        Page ringed = bp.getPage(tid, last, Permissions.READ_ONLY, ring);
+        bp.discardPages(large.getId());
+        assertNotSame(ringed, bp.getPage(tid, last, Permissions.READ_ONLY, ring));
+        ring.release();
+        assertEquals(hot.numPages(), cached(hot));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferRingTest.class);
+    }
+}
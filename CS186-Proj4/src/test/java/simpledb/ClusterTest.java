@@ -0,0 +1,299 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ClusterTest extends SimpleDbTestBase {
+    private static final int ROWS = 6000;
+    // every key is held by this many rows
+    private static final int DUPLICATES = 3;
+
+    private File f;
+    private HeapFile hf;
+    private String name;
+    private TransactionId tid;
+
+    /**
+     * Write (i / DUPLICATES, i) rows in shuffled order, so that every page
+     * covers nearly the whole key range until the table is clustered.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(i);
+        }
+        Collections.shuffle(rows, new Random(0));
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i : rows) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i / DUPLICATES, i)));
+        }
+        f = SystemTestUtil.createTempTableFile("cluster", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        // a name the parser accepts
+        name = "t" + SystemTestUtil.getUUID().replace("-", "");
+        Database.getCatalog().addTable(hf, name);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+    }
+
+    private List<Tuple> tuples(DbIterator it) throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        return tuples;
+    }
+
+    private int count(DbFileIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    private static int key(Tuple t) {
+        return ((IntField) t.getField(0)).getValue();
+    }
+
+    //the keys of the tuples, checked to be ascending if sorted is set
+    private static List<Integer> keys(List<Tuple> tuples, boolean sorted) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (Tuple t : tuples) {
+            if (sorted && !keys.isEmpty()) {
+                assertTrue(keys.get(keys.size() - 1) <= key(t));
+            }
+            keys.add(key(t));
+        }
+        return keys;
+    }
+
+    private DbIterator range(int from, int to) {
+        return new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(from)),
+                new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(to)),
+                        new SeqScan(tid, hf.getId())));
+    }
+
+    /**
+     * Unit test for ExternalSort, with many runs and several merge passes
+     */
+    @Test
+    public void externalSort() throws Exception {
+        File out = File.createTempFile("cluster", ".sorted");
+        out.deleteOnExit();
+        Set<String> before = runs(out.getAbsoluteFile().getParentFile());
+        int pages = new ExternalSort(hf, 0, 2, 3).sort(out);
+        assertEquals(hf.numPages(), pages);
+        assertEquals((long) pages * BufferPool.PAGE_SIZE, out.length());
+
+        HeapFile sorted = new HeapFile(out, hf.getTupleDesc());
+        Database.getCatalog().addTable(sorted, SystemTestUtil.getUUID());
+        List<Integer> keys = keys(tuples(new SeqScan(tid, sorted.getId())), true);
+        assertEquals(ROWS, keys.size());
+        assertEquals(Integer.valueOf(0), keys.get(0));
+        assertEquals(Integer.valueOf((ROWS - 1) / DUPLICATES), keys.get(ROWS - 1));
+        sorted.close();
+        // no run is left behind
+        assertEquals(before, runs(out.getAbsoluteFile().getParentFile()));
+    }
+
+    /**
+     * Unit test for ExternalSort.entries, with many runs and several merge
+     * passes: every tuple gets one entry of the chosen fields and its
+     * RecordId, in order
+     */
+    @Test
+    public void externalSortEntries() throws Exception {
+        File dir = f.getAbsoluteFile().getParentFile();
+        Set<String> before = runs(dir);
+        ExternalSort.Merge entries = new ExternalSort(hf, new int[] { 1 }, new TupleComparator(0, true), 2, 3)
+                .entries(dir);
+        Set<RecordId> rids = new HashSet<RecordId>();
+        int i = 0;
+        for (Tuple e = entries.next(); e != null; e = entries.next(), i++) {
+            assertEquals(3, e.getTupleDesc().numFields());
+            assertEquals(new IntField(i), e.getField(0));
+            RecordId rid = new RecordId(new HeapPageId(hf.getId(), ((IntField) e.getField(1)).getValue()),
+                    ((IntField) e.getField(2)).getValue());
+            assertEquals(new IntField(i), hf.fetchTuple(tid, rid).getField(1));
+            rids.add(rid);
+        }
+        entries.close();
+        assertEquals(ROWS, i);
+        assertEquals(ROWS, rids.size());
+        // no run is left behind
+        assertEquals(before, runs(dir));
+    }
+
+    private static Set<String> runs(File dir) {
+        Set<String> runs = new HashSet<String>();
+        for (String f : dir.list()) {
+            if (f.startsWith("sort") && f.endsWith(".run")) {
+                runs.add(f);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Unit test for HeapFile.cluster, and the order surviving a reopen
+     */
+    @Test
+    public void cluster() throws Exception {
+        assertEquals(-1, hf.getClusteredField());
+        assertEquals(0, hf.sortedPages());
+        hf.cluster(0);
+        assertEquals(0, hf.getClusteredField());
+        assertEquals(hf.numPages(), hf.sortedPages());
+        assertTrue(hf.isSortedOn(0));
+        assertFalse(hf.isSortedOn(1));
+        assertEquals(ROWS, keys(tuples(new SeqScan(tid, hf.getId())), true).size());
+
+        HeapFile reopened = new HeapFile(f, hf.getTupleDesc());
+        assertEquals(0, reopened.getClusteredField());
+        assertEquals(hf.numPages(), reopened.sortedPages());
+    }
+
+    /**
+     * Unit test for a filtered scan reading only the contiguous pages of a
+     * clustered file that can match; a page that is read returns all of
+     * its tuples
+     */
+    @Test
+    public void rangeScan() throws Exception {
+        List<Predicate> range = Arrays.asList(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(1000)),
+                new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(1010)));
+        assertEquals(ROWS, count(hf.iterator(tid, range)));
+        hf.cluster(0);
+        // the keys are on two pages
+        int perPage = ((HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0))).numSlots;
+        assertEquals(2 * perPage, count(hf.iterator(tid, range)));
+
+        for (int[] r : new int[][] { { 1000, 1011 }, { 0, 1 }, { -5, 3 }, { 1999, 2000 }, { 1990, 5000 } }) {
+            List<Integer> keys = keys(tuples(range(r[0], r[1])), true);
+            int from = Math.max(r[0], 0);
+            int to = Math.min(r[1], ROWS / DUPLICATES);
+            assertEquals((to - from) * DUPLICATES, keys.size());
+        }
+        // equal keys on both sides of a page boundary
+        for (int i = 0; i < hf.numPages(); i++) {
+            Tuple first = ((HeapPage) hf.readPage(new HeapPageId(hf.getId(), i))).iterator().next();
+            DbIterator eq = new Filter(new Predicate(0, Predicate.Op.EQUALS, first.getField(0)),
+                    new SeqScan(tid, hf.getId()));
+            assertEquals(DUPLICATES, tuples(eq).size());
+        }
+    }
+
+    /**
+     * Unit test for inserts after clustering: an insert into a sorted page
+     * ends the sorted run, appended pages are scanned as well
+     */
+    @Test
+    public void insert() throws Exception {
+        hf.cluster(0);
+        int pages = hf.numPages();
+        // the last page has room
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 10, -1 }));
+        assertEquals(pages - 1, hf.sortedPages());
+        assertFalse(hf.isSortedOn(0));
+        assertEquals(0, hf.getClusteredField());
+        while (hf.numPages() == pages) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 10, -1 }));
+        }
+        assertEquals(pages - 1, hf.sortedPages());
+
+        List<Tuple> found = tuples(range(10, 11));
+        assertEquals(found.size() - DUPLICATES, countSecond(found, -1));
+        assertTrue(found.size() > DUPLICATES + 1);
+    }
+
+    private static int countSecond(List<Tuple> tuples, int v) {
+        int n = 0;
+        for (Tuple t : tuples) {
+            if (((IntField) t.getField(1)).getValue() == v) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Unit test for Catalog.clusterTable rebuilding the indexes of the table
+     */
+    @Test
+    public void clusterTable() throws Exception {
+        File idx = File.createTempFile("cluster", ".idx");
+        idx.deleteOnExit();
+        Database.getCatalog().addIndex(BTreeFile.build(idx, hf, 1), name);
+        Database.getCatalog().clusterTable(name, "f0");
+        assertEquals(0, Database.getCatalog().getClusteredField(hf.getId()));
+
+        IndexFile index = Database.getCatalog().getIndexes(hf.getId()).get(0);
+        List<Tuple> found = tuples(new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(1234)));
+        assertEquals(1, found.size());
+        assertEquals(1234 / DUPLICATES, key(found.get(0)));
+
+        try {
+            Database.getCatalog().clusterTable(name, "nosuchfield");
+            fail("expected a DbException");
+        } catch (DbException e) {
+            // expected
+        }
+        index.close();
+    }
+
+    private DbIterator plan(boolean asc) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.f0", Predicate.Op.LESS_THAN, "100");
+        lp.addProjectField("t.f0", null);
+        lp.addOrderBy("t.f0", asc);
+        DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        return ((Operator) plan).getChildren()[0];
+    }
+
+    /**
+     * Unit test for the CLUSTER statement, and for ORDER BY on the
+     * clustered field needing no sort
+     */
+    @Test
+    public void orderBy() throws Exception {
+        TableStats.setTableStats(name, new TableStats(hf.getId(), TableStats.IOCOSTPERPAGE));
+        assertTrue(plan(true) instanceof OrderBy);
+
+        new Parser().processNextStatement("CLUSTER " + name + " ON f0;");
+        assertEquals(0, hf.getClusteredField());
+        DbIterator node = plan(true);
+        assertFalse(node instanceof OrderBy);
+        assertEquals(100 * DUPLICATES, keys(tuples(node), true).size());
+        assertTrue(plan(false) instanceof OrderBy);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ClusterTest.class);
+    }
+}
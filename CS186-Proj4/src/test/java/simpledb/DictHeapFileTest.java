@@ -0,0 +1,176 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class DictHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 300;
+    private static final String[] GENRES = { "Drama", "Comedy", "Horror" };
+
+    private TupleDesc td;
+    private HeapFile source;
+    private File f;
+    private DictHeapFile df;
+    private TransactionId tid;
+
+    /**
+     * Convert a table of (int, string) rows with three distinct strings.
+     */
+    @Before
+    public void setUp() throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        td = new TupleDesc(types, new String[] { "id", "genre" });
+
+        File txt = File.createTempFile("dict", ".txt");
+        txt.deleteOnExit();
+        PrintWriter w = new PrintWriter(new FileWriter(txt));
+        for (int i = 0; i < ROWS; i++) {
+            w.println(i + "," + GENRES[i % GENRES.length]);
+        }
+        w.close();
+
+        File heap = SystemTestUtil.createTempTableFile("dict", 2);
+        HeapFileEncoder.convert(txt, heap, BufferPool.PAGE_SIZE, 2, types, ',');
+        source = new HeapFile(heap, td);
+        Database.getCatalog().addTable(source, SystemTestUtil.getUUID());
+
+        f = SystemTestUtil.createTempTableFile("dict", 2);
+        DictHeapFile.convert(source, f, new boolean[] { false, true });
+        df = new DictHeapFile(f, td, new boolean[] { false, true });
+        Database.getCatalog().addTable(df, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        df.close();
+    }
+
+    private int count(DbFile file, Predicate p) throws Exception {
+        int n = 0;
+        DbFileIterator it = file.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            if (p.filter(it.next())) {
+                n++;
+            }
+        }
+        it.close();
+        return n;
+    }
+
+    /**
+     * Unit test for DictHeapFile.convert()
+     */
+    @Test
+    public void convert() throws Exception {
+        // 504 slots of 8 bytes per page instead of 30 slots of 136 bytes
+        assertEquals(10, source.numPages());
+        assertEquals(1, df.numPages());
+        assertEquals(3, df.dictionarySize(1));
+
+        DbFileIterator it = df.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            DictStringField genre = (DictStringField) t.getField(1);
+            assertEquals(GENRES[id % GENRES.length], genre.getValue());
+            assertEquals(id % GENRES.length, genre.getCode());
+            assertEquals(new StringField(GENRES[id % GENRES.length], Type.STRING_LEN), genre);
+            n++;
+        }
+        it.close();
+        assertEquals(ROWS, n);
+    }
+
+    /**
+     * Unit test for Predicate.filter() on an encoded field
+     */
+    @Test
+    public void filter() throws Exception {
+        Predicate eq = new Predicate(1, Predicate.Op.EQUALS, new StringField("Comedy", Type.STRING_LEN));
+        assertEquals(ROWS / 3, count(df, eq));
+        Predicate ne = new Predicate(1, Predicate.Op.NOT_EQUALS, new StringField("Comedy", Type.STRING_LEN));
+        assertEquals(ROWS - ROWS / 3, count(df, ne));
+        Predicate like = new Predicate(1, Predicate.Op.LIKE, new StringField("o", Type.STRING_LEN));
+        assertEquals(ROWS - ROWS / 3, count(df, like));
+
+        // a value missing from the dictionary, then inserted
+        Predicate western = new Predicate(1, Predicate.Op.EQUALS, new StringField("Western", Type.STRING_LEN));
+        assertEquals(0, count(df, western));
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new StringField("Western", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, df.getId(), t);
+        assertEquals(1, count(df, western));
+        // the value is encoded as its page is written, on commit
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        assertEquals(4, df.dictionarySize(1));
+    }
+
+    /**
+     * Unit test for GROUP BY on an encoded field
+     */
+    @Test
+    public void groupBy() throws Exception {
+        StringAggregator agg = new StringAggregator(1, Type.STRING_TYPE, 1, Aggregator.Op.COUNT);
+        DbFileIterator it = df.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            agg.mergeTupleIntoGroup(it.next());
+        }
+        it.close();
+
+        DbIterator groups = agg.iterator();
+        groups.open();
+        int n = 0;
+        while (groups.hasNext()) {
+            Tuple g = groups.next();
+            assertTrue(g.getField(0) instanceof DictStringField);
+            assertEquals(ROWS / 3, ((IntField) g.getField(1)).getValue());
+            n++;
+        }
+        groups.close();
+        assertEquals(3, n);
+    }
+
+    /**
+     * Unit test for reloading the dictionary from its sidecar file
+     */
+    @Test
+    public void reload() throws Exception {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new StringField("Western", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, df.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        df.close();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        df = new DictHeapFile(f, td, new boolean[] { false, true });
+        Database.getCatalog().addTable(df, SystemTestUtil.getUUID());
+        assertEquals(4, df.dictionarySize(1));
+        Predicate western = new Predicate(1, Predicate.Op.EQUALS, new StringField("Western", Type.STRING_LEN));
+        assertEquals(1, count(df, western));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DictHeapFileTest.class);
+    }
+}
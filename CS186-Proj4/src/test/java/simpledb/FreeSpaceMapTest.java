@@ -0,0 +1,148 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private static final int PAGES = 3;
+    //rows of two int fields per page
+    private static final int ROWS_PER_PAGE = BufferPool.PAGE_SIZE * 8 / (2 * 4 * 8 + 1);
+
+    private HeapFile hf;
+    private File sidecar;
+    private TransactionId tid;
+
+    /**
+     * A table of full pages.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < PAGES * ROWS_PER_PAGE; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("fsm", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        sidecar = new File(f.getPath() + ".fsm");
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+    }
+
+    private PageId pid(int pgNo) {
+        return new HeapPageId(hf.getId(), pgNo);
+    }
+
+    private int insert(int value) throws Exception {
+        Tuple t = Utility.getHeapTuple(new int[] { value, value });
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        return t.getRecordId().getPageId().pageNumber();
+    }
+
+    //the first page the sidecar marks free, as a fresh map reads it
+    private int firstFree() throws IOException {
+        FreeSpaceMap fsm = new FreeSpaceMap(hf);
+        try {
+            return fsm.nextFreePage(0);
+        } finally {
+            fsm.close();
+        }
+    }
+
+    //a sidecar that covers pages pages and marks every one of them free
+    private void writeSidecar(int pages) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new FileOutputStream(sidecar));
+        dos.writeInt(pages);
+        for (int i = 0; i < (pages + 7) / 8; i++) {
+            dos.writeByte(0xff);
+        }
+        dos.close();
+    }
+
+    /**
+     * Unit test for a page marked free that is full: the insert skips it,
+     * releases its lock, marks it full and goes on to the next page
+     */
+    @Test
+    public void staleEntry() throws Exception {
+        writeSidecar(PAGES);
+        assertEquals(0, firstFree());
+
+        assertEquals(PAGES, insert(-1));
+        assertEquals(PAGES + 1, hf.numPages());
+        for (int i = 0; i < PAGES; i++) {
+            assertFalse(Database.getBufferPool().holdsLock(tid, pid(i)));
+        }
+        //the skipped pages were written through to the sidecar
+        assertEquals(PAGES, firstFree());
+    }
+
+    /**
+     * Unit test for a missing sidecar, which is rebuilt from the page headers
+     */
+    @Test
+    public void missingSidecar() throws Exception {
+        assertEquals(PAGES, insert(-1));
+        hf.close();
+        assertTrue(sidecar.delete());
+
+        assertEquals(PAGES, firstFree());
+        assertEquals(4 + 1, sidecar.length());
+        assertEquals(PAGES, insert(-2));
+    }
+
+    /**
+     * Unit test for a sidecar that covers a different number of pages than
+     * the file, which is rebuilt rather than trusted, and for pages written
+     * behind the map's back, which it picks up from their headers
+     */
+    @Test
+    public void staleSidecar() throws Exception {
+        //the same length as a sidecar of PAGES pages
+        writeSidecar(PAGES + 5);
+        assertEquals(-1, firstFree());
+        assertEquals(4 + 1, sidecar.length());
+
+        hf.writePage(hf.createPage((HeapPageId) pid(PAGES), new byte[BufferPool.PAGE_SIZE]));
+        assertEquals(PAGES, firstFree());
+        assertEquals(PAGES, insert(-1));
+    }
+
+    /**
+     * Unit test for slots freed by deletes, which the next insert reuses
+     * instead of appending a page
+     */
+    @Test
+    public void freedSlot() throws Exception {
+        Page page = Database.getBufferPool().getPage(tid, pid(1), Permissions.READ_WRITE);
+        Database.getBufferPool().deleteTuple(tid, hf.pageIterator(page).next());
+        assertEquals(1, firstFree());
+
+        assertEquals(1, insert(-1));
+        assertEquals(PAGES, hf.numPages());
+        assertEquals(-1, firstFree());
+        assertEquals(PAGES, insert(-2));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,248 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HashFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 2000;
+    // small pages, so that buckets split many times and the directory
+    // spans several pages: 9 entries per bucket page, 29 per directory page
+    private static final int INDEX_PAGE_SIZE = 128;
+    // the pages a test dirties stay in the buffer pool until it commits
+    private static final int POOL_PAGES = 1000;
+
+    private File f;
+    private HeapFile hf;
+    private String name;
+    private TransactionId tid;
+
+    /**
+     * An empty (key, id) table; rows are inserted by the tests.
+     */
+    @Before
+    public void setUp() throws Exception {
+        f = SystemTestUtil.createTempTableFile("hash", 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(hf, name, "f0");
+        Database.resetBufferPool(POOL_PAGES);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+    }
+
+    private HashFile newIndex(boolean unique) throws IOException {
+        File idx = File.createTempFile("hash", ".hash");
+        idx.deleteOnExit();
+        HashFile index = new HashFile(idx, hf, 0, unique, INDEX_PAGE_SIZE);
+        Database.getCatalog().addIndex(index, name);
+        return index;
+    }
+
+    private void insert(int key, int id) throws Exception {
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { key, id }));
+    }
+
+    private List<Integer> ids(IndexFile index, int key) throws Exception {
+        List<Integer> ids = new ArrayList<Integer>();
+        DbFileIterator it = index.indexIterator(tid, Predicate.Op.EQUALS, new IntField(key));
+        it.open();
+        while (it.hasNext()) {
+            Tuple entry = it.next();
+            assertEquals(new IntField(key), entry.getField(0));
+            ids.add(((IntField) hf.fetchTuple(tid, index.getRecordId(entry)).getField(1)).getValue());
+        }
+        it.close();
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private int count(DbFileIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    /**
+     * Unit test for HashFile.insertTuple through BufferPool.insertTuple
+     */
+    @Test
+    public void insert() throws Exception {
+        HashFile index = newIndex(true);
+        for (int i = 0; i < ROWS; i++) {
+            insert(i * 1024, i);
+        }
+        // enough buckets for the directory to span several pages
+        assertTrue(index.numPages() > ROWS / 9);
+        assertEquals(ROWS, count(index.iterator(tid)));
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(Arrays.asList(i), ids(index, i * 1024));
+        }
+        assertEquals(0, ids(index, 1).size());
+    }
+
+    /**
+     * Unit test for a unique HashFile refusing a duplicate key
+     */
+    @Test
+    public void unique() throws Exception {
+        HashFile index = newIndex(true);
+        for (int i = 0; i < 100; i++) {
+            insert(i, i);
+        }
+        try {
+            insert(42, 100);
+            fail("expected a duplicate key to be refused");
+        } catch (DbException e) {
+            // the table was left alone
+        }
+        assertEquals(100, count(hf.iterator(tid)));
+        assertEquals(Arrays.asList(42), ids(index, 42));
+
+        // the key can be reused once its tuple is gone
+        Database.getBufferPool().deleteTuple(tid, hf.fetchTuple(tid,
+                index.getRecordId(first(index.indexIterator(tid, Predicate.Op.EQUALS, new IntField(42))))));
+        insert(42, 100);
+        assertEquals(Arrays.asList(100), ids(index, 42));
+    }
+
+    private Tuple first(DbFileIterator it) throws Exception {
+        it.open();
+        Tuple t = it.next();
+        it.close();
+        return t;
+    }
+
+    /**
+     * Unit test for HashFile.deleteTuple through BufferPool.deleteTuple,
+     * with duplicate keys
+     */
+    @Test
+    public void delete() throws Exception {
+        HashFile index = newIndex(false);
+        for (int i = 0; i < ROWS; i++) {
+            insert(i % 100, i);
+        }
+        assertEquals(ROWS / 100, ids(index, 7).size());
+
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        scan.open();
+        int deleted = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            if (((IntField) t.getField(0)).getValue() < 50) {
+                Database.getBufferPool().deleteTuple(tid, t);
+                deleted++;
+            }
+        }
+        scan.close();
+
+        assertEquals(ROWS - deleted, count(index.iterator(tid)));
+        assertEquals(0, ids(index, 7).size());
+        assertEquals(ROWS / 100, ids(index, 50).size());
+    }
+
+    /**
+     * Unit test for HashFile.build
+     */
+    @Test
+    public void build() throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            insert(i, i);
+        }
+        insert(7, ROWS);
+        // the build reads the table as it is on disk
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        File idx = File.createTempFile("hash", ".hash");
+        idx.deleteOnExit();
+        try {
+            HashFile.build(idx, hf, 0, true);
+            fail("expected the duplicate key to be found");
+        } catch (IllegalArgumentException e) {
+        }
+
+        HashFile index = HashFile.build(idx, hf, 0, false);
+        Database.getCatalog().addIndex(index, name);
+        assertEquals(ROWS + 1, count(index.iterator(tid)));
+        assertEquals(Arrays.asList(7, ROWS), ids(index, 7));
+
+        // the built index takes inserts
+        insert(ROWS, ROWS + 1);
+        assertEquals(Arrays.asList(ROWS + 1), ids(index, ROWS));
+    }
+
+    private DbIterator leaf(HeapFile table, Predicate.Op op, int v) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.f0", op, Integer.toString(v));
+        lp.addProjectField("t.f1", null);
+        DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        while (plan instanceof Operator) {
+            plan = ((Operator) plan).getChildren()[0];
+        }
+        return plan;
+    }
+
+    /**
+     * Unit test for choosing a hash index in LogicalPlan.physicalPlan
+     */
+    @Test
+    public void physicalPlan() throws Exception {
+        // written directly, so that TableStats can scan it in a transaction
+        // of its own
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS * 5; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        File tf = SystemTestUtil.createTempTableFile("hash", 2);
+        HeapFileEncoder.convert(tuples, tf, BufferPool.PAGE_SIZE, 2);
+        HeapFile table = new HeapFile(tf, Utility.getTupleDesc(2, "f"));
+        String tname = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(table, tname, "f0");
+        File idx = File.createTempFile("hash", ".hash");
+        idx.deleteOnExit();
+        HashFile index = HashFile.build(idx, table, 0, true);
+        Database.getCatalog().addIndex(index, tname);
+        TableStats.setTableStats(tname, new TableStats(table.getId(), TableStats.IOCOSTPERPAGE));
+
+        DbIterator scan = leaf(table, Predicate.Op.EQUALS, 42);
+        assertTrue(scan instanceof IndexScan);
+        assertSame(index, ((IndexScan) scan).getIndex());
+        try {
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { 42, 0 }));
+            fail("expected a duplicate key to be refused");
+        } catch (DbException e) {
+        }
+
+        // a hash index cannot serve a range
+        assertTrue(leaf(table, Predicate.Op.LESS_THAN, 10) instanceof SeqScan);
+        table.close();
+        index.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashFileTest.class);
+    }
+}
@@ -121,6 +121,63 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * Unit test for HeapFile.readPage() in memory-mapped mode: pages must
+     * decode identically to the channel path, and pages written (or
+     * appended) through writePage must be visible through the mapping.
+     */
+    @Test
+    public void readPageMemoryMapped() throws Exception {
+        HeapFile mapped = new HeapFile(hf.getFile(), td, true);
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+        assertTrue(mapped.isMemoryMapped());
+
+        HeapPageId pid = new HeapPageId(mapped.getId(), 0);
+        HeapPage page = (HeapPage) mapped.readPage(pid);
+        assertEquals(484, page.getNumEmptySlots());
+        assertTrue(page.isSlotUsed(1));
+        assertFalse(page.isSlotUsed(20));
+
+        page.insertTuple(Utility.getHeapTuple(new int[] {7, 8}));
+        mapped.writePage(page);
+        assertEquals(483, ((HeapPage) mapped.readPage(pid)).getNumEmptySlots());
+
+        HeapPageId appended = new HeapPageId(mapped.getId(), 1);
+        mapped.writePage(new HeapPage(appended, HeapPage.createEmptyPageData()));
+        assertEquals(2, mapped.numPages());
+        assertEquals(504, ((HeapPage) mapped.readPage(appended)).getNumEmptySlots());
+        mapped.close();
+    }
+
+    /**
+     * Unit test for a HeapFile whose page size differs from the default:
+     * pages must be read, written and appended at that size.
+     */
+    @Test
+    public void readPageCustomPageSize() throws Exception {
+        int pageSize = 4 * BufferPool.PAGE_SIZE;
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 3000; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, -i)));
+        }
+        java.io.File f = SystemTestUtil.createTempTableFile("bigpages", 2);
+        HeapFileEncoder.convert(tuples, f, pageSize, 2);
+
+        HeapFile big = new HeapFile(f, td, false, pageSize);
+        Database.getCatalog().addTable(big, SystemTestUtil.getUUID());
+        assertEquals(pageSize, big.getPageSize());
+        // 2016 slots per 16 KB page
+        assertEquals(2, big.numPages());
+        assertEquals(2016 - (3000 - 2016), ((HeapPage) big.readPage(new HeapPageId(big.getId(), 1))).getNumEmptySlots());
+        SystemTestUtil.matchTuples(big, tid, tuples);
+
+        for (int i = 0; i < 2000; i++) {
+            big.insertTuple(tid, Utility.getHeapTuple(new int[] {i, i}));
+        }
+        assertEquals(3, big.numPages());
+        assertEquals(3 * pageSize, f.length());
+    }
+
     /**
      * JUnit suite target
      */
@@ -10,6 +10,7 @@ import java.util.*;
 
 import org.junit.Before;
 import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -99,6 +100,20 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getPageData() on a page whose tuples are only
+     * partly decoded
+     */
+    @Test public void getPageDataLazy() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+
+        Iterator<Tuple> it = page.iterator();
+        it.next().getField(1);
+        it.next();
+        assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+    }
+
     /**
      * Unit test for HeapPage.getNumEmptySlots()
      */
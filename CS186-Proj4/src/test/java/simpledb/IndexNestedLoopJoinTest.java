@@ -0,0 +1,150 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+    private static final int INNER = 20000;
+    private static final int OUTER = 2000;
+
+    private HeapFile inner, outer;
+    private BTreeFile index;
+    private String innerName, outerName;
+    private TransactionId tid;
+
+    private HeapFile table(ArrayList<ArrayList<Integer>> tuples, String prefix) throws Exception {
+        File f = SystemTestUtil.createTempTableFile("inlj", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        return new HeapFile(f, Utility.getTupleDesc(2, prefix));
+    }
+
+    /**
+     * An inner (id, id % 10) table with an index on id, in no particular id
+     * order, and an outer (id, fk) table whose fk references the inner ids.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < INNER; i++) {
+            int id = (i * 7919) % INNER;
+            tuples.add(new ArrayList<Integer>(Arrays.asList(id, id % 10)));
+        }
+        inner = table(tuples, "in");
+        innerName = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(inner, innerName);
+        File idx = File.createTempFile("inlj", ".idx");
+        idx.deleteOnExit();
+        index = BTreeFile.build(idx, inner, 0);
+        Database.getCatalog().addIndex(index, innerName);
+
+        tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < OUTER; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, (i * 31) % INNER)));
+        }
+        outer = table(tuples, "out");
+        outerName = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(outer, outerName);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        inner.close();
+        outer.close();
+        index.close();
+    }
+
+    private List<String> rows(DbIterator it) throws Exception {
+        List<String> rows = new ArrayList<String>();
+        it.open();
+        while (it.hasNext()) {
+            rows.add(it.next().toString());
+        }
+        it.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Unit test for IndexNestedLoopJoin against Join
+     */
+    @Test
+    public void sameTuples() throws Exception {
+        JoinPredicate p = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        List<String> expected = rows(new Join(p, new SeqScan(tid, outer.getId()), new SeqScan(tid, inner.getId())));
+        assertEquals(OUTER, expected.size());
+        assertEquals(expected, rows(new IndexNestedLoopJoin(tid, p,
+                new SeqScan(tid, outer.getId()), new SeqScan(tid, inner.getId()), index)));
+
+        // a range join, with a filter on the inner side
+        p = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+        DbIterator small = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(30)),
+                new SeqScan(tid, outer.getId()));
+        Predicate even = new Predicate(1, Predicate.Op.EQUALS, new IntField(4));
+        expected = rows(new Join(p, small, new Filter(even, new SeqScan(tid, inner.getId()))));
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, rows(new IndexNestedLoopJoin(tid, p, small,
+                new Filter(even, new SeqScan(tid, inner.getId())), index)));
+    }
+
+    /**
+     * Unit test for IndexNestedLoopJoin refusing a plan it cannot probe
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void notIndexed() throws Exception {
+        new IndexNestedLoopJoin(tid, new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                new SeqScan(tid, outer.getId()), new SeqScan(tid, inner.getId()), index);
+    }
+
+    private DbIterator plan(String innerField) throws Exception {
+        TableStats.setTableStats(innerName, new TableStats(inner.getId(), TableStats.IOCOSTPERPAGE));
+        TableStats.setTableStats(outerName, new TableStats(outer.getId(), TableStats.IOCOSTPERPAGE));
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(outer.getId(), "o");
+        lp.addScan(inner.getId(), "i");
+        lp.addFilter("o.out0", Predicate.Op.LESS_THAN, "10");
+        lp.addJoin("o.out1", "i." + innerField, Predicate.Op.EQUALS);
+        lp.addProjectField("i.in0", null);
+        return lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    }
+
+    private Operator join(DbIterator plan) {
+        while (!(plan instanceof Join || plan instanceof IndexNestedLoopJoin)) {
+            plan = ((Operator) plan).getChildren()[0];
+        }
+        return (Operator) plan;
+    }
+
+    /**
+     * Unit test for choosing an index nested-loop join in
+     * LogicalPlan.physicalPlan
+     */
+    @Test
+    public void physicalPlan() throws Exception {
+        // ten outer tuples, each probing the index on in0
+        DbIterator p = plan("in0");
+        assertTrue(join(p) instanceof IndexNestedLoopJoin);
+        assertEquals(10, rows(p).size());
+
+        // no index on in1
+        p = plan("in1");
+        assertTrue(join(p) instanceof Join);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
@@ -0,0 +1,223 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class IndexOnlyScanTest extends SimpleDbTestBase {
+    private static final int ROWS = 10000;
+    private static final int FIELDS = 10;
+    // small pages, so that inserts split leaves many times
+    private static final int INDEX_PAGE_SIZE = 256;
+    // the pages a test dirties stay in the buffer pool until it commits
+    private static final int POOL_PAGES = 500;
+
+    private File f;
+    private HeapFile hf;
+    private BTreeFile index;
+    private String name;
+    private TransactionId tid;
+
+    //field j of a row with key k
+    private static int field(int j, int k) {
+        return j == 0 ? k : j * k;
+    }
+
+    /**
+     * A wide table (f0, ..., f9) whose f0 is a permutation of 0..ROWS-1 and
+     * whose fj is j * f0, with an index on f0 that includes f1.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            for (int j = 0; j < FIELDS; j++) {
+                t.add(field(j, (int) ((i * 7919L) % ROWS)));
+            }
+            tuples.add(t);
+        }
+        f = SystemTestUtil.createTempTableFile("indexonly", FIELDS);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, FIELDS);
+        hf = new HeapFile(f, Utility.getTupleDesc(FIELDS, "f"));
+        name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(hf, name);
+
+        File idx = File.createTempFile("indexonly", ".idx");
+        idx.deleteOnExit();
+        index = BTreeFile.build(idx, hf, 0, new int[] { 1 });
+        Database.getCatalog().addIndex(index, name);
+        TableStats.setTableStats(name, new TableStats(hf.getId(), TableStats.IOCOSTPERPAGE));
+        Database.resetBufferPool(POOL_PAGES);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+        index.close();
+    }
+
+    //the (f0, f1) pairs a scan returns, sorted
+    private List<String> pairs(DbIterator it) throws Exception {
+        List<String> pairs = new ArrayList<String>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            pairs.add(t.getField(0) + "," + t.getField(1));
+        }
+        it.close();
+        Collections.sort(pairs);
+        return pairs;
+    }
+
+    private List<String> expected(int from, int to) {
+        List<String> pairs = new ArrayList<String>();
+        for (int k = from; k < to; k++) {
+            pairs.add(k + "," + k);
+        }
+        Collections.sort(pairs);
+        return pairs;
+    }
+
+    /**
+     * Unit test for the entries of an index with an included field
+     */
+    @Test
+    public void entries() throws Exception {
+        assertEquals(4, index.getTupleDesc().numFields());
+        assertEquals("f1", index.getTupleDesc().getFieldName(3));
+        assertArrayEquals(new int[] { 1 }, index.getIncludedFields());
+        DbFileIterator it = index.indexIterator(tid, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(100));
+        it.open();
+        for (int k = 100; k < ROWS; k++) {
+            Tuple entry = it.next();
+            assertEquals(new IntField(k), entry.getField(0));
+            assertEquals(new IntField(k), entry.getField(3));
+        }
+        assertFalse(it.hasNext());
+        it.close();
+    }
+
+    /**
+     * Unit test for IndexScan answering from the index alone
+     */
+    @Test
+    public void indexOnly() throws Exception {
+        IndexScan scan = new IndexScan(tid, index, Predicate.Op.LESS_THAN, new IntField(100), "t", true);
+        assertTrue(scan.isIndexOnly());
+        assertEquals(new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, new String[] { "t.f0", "t.f1" }),
+                scan.getTupleDesc());
+        assertEquals(expected(0, 100), pairs(scan));
+
+        // the table is emptied on disk, the index still answers
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.write(new byte[(int) raf.length()]);
+        raf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        assertEquals(0, pairs(new SeqScan(tid, hf.getId())).size());
+        assertEquals(expected(0, 100), pairs(new IndexScan(tid, index, Predicate.Op.LESS_THAN, new IntField(100),
+                "t", true)));
+        assertEquals(expected(0, ROWS), pairs(new IndexScan(tid, index, null, null, "t", true)));
+    }
+
+    /**
+     * Unit test for keeping the included fields of entries current on
+     * insert, with page splits
+     */
+    @Test
+    public void insert() throws Exception {
+        File ef = SystemTestUtil.createTempTableFile("indexonly", FIELDS);
+        HeapFile empty = new HeapFile(ef, Utility.getTupleDesc(FIELDS, "f"));
+        String ename = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(empty, ename);
+        File idx = File.createTempFile("indexonly", ".idx");
+        idx.deleteOnExit();
+        BTreeFile small = new BTreeFile(idx, empty, 0, new int[] { 1 }, INDEX_PAGE_SIZE);
+        Database.getCatalog().addIndex(small, ename);
+
+        for (int i = 0; i < 1000; i++) {
+            int[] t = new int[FIELDS];
+            for (int j = 0; j < FIELDS; j++) {
+                t[j] = field(j, (i * 7919) % 1000);
+            }
+            Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(t));
+        }
+        assertTrue(small.numPages() > 1000 / 10);
+        assertEquals(expected(0, 1000), pairs(new IndexScan(tid, small, null, null, "e", true)));
+        empty.close();
+        small.close();
+    }
+
+    private DbIterator leaf(String field, Predicate.Op op, int v) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        if (op != null) {
+            lp.addFilter("t.f0", op, Integer.toString(v));
+        }
+        lp.addProjectField(field, null);
+        DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        while (plan instanceof Operator) {
+            plan = ((Operator) plan).getChildren()[0];
+        }
+        return plan;
+    }
+
+    /**
+     * Unit test for choosing index-only scans in LogicalPlan.physicalPlan
+     */
+    @Test
+    public void physicalPlan() throws Exception {
+        DbIterator scan = leaf("t.f1", Predicate.Op.EQUALS, 42);
+        assertTrue(scan instanceof IndexScan);
+        assertTrue(((IndexScan) scan).isIndexOnly());
+
+        // f2 is not in the index, the table is read
+        scan = leaf("t.f2", Predicate.Op.EQUALS, 42);
+        assertTrue(scan instanceof IndexScan);
+        assertFalse(((IndexScan) scan).isIndexOnly());
+        scan = leaf("*", Predicate.Op.EQUALS, 42);
+        assertFalse(((IndexScan) scan).isIndexOnly());
+
+        // no filter the index serves, but the index is smaller than the table
+        scan = leaf("t.f1", null, 0);
+        assertTrue(scan instanceof IndexScan);
+        assertNull(((IndexScan) scan).getPredicate());
+        assertTrue(leaf("t.f2", null, 0) instanceof SeqScan);
+
+        // a filter on an included field is applied over the index-only scan
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.f0", Predicate.Op.LESS_THAN, "100");
+        lp.addFilter("t.f1", Predicate.Op.GREATER_THAN_OR_EQ, "90");
+        lp.addProjectField("t.f1", null);
+        DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        List<Integer> found = new ArrayList<Integer>();
+        plan.open();
+        while (plan.hasNext()) {
+            found.add(((IntField) plan.next().getField(0)).getValue());
+        }
+        plan.close();
+        Collections.sort(found);
+        assertEquals(Arrays.asList(90, 91, 92, 93, 94, 95, 96, 97, 98, 99), found);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexOnlyScanTest.class);
+    }
+}
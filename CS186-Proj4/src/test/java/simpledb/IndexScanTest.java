@@ -0,0 +1,152 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class IndexScanTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+    private static final int KEYS = 10000;
+
+    private File f;
+    private HeapFile hf;
+    private BTreeFile index;
+    private String name;
+    private TransactionId tid;
+
+    /**
+     * A (key, id) table with two rows per key, in no particular key order,
+     * and an index on key.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList((i * 7919) % KEYS, i)));
+        }
+        f = SystemTestUtil.createTempTableFile("indexscan", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(hf, name);
+
+        File idx = File.createTempFile("indexscan", ".idx");
+        idx.deleteOnExit();
+        index = BTreeFile.build(idx, hf, 0);
+        Database.getCatalog().addIndex(index, name);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+        index.close();
+    }
+
+    private List<Integer> ids(DbIterator it) throws Exception {
+        List<Integer> ids = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext()) {
+            ids.add(((IntField) it.next().getField(1)).getValue());
+        }
+        it.close();
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private int count(DbIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    /**
+     * Unit test for IndexScan against SeqScan + Filter
+     */
+    @Test
+    public void sameTuples() throws Exception {
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+        for (Predicate.Op op : ops) {
+            IntField v = new IntField(KEYS - 20);
+            List<Integer> expected = ids(new Filter(new Predicate(0, op, v), new SeqScan(tid, hf.getId())));
+            assertEquals(expected, ids(new IndexScan(tid, index, op, v)));
+        }
+        assertEquals(2, ids(new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(42))).size());
+    }
+
+    /**
+     * Unit test for IndexScan.rewind and getTupleDesc
+     */
+    @Test
+    public void rewind() throws Exception {
+        IndexScan scan = new IndexScan(tid, index, Predicate.Op.LESS_THAN, new IntField(3), "t");
+        assertEquals("t.f0", scan.getTupleDesc().getFieldName(0));
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.rewind();
+        while (scan.hasNext()) {
+            scan.next();
+            n--;
+        }
+        scan.close();
+        assertEquals(0, n);
+    }
+
+    private DbIterator plan(Predicate.Op op, int v) throws Exception {
+        TableStats.setTableStats(name, new TableStats(hf.getId(), TableStats.IOCOSTPERPAGE));
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.f0", op, Integer.toString(v));
+        lp.addProjectField("t.f1", null);
+        return lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    }
+
+    private DbIterator leaf(DbIterator plan) {
+        while (plan instanceof Operator) {
+            plan = ((Operator) plan).getChildren()[0];
+        }
+        return plan;
+    }
+
+    /**
+     * Unit test for choosing between SeqScan and IndexScan in
+     * LogicalPlan.physicalPlan
+     */
+    @Test
+    public void physicalPlan() throws Exception {
+        // two matching rows: the index is cheaper
+        DbIterator p = plan(Predicate.Op.EQUALS, 42);
+        assertTrue(leaf(p) instanceof IndexScan);
+        assertEquals(2, count(p));
+
+        // most of the table: a scan is cheaper
+        p = plan(Predicate.Op.GREATER_THAN, 10);
+        assertTrue(leaf(p) instanceof SeqScan);
+        assertEquals(ROWS - 22, count(p));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexScanTest.class);
+    }
+}
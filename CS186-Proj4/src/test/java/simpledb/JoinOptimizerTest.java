@@ -25,9 +25,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
 	 * @throws IOException if a temporary file can't be created to hand to HeapFile to open and read its data
 	 */
 	public static HeapFile createDuplicateHeapFile(ArrayList<ArrayList<Integer>> tuples, int columns, String colPrefix) throws IOException {
-        File temp = File.createTempFile("table", ".dat");
-        //服务中止时将会删除文件
-        temp.deleteOnExit();
+        File temp = SystemTestUtil.createTempTableFile("table", columns);
         HeapFileEncoder.convert(tuples, temp, BufferPool.PAGE_SIZE, columns);
         //返回已经打开的HeapFile文件
         return Utility.openHeapFile(columns, colPrefix, temp);
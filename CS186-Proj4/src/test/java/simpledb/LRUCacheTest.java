@@ -0,0 +1,84 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LRUCacheTest extends SimpleDbTestBase {
+    private static final int CAPACITY = 4;
+
+    private LRUCache cache;
+    private MemoryFile file;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new LRUCache(CAPACITY);
+        file = new MemoryFile(Utility.getTupleDesc(2));
+    }
+
+    private PageId pid(int i) {
+        return new HeapPageId(file.getId(), i);
+    }
+
+    private Page page(int i) {
+        return new MemoryPage(new HeapPageId(file.getId(), i), file.getTupleDesc(), BufferPool.getPageSize());
+    }
+
+    /**
+     * Unit test for eviction of the least recently used page, where a hit
+     * makes a page the most recently used
+     */
+    @Test
+    public void evict() throws Exception {
+        for (int i = 0; i < CAPACITY; i++) {
+            cache.put(pid(i), page(i));
+        }
+        assertNotNull(cache.get(pid(0)));
+        cache.put(pid(CAPACITY), page(CAPACITY));
+        assertEquals(CAPACITY, cache.size());
+        assertFalse(cache.contains(pid(1)));
+        assertTrue(cache.contains(pid(0)));
+
+        cache.put(pid(CAPACITY + 1), page(CAPACITY + 1));
+        assertFalse(cache.contains(pid(2)));
+        assertEquals(new HashSet<PageId>(Arrays.asList(pid(0), pid(3), pid(CAPACITY), pid(CAPACITY + 1))),
+                new HashSet<PageId>(cache.pageIds()));
+    }
+
+    /**
+     * Unit test for put of a page that is cached already, which replaces it
+     * rather than taking a second place, and for remove
+     */
+    @Test
+    public void replace() throws Exception {
+        Page first = page(0);
+        Page second = page(0);
+        cache.put(pid(0), first);
+        cache.put(pid(1), page(1));
+        cache.put(pid(0), second);
+        assertEquals(2, cache.size());
+        assertSame(second, cache.get(pid(0)));
+
+        // page 1 is now the least recently used
+        for (int i = 2; i <= CAPACITY; i++) {
+            cache.put(pid(i), page(i));
+        }
+        assertFalse(cache.contains(pid(1)));
+        assertSame(second, cache.remove(pid(0)));
+        assertNull(cache.get(pid(0)));
+        assertNull(cache.remove(pid(0)));
+        assertEquals(CAPACITY - 1, cache.size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LRUCacheTest.class);
+    }
+}
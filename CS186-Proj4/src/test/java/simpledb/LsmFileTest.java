@@ -0,0 +1,237 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LsmFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+    // every key is held by this many rows
+    private static final int DUPLICATES = 2;
+    // a small memtable, so that the rows make many runs
+    private static final int MEMTABLE_PAGES = 2;
+
+    private File f;
+    private LsmFile lsm;
+    private String name;
+    private TransactionId tid;
+
+    private LsmFile open() {
+        LsmFile file = new LsmFile(f, Utility.getTupleDesc(2, "f"), 0, MEMTABLE_PAGES, BufferPool.getPageSize());
+        Database.getCatalog().addTable(file, name);
+        return file;
+    }
+
+    /**
+     * An empty table sorted on f0, with rows (i / DUPLICATES, i) inserted
+     * by the tests in shuffled order.
+     */
+    @Before
+    public void setUp() throws Exception {
+        f = File.createTempFile("lsm", ".dat");
+        f.delete();
+        name = SystemTestUtil.getUUID();
+        lsm = open();
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        lsm.close();
+        File dir = f.getAbsoluteFile().getParentFile();
+        for (String file : dir.list()) {
+            if (file.startsWith(f.getName())) {
+                new File(dir, file).delete();
+            }
+        }
+    }
+
+    private void insertAll() throws Exception {
+        insertAll(ROWS);
+    }
+
+    private void insertAll(int n) throws Exception {
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            rows.add(i);
+        }
+        Collections.shuffle(rows, new Random(0));
+        for (int i : rows) {
+            Database.getBufferPool().insertTuple(tid, lsm.getId(), Utility.getHeapTuple(new int[] { i / DUPLICATES, i }));
+        }
+    }
+
+    private List<Tuple> tuples(DbIterator it) throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        return tuples;
+    }
+
+    //the second fields of the tuples, whose keys are checked to be ascending
+    private static List<Integer> rows(List<Tuple> tuples) {
+        List<Integer> rows = new ArrayList<Integer>();
+        int last = Integer.MIN_VALUE;
+        for (Tuple t : tuples) {
+            int key = ((IntField) t.getField(0)).getValue();
+            assertTrue(last <= key);
+            last = key;
+            rows.add(((IntField) t.getField(1)).getValue());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static List<Integer> range(int from, int to, int step) {
+        List<Integer> rows = new ArrayList<Integer>();
+        for (int i = from; i < to; i += step) {
+            rows.add(i);
+        }
+        return rows;
+    }
+
+    /**
+     * Unit test for inserts: the memtable is flushed to runs, which are
+     * merged in the background, and scans return every row in key order
+     */
+    @Test
+    public void insert() throws Exception {
+        insertAll();
+        assertEquals(range(0, ROWS, 1), rows(tuples(new SeqScan(tid, lsm.getId()))));
+        lsm.awaitCompaction();
+        int perRun = MEMTABLE_PAGES * LsmPage.maxRecords(lsm.getTupleDesc(), BufferPool.getPageSize());
+        int flushes = ROWS / perRun;
+        // merges leave fewer than FANOUT runs of each level
+        assertTrue(lsm.numRuns() < flushes);
+        assertTrue(lsm.numRuns() <= 2 * (LsmFile.FANOUT - 1));
+        assertEquals(range(0, ROWS, 1), rows(tuples(new SeqScan(tid, lsm.getId()))));
+
+        File dir = f.getAbsoluteFile().getParentFile();
+        int files = 0;
+        for (String file : dir.list()) {
+            if (file.startsWith(f.getName() + ".") && file.endsWith(".run")) {
+                files++;
+            }
+        }
+        assertEquals(lsm.numRuns(), files);
+    }
+
+    /**
+     * Unit test for deletes: tombstones hide the rows they delete from
+     * scans, in the memtable and in runs, until merges drop both
+     */
+    @Test
+    public void delete() throws Exception {
+        insertAll();
+        for (Tuple t : tuples(new SeqScan(tid, lsm.getId()))) {
+            if (((IntField) t.getField(1)).getValue() % 2 == 1) {
+                Database.getBufferPool().deleteTuple(tid, t);
+            }
+        }
+        assertEquals(range(0, ROWS, 2), rows(tuples(new SeqScan(tid, lsm.getId()))));
+        lsm.flush();
+        lsm.awaitCompaction();
+        assertEquals(range(0, ROWS, 2), rows(tuples(new SeqScan(tid, lsm.getId()))));
+
+        // a row deleted from the memtable leaves nothing behind
+        Tuple t = Utility.getHeapTuple(new int[] { -1, -1 });
+        Database.getBufferPool().insertTuple(tid, lsm.getId(), t);
+        Database.getBufferPool().deleteTuple(tid, t);
+        assertEquals(range(0, ROWS, 2), rows(tuples(new SeqScan(tid, lsm.getId()))));
+    }
+
+    /**
+     * Unit test for the log: rows still in the memtable, and the runs,
+     * survive a reopen
+     */
+    @Test
+    public void reopen() throws Exception {
+        insertAll();
+        Tuple t = Utility.getHeapTuple(new int[] { ROWS, ROWS });
+        Database.getBufferPool().insertTuple(tid, lsm.getId(), t);
+        Database.getBufferPool().deleteTuple(tid, t);
+        lsm.close();
+
+        lsm = open();
+        assertEquals(range(0, ROWS, 1), rows(tuples(new SeqScan(tid, lsm.getId()))));
+        // sequence numbers are not reused
+        Tuple u = Utility.getHeapTuple(new int[] { ROWS, ROWS });
+        Database.getBufferPool().insertTuple(tid, lsm.getId(), u);
+        assertTrue(u.getRecordId().tupleno() > t.getRecordId().tupleno());
+    }
+
+    /**
+     * Unit test for lookups through the key index, and for filtered scans
+     * seeking the runs
+     */
+    @Test
+    public void lookup() throws Exception {
+        insertAll();
+        lsm.awaitCompaction();
+        IndexFile index = Database.getCatalog().getIndexes(lsm.getId()).get(0);
+        assertSame(lsm.getKeyIndex(), index);
+
+        for (int key : new int[] { 0, 1, 1234, ROWS / DUPLICATES - 1 }) {
+            IndexScan scan = new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(key));
+            assertTrue(scan.isIndexOnly());
+            assertEquals(range(key * DUPLICATES, (key + 1) * DUPLICATES, 1), rows(tuples(scan)));
+        }
+        assertEquals(0, tuples(new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(-5))).size());
+        assertEquals(range(0, 20, 1),
+                rows(tuples(new IndexScan(tid, index, Predicate.Op.LESS_THAN, new IntField(10)))));
+        assertEquals(range(ROWS - 20, ROWS, 1), rows(tuples(
+                new IndexScan(tid, index, Predicate.Op.GREATER_THAN, new IntField(ROWS / DUPLICATES - 11)))));
+
+        // a SeqScan below a filter on the key seeks as well
+        DbIterator filtered = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(100)),
+                new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(110)), new SeqScan(tid, lsm.getId())));
+        assertEquals(range(200, 220, 1), rows(tuples(filtered)));
+    }
+
+    /**
+     * Unit test for queries over an LsmFile planned by LogicalPlan: an
+     * equality filter on the key is served by its index, and ORDER BY the
+     * key needs no sort
+     */
+    @Test
+    public void plan() throws Exception {
+        // enough pages for seeks to beat a scan
+        insertAll(4 * ROWS);
+        lsm.awaitCompaction();
+        TableStats.setTableStats(name, new TableStats(lsm.getId(), TableStats.IOCOSTPERPAGE));
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(lsm.getId(), "t");
+        lp.addFilter("t.f0", Predicate.Op.EQUALS, "42");
+        lp.addProjectField("*", null);
+        DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof IndexScan);
+        assertEquals(range(84, 86, 1), rows(tuples(plan)));
+
+        lp = new LogicalPlan();
+        lp.addScan(lsm.getId(), "t");
+        lp.addProjectField("t.f0", null);
+        lp.addOrderBy("t.f0", true);
+        plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        assertFalse(((Operator) plan).getChildren()[0] instanceof OrderBy);
+        assertEquals(4 * ROWS, tuples(plan).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LsmFileTest.class);
+    }
+}
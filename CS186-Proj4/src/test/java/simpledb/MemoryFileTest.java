@@ -0,0 +1,218 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class MemoryFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+
+    private MemoryFile mf;
+    private String name;
+    private TransactionId tid;
+
+    /**
+     * An empty table in memory, registered with the Catalog.
+     */
+    @Before
+    public void setUp() throws Exception {
+        mf = new MemoryFile(Utility.getTupleDesc(2, "f"));
+        name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(mf, name);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private void insertAll() throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            Database.getBufferPool().insertTuple(tid, mf.getId(), Utility.getHeapTuple(new int[] { i, -i }));
+        }
+    }
+
+    private List<Tuple> tuples(DbIterator it) throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        return tuples;
+    }
+
+    private static List<Integer> keys(List<Tuple> tuples) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (Tuple t : tuples) {
+            keys.add(((IntField) t.getField(0)).getValue());
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static List<Integer> multiples(int every, int to) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < to; i += every) {
+            keys.add(i);
+        }
+        return keys;
+    }
+
+    /**
+     * Unit test for inserts through the BufferPool, which writes nothing,
+     * and scans returning what was inserted
+     */
+    @Test
+    public void insert() throws Exception {
+        insertAll();
+        assertEquals(ROWS, mf.numTuples());
+        int perPage = MemoryPage.getNumSlots(mf.getTupleDesc(), BufferPool.getPageSize());
+        assertEquals((ROWS + perPage - 1) / perPage, mf.numPages());
+
+        List<Tuple> tuples = tuples(new SeqScan(tid, mf.getId()));
+        assertEquals(multiples(1, ROWS), keys(tuples));
+        for (Tuple t : tuples) {
+            assertEquals(-((IntField) t.getField(0)).getValue(), ((IntField) t.getField(1)).getValue());
+        }
+
+        // the pages are the table, and are left clean
+        Page page = mf.readPage(new HeapPageId(mf.getId(), 0));
+        assertSame(page, mf.readPage(new HeapPageId(mf.getId(), 0)));
+        assertNull(page.isDirty());
+    }
+
+    /**
+     * Unit test for deletes, whose slots are reused by later inserts
+     */
+    @Test
+    public void delete() throws Exception {
+        insertAll();
+        for (Tuple t : tuples(new SeqScan(tid, mf.getId()))) {
+            if (((IntField) t.getField(0)).getValue() % 2 != 0) {
+                Database.getBufferPool().deleteTuple(tid, t);
+            }
+        }
+        assertEquals(ROWS / 2, mf.numTuples());
+        assertEquals(multiples(2, ROWS), keys(tuples(new SeqScan(tid, mf.getId()))));
+
+        // every page but the last is full again
+        insertAll();
+        assertEquals(ROWS + ROWS / 2, mf.numTuples());
+        int perPage = MemoryPage.getNumSlots(mf.getTupleDesc(), BufferPool.getPageSize());
+        assertEquals((ROWS + ROWS / 2 + perPage - 1) / perPage, mf.numPages());
+    }
+
+    /**
+     * Unit test for CREATE TEMP TABLE, which keeps the result of a query as
+     * a table in memory
+     */
+    @Test
+    public void statement() throws Exception {
+        // a table on disk to select from
+        String other = "t" + SystemTestUtil.getUUID().replace("-", "");
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        }
+        File f = SystemTestUtil.createTempTableFile("memory", 2);
+        HeapFileEncoder.convert(rows, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, other);
+        TableStats.setTableStats(other, new TableStats(hf.getId(), TableStats.IOCOSTPERPAGE));
+
+        String temp = "t" + SystemTestUtil.getUUID().replace("-", "");
+        Parser parser = new Parser();
+        parser.processNextStatement("CREATE TEMP TABLE " + temp + " AS SELECT s.f0, s.f1 FROM "
+                + other + " s WHERE s.f1 = 3;");
+        DbFile file = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(temp));
+        assertTrue(file instanceof MemoryFile);
+        assertEquals("f0", file.getTupleDesc().getFieldName(0));
+        assertEquals("f1", file.getTupleDesc().getFieldName(1));
+        assertEquals(shifted(multiples(10, ROWS), 3), keys(tuples(new SeqScan(tid, file.getId()))));
+
+        // the temporary table can be queried, and replaced
+        parser.processNextStatement("create temporary table " + temp + "\n as select x.f0 from " + temp
+                + " x where x.f0 < 100;");
+        file = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(temp));
+        assertEquals(1, file.getTupleDesc().numFields());
+        assertEquals(shifted(multiples(10, 100), 3), keys(tuples(new SeqScan(tid, file.getId()))));
+
+        // a table on disk is not
+        parser.processNextStatement("CREATE TEMP TABLE " + other + " AS SELECT x.f0 FROM " + temp + " x;");
+        assertSame(hf, Database.getCatalog().getDbFile(Database.getCatalog().getTableId(other)));
+
+        // a failed one aborts the user transaction it ran in
+        parser.processNextStatement("SET TRANSACTION READ WRITE;");
+        assertNotNull(parser.getTransaction());
+        parser.processNextStatement("CREATE TEMP TABLE " + temp + " AS SELECT x.f0 FROM "
+                + "t" + SystemTestUtil.getUUID().replace("-", "") + " x;");
+        assertNull(parser.getTransaction());
+        hf.close();
+    }
+
+    /**
+     * Unit test for the ids of MemoryFiles, which no other MemoryFile and
+     * no table of the Catalog has
+     */
+    @Test
+    public void ids() throws Exception {
+        Set<Integer> ids = new HashSet<Integer>();
+        ids.add(mf.getId());
+        TupleDesc td = Utility.getTupleDesc(1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(ids.add(new MemoryFile(td).getId()));
+        }
+
+        // the next id is taken by a table on disk, so it is skipped
+        final int taken = new MemoryFile(td).getId() + 1;
+        File f = SystemTestUtil.createTempTableFile("memory", 2);
+        Database.getCatalog().addTable(new HeapFile(f, td) {
+            private static final long serialVersionUID = 1L;
+
+            public int getId() {
+                return taken;
+            }
+        }, SystemTestUtil.getUUID());
+        assertTrue(new MemoryFile(td).getId() > taken);
+
+        // a table on disk cannot take the id of a MemoryFile
+        try {
+            Database.getCatalog().addTable(new HeapFile(f, td) {
+                private static final long serialVersionUID = 1L;
+
+                public int getId() {
+                    return mf.getId();
+                }
+            }, SystemTestUtil.getUUID());
+            fail("expected the id to clash");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertSame(mf, Database.getCatalog().getDbFile(mf.getId()));
+    }
+
+    private static List<Integer> shifted(List<Integer> keys, int by) {
+        List<Integer> shifted = new ArrayList<Integer>();
+        for (int key : keys) {
+            shifted.add(key + by);
+        }
+        return shifted;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MemoryFileTest.class);
+    }
+}
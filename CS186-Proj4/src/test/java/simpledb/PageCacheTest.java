@@ -0,0 +1,215 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageCacheTest extends SimpleDbTestBase {
+    private static final int CAPACITY = 100;
+
+    private MemoryFile file;
+    private Page page;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new MemoryFile(Utility.getTupleDesc(1));
+        page = file.add(Utility.getHeapTuple(new int[] { 0 }));
+    }
+
+    private PageId pid(int i) {
+        return new HeapPageId(file.getId(), i);
+    }
+
+    /**
+     * Unit test for the contract every policy shares: the cache never holds
+     * more than its capacity, puts replace, and removes forget
+     */
+    @Test
+    public void contract() throws Exception {
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            PageCache cache = policy.newCache(CAPACITY);
+            Random random = new Random(0);
+            for (int i = 0; i < 20 * CAPACITY; i++) {
+                PageId pid = pid(random.nextInt(3 * CAPACITY));
+                if (cache.get(pid) == null) {
+                    cache.put(pid, page);
+                    assertTrue(policy.toString(), cache.contains(pid));
+                }
+                assertTrue(policy.toString(), cache.size() <= CAPACITY);
+                assertEquals(policy.toString(), cache.size(), new HashSet<PageId>(cache.pageIds()).size());
+            }
+            assertEquals(policy.toString(), CAPACITY, cache.size());
+
+            PageId cached = cache.pageIds().get(0);
+            Page other = new MemoryPage(new HeapPageId(file.getId(), 0), file.getTupleDesc(), BufferPool.getPageSize());
+            cache.put(cached, other);
+            assertEquals(policy.toString(), CAPACITY, cache.size());
+            assertSame(policy.toString(), other, cache.get(cached));
+            assertSame(policy.toString(), other, cache.remove(cached));
+            assertFalse(policy.toString(), cache.contains(cached));
+            assertNull(policy.toString(), cache.remove(cached));
+            assertEquals(policy.toString(), CAPACITY - 1, cache.size());
+        }
+    }
+
+    /**
+     * Unit test for scan resistance: a hot set that fits in the cache and is
+     * referenced repeatedly survives a scan of many more pages than the
+     * cache holds under 2Q and LRU-K, but not under LRU
+     */
+    @Test
+    public void scan() throws Exception {
+        int hot = CAPACITY / 2;
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            PageCache cache = policy.newCache(CAPACITY);
+            // the hot set is referenced a few times, some time apart
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < hot; i++) {
+                    if (cache.get(pid(i)) == null) {
+                        cache.put(pid(i), page);
+                    }
+                }
+                for (int i = 0; i < CAPACITY; i++) {
+                    cache.put(pid(CAPACITY + round * CAPACITY + i), page);
+                }
+            }
+            for (int i = 0; i < 10 * CAPACITY; i++) {
+                cache.put(pid(10 * CAPACITY + i), page);
+            }
+            int survivors = 0;
+            for (int i = 0; i < hot; i++) {
+                if (cache.contains(pid(i))) {
+                    survivors++;
+                }
+            }
+            if (policy == ReplacementPolicy.TWO_Q || policy == ReplacementPolicy.LRU_K) {
+                assertEquals(policy.toString(), hot, survivors);
+            } else if (policy == ReplacementPolicy.LRU) {
+                assertEquals(policy.toString(), 0, survivors);
+            }
+        }
+    }
+
+    /**
+     * Unit test for eviction filters: every policy evicts only the pages
+     * its filter allows, and refuses a page when it allows none
+     */
+    @Test
+    public void filter() throws Exception {
+        final Set<PageId> kept = new HashSet<PageId>();
+        PageCache.EvictionFilter filter = new PageCache.EvictionFilter() {
+            public boolean mayEvict(PageId pid, Page page) {
+                return !kept.contains(pid);
+            }
+        };
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            kept.clear();
+            PageCache cache = policy.newCache(CAPACITY, filter);
+            for (int i = 0; i < CAPACITY; i++) {
+                assertTrue(policy.toString(), cache.put(pid(i), page));
+                if (i % 2 == 0) {
+                    kept.add(pid(i));
+                }
+            }
+            for (int i = CAPACITY; i < 10 * CAPACITY; i++) {
+                assertTrue(policy.toString(), cache.put(pid(i), page));
+                assertEquals(policy.toString(), CAPACITY, cache.size());
+            }
+            for (PageId pid : kept) {
+                assertTrue(policy.toString(), cache.contains(pid));
+            }
+
+            kept.addAll(cache.pageIds());
+            assertFalse(policy.toString(), cache.put(pid(10 * CAPACITY), page));
+            assertFalse(policy.toString(), cache.contains(pid(10 * CAPACITY)));
+            assertEquals(policy.toString(), CAPACITY, cache.size());
+            assertTrue(policy.toString(), kept.containsAll(cache.pageIds()));
+
+            kept.remove(pid(0));
+            assertTrue(policy.toString(), cache.put(pid(10 * CAPACITY), page));
+            assertFalse(policy.toString(), cache.contains(pid(0)));
+            assertEquals(policy.toString(), CAPACITY, cache.size());
+        }
+    }
+
+    /**
+     * Unit test for caches split into partitions: every policy keeps to the
+     * capacity of the whole, also when threads use it at once
+     */
+    @Test
+    public void partitioned() throws Exception {
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            final PageCache cache = new PartitionedCache(policy, CAPACITY, 4);
+            Thread[] threads = new Thread[4];
+            final Throwable[] failure = new Throwable[1];
+            for (int t = 0; t < threads.length; t++) {
+                final int seed = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            Random random = new Random(seed);
+                            for (int i = 0; i < 20 * CAPACITY; i++) {
+                                PageId pid = pid(random.nextInt(3 * CAPACITY));
+                                if (cache.get(pid) == null) {
+                                    cache.put(pid, page);
+                                }
+                                if (random.nextInt(10) == 0) {
+                                    cache.remove(pid);
+                                }
+                            }
+                        } catch (Throwable e) {
+                            failure[0] = e;
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull(policy.toString(), failure[0]);
+            assertTrue(policy.toString(), cache.size() <= CAPACITY);
+            assertEquals(policy.toString(), cache.size(), new HashSet<PageId>(cache.pageIds()).size());
+            for (PageId pid : cache.pageIds()) {
+                assertSame(policy.toString(), page, cache.get(pid));
+            }
+        }
+
+        try {
+            new PartitionedCache(ReplacementPolicy.LRU, CAPACITY, 3);
+            fail("expected a power of two");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(1, BufferPool.defaultPartitions(BufferPool.DEFAULT_PAGES));
+        assertEquals(8, new BufferPool(CAPACITY, ReplacementPolicy.LRU, 8).getPartitions());
+    }
+
+    /**
+     * Unit test for the policy of buffer pools created without one
+     */
+    @Test
+    public void bufferPool() throws Exception {
+        ReplacementPolicy policy = BufferPool.getReplacementPolicy();
+        try {
+            BufferPool.setReplacementPolicy(ReplacementPolicy.CLOCK);
+            assertEquals(ReplacementPolicy.CLOCK, BufferPool.getReplacementPolicy());
+            BufferPool.resetReplacementPolicy();
+            assertEquals(policy, BufferPool.getReplacementPolicy());
+        } finally {
+            BufferPool.setReplacementPolicy(policy);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCacheTest.class);
+    }
+}
@@ -0,0 +1,124 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PaxHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 100;
+
+    private TupleDesc td;
+    private File f;
+    private PaxHeapFile pf;
+    private TransactionId tid;
+
+    /**
+     * Encode (int, string, int) rows in the columnar layout.
+     */
+    @Before
+    public void setUp() throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+        td = new TupleDesc(types, new String[] { "a", "s", "b" });
+
+        File txt = File.createTempFile("pax", ".txt");
+        txt.deleteOnExit();
+        PrintWriter w = new PrintWriter(new FileWriter(txt));
+        for (int i = 0; i < ROWS; i++) {
+            w.println(i + ",s" + i + "," + (-i));
+        }
+        w.close();
+
+        f = SystemTestUtil.createTempTableFile("pax", 3);
+        HeapFileEncoder.convert(txt, f, BufferPool.PAGE_SIZE, 3, types, ',', true);
+        pf = new PaxHeapFile(f, td);
+        Database.getCatalog().addTable(pf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for the columnar layout written by HeapFileEncoder
+     */
+    @Test
+    public void layout() throws Exception {
+        // 29 slots of 140 bytes per page, 4 header bytes
+        assertEquals(4, pf.numPages());
+        byte[] bytes = TestUtil.readFileBytes(f.getAbsolutePath());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(4);
+        for (int i = 0; i < 29; i++) {
+            assertEquals(i, in.readInt());
+        }
+        in.skipBytes(29 * Type.STRING_TYPE.getLen());
+        for (int i = 0; i < 29; i++) {
+            assertEquals(-i, in.readInt());
+        }
+    }
+
+    /**
+     * Unit test for PaxHeapFile.iterator()
+     */
+    @Test
+    public void scan() throws Exception {
+        int n = 0;
+        DbFileIterator it = pf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int a = ((IntField) t.getField(0)).getValue();
+            assertEquals(-a, ((IntField) t.getField(2)).getValue());
+            assertEquals("s" + a, ((StringField) t.getField(1)).getValue());
+            n++;
+        }
+        it.close();
+        assertEquals(ROWS, n);
+    }
+
+    /**
+     * Unit test for PaxHeapPage.getPageData() after inserts and deletes
+     */
+    @Test
+    public void pageRoundTrip() throws Exception {
+        HeapPageId pid = new HeapPageId(pf.getId(), 3);
+        PaxHeapPage page = (PaxHeapPage) pf.readPage(pid);
+        assertArrayEquals(Arrays.copyOfRange(TestUtil.readFileBytes(f.getAbsolutePath()),
+                3 * BufferPool.PAGE_SIZE, 4 * BufferPool.PAGE_SIZE), page.getPageData());
+
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(1000));
+        t.setField(1, new StringField("x", Type.STRING_LEN));
+        t.setField(2, new IntField(-1000));
+        page.insertTuple(t);
+
+        PaxHeapPage copy = new PaxHeapPage(pid, page.getPageData());
+        assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+        Iterator<Tuple> it = copy.iterator();
+        Tuple reread = it.next();
+        assertEquals(1000, ((IntField) reread.getField(0)).getValue());
+        assertEquals("x", ((StringField) reread.getField(1)).getValue());
+        assertEquals(-1000, ((IntField) reread.getField(2)).getValue());
+        // the freed slot 0 is reused
+        assertEquals(1000, ((IntField) page.iterator().next().getField(0)).getValue());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapFileTest.class);
+    }
+}
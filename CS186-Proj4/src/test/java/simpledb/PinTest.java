@@ -0,0 +1,223 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PinTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 4;
+    private static final int PAGES = 10;
+    //rows of two int fields per page
+    private static final int ROWS_PER_PAGE = BufferPool.PAGE_SIZE * 8 / (2 * 4 * 8 + 1);
+
+    private BufferPool bp;
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * A table of more pages than the pool holds.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < PAGES * ROWS_PER_PAGE; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("pin", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        bp = Database.resetBufferPool(POOL_PAGES);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bp.transactionComplete(tid);
+        hf.close();
+    }
+
+    private PageId pid(int pgNo) {
+        return new HeapPageId(hf.getId(), pgNo);
+    }
+
+    private void readAll() throws Exception {
+        for (int i = 0; i < PAGES; i++) {
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+        }
+    }
+
+    //rows of the page as read from disk
+    private int count(Page page) {
+        int rows = 0;
+        for (Iterator<Tuple> it = hf.pageIterator(page); it.hasNext(); it.next()) {
+            rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * Unit test for pinned pages, which stay cached, as the same copy,
+     * until they are unpinned
+     */
+    @Test
+    public void pinned() throws Exception {
+        Page page = bp.pinPage(tid, pid(0), Permissions.READ_ONLY, null);
+        bp.pinPage(tid, pid(0), Permissions.READ_ONLY, null);
+        assertEquals(2, bp.getPinCount(pid(0)));
+        readAll();
+        readAll();
+        assertTrue(bp.isCached(pid(0)));
+        assertSame(page, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+
+        bp.unpinPage(pid(0));
+        readAll();
+        assertTrue(bp.isCached(pid(0)));
+        bp.unpinPage(pid(0));
+        assertEquals(0, bp.getPinCount(pid(0)));
+        for (int i = 1; i < PAGES; i++) {
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+        }
+        assertFalse(bp.isCached(pid(0)));
+
+        try {
+            bp.unpinPage(pid(0));
+            fail("expected the page not to be pinned");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Unit test for changed pages, which stay cached and dirty, and off
+     * disk, until the transaction commits
+     */
+    @Test
+    public void dirty() throws Exception {
+        Page page = bp.getPage(tid, pid(0), Permissions.READ_WRITE);
+        bp.deleteTuple(tid, hf.pageIterator(page).next());
+        assertEquals(tid, page.isDirty());
+        readAll();
+        assertSame(page, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+        assertEquals(ROWS_PER_PAGE, count(hf.readPage(pid(0))));
+
+        bp.transactionComplete(tid, true);
+        tid = new TransactionId();
+        assertNull(page.isDirty());
+        assertEquals(ROWS_PER_PAGE - 1, count(hf.readPage(pid(0))));
+        readAll();
+        assertFalse(bp.isCached(pid(0)));
+    }
+
+    /**
+     * Unit test for an abort, which drops the changed pages, so that they
+     * are read again as they are on disk
+     */
+    @Test
+    public void aborted() throws Exception {
+        Page page = bp.getPage(tid, pid(0), Permissions.READ_WRITE);
+        bp.deleteTuple(tid, hf.pageIterator(page).next());
+        bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { -1, -1 }));
+        bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { -2, -2 }));
+        assertEquals(PAGES + 1, hf.numPages());
+
+        bp.transactionComplete(tid, false);
+        tid = new TransactionId();
+        assertFalse(bp.isCached(pid(0)));
+        assertEquals(ROWS_PER_PAGE, count(bp.getPage(tid, pid(0), Permissions.READ_ONLY)));
+        //the page appended is on disk, but empty
+        assertEquals(0, count(bp.getPage(tid, pid(PAGES), Permissions.READ_ONLY)));
+    }
+
+    /**
+     * Unit test for a pool whose every page is dirty: a page that needs a
+     * frame is refused until the transaction commits
+     */
+    @Test
+    public void fullOfDirty() throws Exception {
+        for (int i = 0; i < POOL_PAGES; i++) {
+            Page page = bp.getPage(tid, pid(i), Permissions.READ_WRITE);
+            bp.deleteTuple(tid, hf.pageIterator(page).next());
+        }
+        try {
+            bp.getPage(tid, pid(POOL_PAGES), Permissions.READ_ONLY);
+            fail("expected no page to be evictable");
+        } catch (DbException e) {
+            // expected
+        }
+
+        bp.transactionComplete(tid, true);
+        tid = new TransactionId();
+        bp.getPage(tid, pid(POOL_PAGES), Permissions.READ_ONLY);
+        assertEquals(ROWS_PER_PAGE - 1, count(hf.readPage(pid(0))));
+    }
+
+    /**
+     * Unit test for a pool whose every page is pinned: a page
+     * that needs a frame is refused until one is unpinned
+     */
+    @Test
+    public void full() throws Exception {
+        for (int i = 0; i < POOL_PAGES; i++) {
+            bp.pinPage(tid, pid(i), Permissions.READ_ONLY, null);
+        }
+        try {
+            bp.getPage(tid, pid(POOL_PAGES), Permissions.READ_ONLY);
+            fail("expected no page to be evictable");
+        } catch (DbException e) {
+            // expected
+        }
+        try {
+            bp.pinPage(tid, pid(POOL_PAGES), Permissions.READ_ONLY, null);
+            fail("expected no page to be evictable");
+        } catch (DbException e) {
+            // expected
+        }
+        assertEquals(0, bp.getPinCount(pid(POOL_PAGES)));
+
+        bp.unpinPage(pid(1));
+        bp.getPage(tid, pid(POOL_PAGES), Permissions.READ_ONLY);
+        assertFalse(bp.isCached(pid(1)));
+        assertTrue(bp.isCached(pid(0)));
+        assertTrue(bp.isCached(pid(POOL_PAGES - 1)));
+    }
+
+    /**
+     * Unit test for scans, which pin the page they are on and nothing once
+     * they are closed
+     */
+    @Test
+    public void scan() throws Exception {
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        scan.open();
+        scan.next();
+        assertEquals(1, bp.getPinCount(pid(0)));
+        int rows = 1;
+        while (scan.hasNext()) {
+            scan.next();
+            rows++;
+        }
+        assertEquals(PAGES * ROWS_PER_PAGE, rows);
+        scan.rewind();
+        scan.next();
+        scan.close();
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(0, bp.getPinCount(pid(i)));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PinTest.class);
+    }
+}
@@ -0,0 +1,204 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 50;
+    private static final int PAGES = 16;
+    //rows of two int fields per page
+    private static final int ROWS_PER_PAGE = BufferPool.PAGE_SIZE * 8 / (2 * 4 * 8 + 1);
+
+    private BufferPool bp;
+    private CountingHeapFile hf;
+    private TransactionId tid;
+
+    //a HeapFile that counts the reads of each of its pages, including
+    //those past its end
+    private static class CountingHeapFile extends HeapFile {
+        private final AtomicIntegerArray reads = new AtomicIntegerArray(2 * PAGES);
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet(pid.pageNumber());
+            return super.readPage(pid);
+        }
+
+        int reads(int pgNo) {
+            return reads.get(pgNo);
+        }
+
+        void reset() {
+            for (int i = 0; i < reads.length(); i++) {
+                reads.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * A table of PAGES full pages, which the pool holds all of, read with
+     * a window of up to 8 pages.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < PAGES * ROWS_PER_PAGE; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("readahead", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = new CountingHeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setReadAheadPages(8);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bp.awaitReadAhead();
+        bp.transactionComplete(tid);
+        hf.close();
+    }
+
+    private PageId pid(int pgNo) {
+        return new HeapPageId(hf.getId(), pgNo);
+    }
+
+    private static void skip(DbFileIterator it, int rows) throws Exception {
+        for (int i = 0; i < rows; i++) {
+            it.next();
+        }
+    }
+
+    private static void drain(DbFileIterator it) throws Exception {
+        while (it.hasNext()) {
+            it.next();
+        }
+    }
+
+    /**
+     * Unit test for a sequential scan: once it fetched two pages in order
+     * the next two are read ahead, and the scan then gets the very pages
+     * read ahead instead of reading them again
+     */
+    @Test
+    public void sequential() throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        //the last row of page 0 moves the scan onto page 1
+        skip(it, ROWS_PER_PAGE);
+        bp.awaitReadAhead();
+        assertTrue(bp.isCached(pid(2)));
+        assertTrue(bp.isCached(pid(3)));
+        assertFalse(bp.isCached(pid(4)));
+        Page ahead = bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+
+        drain(it);
+        it.close();
+        bp.awaitReadAhead();
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(1, hf.reads(i));
+        }
+        assertSame(ahead, bp.getPage(tid, pid(2), Permissions.READ_ONLY));
+    }
+
+    /**
+     * Unit test for the end of the file, which the window does not reach
+     * past
+     */
+    @Test
+    public void fileEnd() throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        drain(it);
+        it.close();
+        bp.awaitReadAhead();
+        for (int i = PAGES; i < 2 * PAGES; i++) {
+            assertEquals(0, hf.reads(i));
+        }
+        assertFalse(bp.isCached(pid(PAGES)));
+    }
+
+    /**
+     * Unit test for a window of 0 pages, which reads nothing ahead
+     */
+    @Test
+    public void disabled() throws Exception {
+        bp.setReadAheadPages(0);
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        skip(it, 2 * ROWS_PER_PAGE);
+        bp.awaitReadAhead();
+        assertFalse(bp.isCached(pid(3)));
+
+        drain(it);
+        it.close();
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(1, hf.reads(i));
+        }
+    }
+
+    /**
+     * Unit test for a filtered scan of a clustered file, whose window stops
+     * at the end of the range of sorted pages that may match. The file is
+     * clustered on a string field, which zone maps do not cover, so that
+     * only the range keeps the pages after it from being read ahead.
+     */
+    @Test
+    public void rangeEnd() throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        TupleDesc td = new TupleDesc(types);
+        int rowsPerPage = BufferPool.PAGE_SIZE * 8 / (td.getSize() * 8 + 1);
+        File text = File.createTempFile("readahead", ".txt");
+        text.deleteOnExit();
+        PrintWriter pw = new PrintWriter(new FileWriter(text));
+        for (int i = PAGES * rowsPerPage - 1; i >= 0; i--) {
+            pw.println(i + "," + String.format("k%06d", i));
+        }
+        pw.close();
+        File f = SystemTestUtil.createTempTableFile("readahead", 2);
+        HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, 2, types);
+        CountingHeapFile sf = new CountingHeapFile(f, td);
+        Database.getCatalog().addTable(sf, SystemTestUtil.getUUID());
+        try {
+            sf.cluster(1);
+            //tuples below the smallest key of page 3 are on pages 0 to 3
+            Field bound = sf.pageIterator(sf.readPage(new HeapPageId(sf.getId(), 3))).next().getField(1);
+            List<Predicate> filters = Arrays.asList(new Predicate(1, Predicate.Op.LESS_THAN, bound));
+
+            DbFileIterator it = sf.iterator(tid, filters);
+            it.open();
+            //the binary search for the range has read what it needed
+            sf.reset();
+            drain(it);
+            it.close();
+            bp.awaitReadAhead();
+            for (int i = 4; i < 2 * PAGES; i++) {
+                assertEquals(0, sf.reads(i));
+            }
+        } finally {
+            sf.close();
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,144 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 300;
+
+    private TupleDesc td;
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * Set up a fixed-width HeapFile of (int, string) tuples with short strings.
+     */
+    @Before
+    public void setUp() throws Exception {
+        td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+                new String[] { "id", "name" });
+        File f = SystemTestUtil.createTempTableFile("fixed", td.numFields());
+        hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, UUID.randomUUID().toString());
+        tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(i));
+        }
+        // convert reads the table as it is on disk
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private Tuple tuple(int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+        return t;
+    }
+
+    private SlottedHeapFile convert() throws Exception {
+        File out = SystemTestUtil.createTempTableFile("slotted", td.numFields());
+        SlottedHeapFile.convert(hf, out);
+        SlottedHeapFile shf = new SlottedHeapFile(out, td);
+        Database.getCatalog().addTable(shf, UUID.randomUUID().toString());
+        return shf;
+    }
+
+    private List<Integer> ids(DbFile f) throws Exception {
+        List<Integer> ids = new ArrayList<Integer>();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            assertEquals("name" + id, ((StringField) t.getField(1)).getValue());
+            ids.add(id);
+        }
+        it.close();
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Unit test for SlottedHeapFile.convert()
+     */
+    @Test
+    public void convertPacksPages() throws Exception {
+        SlottedHeapFile shf = convert();
+        assertEquals(ids(hf), ids(shf));
+        assertEquals(ROWS, ids(shf).size());
+
+        // 136 byte tuples in the fixed format, 13-14 bytes plus a slot here
+        assertEquals(10, hf.numPages());
+        assertEquals(2, shf.numPages());
+    }
+
+    /**
+     * Unit test for SlottedHeapFile.insertTuple() and deleteTuple()
+     */
+    @Test
+    public void insertDelete() throws Exception {
+        SlottedHeapFile shf = convert();
+
+        List<Tuple> deleted = new ArrayList<Tuple>();
+        DbFileIterator it = shf.iterator(tid);
+        it.open();
+        for (int i = 0; i < 10; i++) {
+            deleted.add(it.next());
+        }
+        it.close();
+        for (Tuple t : deleted) {
+            shf.deleteTuple(tid, t);
+        }
+        assertEquals(ROWS - 10, ids(shf).size());
+
+        for (int i = ROWS; i < ROWS + 500; i++) {
+            shf.insertTuple(tid, tuple(i));
+        }
+        assertEquals(ROWS + 490, ids(shf).size());
+    }
+
+    /**
+     * Unit test for SlottedHeapPage.getPageData()
+     */
+    @Test
+    public void pageRoundTrip() throws Exception {
+        SlottedHeapFile shf = convert();
+        HeapPageId pid = new HeapPageId(shf.getId(), 0);
+        SlottedHeapPage page = (SlottedHeapPage) shf.readPage(pid);
+        int tuples = page.getNumTuples();
+
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        Tuple added = tuple(-1);
+        page.insertTuple(added);
+        // the freed slot is reused
+        assertEquals(first.getRecordId().tupleno(), added.getRecordId().tupleno());
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        assertEquals(tuples, copy.getNumTuples());
+        assertEquals(page.getFreeSpace(), copy.getFreeSpace());
+        assertArrayEquals(page.getPageData(), copy.getPageData());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapFileTest.class);
+    }
+}
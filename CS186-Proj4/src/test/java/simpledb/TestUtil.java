@@ -3,6 +3,8 @@ package simpledb;
 import java.io.*;
 import java.util.*;
 
+import simpledb.systemtest.SystemTestUtil;
+
 import static org.junit.Assert.*;
 
 public class TestUtil {
@@ -238,6 +240,10 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public DbFileIterator iterator(TransactionId tid, List<Predicate> filters) {
+            throw new RuntimeException("not implemented");
+        }
+
 		public TupleDesc getTupleDesc() {
 			return td;
 		}
@@ -376,11 +382,10 @@ public class TestUtil {
     public static abstract class CreateHeapFile {
         protected CreateHeapFile() {
             try{
-                emptyFile = File.createTempFile("empty", ".dat");
+                emptyFile = SystemTestUtil.createTempTableFile("empty", 2);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            emptyFile.deleteOnExit();
         }
 
         protected void setUp() throws Exception {
@@ -0,0 +1,316 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class VacuumTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+
+    private File f;
+    private HeapFile hf;
+    private BTreeFile index;
+    private String name;
+    private TransactionId tid;
+    private volatile Exception thrown;
+
+    private HeapFile table(String name) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("vacuum", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, name);
+        return hf;
+    }
+
+    /**
+     * A table of (i, i) rows with an index on f1.
+     */
+    @Before
+    public void setUp() throws Exception {
+        name = SystemTestUtil.getUUID();
+        hf = table(name);
+        f = hf.getFile();
+        File idx = File.createTempFile("vacuum", ".idx");
+        idx.deleteOnExit();
+        index = BTreeFile.build(idx, hf, 1);
+        Database.getCatalog().addIndex(index, name);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+        index.close();
+    }
+
+    //deletes the rows whose f0 is not a multiple of every
+    private void deleteAllBut(int every) throws Exception {
+        DbIterator scan = new SeqScan(tid, hf.getId());
+        List<Tuple> doomed = new ArrayList<Tuple>();
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            if (((IntField) t.getField(0)).getValue() % every != 0) {
+                doomed.add(t);
+            }
+        }
+        scan.close();
+        for (Tuple t : doomed) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+    }
+
+    //vacuums the table, after committing tid so that none of its locks
+    //holds the vacuum up
+    private int vacuumTable() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        return Database.getCatalog().vacuumTable(name);
+    }
+
+    private List<Integer> keys(DbIterator it) throws Exception {
+        List<Integer> keys = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext()) {
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private List<Integer> multiples(int every, int to) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < to; i += every) {
+            keys.add(i);
+        }
+        return keys;
+    }
+
+    private int perPage() {
+        return ((HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0))).numSlots;
+    }
+
+    /**
+     * Unit test for Catalog.vacuumTable moving tuples into dense pages and
+     * truncating the file, with the index following the moved tuples
+     */
+    @Test
+    public void vacuum() throws Exception {
+        int pages = hf.numPages();
+        deleteAllBut(10);
+        assertEquals(pages, hf.numPages());
+
+        int live = ROWS / 10;
+        int dense = (live + perPage() - 1) / perPage();
+        assertEquals(pages - dense, vacuumTable());
+        assertEquals(dense, hf.numPages());
+        assertEquals((long) dense * BufferPool.PAGE_SIZE, f.length());
+        assertEquals(multiples(10, ROWS), keys(new SeqScan(tid, hf.getId())));
+
+        for (int i = 0; i < ROWS; i += 10) {
+            DbIterator lookup = new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(i));
+            assertEquals(Arrays.asList(i), keys(lookup));
+        }
+        assertEquals(0, keys(new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(11))).size());
+
+        // nothing left to reclaim
+        assertEquals(0, vacuumTable());
+    }
+
+    /**
+     * Unit test for the free-space and zone maps being rebuilt, so that
+     * inserts and filtered scans after a vacuum see the new pages
+     */
+    @Test
+    public void afterVacuum() throws Exception {
+        deleteAllBut(10);
+        vacuumTable();
+        int pages = hf.numPages();
+        for (int i = 0; i < perPage(); i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { ROWS + i, 0 }));
+        }
+        assertEquals(pages + 1, hf.numPages());
+        DbIterator filtered = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(ROWS)),
+                new SeqScan(tid, hf.getId()));
+        assertEquals(perPage(), keys(filtered).size());
+    }
+
+    /**
+     * Unit test for vacuuming a table every tuple was deleted from
+     */
+    @Test
+    public void empty() throws Exception {
+        int pages = hf.numPages();
+        deleteAllBut(ROWS + 1);
+        assertEquals(pages - 1, vacuumTable());
+        // page 0 held row 0, the only one left
+        assertEquals(1, hf.numPages());
+        assertEquals(Arrays.asList(0), keys(new SeqScan(tid, hf.getId())));
+    }
+
+    //empties the last pages of the table, keeping the first keep, and
+    //commits, so that the pages are unlocked
+    private void emptyAllBut(int keep) throws Exception {
+        DbIterator scan = new SeqScan(tid, hf.getId());
+        List<Tuple> doomed = new ArrayList<Tuple>();
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            if (t.getRecordId().getPageId().pageNumber() >= keep) {
+                doomed.add(t);
+            }
+        }
+        scan.close();
+        for (Tuple t : doomed) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+    }
+
+    //runs r in a thread of its own; join rethrows what it threw
+    private Thread start(final Callable<Object> r) {
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    r.call();
+                } catch (Exception e) {
+                    thrown = e;
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    //waits until a transaction waits for the lock of page pgNo, or until
+    //thread ends without one doing so
+    private void awaitLockWait(Thread thread, int pgNo) throws InterruptedException {
+        PageId pid = new HeapPageId(hf.getId(), pgNo);
+        while (thread.isAlive() && Database.getBufferPool().getLockWaiters(pid) == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void join(Thread thread) throws Exception {
+        thread.join();
+        if (thrown != null) {
+            throw thrown;
+        }
+    }
+
+    /**
+     * Unit test for a vacuum running while another transaction inserts
+     * into one of the empty pages at the end: the vacuum waits for its lock
+     * and keeps the page
+     */
+    @Test
+    public void concurrentInsert() throws Exception {
+        int pages = hf.numPages();
+        int keep = pages - 3;
+        emptyAllBut(keep);
+
+        TransactionId other = new TransactionId();
+        Database.getBufferPool().insertTuple(other, hf.getId(), Utility.getHeapTuple(new int[] { ROWS, 0 }));
+        final int[] shrunk = new int[1];
+        Thread vacuum = start(new Callable<Object>() {
+            public Object call() throws Exception {
+                shrunk[0] = Database.getCatalog().vacuumTable(name);
+                return null;
+            }
+        });
+        awaitLockWait(vacuum, keep);
+        //the vacuum is held up by the insert
+        assertTrue(vacuum.isAlive());
+        Database.getBufferPool().transactionComplete(other);
+        join(vacuum);
+
+        assertEquals(pages - keep - 1, shrunk[0]);
+        assertEquals(keep + 1, hf.numPages());
+        assertTrue(keys(new SeqScan(tid, hf.getId())).contains(ROWS));
+    }
+
+    /**
+     * Unit test for an insert that waits for the lock of an empty page at
+     * the end while the last step of a vacuum truncates it: the tuple goes
+     * to a page of the file as it is after the vacuum
+     */
+    @Test
+    public void insertDuringVacuum() throws Exception {
+        int pages = hf.numPages();
+        int keep = pages - 3;
+        emptyAllBut(keep);
+
+        Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), keep), Permissions.READ_WRITE);
+        final TransactionId other = new TransactionId();
+        Thread insert = start(new Callable<Object>() {
+            public Object call() throws Exception {
+                Database.getBufferPool().insertTuple(other, hf.getId(), Utility.getHeapTuple(new int[] { ROWS, 0 }));
+                Database.getBufferPool().transactionComplete(other);
+                return null;
+            }
+        });
+        awaitLockWait(insert, keep);
+        //the insert is held up by tid
+        assertTrue(insert.isAlive());
+        assertEquals(pages - keep, hf.truncateEmptyPages(tid));
+        Database.getBufferPool().transactionComplete(tid);
+        join(insert);
+
+        tid = new TransactionId();
+        assertEquals(keep + 1, hf.numPages());
+        assertEquals((long) (keep + 1) * BufferPool.PAGE_SIZE, f.length());
+        assertTrue(keys(new SeqScan(tid, hf.getId())).contains(ROWS));
+    }
+
+    /**
+     * Unit test for the VACUUM statement
+     */
+    @Test
+    public void statement() throws Exception {
+        // a table without locks held on it, thinned out on disk
+        String other = "t" + SystemTestUtil.getUUID().replace("-", "");
+        HeapFile thin = table(other);
+        for (int i = 0; i < thin.numPages(); i++) {
+            HeapPage page = (HeapPage) thin.readPage(new HeapPageId(thin.getId(), i));
+            Iterator<Tuple> it = page.iterator();
+            List<Tuple> doomed = new ArrayList<Tuple>();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                if (((IntField) t.getField(0)).getValue() % 2 != 0) {
+                    doomed.add(t);
+                }
+            }
+            for (Tuple t : doomed) {
+                page.deleteTuple(t);
+            }
+            thin.writePage(page);
+        }
+        new Parser().processNextStatement("VACUUM " + other + ";");
+        assertEquals((ROWS / 2 + perPage() - 1) / perPage(), thin.numPages());
+        assertEquals(multiples(2, ROWS), keys(new SeqScan(tid, thin.getId())));
+        thin.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(VacuumTest.class);
+    }
+}
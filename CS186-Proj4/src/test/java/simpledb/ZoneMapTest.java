@@ -0,0 +1,124 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+    // 504 (int, int) tuples per page
+    private static final int ROWS = 5000;
+    private static final int PER_PAGE = 504;
+
+    private File f;
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * Write (id, id % 10) rows in id order, so that every page holds a
+     * narrow range of ids.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        }
+        f = SystemTestUtil.createTempTableFile("zones", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+    }
+
+    private List<Integer> ids(DbFileIterator it) throws Exception {
+        List<Integer> ids = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext()) {
+            ids.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        return ids;
+    }
+
+    private List<Predicate> filters(int field, Predicate.Op op, int v) {
+        return Arrays.asList(new Predicate(field, op, new IntField(v)));
+    }
+
+    /**
+     * Unit test for HeapFile.iterator(tid, filters)
+     */
+    @Test
+    public void skipPages() throws Exception {
+        // only the page holding id 1234 is read
+        List<Integer> ids = ids(hf.iterator(tid, filters(0, Predicate.Op.EQUALS, 1234)));
+        assertEquals(PER_PAGE, ids.size());
+        assertTrue(ids.contains(1234));
+
+        // the last page and the one before it
+        ids = ids(hf.iterator(tid, filters(0, Predicate.Op.GREATER_THAN_OR_EQ, ROWS - PER_PAGE)));
+        assertEquals(ROWS - (ROWS / PER_PAGE - 1) * PER_PAGE, ids.size());
+
+        // no page ends below 0
+        assertEquals(0, ids(hf.iterator(tid, filters(0, Predicate.Op.LESS_THAN, 0))).size());
+
+        // every page holds every value of field 1
+        assertEquals(ROWS, ids(hf.iterator(tid, filters(1, Predicate.Op.EQUALS, 3))).size());
+        assertTrue(new File(f.getPath() + ".zm").exists());
+    }
+
+    /**
+     * Unit test for Filter over SeqScan skipping pages
+     */
+    @Test
+    public void filterScan() throws Exception {
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10)),
+                new SeqScan(tid, hf.getId()));
+        Filter outer = new Filter(new Predicate(1, Predicate.Op.EQUALS, new IntField(3)), filter);
+        outer.open();
+        assertTrue(outer.hasNext());
+        assertEquals(3, ((IntField) outer.next().getField(0)).getValue());
+        assertFalse(outer.hasNext());
+        outer.close();
+    }
+
+    /**
+     * Unit test for keeping the ranges current on insert
+     */
+    @Test
+    public void insert() throws Exception {
+        List<Predicate> big = filters(0, Predicate.Op.GREATER_THAN, 100000);
+        assertEquals(0, ids(hf.iterator(tid, big)).size());
+
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 200000, 0 }));
+        List<Integer> ids = ids(hf.iterator(tid, big));
+        assertTrue(ids.contains(200000));
+        assertTrue(ids.size() < ROWS);
+
+        // reloaded from the sidecar
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+        tid = new TransactionId();
+        assertTrue(ids(hf.iterator(tid, big)).contains(200000));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares point lookups on an unclustered key with and without a B+tree
+ * index, over a cold buffer pool. Without the index every page of the table
+ * is scanned; with it the lookup reads one root-to-leaf path of the index
+ * and then the heap pages its entries point at.
+ * <p>
+ * Usage: java simpledb.bench.BTreeBenchmark [rows] [lookups]
+ */
+public class BTreeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        //keys are a permutation of 0..rows-1 spread over all the pages
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList((int) ((i * 7919L) % rows), i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("btree", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, "btree");
+
+        File idx = File.createTempFile("btree", ".idx");
+        idx.deleteOnExit();
+        long start = System.nanoTime();
+        BTreeFile index = BTreeFile.build(idx, hf, 0);
+        System.out.println(String.format("built index of %d pages over %d pages in %.2f ms",
+                index.numPages(), hf.numPages(), (System.nanoTime() - start) / 1e6));
+        Database.getCatalog().addIndex(index, "btree");
+
+        for (boolean indexed : new boolean[] { false, true, false, true }) {
+            //warm up the JIT and the OS page cache
+            lookup(hf, index, rows / 3, indexed);
+            start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < lookups; i++) {
+                found += lookup(hf, index, (int) ((i * 104729L) % rows), indexed);
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / lookups;
+            System.out.println(String.format("%-9s %d rows found  %10.3f ms/lookup",
+                    indexed ? "index" : "full scan", found, ms));
+        }
+    }
+
+    private static int lookup(HeapFile hf, BTreeFile index, int key, boolean indexed) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        int count = 0;
+        if (indexed) {
+            DbFileIterator it = index.indexIterator(tid, Predicate.Op.EQUALS, new IntField(key));
+            it.open();
+            while (it.hasNext()) {
+                RecordId rid = index.getRecordId(it.next());
+                HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_ONLY);
+                Iterator<Tuple> tuples = p.iterator();
+                while (tuples.hasNext()) {
+                    if (tuples.next().getRecordId().equals(rid)) count++;
+                }
+            }
+            it.close();
+        } else {
+            DbIterator q = new Filter(new Predicate(0, Predicate.Op.EQUALS, new IntField(key)),
+                    new SeqScan(tid, hf.getId()));
+            q.open();
+            while (q.hasNext()) {
+                q.next();
+                count++;
+            }
+            q.close();
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares equality lookups of keys no row holds over a table with and
+ * without a Bloom filter on the key, over a cold buffer pool. The keys are
+ * shuffled, so every page spans nearly the whole key range and the zone
+ * maps skip nothing; without the filter every page is read, with it about
+ * one lookup in a hundred reads the pages.
+ * <p>
+ * Usage: java simpledb.bench.BloomFilterBenchmark [rows] [lookups]
+ */
+public class BloomFilterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        //even keys only, the odd ones are looked up
+        ArrayList<Integer> keys = new ArrayList<Integer>(rows);
+        for (int i = 0; i < rows; i++) {
+            keys.add(2 * i);
+        }
+        Collections.shuffle(keys, new Random(0));
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(keys.get(i), i)));
+        }
+        HeapFile plain = table(tuples, "plain");
+        HeapFile bloom = table(tuples, "bloom");
+        bloom.addBloomFilter(0);
+
+        for (HeapFile hf : new HeapFile[] { plain, bloom, plain, bloom }) {
+            //warm up the JIT and the OS page cache, and build the filter
+            lookups(hf, rows, 2);
+            long start = System.nanoTime();
+            int found = lookups(hf, rows, lookups);
+            double ms = (System.nanoTime() - start) / 1e6 / lookups;
+            System.out.println(String.format("%-6s %7d pages  %d rows found  %10.2f ms/lookup",
+                    hf == bloom ? "bloom" : "plain", hf.numPages(), found, ms));
+        }
+    }
+
+    private static HeapFile table(ArrayList<ArrayList<Integer>> tuples, String name) throws Exception {
+        File f = SystemTestUtil.createTempTableFile(name, 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, name);
+        return hf;
+    }
+
+    private static int lookups(HeapFile hf, int rows, int n) throws Exception {
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            int key = (int) ((i * 104729L) % rows) * 2 + 1;
+            DbIterator q = new Filter(new Predicate(0, Predicate.Op.EQUALS, new IntField(key)),
+                    new SeqScan(tid, hf.getId()));
+            q.open();
+            while (q.hasNext()) {
+                q.next();
+                count++;
+            }
+            q.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        return count;
+    }
+}
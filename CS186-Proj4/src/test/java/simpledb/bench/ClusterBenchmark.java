@@ -0,0 +1,96 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a table whose keys are shuffled with a copy clustered on the key
+ * by HeapFile.cluster, over a cold buffer pool: a scan filtered on a small
+ * range of keys, which on the clustered copy reads only the contiguous
+ * pages holding the range, and an ORDER BY on the key, which on the
+ * clustered copy needs no sort. Also reports how long clustering a table
+ * many times the size of the buffer pool takes.
+ * <p>
+ * Usage: java simpledb.bench.ClusterBenchmark [rows] [range]
+ */
+public class ClusterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int range = args.length > 1 ? Integer.parseInt(args[1]) : rows / 100;
+
+        ArrayList<Integer> keys = new ArrayList<Integer>(rows);
+        for (int i = 0; i < rows; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(0));
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(keys.get(i), i)));
+        }
+        HeapFile plain = table(tuples, "plain");
+        HeapFile clustered = table(tuples, "clustered");
+        long start = System.nanoTime();
+        clustered.cluster(0);
+        System.out.println(String.format("clustered %d pages in %.2f ms", clustered.numPages(),
+                (System.nanoTime() - start) / 1e6));
+
+        for (HeapFile hf : new HeapFile[] { plain, clustered }) {
+            run(hf, rows / 2, range);
+        }
+        for (HeapFile hf : new HeapFile[] { plain, clustered }) {
+            run(hf, 0, -1);
+        }
+    }
+
+    private static HeapFile table(ArrayList<ArrayList<Integer>> tuples, String name) throws Exception {
+        File f = SystemTestUtil.createTempTableFile(name, 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, name);
+        return hf;
+    }
+
+    private static void run(HeapFile hf, int from, int range) throws Exception {
+        //warm up the JIT and the OS page cache
+        query(hf, from, range);
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < 5; i++) {
+            found += query(hf, from, range);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / 5;
+        System.out.println(String.format("%-9s %-10s %7d rows found  %10.2f ms/query",
+                range < 0 ? "order by" : "range", hf.isSortedOn(0) ? "clustered" : "plain", found / 5, ms));
+    }
+
+    //the rows whose key is in [from, from + range), or if range is
+    //negative every row ordered by key, sorted only if the table is not
+    //clustered
+    private static int query(HeapFile hf, int from, int range) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbIterator q = new SeqScan(tid, hf.getId());
+        if (range >= 0) {
+            q = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(from)),
+                    new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(from + range)), q));
+        } else if (!hf.isSortedOn(0)) {
+            q = new OrderBy(0, true, q);
+        }
+        int count = 0;
+        q.open();
+        while (q.hasNext()) {
+            q.next();
+            count++;
+        }
+        q.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,101 @@
+package simpledb.bench;
+
+import java.io.*;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a table with a low-cardinality string column stored as plain
+ * StringFields (HeapFile) and dictionary-encoded (DictHeapFile): file size,
+ * an equality filter on the column and a GROUP BY COUNT on it, each over a
+ * cold buffer pool.
+ * <p>
+ * Usage: java simpledb.bench.DictBenchmark [rows] [distinct values]
+ */
+public class DictBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        File txt = File.createTempFile("genres", ".txt");
+        txt.deleteOnExit();
+        PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(txt)));
+        for (int i = 0; i < rows; i++) {
+            w.println(i + ",genre" + (i * 7919 % distinct));
+        }
+        w.close();
+
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        TupleDesc td = new TupleDesc(types, new String[] { "id", "genre" });
+        File plainFile = SystemTestUtil.createTempTableFile("genres_plain", 2);
+        File dictFile = SystemTestUtil.createTempTableFile("genres_dict", 2);
+        HeapFileEncoder.convert(txt, plainFile, BufferPool.PAGE_SIZE, 2, types, ',');
+        HeapFile plain = new HeapFile(plainFile, td);
+        Database.getCatalog().addTable(plain, "genres_plain");
+        DictHeapFile.convert(plain, dictFile, new boolean[] { false, true });
+        HeapFile dict = new DictHeapFile(dictFile, td, new boolean[] { false, true });
+        Database.getCatalog().addTable(dict, "genres_dict");
+
+        Predicate p = new Predicate(1, Predicate.Op.EQUALS, new StringField("genre7", Type.STRING_LEN));
+        for (HeapFile table : new HeapFile[] { plain, dict, plain, dict }) {
+            //warm up the JIT and the OS page cache
+            filter(table, p);
+            group(table);
+            long start = System.nanoTime();
+            int matches = 0;
+            for (int i = 0; i < 5; i++) {
+                matches += filter(table, p);
+            }
+            double filterRate = 5.0 * rows / ((System.nanoTime() - start) / 1e9);
+            start = System.nanoTime();
+            int groups = 0;
+            for (int i = 0; i < 5; i++) {
+                groups += group(table);
+            }
+            double groupRate = 5.0 * rows / ((System.nanoTime() - start) / 1e9);
+            System.out.println(String.format("%-6s %5d pages  filter %10.0f tuples/sec (%d)  group by %10.0f tuples/sec (%d)",
+                    table instanceof DictHeapFile ? "dict" : "plain", table.numPages(),
+                    filterRate, matches / 5, groupRate, groups / 5));
+        }
+    }
+
+    private static int filter(HeapFile table, Predicate p) throws Exception {
+        Database.resetBufferPool(table.numPages() + 1);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        int count = 0;
+        it.open();
+        while (it.hasNext()) {
+            if (p.filter(it.next())) {
+                count++;
+            }
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+
+    private static int group(HeapFile table) throws Exception {
+        Database.resetBufferPool(table.numPages() + 1);
+        TransactionId tid = new TransactionId();
+        StringAggregator agg = new StringAggregator(1, Type.STRING_TYPE, 1, Aggregator.Op.COUNT);
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            agg.mergeTupleIntoGroup(it.next());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        DbIterator groups = agg.iterator();
+        groups.open();
+        int count = 0;
+        while (groups.hasNext()) {
+            groups.next();
+            count++;
+        }
+        groups.close();
+        return count;
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares primary-key point lookups through a B+tree index and through a
+ * hash index, over a warm buffer pool that is much smaller than either
+ * index. A B+tree lookup reads a root-to-leaf path, of which only the upper
+ * levels stay cached; a hash lookup reads the first page of one bucket,
+ * once the meta and directory pages are cached.
+ * <p>
+ * Usage: java simpledb.bench.HashIndexBenchmark [rows] [lookups]
+ */
+public class HashIndexBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+
+        //keys are a permutation of 0..rows-1 spread over all the pages
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList((int) ((i * 7919L) % rows), i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("hashindex", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, "hashindex");
+
+        File idx = File.createTempFile("hashindex", ".idx");
+        idx.deleteOnExit();
+        BTreeFile btree = BTreeFile.build(idx, hf, 0);
+        File hidx = File.createTempFile("hashindex", ".hash");
+        hidx.deleteOnExit();
+        long start = System.nanoTime();
+        HashFile hash = HashFile.build(hidx, hf, 0, true);
+        System.out.println(String.format("built hash index of %d pages (b+tree: %d) in %.2f ms",
+                hash.numPages(), btree.numPages(), (System.nanoTime() - start) / 1e6));
+        Database.getCatalog().addIndex(btree, "hashindex");
+        Database.getCatalog().addIndex(hash, "hashindex");
+
+        for (IndexFile index : new IndexFile[] { btree, hash, btree, hash }) {
+            //warm up the JIT, the OS page cache and the buffer pool
+            lookups(index, rows, 1000);
+            start = System.nanoTime();
+            int found = lookups(index, rows, lookups);
+            double us = (System.nanoTime() - start) / 1e3 / lookups;
+            System.out.println(String.format("%-6s %7d rows found  %10.2f us/lookup",
+                    index instanceof HashFile ? "hash" : "b+tree", found, us));
+        }
+    }
+
+    private static int lookups(IndexFile index, int rows, int n) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            TransactionId tid = new TransactionId();
+            IndexScan scan = new IndexScan(tid, index, Predicate.Op.EQUALS,
+                    new IntField((int) ((i * 104729L) % rows)));
+            scan.open();
+            while (scan.hasNext()) {
+                scan.next();
+                count++;
+            }
+            scan.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        return count;
+    }
+}
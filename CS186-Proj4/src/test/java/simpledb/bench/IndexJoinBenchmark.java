@@ -0,0 +1,90 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Joins a filtered outer table of growing size with a large inner table on
+ * its indexed key, once with a nested-loop Join and once with an
+ * IndexNestedLoopJoin, over a cold buffer pool. The index join should win
+ * by orders of magnitude while the outer side is small.
+ * <p>
+ * Usage: java simpledb.bench.IndexJoinBenchmark [inner rows]
+ */
+public class IndexJoinBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        ArrayList<Integer> keys = new ArrayList<Integer>(rows);
+        for (int i = 0; i < rows; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(0));
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(keys.get(i), i)));
+        }
+        HeapFile inner = table(tuples, "indexjoin_inner");
+        File idx = File.createTempFile("indexjoin", ".idx");
+        idx.deleteOnExit();
+        BTreeFile index = BTreeFile.build(idx, inner, 0);
+        Database.getCatalog().addIndex(index, "indexjoin_inner");
+
+        //outer (id, fk) rows, fk referencing a random inner key
+        Random r = new Random(1);
+        tuples = new ArrayList<ArrayList<Integer>>(rows / 10);
+        for (int i = 0; i < rows / 10; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, r.nextInt(rows))));
+        }
+        HeapFile outer = table(tuples, "indexjoin_outer");
+
+        for (int n = 1; n <= rows / 10; n *= 10) {
+            //warm up the JIT and the OS page cache
+            join(outer, inner, index, n, false);
+            join(outer, inner, index, n, true);
+            long start = System.nanoTime();
+            int found = join(outer, inner, index, n, false);
+            double nested = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            join(outer, inner, index, n, true);
+            double indexed = (System.nanoTime() - start) / 1e6;
+            System.out.println(String.format("%8d outer rows %8d results  join %10.2f ms   index join %10.2f ms",
+                    n, found, nested, indexed));
+        }
+    }
+
+    private static HeapFile table(ArrayList<ArrayList<Integer>> tuples, String name) throws Exception {
+        File f = SystemTestUtil.createTempTableFile(name, 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, name);
+        return hf;
+    }
+
+    private static int join(HeapFile outer, HeapFile inner, BTreeFile index, int n, boolean indexed)
+            throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        DbIterator left = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(n)),
+                new SeqScan(tid, outer.getId()));
+        DbIterator right = new SeqScan(tid, inner.getId());
+        DbIterator q = indexed ? new IndexNestedLoopJoin(tid, p, left, right, index) : new Join(p, left, right);
+        int count = 0;
+        q.open();
+        while (q.hasNext()) {
+            q.next();
+            count++;
+        }
+        q.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,93 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares reading two narrow columns of a wide table through an index
+ * that includes both of them, with and without fetching the tuples from
+ * the table, over a cold buffer pool: a range of keys, and every key. An
+ * index-only scan reads the leaves of the index alone, a fraction of the
+ * size of the table.
+ * <p>
+ * Usage: java simpledb.bench.IndexOnlyScanBenchmark [rows] [fields] [range]
+ */
+public class IndexOnlyScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int fields = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int range = args.length > 2 ? Integer.parseInt(args[2]) : rows / 20;
+
+        //keys are a permutation of 0..rows-1 spread over all the pages
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>(fields);
+            int key = (int) ((i * 7919L) % rows);
+            for (int j = 0; j < fields; j++) {
+                t.add(key + j);
+            }
+            tuples.add(t);
+        }
+        File f = SystemTestUtil.createTempTableFile("indexonly", fields);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, fields);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(fields));
+        Database.getCatalog().addTable(hf, "indexonly");
+        File idx = File.createTempFile("indexonly", ".idx");
+        idx.deleteOnExit();
+        BTreeFile index = BTreeFile.build(idx, hf, 0, new int[] { 1 });
+        Database.getCatalog().addIndex(index, "indexonly");
+        System.out.println(String.format("table of %d pages, index of %d pages", hf.numPages(), index.numPages()));
+
+        for (String mode : new String[] { "scan", "index", "index-only" }) {
+            run(hf, index, mode, range);
+        }
+        for (String mode : new String[] { "scan", "index-only" }) {
+            run(hf, index, mode, -1);
+        }
+    }
+
+    private static void run(HeapFile hf, BTreeFile index, String mode, int range) throws Exception {
+        //warm up the JIT and the OS page cache
+        query(hf, index, mode, range);
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < 5; i++) {
+            found += query(hf, index, mode, range);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / 5;
+        System.out.println(String.format("%-6s %-10s %7d rows found  %10.2f ms/query",
+                range < 0 ? "all" : "range", mode, found / 5, ms));
+    }
+
+    //reads f0 and f1 of the rows whose key is below range, or of every row
+    private static int query(HeapFile hf, BTreeFile index, String mode, int range) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        Predicate.Op op = range < 0 ? null : Predicate.Op.LESS_THAN;
+        Field value = range < 0 ? null : new IntField(range);
+        DbIterator q;
+        if (mode.equals("scan")) {
+            q = new SeqScan(tid, hf.getId());
+            if (op != null) {
+                q = new Filter(new Predicate(0, op, value), q);
+            }
+        } else {
+            q = new IndexScan(tid, index, op, value, "indexonly", mode.equals("index-only"));
+        }
+        int count = 0;
+        q.open();
+        while (q.hasNext()) {
+            Tuple t = q.next();
+            t.getField(0);
+            t.getField(1);
+            count++;
+        }
+        q.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,95 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Runs range queries of growing selectivity over an unclustered indexed
+ * key, once through the plan LogicalPlan.physicalPlan picks and once as a
+ * SeqScan + Filter, over a cold buffer pool, and prints which access path
+ * the planner chose. The planner should use the index for the selective
+ * ranges and fall back to the scan once the index stops paying off.
+ * <p>
+ * Usage: java simpledb.bench.IndexScanBenchmark [rows]
+ */
+public class IndexScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        //keys are shuffled, so that no page holds a narrow key range that
+        //the zone maps of the scan could exploit
+        ArrayList<Integer> keys = new ArrayList<Integer>(rows);
+        for (int i = 0; i < rows; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(0));
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(keys.get(i), i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("indexscan", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, "indexscan");
+        File idx = File.createTempFile("indexscan", ".idx");
+        idx.deleteOnExit();
+        Database.getCatalog().addIndex(BTreeFile.build(idx, hf, 0), "indexscan");
+        TableStats.setTableStats("indexscan", new TableStats(hf.getId(), 1000));
+
+        for (int matching = 1; matching <= rows; matching *= 10) {
+            //warm up the JIT and the OS page cache
+            query(hf, matching, true);
+            query(hf, matching, false);
+            String[] path = new String[1];
+            long start = System.nanoTime();
+            int found = query(hf, matching, true, path);
+            double planned = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            query(hf, matching, false);
+            double scanned = (System.nanoTime() - start) / 1e6;
+            System.out.println(String.format("%8d rows  planned %-10s %10.2f ms   seq scan %10.2f ms",
+                    found, path[0], planned, scanned));
+        }
+    }
+
+    private static int query(HeapFile hf, int matching, boolean planned) throws Exception {
+        return query(hf, matching, planned, new String[1]);
+    }
+
+    private static int query(HeapFile hf, int matching, boolean planned, String[] path) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbIterator q;
+        if (planned) {
+            LogicalPlan lp = new LogicalPlan();
+            lp.addScan(hf.getId(), "t");
+            lp.addFilter("t.f0", Predicate.Op.LESS_THAN, Integer.toString(matching));
+            lp.addProjectField("t.f1", null);
+            q = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+            DbIterator leaf = q;
+            while (leaf instanceof Operator) {
+                leaf = ((Operator) leaf).getChildren()[0];
+            }
+            path[0] = leaf instanceof IndexScan ? "index" : "seq scan";
+        } else {
+            q = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(matching)),
+                    new SeqScan(tid, hf.getId()));
+        }
+        int count = 0;
+        q.open();
+        while (q.hasNext()) {
+            q.next();
+            count++;
+        }
+        q.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
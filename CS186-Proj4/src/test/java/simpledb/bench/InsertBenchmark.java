@@ -0,0 +1,53 @@
+package simpledb.bench;
+
+import java.io.File;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures insert throughput through BufferPool.insertTuple into two-column
+ * tables whose existing pages are all full, for a range of table sizes.
+ * <p>
+ * Usage: java simpledb.bench.InsertBenchmark [inserts per table] [table sizes in pages...]
+ */
+public class InsertBenchmark {
+
+    //tuples of two int fields per 4 KB page
+    private static final int TUPLES_PER_PAGE = 504;
+
+    public static void main(String[] args) throws Exception {
+        int inserts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int[] sizes = { 1, 10, 100, 1000 };
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int pages : sizes) {
+            File f = SystemTestUtil.createRandomHeapFileUnopened(2, pages * TUPLES_PER_PAGE,
+                    1 << 16, null, null);
+            HeapFile hf = Utility.openHeapFile(2, f);
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+
+            //the first insert pays for opening the file and its free-space map
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(0, 2));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < inserts; i++) {
+                Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+            }
+            long elapsed = System.nanoTime() - start;
+            Database.getBufferPool().transactionComplete(tid);
+
+            System.out.println(String.format("%6d pages  %12.0f inserts/sec",
+                    pages, inserts / (elapsed / 1e9)));
+
+            hf.close();
+            new File(f.getPath() + ".fsm").delete();
+        }
+    }
+}
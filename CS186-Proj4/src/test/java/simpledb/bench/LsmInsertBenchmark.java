@@ -0,0 +1,73 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares the throughput of inserts in random key order through
+ * BufferPool.insertTuple into an empty HeapFile, where every insert writes
+ * the page it lands on, and into an empty LsmFile, where it is appended to
+ * the log and flushed to runs a memtable at a time. The LsmFile is also
+ * timed until the merges the inserts started in the background are done.
+ * <p>
+ * Usage: java simpledb.bench.LsmInsertBenchmark [rows]
+ */
+public class LsmInsertBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        for (boolean lsm : new boolean[] { false, true }) {
+            //warm up the JIT and the OS page cache
+            insert(lsm, rows);
+            double ms = 0;
+            double merged = 0;
+            for (int i = 0; i < 5; i++) {
+                double[] times = insert(lsm, rows);
+                ms += times[0];
+                merged += times[1];
+            }
+            ms /= 5;
+            merged /= 5;
+            System.out.println(String.format("%-8s %7d rows  %10.2f ms  %10.0f rows/s  %10.2f ms with merges",
+                    lsm ? "lsm" : "heap", rows, ms, rows / (ms / 1000), merged));
+        }
+    }
+
+    //times the inserts, and the inserts and the merges after them
+    private static double[] insert(boolean lsm, int rows) throws Exception {
+        File f = File.createTempFile(lsm ? "lsm" : "heap", ".dat");
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TupleDesc td = Utility.getTupleDesc(2);
+        DbFile file = lsm ? new LsmFile(f, td, 0) : new HeapFile(f, td);
+        Database.getCatalog().addTable(file, f.getName());
+        TransactionId tid = new TransactionId();
+        Random random = new Random(0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            Database.getBufferPool().insertTuple(tid, file.getId(),
+                    Utility.getHeapTuple(new int[] { random.nextInt(), i }));
+        }
+        double inserts = (System.nanoTime() - start) / 1e6;
+        if (lsm) {
+            ((LsmFile) file).awaitCompaction();
+        }
+        double merges = (System.nanoTime() - start) / 1e6;
+        Database.getBufferPool().transactionComplete(tid);
+
+        if (lsm) {
+            ((LsmFile) file).close();
+        } else {
+            ((HeapFile) file).close();
+        }
+        File dir = f.getAbsoluteFile().getParentFile();
+        for (String name : dir.list()) {
+            if (name.startsWith(f.getName())) {
+                new File(dir, name).delete();
+            }
+        }
+        return new double[] { inserts, merges };
+    }
+}
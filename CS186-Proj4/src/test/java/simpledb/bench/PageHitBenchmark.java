@@ -0,0 +1,68 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures the latency of a BufferPool.getPage that hits the cache, at
+ * buffer pools of 1K, 10K and 100K pages, every one of them cached. The
+ * pages are those of a MemoryFile with small pages, so that no disk I/O is
+ * involved, and they are fetched by BufferPool.getPage(PageId), which takes
+ * no lock, in a random order fixed in advance.
+ * <p>
+ * Usage: java simpledb.bench.PageHitBenchmark [lookups]
+ */
+public class PageHitBenchmark {
+
+    //bytes per page of the table; a few tuples each
+    private static final int PAGE_SIZE = 64;
+
+    public static void main(String[] args) throws Exception {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        for (int pages : new int[] { 1000, 10000, 100000 }) {
+            PageId[] order = load(pages, lookups);
+            //warm up the JIT
+            lookup(order);
+            double ns = 0;
+            for (int i = 0; i < 5; i++) {
+                ns += lookup(order);
+            }
+            ns /= 5;
+            System.out.println(String.format("%7d pages  %10d hits  %10.1f ns/hit",
+                    pages, lookups, ns / lookups));
+        }
+    }
+
+    //a buffer pool holding every page of a table of that many pages, and
+    //the pages to look up
+    private static PageId[] load(int pages, int lookups) throws Exception {
+        Database.resetBufferPool(pages);
+        TupleDesc td = Utility.getTupleDesc(2);
+        MemoryFile file = new MemoryFile(td, PAGE_SIZE);
+        Database.getCatalog().addTable(file, "hits" + pages);
+        for (int i = 0; file.numPages() < pages; i++) {
+            file.add(Utility.getHeapTuple(new int[] { i, i }));
+        }
+        PageId[] pids = new PageId[pages];
+        for (int i = 0; i < pages; i++) {
+            pids[i] = new HeapPageId(file.getId(), i);
+            Database.getBufferPool().getPage(pids[i]);
+        }
+        Random random = new Random(0);
+        PageId[] order = new PageId[lookups];
+        for (int i = 0; i < lookups; i++) {
+            order[i] = pids[random.nextInt(pages)];
+        }
+        return order;
+    }
+
+    private static long lookup(PageId[] order) {
+        BufferPool pool = Database.getBufferPool();
+        long start = System.nanoTime();
+        for (PageId pid : order) {
+            pool.getPage(pid);
+        }
+        return System.nanoTime() - start;
+    }
+}
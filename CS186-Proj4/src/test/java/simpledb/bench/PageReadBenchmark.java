@@ -0,0 +1,50 @@
+package simpledb.bench;
+
+import java.util.Iterator;
+
+import simpledb.*;
+
+/**
+ * Measures raw page read throughput of every table in a schema, calling
+ * DbFile.readPage directly so that the BufferPool does not hide the I/O path.
+ * <p>
+ * Usage: java simpledb.bench.PageReadBenchmark [schema file] [rounds]
+ * <p>
+ * The schema defaults to imdb.schema, whose .dat files ship with the project.
+ */
+public class PageReadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String schema = args.length > 0 ? args[0] : "imdb.schema";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Database.getCatalog().loadSchema(schema);
+
+        Iterator<Integer> it = Database.getCatalog().tableIdIterator();
+        while (it.hasNext()) {
+            int tableId = it.next();
+            HeapFile hf = (HeapFile) Database.getCatalog().getDbFile(tableId);
+            int numPages = hf.numPages();
+            if (numPages == 0) continue;
+
+            //warm up the JIT and the OS page cache
+            readAll(hf, numPages);
+
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                readAll(hf, numPages);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double pagesPerSec = (double) numPages * rounds / (elapsed / 1e9);
+            System.out.println(String.format("%-16s %6d pages  %12.0f pages/sec",
+                    Database.getCatalog().getTableName(tableId), numPages, pagesPerSec));
+        }
+    }
+
+    private static void readAll(HeapFile hf, int numPages) {
+        for (int i = 0; i < numPages; i++) {
+            hf.readPage(new HeapPageId(hf.getId(), i));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares scan and point-update throughput of the same two-column table
+ * stored with different page sizes. The buffer pool gets the same number of
+ * bytes for every page size, so larger pages mean fewer of them.
+ * <p>
+ * Usage: java simpledb.bench.PageSizeBenchmark [rows] [pool KB] [page sizes...]
+ */
+public class PageSizeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int poolBytes = (args.length > 1 ? Integer.parseInt(args[1]) : 1024) * 1024;
+        int[] sizes = { 4096, 8192, 16384, 32768, 65536 };
+        if (args.length > 2) {
+            sizes = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                sizes[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+
+        for (int pageSize : sizes) {
+            File f = SystemTestUtil.createTempTableFile("pages" + pageSize, 2);
+            HeapFileEncoder.convert(tuples, f, pageSize, 2);
+            HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), false, pageSize);
+            Database.getCatalog().addTable(hf, "pages" + pageSize);
+            int poolPages = Math.max(2, poolBytes / pageSize);
+
+            //warm up the JIT and the OS page cache
+            scan(hf, poolPages);
+            long start = System.nanoTime();
+            int scanned = 0;
+            for (int r = 0; r < 5; r++) {
+                scanned += scan(hf, poolPages);
+            }
+            double scanRate = scanned / ((System.nanoTime() - start) / 1e9);
+
+            int updates = 5000;
+            update(hf, poolPages, 500);
+            start = System.nanoTime();
+            update(hf, poolPages, updates);
+            double updateRate = updates / ((System.nanoTime() - start) / 1e9);
+
+            System.out.println(String.format("%6d byte pages  %6d pages  scan %12.0f tuples/sec  update %10.0f tuples/sec",
+                    pageSize, hf.numPages(), scanRate, updateRate));
+            hf.close();
+        }
+    }
+
+    private static int scan(HeapFile hf, int poolPages) throws Exception {
+        Database.resetBufferPool(poolPages);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        int count = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next().getField(1);
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+
+    //rewrites one random tuple per update: delete, insert on the same page, write the page
+    private static void update(HeapFile hf, int poolPages, int updates) throws Exception {
+        Database.resetBufferPool(poolPages);
+        TransactionId tid = new TransactionId();
+        Random r = new Random(42);
+        for (int i = 0; i < updates; i++) {
+            HeapPageId pid = new HeapPageId(hf.getId(), r.nextInt(hf.numPages()));
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            Tuple t = page.iterator().next();
+            page.deleteTuple(t);
+            Tuple updated = Utility.getHeapTuple(new int[] { ((IntField) t.getField(0)).getValue(), i });
+            page.insertTuple(updated);
+            page.markDirty(true, tid);
+            hf.writePage(page);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
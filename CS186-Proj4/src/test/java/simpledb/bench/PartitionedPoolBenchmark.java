@@ -0,0 +1,84 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures the throughput of BufferPool.getPage from several threads at
+ * once, with the page cache a single partition and split into partitions,
+ * see PartitionedCache. Every thread runs a transaction of its own that
+ * read-locks random pages of a MemoryFile with small pages, a quarter more
+ * of them than the pool holds, so that most lookups hit and the rest
+ * evict, without disk I/O. Throughput can only grow with the threads up to
+ * the number of processors, which is printed first.
+ * <p>
+ * Usage: java simpledb.bench.PartitionedPoolBenchmark [pool pages] [lookups per thread]
+ */
+public class PartitionedPoolBenchmark {
+
+    //bytes per page of the table; a few tuples each
+    private static final int PAGE_SIZE = 64;
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+
+        TupleDesc td = Utility.getTupleDesc(2);
+        MemoryFile file = new MemoryFile(td, PAGE_SIZE);
+        Database.getCatalog().addTable(file, "partitioned");
+        for (int i = 0; file.numPages() < poolPages * 5 / 4; i++) {
+            file.add(Utility.getHeapTuple(new int[] { i, i }));
+        }
+
+        int most = Integer.highestOneBit(poolPages / BufferPool.MIN_PARTITION_PAGES);
+        for (int partitions : new int[] { 1, Math.min(16, most) }) {
+            for (int threads : new int[] { 1, 2, 4, 8 }) {
+                //warm up the JIT
+                run(file, poolPages, partitions, threads, lookups / 10);
+                double opsPerSec = 0;
+                for (int r = 0; r < 5; r++) {
+                    opsPerSec += run(file, poolPages, partitions, threads, lookups) / 5;
+                }
+                System.out.println(String.format("%5d pool pages  %3d partitions  %2d threads  %12.0f lookups/sec",
+                        poolPages, partitions, threads, opsPerSec));
+            }
+        }
+    }
+
+    //lookups per second of all the threads together
+    private static double run(final MemoryFile file, int poolPages, int partitions, int threads,
+            final int lookups) throws Exception {
+        final BufferPool bp = new BufferPool(poolPages, ReplacementPolicy.LRU, partitions);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        Random random = new Random(seed);
+                        TransactionId tid = new TransactionId();
+                        int pages = file.numPages();
+                        for (int i = 0; i < lookups; i++) {
+                            PageId pid = new HeapPageId(file.getId(), random.nextInt(pages));
+                            bp.getPage(tid, pid, Permissions.READ_ONLY);
+                        }
+                        bp.transactionComplete(tid);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return (double) lookups * threads / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,77 @@
+package simpledb.bench;
+
+import java.io.*;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares cold-pool scans of the same wide table stored row by row
+ * (HeapFile) and column by column (PaxHeapFile), reading only a few of its
+ * columns.
+ * <p>
+ * Usage: java simpledb.bench.PaxScanBenchmark [rows] [columns] [columns read]
+ */
+public class PaxScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int read = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        File txt = File.createTempFile("wide", ".txt");
+        txt.deleteOnExit();
+        PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(txt)));
+        Random r = new Random(1);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                w.print(r.nextInt(1000));
+                w.print(j < columns - 1 ? ',' : '\n');
+            }
+        }
+        w.close();
+
+        Type[] types = Utility.getTypes(columns);
+        TupleDesc td = Utility.getTupleDesc(columns);
+        File rowFile = SystemTestUtil.createTempTableFile("wide_rows", columns);
+        File paxFile = SystemTestUtil.createTempTableFile("wide_pax", columns);
+        HeapFileEncoder.convert(txt, rowFile, BufferPool.PAGE_SIZE, columns, types, ',', false);
+        HeapFileEncoder.convert(txt, paxFile, BufferPool.PAGE_SIZE, columns, types, ',', true);
+
+        HeapFile rowTable = new HeapFile(rowFile, td);
+        HeapFile paxTable = new PaxHeapFile(paxFile, td);
+        Database.getCatalog().addTable(rowTable, "wide_rows");
+        Database.getCatalog().addTable(paxTable, "wide_pax");
+
+        for (HeapFile table : new HeapFile[] { rowTable, paxTable, rowTable, paxTable }) {
+            //warm up the JIT and the OS page cache
+            scan(table, read);
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < 5; i++) {
+                sum += scan(table, read);
+            }
+            double rate = 5.0 * rows / ((System.nanoTime() - start) / 1e9);
+            System.out.println(String.format("%-6s %d of %d columns  %12.0f tuples/sec  (sum %d)",
+                    table instanceof PaxHeapFile ? "pax" : "rows", read, columns, rate, sum));
+        }
+    }
+
+    private static long scan(HeapFile table, int read) throws Exception {
+        Database.resetBufferPool(table.numPages() + 1);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        long sum = 0;
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            for (int j = 0; j < read; j++) {
+                sum += ((IntField) t.getField(j)).getValue();
+            }
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return sum;
+    }
+}
@@ -0,0 +1,84 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Replays a trace of point lookups mixed with sequential scans against the
+ * page cache of every replacement policy and reports the hit ratios. The
+ * lookups hit a hot set of pages that fits in the cache, chosen at random.
+ * Every round, half of them run alone, and the other half run alongside a
+ * scan that reads every page of a table several times larger than the
+ * cache, once each. A page that misses is put into the cache, as
+ * BufferPool.getPage does.
+ * <p>
+ * Usage: java simpledb.bench.ReplacementBenchmark [cache pages] [rounds]
+ */
+public class ReplacementBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        //the hot set, looked up at random, and the table that is scanned
+        int hot = capacity * 3 / 5;
+        int scanned = capacity * 5;
+        int lookups = capacity * 5;
+
+        int[] trace = trace(hot, scanned, lookups, rounds);
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            //warm up the JIT
+            replay(policy, capacity, trace, hot, hot + scanned);
+            long start = System.nanoTime();
+            long[] hits = replay(policy, capacity, trace, hot, hot + scanned);
+            double ms = (System.nanoTime() - start) / 1e6;
+            System.out.println(String.format("%-6s %6d pages  lookups %6.2f%% hit  scans %6.2f%% hit  all %6.2f%% hit  %8.2f ms",
+                    policy, capacity, 100.0 * hits[0] / ((long) lookups * rounds),
+                    100.0 * hits[1] / ((long) scanned * rounds),
+                    100.0 * (hits[0] + hits[1]) / trace.length, ms));
+        }
+    }
+
+    //page numbers below hot are the hot set, the others the scanned table;
+    //each round is a batch of lookups alone, then a scan with lookups
+    //interleaved, as from concurrent transactions
+    private static int[] trace(int hot, int scanned, int lookups, int rounds) {
+        Random random = new Random(0);
+        int[] trace = new int[(lookups + scanned) * rounds];
+        int n = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < lookups / 2; i++) {
+                trace[n++] = random.nextInt(hot);
+            }
+            //the other half, spread evenly over the scan
+            int during = lookups - lookups / 2;
+            for (int i = 0; i < scanned; i++) {
+                trace[n++] = hot + i;
+                if ((long) (i + 1) * during / scanned > (long) i * during / scanned) {
+                    trace[n++] = random.nextInt(hot);
+                }
+            }
+        }
+        return trace;
+    }
+
+    //the hits of lookups and of scans
+    private static long[] replay(ReplacementPolicy policy, int capacity, int[] trace, int hot, int pages) {
+        PageCache cache = policy.newCache(capacity);
+        MemoryFile file = new MemoryFile(Utility.getTupleDesc(1));
+        PageId[] pids = new PageId[pages];
+        Page page = file.add(Utility.getHeapTuple(new int[] { 0 }));
+        long[] hits = new long[2];
+        for (int pgNo : trace) {
+            if (pids[pgNo] == null) {
+                pids[pgNo] = new HeapPageId(file.getId(), pgNo);
+            }
+            if (cache.get(pids[pgNo]) != null) {
+                hits[pgNo < hot ? 0 : 1]++;
+            } else {
+                cache.put(pids[pgNo], page);
+            }
+        }
+        return hits;
+    }
+}
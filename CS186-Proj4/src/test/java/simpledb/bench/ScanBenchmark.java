@@ -0,0 +1,66 @@
+package simpledb.bench;
+
+import java.util.Iterator;
+
+import simpledb.*;
+
+/**
+ * Measures full SeqScan throughput of every table in a schema, starting each
+ * round from an empty buffer pool, once without and once with read-ahead.
+ * <p>
+ * Usage: java simpledb.bench.ScanBenchmark [schema file] [rounds] [read-ahead pages]
+ * <p>
+ * The schema defaults to imdb.schema, whose .dat files ship with the project.
+ */
+public class ScanBenchmark {
+
+    private static final int POOL_PAGES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String schema = args.length > 0 ? args[0] : "imdb.schema";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int readAhead = args.length > 2 ? Integer.parseInt(args[2]) : BufferPool.DEFAULT_READ_AHEAD_PAGES;
+
+        Database.getCatalog().loadSchema(schema);
+
+        Iterator<Integer> it = Database.getCatalog().tableIdIterator();
+        while (it.hasNext()) {
+            int tableId = it.next();
+            int numPages = ((HeapFile) Database.getCatalog().getDbFile(tableId)).numPages();
+            if (numPages == 0) continue;
+
+            double off = tuplesPerSec(tableId, rounds, 0);
+            double on = tuplesPerSec(tableId, rounds, readAhead);
+            System.out.println(String.format("%-16s %6d pages  read-ahead off %12.0f tuples/sec  on(%d) %12.0f tuples/sec",
+                    Database.getCatalog().getTableName(tableId), numPages, off, readAhead, on));
+        }
+    }
+
+    private static double tuplesPerSec(int tableId, int rounds, int readAhead) throws Exception {
+        //warm up the JIT and the OS page cache
+        scan(tableId, readAhead);
+
+        long tuples = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            tuples += scan(tableId, readAhead);
+        }
+        long elapsed = System.nanoTime() - start;
+        return tuples / (elapsed / 1e9);
+    }
+
+    private static int scan(int tableId, int readAhead) throws Exception {
+        Database.resetBufferPool(POOL_PAGES).setReadAheadPages(readAhead);
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, tableId);
+        int count = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,113 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures how well point lookups keep their pages cached while a report
+ * query scans a table larger than the BufferPool. One thread looks up
+ * random pages of Movie, Director and Genre, which fit in the pool
+ * together, pausing for a few microseconds between lookups as a
+ * transaction would to work on the rows, while another thread scans Casts,
+ * which does not fit, over and over. This is run with the scan reading
+ * through a ring of its own, see BufferPool.newScanRing, and with rings
+ * turned off, so that the scan goes through the shared cache.
+ * <p>
+ * Usage: java simpledb.bench.ScanRingBenchmark [pool pages] [lookups] [pause us]
+ * <p>
+ * The tables are those of imdb.schema, whose .dat files ship with the
+ * project.
+ */
+public class ScanRingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : BufferPool.DEFAULT_PAGES;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        long pause = 1000L * (args.length > 2 ? Integer.parseInt(args[2]) : 20);
+
+        Database.getCatalog().loadSchema("imdb.schema");
+        HeapFile[] hot = {
+            (HeapFile) Database.getCatalog().getDbFile(Database.getCatalog().getTableId("Movie")),
+            (HeapFile) Database.getCatalog().getDbFile(Database.getCatalog().getTableId("Director")),
+            (HeapFile) Database.getCatalog().getDbFile(Database.getCatalog().getTableId("Genre")),
+        };
+        int scanned = Database.getCatalog().getTableId("Casts");
+
+        //warm up the JIT
+        run(poolPages, BufferPool.DEFAULT_RING_PAGES, hot, scanned, lookups, pause);
+        run(poolPages, 0, hot, scanned, lookups, pause);
+
+        for (int ringPages : new int[] { BufferPool.DEFAULT_RING_PAGES, 0 }) {
+            double hits = 0;
+            double ns = 0;
+            long scans = 0;
+            for (int r = 0; r < 5; r++) {
+                double[] result = run(poolPages, ringPages, hot, scanned, lookups, pause);
+                hits += result[0] / 5;
+                ns += result[1] / 5;
+                scans += (long) result[2];
+            }
+            System.out.println(String.format("ring %-3s %4d pool pages  lookups %6.2f%% hit  %8.0f ns/lookup  %4d scans of Casts",
+                    ringPages == 0 ? "off" : "on", poolPages, 100 * hits, ns, scans / 5));
+        }
+    }
+
+    //the hit ratio and time of the lookups, not counting the pauses, and
+    //the number of scans
+    private static double[] run(int poolPages, int ringPages, HeapFile[] hot, final int scanned,
+            int lookups, long pause) throws Exception {
+        final BufferPool bp = Database.resetBufferPool(poolPages);
+        bp.setRingPages(ringPages);
+        final int[] scans = new int[1];
+        final boolean[] done = new boolean[1];
+        Thread report = new Thread() {
+            public void run() {
+                try {
+                    TransactionId tid = new TransactionId();
+                    while (true) {
+                        SeqScan scan = new SeqScan(tid, scanned);
+                        scan.open();
+                        while (scan.hasNext()) {
+                            scan.next();
+                        }
+                        scan.close();
+                        synchronized (done) {
+                            if (done[0]) break;
+                            scans[0]++;
+                        }
+                    }
+                    bp.transactionComplete(tid);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        report.start();
+
+        Random random = new Random(0);
+        TransactionId tid = new TransactionId();
+        long hits = 0;
+        long elapsed = 0;
+        for (int i = 0; i < lookups; i++) {
+            HeapFile hf = hot[random.nextInt(hot.length)];
+            PageId pid = new HeapPageId(hf.getId(), random.nextInt(hf.numPages()));
+            if (bp.isCached(pid)) {
+                hits++;
+            }
+            long lookup = System.nanoTime();
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            elapsed += System.nanoTime() - lookup;
+            while (System.nanoTime() - lookup < pause) {
+                //working on the rows of the page
+            }
+        }
+        bp.transactionComplete(tid);
+
+        synchronized (done) {
+            done[0] = true;
+        }
+        report.join();
+        return new double[] { (double) hits / lookups, (double) elapsed / lookups, scans[0] };
+    }
+}
@@ -0,0 +1,84 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Converts every table in a schema to the slotted page format and compares
+ * page counts and cold-pool SeqScan throughput of the two formats.
+ * <p>
+ * Usage: java simpledb.bench.SlottedScanBenchmark [schema file] [rounds]
+ * <p>
+ * The schema defaults to imdb.schema, whose .dat files ship with the project.
+ * The converted files are written to temporary files and deleted on exit.
+ */
+public class SlottedScanBenchmark {
+
+    private static final int POOL_PAGES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String schema = args.length > 0 ? args[0] : "imdb.schema";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Database.getCatalog().loadSchema(schema);
+
+        List<Integer> tableIds = new ArrayList<Integer>();
+        Iterator<Integer> it = Database.getCatalog().tableIdIterator();
+        while (it.hasNext()) {
+            tableIds.add(it.next());
+        }
+
+        for (int tableId : tableIds) {
+            HeapFile hf = (HeapFile) Database.getCatalog().getDbFile(tableId);
+            if (hf.numPages() == 0) continue;
+            String name = Database.getCatalog().getTableName(tableId);
+
+            File out = SystemTestUtil.createTempTableFile(name, hf.getTupleDesc().numFields());
+            SlottedHeapFile.convert(hf, out);
+            SlottedHeapFile shf = new SlottedHeapFile(out, hf.getTupleDesc());
+            Database.getCatalog().addTable(shf, name + "_slotted");
+
+            double fixed = tuplesPerSec(hf.getId(), rounds);
+            double slotted = tuplesPerSec(shf.getId(), rounds);
+            System.out.println(String.format("%-16s fixed %6d pages %12.0f tuples/sec  slotted %6d pages %12.0f tuples/sec",
+                    name, hf.numPages(), fixed, shf.numPages(), slotted));
+        }
+    }
+
+    private static double tuplesPerSec(int tableId, int rounds) throws Exception {
+        //warm up the JIT and the OS page cache
+        scan(tableId);
+
+        long tuples = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            tuples += scan(tableId);
+        }
+        long elapsed = System.nanoTime() - start;
+        return tuples / (elapsed / 1e9);
+    }
+
+    private static int scan(int tableId) throws Exception {
+        Database.resetBufferPool(POOL_PAGES);
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, tableId);
+        int count = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            //touch every field, so both formats decode the whole tuple
+            for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+                t.getField(i);
+            }
+            count++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares full scans of a table that lost most of its rows to deletes,
+ * over a cold buffer pool, before and after Catalog.vacuumTable. Before, the
+ * scan reads every page however empty; after, only the dense pages left.
+ * <p>
+ * Usage: java simpledb.bench.VacuumBenchmark [rows] [keep one in]
+ */
+public class VacuumBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int every = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        File f = SystemTestUtil.createTempTableFile("vacuum", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, "vacuum");
+
+        //delete all but one row in every, page by page on disk
+        for (int i = 0; i < hf.numPages(); i++) {
+            HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), i));
+            List<Tuple> doomed = new ArrayList<Tuple>();
+            for (Iterator<Tuple> it = page.iterator(); it.hasNext(); ) {
+                Tuple t = it.next();
+                if (((IntField) t.getField(0)).getValue() % every != 0) {
+                    doomed.add(t);
+                }
+            }
+            for (Tuple t : doomed) {
+                page.deleteTuple(t);
+            }
+            hf.writePage(page);
+        }
+
+        run(hf, "before");
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        long start = System.nanoTime();
+        int reclaimed = Database.getCatalog().vacuumTable("vacuum");
+        System.out.println(String.format("vacuum reclaimed %d pages in %.2f ms", reclaimed,
+                (System.nanoTime() - start) / 1e6));
+        run(hf, "after");
+    }
+
+    private static void run(HeapFile hf, String when) throws Exception {
+        //warm up the JIT and the OS page cache
+        scan(hf);
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < 5; i++) {
+            found += scan(hf);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / 5;
+        System.out.println(String.format("%-6s %7d pages  %7d rows found  %10.2f ms/scan",
+                when, hf.numPages(), found / 5, ms));
+    }
+
+    private static int scan(HeapFile hf) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbIterator q = new SeqScan(tid, hf.getId());
+        int count = 0;
+        q.open();
+        while (q.hasNext()) {
+            q.next();
+            count++;
+        }
+        q.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,72 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a selective range filter over an id-clustered table with and
+ * without per-page zone maps, over a cold buffer pool. Without them every
+ * page is read; with them Filter hands its predicate to SeqScan, which
+ * skips the pages whose id range cannot match.
+ * <p>
+ * Usage: java simpledb.bench.ZoneMapBenchmark [rows] [matching rows]
+ */
+public class ZoneMapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int matching = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 100)));
+        }
+        File f = SystemTestUtil.createTempTableFile("zones", 2);
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, "zones");
+
+        int low = rows / 2;
+        for (boolean zones : new boolean[] { false, true, false, true }) {
+            //warm up the JIT and the OS page cache, and build the zone map
+            query(hf, low, matching, zones);
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < 5; i++) {
+                found += query(hf, low, matching, zones);
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / 5;
+            System.out.println(String.format("%-9s %7d pages  %d rows found  %10.2f ms/query",
+                    zones ? "zone map" : "full scan", hf.numPages(), found / 5, ms));
+        }
+    }
+
+    private static int query(HeapFile hf, int low, int matching, boolean zones) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbIterator scan = new SeqScan(tid, hf.getId());
+        Predicate from = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(low));
+        Predicate to = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(low + matching));
+        DbIterator q;
+        if (zones) {
+            q = new Filter(to, new Filter(from, scan));
+        } else {
+            //a Filter does not push down through another operator
+            q = new Filter(to, new Filter(from, new Project(new ArrayList<Integer>(Arrays.asList(0, 1)),
+                    new Type[] { Type.INT_TYPE, Type.INT_TYPE }, scan)));
+        }
+        int count = 0;
+        q.open();
+        while (q.hasNext()) {
+            q.next();
+            count++;
+        }
+        q.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
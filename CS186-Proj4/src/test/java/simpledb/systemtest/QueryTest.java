@@ -27,8 +27,7 @@ public class QueryTest {
 	 * @throws IOException if a temporary file can't be created to hand to HeapFile to open and read its data
 	 */
 	public static HeapFile createDuplicateHeapFile(ArrayList<ArrayList<Integer>> tuples, int columns, String colPrefix) throws IOException {
-        File temp = File.createTempFile("table", ".dat");
-        temp.deleteOnExit();
+        File temp = SystemTestUtil.createTempTableFile("table", columns);
         HeapFileEncoder.convert(tuples, temp, BufferPool.PAGE_SIZE, columns);
         return Utility.openHeapFile(columns, colPrefix, temp);
 	}
@@ -79,12 +79,25 @@ public class SystemTestUtil {
         }
 
         // Convert the tuples list to a heap file and open it
-        File temp = File.createTempFile("table", ".dat");
-        temp.deleteOnExit();
+        File temp = createTempTableFile("table", columns);
         HeapFileEncoder.convert(tuples, temp, BufferPool.PAGE_SIZE, columns);
         return temp;
     }
 
+    /**
+     * Creates an empty temporary file for a table of numFields fields, which
+     * is deleted on exit along with every file a HeapFile may keep next to
+     * it, see HeapFile.sidecars.
+     */
+    public static File createTempTableFile(String prefix, int numFields) throws IOException {
+        File f = File.createTempFile(prefix, ".dat");
+        f.deleteOnExit();
+        for (File sidecar : HeapFile.sidecars(f, numFields)) {
+            sidecar.deleteOnExit();
+        }
+        return f;
+    }
+
     public static ArrayList<Integer> tupleToList(Tuple tuple) {
         ArrayList<Integer> list = new ArrayList<Integer>();
         for (int i = 0; i < tuple.getTupleDesc().numFields(); ++i) {